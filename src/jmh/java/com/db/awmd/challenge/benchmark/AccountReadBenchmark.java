@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.service.AccountReadCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of account JSON as served by GET /v1/accounts/{id}: serialized on every read compared to
+ * the versioned read cache, and cached reads while transfers keep changing the same accounts.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountReadBenchmark {
+
+  private static final int ACCOUNTS = 1000;
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000000000.00");
+
+  @Param({"locking", "atomic"})
+  private String engine;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture("inMemory", engine);
+    fixture.createAccounts(ACCOUNTS, BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Random generator of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Ids {
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private String next() {
+      return String.valueOf(random.nextInt(ACCOUNTS));
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public byte[] serializeEveryRead(Ids ids) throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(fixture.getService().getAccount(ids.next()));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public AccountReadCache.SerializedAccount cachedRead(Ids ids) {
+    return fixture.getService().getSerializedAccount(ids.next());
+  }
+
+  @Benchmark
+  @Group("readWhileTransferring")
+  @GroupThreads(3)
+  public AccountReadCache.SerializedAccount readWhileTransferring_read(Ids ids) {
+    return fixture.getService().getSerializedAccount(ids.next());
+  }
+
+  @Benchmark
+  @Group("readWhileTransferring")
+  @GroupThreads(1)
+  public Object readWhileTransferring_transfer(Ids ids) {
+    String from = ids.next();
+    String to = String.valueOf((Integer.parseInt(from) + 1) % ACCOUNTS);
+    return fixture.getService().transferFunds(new AmountTransferRequest(from, to, BigDecimal.ONE));
+  }
+}
@@ -0,0 +1,115 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Account creation and lookup through {@link com.db.awmd.challenge.service.AccountsService} and
+ * directly on the repositories.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountsBenchmark {
+
+  private static final int ACCOUNTS = 1_000_000;
+
+  private static final BigDecimal BALANCE = new BigDecimal("100.00");
+
+  @Param({"inMemory", "compact"})
+  private String repository;
+
+  // New accounts get ids above the pre-populated ones.
+  private final AtomicLong nextId = new AtomicLong(ACCOUNTS);
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture(repository, "locking");
+    fixture.createAccounts(ACCOUNTS, BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Random generator of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Ids {
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private String existing() {
+      return String.valueOf(random.nextInt(ACCOUNTS));
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void service_createAccount() {
+    fixture.getService().createAccount(new Account(String.valueOf(nextId.getAndIncrement()), BALANCE));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void service_createAccount_maxThreads() {
+    fixture.getService().createAccount(new Account(String.valueOf(nextId.getAndIncrement()), BALANCE));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Account service_getAccount(Ids ids) {
+    return fixture.getService().getAccount(ids.existing());
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Account service_getAccount_maxThreads(Ids ids) {
+    return fixture.getService().getAccount(ids.existing());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Account repository_getAccount(Ids ids) {
+    return fixture.getRepository().getAccount(ids.existing());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Account repository_getMissingAccount(Ids ids) {
+    return fixture.getRepository().getAccount("missing-" + ids.random.nextInt(ACCOUNTS));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public AccountsRepository repository_createAccount() {
+    AccountsRepository accounts = fixture.getRepository();
+    accounts.createAccount(new Account(String.valueOf(nextId.getAndIncrement()), BALANCE));
+    return accounts;
+  }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.ReportingProperties;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceReport;
+import com.db.awmd.challenge.service.BalanceReporter;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Consistent balance reports over 10 million accounts: the report alone, scanned by 1 and by all
+ * processors, and reports taken while transfers keep running, which wait at the gate meanwhile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BalanceReportBenchmark {
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000.00");
+
+  @Param({"compact", "inMemory"})
+  private String repository;
+
+  @Param({"10000000"})
+  private int accounts;
+
+  @Param({"1", "0"})
+  private int threads;
+
+  private ServiceFixture fixture;
+
+  private BalanceReporter reporter;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture(repository, "locking");
+    fixture.createAccounts(accounts, BALANCE);
+    ReportingProperties properties = new ReportingProperties();
+    if (threads > 0) {
+      properties.setThreads(threads);
+    }
+    reporter = new BalanceReporter(fixture.getService(), properties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    reporter.stop();
+    fixture.close();
+  }
+
+  /**
+   * Random generator of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Ids {
+
+    private final SplittableRandom random = new SplittableRandom();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public BalanceReport report() {
+    return reporter.report();
+  }
+
+  @Benchmark
+  @Group("reportWhileTransferring")
+  @GroupThreads(1)
+  public BalanceReport reportWhileTransferring_report() {
+    return reporter.report();
+  }
+
+  @Benchmark
+  @Group("reportWhileTransferring")
+  @GroupThreads(3)
+  public Object reportWhileTransferring_transfer(Ids ids) {
+    int from = ids.random.nextInt(accounts);
+    int to = (from + 1) % accounts;
+    return fixture.getService().transferFunds(
+      new AmountTransferRequest(String.valueOf(from), String.valueOf(to), BigDecimal.ONE));
+  }
+}
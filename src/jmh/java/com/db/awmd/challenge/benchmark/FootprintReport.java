@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+
+/**
+ * Prints the retained heap per account of the account repositories. Run with 'gradle footprint',
+ * account counts can be given with -Paccounts=1000000,10000000.
+ */
+public class FootprintReport {
+
+  private static final String[] REPOSITORIES = {"inMemory", "compact"};
+
+  private static final BigDecimal BALANCE = new BigDecimal("100.00");
+
+  public static void main(String[] args) {
+    String[] counts = args.length > 0 ? args : new String[] {"1000000", "10000000", "50000000"};
+    System.out.printf("%-10s %12s %12s %14s%n", "repository", "accounts", "heap MB", "bytes/account");
+    for (String count : counts) {
+      for (String repository : REPOSITORIES) {
+        report(repository, Integer.parseInt(count));
+      }
+    }
+  }
+
+  private static void report(String repository, int accounts) {
+    long before = usedHeap();
+    AccountsRepository store = ServiceFixture.newRepository(repository);
+    try {
+      for (int i = 0; i < accounts; i++) {
+        store.createAccount(new Account(String.valueOf(i), BALANCE));
+      }
+    } catch (OutOfMemoryError ex) {
+      store = null;
+      System.out.printf("%-10s %12d %12s %14s%n", repository, accounts, "OOM", "-");
+      return;
+    }
+    long used = usedHeap() - before;
+    System.out.printf("%-10s %12d %12d %14d%n", repository, accounts, used >> 20, used / accounts);
+    // Keep the store reachable until it has been measured.
+    store.clearAccounts();
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
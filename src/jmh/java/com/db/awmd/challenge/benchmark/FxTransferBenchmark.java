@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.service.FxRateCache;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transfers between random pairs of accounts of one currency, or of five currencies so that most
+ * transfers are converted. With refresh, a background thread swaps in new rates all the time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FxTransferBenchmark {
+
+  private static final int ACCOUNTS = 1024;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.25");
+
+  // Null for the base currency
+  private static final String[] CURRENCIES = {null, "USD", "GBP", "CHF", "JPY"};
+
+  private static final List<String> RATES = Arrays.asList("EUR,USD,1.085", "GBP,EUR,1.17", "EUR,CHF,0.94",
+    "EUR,JPY,162.5");
+
+  private static final List<String> OTHER_RATES = Arrays.asList("EUR,USD,1.09", "GBP,EUR,1.16", "EUR,CHF,0.95",
+    "EUR,JPY,161.8");
+
+  @Param({"same", "mixed"})
+  private String currencies;
+
+  @Param({"false", "true"})
+  private boolean refresh;
+
+  private ServiceFixture fixture;
+
+  private volatile boolean refreshing;
+
+  private Thread refresher;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture("inMemory", "locking");
+    FxRateCache fxRateCache = fixture.getService().getFxRateCache();
+    fxRateCache.update(RATES);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      String currency = "mixed".equals(currencies) ? CURRENCIES[i % CURRENCIES.length] : null;
+      fixture.getRepository().createAccount(new Account(String.valueOf(i), INITIAL_BALANCE, currency));
+    }
+    if (refresh) {
+      refreshing = true;
+      refresher = new Thread(() -> {
+        for (int i = 0; refreshing; i++) {
+          fxRateCache.update(i % 2 == 0 ? OTHER_RATES : RATES);
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException ex) {
+            return;
+          }
+        }
+      }, "fx-refresh-benchmark");
+      refresher.setDaemon(true);
+      refresher.start();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    refreshing = false;
+    if (refresher != null) {
+      refresher.join();
+    }
+    fixture.close();
+  }
+
+  /**
+   * Transfer requests between random pairs of distinct accounts, created once per thread.
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private final AmountTransferRequest[] requests = new AmountTransferRequest[256];
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < requests.length; i++) {
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        requests[i] = new AmountTransferRequest(String.valueOf(from), String.valueOf(to), AMOUNT);
+      }
+    }
+
+    private AmountTransferRequest next() {
+      next = (next + 1) & (requests.length - 1);
+      return requests[next];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public JSONObject transfer_1thread(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public JSONObject transfer_4threads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+}
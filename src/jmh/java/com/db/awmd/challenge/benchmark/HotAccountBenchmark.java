@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Worst case contention: every thread transfers from its own account into one shared account.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+
+  private static final String HOT_ACCOUNT = "0";
+
+  private static final int MAX_THREADS = 1024;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  @Param({"locking", "atomic", "sharded"})
+  private String engine;
+
+  private final AtomicInteger threadIds = new AtomicInteger();
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture("inMemory", engine);
+    fixture.createAccounts(MAX_THREADS + 1, INITIAL_BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Transfer request of one benchmark thread from its own account to the hot account.
+   */
+  @State(Scope.Thread)
+  public static class Request {
+
+    private AmountTransferRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp(HotAccountBenchmark benchmark) {
+      String accountFromId = String.valueOf(benchmark.threadIds.incrementAndGet());
+      request = new AmountTransferRequest(accountFromId, HOT_ACCOUNT, AMOUNT);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public JSONObject hotAccount_1thread(Request request) {
+    return fixture.getService().transferFunds(request.request);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public JSONObject hotAccount_4threads(Request request) {
+    return fixture.getService().transferFunds(request.request);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public JSONObject hotAccount_maxThreads(Request request) {
+    return fixture.getService().transferFunds(request.request);
+  }
+}
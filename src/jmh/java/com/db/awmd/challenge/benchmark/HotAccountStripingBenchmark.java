@@ -0,0 +1,117 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.HotAccountProperties;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 80% of all transfers go into one hot account, the rest between the accounts of the threads,
+ * with and without striping the balance of the hot account.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotAccountStripingBenchmark {
+
+  private static final String HOT_ACCOUNT = "0";
+
+  private static final int MAX_THREADS = 1024;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  private static final int HOT_PERCENT = 80;
+
+  @Param({"false", "true"})
+  private boolean striped;
+
+  private final AtomicInteger threadIds = new AtomicInteger();
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    HotAccountProperties hotAccounts = new HotAccountProperties();
+    if (striped) {
+      hotAccounts.setIds(Collections.singletonList(HOT_ACCOUNT));
+    }
+    fixture = new ServiceFixture("inMemory", "locking", hotAccounts);
+    fixture.createAccounts(MAX_THREADS + 1, INITIAL_BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Transfer requests of one benchmark thread from its own account, to the hot account or to the
+   * account of another thread.
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private AmountTransferRequest hot;
+
+    private AmountTransferRequest[] others;
+
+    @Setup(Level.Trial)
+    public void setUp(HotAccountStripingBenchmark benchmark) {
+      int threadId = benchmark.threadIds.incrementAndGet();
+      String accountFromId = String.valueOf(threadId);
+      hot = new AmountTransferRequest(accountFromId, HOT_ACCOUNT, AMOUNT);
+      others = new AmountTransferRequest[16];
+      for (int i = 0; i < others.length; i++) {
+        // The 16 accounts following the own one
+        String accountToId = String.valueOf((threadId + i) % MAX_THREADS + 1);
+        others[i] = new AmountTransferRequest(accountFromId, accountToId, AMOUNT);
+      }
+    }
+
+    private AmountTransferRequest next() {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      return random.nextInt(100) < HOT_PERCENT ? hot : others[random.nextInt(others.length)];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public JSONObject hotAccount80_1thread(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public JSONObject hotAccount80_4threads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public JSONObject hotAccount80_maxThreads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+}
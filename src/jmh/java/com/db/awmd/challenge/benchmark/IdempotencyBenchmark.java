@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.util.ExpiringCache;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the idempotency key lookup done for every transfer carrying a key: a hit (retried
+ * request) and a miss (new request, which also inserts the key and may evict one).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdempotencyBenchmark {
+
+  private static final int KEYS = 1 << 16;
+
+  private static final int KEYS_PER_THREAD = 1 << 16;
+
+  @Param({"1", "64"})
+  private int stripes;
+
+  private final AtomicInteger threadIds = new AtomicInteger();
+
+  private ExpiringCache<String, Object> cache;
+
+  private String[] existingKeys;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cache = new ExpiringCache<>(stripes, KEYS * 4, 1, TimeUnit.HOURS);
+    existingKeys = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      existingKeys[i] = "existing-" + i;
+      cache.putIfAbsent(existingKeys[i], existingKeys[i]);
+    }
+  }
+
+  /**
+   * Keys of one benchmark thread, new keys are unique to the thread.
+   */
+  @State(Scope.Thread)
+  public static class Keys {
+
+    private String[] newKeys;
+
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp(IdempotencyBenchmark benchmark) {
+      int thread = benchmark.threadIds.incrementAndGet();
+      newKeys = new String[KEYS_PER_THREAD];
+      for (int i = 0; i < KEYS_PER_THREAD; i++) {
+        newKeys[i] = "new-" + thread + "-" + i;
+      }
+    }
+
+    private int next() {
+      int index = next;
+      next = (next + 1) & (KEYS_PER_THREAD - 1);
+      return index;
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object hit_1thread(Keys keys) {
+    String key = existingKeys[keys.next() & (KEYS - 1)];
+    return cache.putIfAbsent(key, key);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object hit_maxThreads(Keys keys) {
+    String key = existingKeys[keys.next() & (KEYS - 1)];
+    return cache.putIfAbsent(key, key);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object miss_1thread(Keys keys) {
+    String key = keys.newKeys[keys.next()];
+    return cache.putIfAbsent(key, key);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object miss_maxThreads(Keys keys) {
+    String key = keys.newKeys[keys.next()];
+    return cache.putIfAbsent(key, key);
+  }
+}
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.ImportProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportFormat;
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.db.awmd.challenge.service.AccountImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk import of CSV accounts into an empty repository: the streaming importer, which parses in
+ * parallel and inserts chunks in one batch, compared to validating and creating the accounts one
+ * by one as POST /v1/accounts does. Time is reported per account.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+  private static final int ACCOUNTS = 200_000;
+
+  @Param({"inMemory", "compact"})
+  private String repository;
+
+  private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+  private String csv;
+
+  private ServiceFixture fixture;
+
+  private AccountImporter importer;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    StringBuilder rows = new StringBuilder("accountId,balance\n");
+    for (int i = 0; i < ACCOUNTS; i++) {
+      rows.append(i).append(',').append(i % 100_000).append(".25\n");
+    }
+    csv = rows.toString();
+  }
+
+  @Setup(Level.Invocation)
+  public void setUp() {
+    fixture = new ServiceFixture(repository, "locking");
+    importer = new AccountImporter(fixture.getService(), new ObjectMapper(), validator, new ImportProperties());
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDown() throws InterruptedException {
+    importer.stop();
+    fixture.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCOUNTS)
+  public ImportSummary importer() throws IOException {
+    return importer.importAccounts(new BufferedReader(new StringReader(csv)), ImportFormat.CSV, row -> { });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCOUNTS)
+  public int oneByOne() throws IOException {
+    BufferedReader reader = new BufferedReader(new StringReader(csv));
+    reader.readLine();
+    int created = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int comma = line.indexOf(',');
+      Account account = new Account(line.substring(0, comma), new BigDecimal(line.substring(comma + 1)));
+      if (validator.validate(account).isEmpty()) {
+        fixture.getService().createAccount(account);
+        created++;
+      }
+    }
+    return created;
+  }
+}
@@ -0,0 +1,84 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.repository.AccountsJournal;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Durable transfer records per second and time to durability of the journal, for different group
+ * commit delays. Writes to a temporary directory, which should be on the disk under test.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+  private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+  @Param({"0", "200", "1000"})
+  private long maxDelayMicros;
+
+  private Path directory;
+
+  private AccountsJournal journal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal-benchmark");
+    JournalProperties properties = new JournalProperties();
+    properties.setEnabled(true);
+    properties.setDirectory(directory.toString());
+    properties.setMaxDelayMicros(maxDelayMicros);
+    journal = new AccountsJournal(properties);
+    journal.open(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, InterruptedException {
+    journal.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void appendTransfer_1thread() {
+    journal.appendTransfer("1", "2", AMOUNT).join();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void appendTransfer_16threads() {
+    journal.appendTransfer("1", "2", AMOUNT).join();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void appendTransfer_64threads() {
+    journal.appendTransfer("1", "2", AMOUNT).join();
+  }
+}
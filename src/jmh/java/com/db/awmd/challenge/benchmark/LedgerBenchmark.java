@@ -0,0 +1,107 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.LedgerProperties;
+import com.db.awmd.challenge.repository.TransferLedger;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Appends to the transfer ledger and statement pages of an account with millions of transfers,
+ * most of them in sealed (compressed) segments.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+
+  private static final int HOT_ACCOUNT_TRANSFERS = 2_000_000;
+
+  private static final int ACCOUNTS = 10_000;
+
+  private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000000.00");
+
+  private TransferLedger ledger;
+
+  private long transfers;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ledger = new TransferLedger(new LedgerProperties());
+    // Every second transfer involves the hot account "0"
+    for (int i = 0; i < HOT_ACCOUNT_TRANSFERS; i++) {
+      ledger.record("0", String.valueOf(1 + i % (ACCOUNTS - 1)), AMOUNT, BALANCE, BALANCE);
+      ledger.record(String.valueOf(1 + i % (ACCOUNTS - 1)), String.valueOf(1 + (i + 1) % (ACCOUNTS - 1)),
+        AMOUNT, BALANCE, BALANCE);
+    }
+    transfers = ledger.getSize();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    System.out.printf("%n%d transfers, %d sealed segments, %d bytes per sealed transfer%n", ledger.getSize(),
+      ledger.getSealedSegmentCount(), ledger.getSealedBytes() / Math.max(1, ledger.getSealedSegmentCount() * 65536));
+    ledger.stop();
+  }
+
+  /**
+   * Random generator of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Cursors {
+
+    private final SplittableRandom random = new SplittableRandom();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void record(Cursors cursors) {
+    int account = cursors.random.nextInt(ACCOUNTS);
+    ledger.record(String.valueOf(account), String.valueOf((account + 1) % ACCOUNTS), AMOUNT, BALANCE, BALANCE);
+  }
+
+  /**
+   * Page of 100 transfers of the hot account starting at a random position of its history.
+   */
+  @Benchmark
+  @Threads(1)
+  public void hotAccountPage(Cursors cursors, Blackhole blackhole) {
+    TransferLedger.Statement statement = ledger.statement("0", 0, Long.MAX_VALUE,
+      cursors.random.nextLong(transfers));
+    for (int i = 0; i < 100 && statement.next(); i++) {
+      blackhole.consume(statement.getBalance());
+    }
+  }
+
+  /**
+   * Page of 100 transfers of an account with a few hundred transfers.
+   */
+  @Benchmark
+  @Threads(1)
+  public void coldAccountPage(Cursors cursors, Blackhole blackhole) {
+    TransferLedger.Statement statement = ledger.statement(String.valueOf(1 + cursors.random.nextInt(ACCOUNTS - 1)),
+      0, Long.MAX_VALUE, -1);
+    for (int i = 0; i < 100 && statement.next(); i++) {
+      blackhole.consume(statement.getBalance());
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Money;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Balance arithmetic of one transfer, validating the source balance, debiting and crediting, with
+ * BigDecimal balances and with {@link Money} minor units. Run with the gc profiler and compare
+ * gc.alloc.rate.norm, the bytes allocated per transfer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+  private BigDecimal amount = new BigDecimal("0.01");
+
+  private BigDecimal fromBalance = new BigDecimal("1000000000");
+
+  private BigDecimal toBalance = new BigDecimal("1000000000");
+
+  private long amountUnits = 1;
+
+  private long fromUnits = 100000000000L;
+
+  private long toUnits = 100000000000L;
+
+  /**
+   * Balances moving back and forth, so that they never run dry.
+   */
+  @Benchmark
+  public BigDecimal bigDecimal() {
+    if (fromBalance.compareTo(amount) < 0) {
+      throw new IllegalStateException();
+    }
+    BigDecimal from = fromBalance.subtract(amount);
+    BigDecimal to = toBalance.add(amount);
+    fromBalance = to;
+    toBalance = from;
+    return from;
+  }
+
+  /**
+   * Amount converted from the BigDecimal of a JSON request, balances in minor units.
+   */
+  @Benchmark
+  public long minorUnits() {
+    long units = Money.toMinorUnits(amount);
+    if (fromUnits < units) {
+      throw new IllegalStateException();
+    }
+    long from = Money.subtract(fromUnits, units);
+    long to = Money.add(toUnits, units);
+    fromUnits = to;
+    toUnits = from;
+    return from;
+  }
+
+  /**
+   * Amount already in minor units, as sent in binary transfer frames.
+   */
+  @Benchmark
+  public long minorUnitsOnly() {
+    if (fromUnits < amountUnits) {
+      throw new IllegalStateException();
+    }
+    long from = Money.subtract(fromUnits, amountUnits);
+    long to = Money.add(toUnits, amountUnits);
+    fromUnits = to;
+    toUnits = from;
+    return from;
+  }
+}
@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceEngine;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payroll from one source account to many target accounts: one transfer per target compared to one
+ * multi-leg transfer, through the balance engine alone and through the service. All benchmark
+ * threads pay from the same source account into randomly chosen targets. Scores are per payroll.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MultiLegTransferBenchmark {
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000000000.00");
+
+  private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+  private static final int TARGETS = 10_000;
+
+  @Param({"inMemory", "compact"})
+  private String repository;
+
+  @Param({"10", "100"})
+  private int legs;
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture(repository, "locking");
+    // Source is the account after the targets
+    fixture.createAccounts(TARGETS + 1, BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Random targets of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Payroll {
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private final String source = String.valueOf(TARGETS);
+
+    private List<TransferLeg> next(int legs) {
+      List<TransferLeg> payroll = new ArrayList<>(legs);
+      for (int i = 0; i < legs; i++) {
+        payroll.add(new TransferLeg(String.valueOf(random.nextInt(TARGETS)), AMOUNT));
+      }
+      return payroll;
+    }
+  }
+
+  @Benchmark
+  public int sequentialTransfers(Payroll payroll) {
+    int transferred = 0;
+    for (TransferLeg leg : payroll.next(legs)) {
+      fixture.getService().transferFunds(
+        new AmountTransferRequest(payroll.source, leg.getAccountToId(), leg.getAmountToTransfer()));
+      transferred++;
+    }
+    return transferred;
+  }
+
+  @Benchmark
+  public int sequentialEngineTransfers(Payroll payroll) {
+    AccountsRepository accountsRepository = fixture.getRepository();
+    BalanceEngine engine = fixture.getService().getBalanceEngine();
+    Account accFrom = accountsRepository.getAccount(payroll.source);
+    int transferred = 0;
+    for (TransferLeg leg : payroll.next(legs)) {
+      engine.transfer(accFrom, accountsRepository.getAccount(leg.getAccountToId()), leg.getAmountToTransfer());
+      transferred++;
+    }
+    return transferred;
+  }
+
+  @Benchmark
+  public List<BatchItem> multiLegEngineTransfer(Payroll payroll) {
+    AccountsRepository accountsRepository = fixture.getRepository();
+    Account accFrom = accountsRepository.getAccount(payroll.source);
+    List<BatchItem> items = new ArrayList<>(legs);
+    for (TransferLeg leg : payroll.next(legs)) {
+      BatchItem item = new BatchItem(items.size(),
+        new AmountTransferRequest(payroll.source, leg.getAccountToId(), leg.getAmountToTransfer()));
+      item.setAccFrom(accFrom);
+      item.setAccTo(accountsRepository.getAccount(leg.getAccountToId()));
+      items.add(item);
+    }
+    fixture.getService().getBalanceEngine().transferMultiLeg(items);
+    return items;
+  }
+
+  @Benchmark
+  public Object multiLegTransfer(Payroll payroll) {
+    return fixture.getService().transferFundsMultiLeg(new MultiLegTransferRequest(payroll.source, payroll.next(legs)));
+  }
+}
@@ -0,0 +1,110 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.HotAccountProperties;
+import com.db.awmd.challenge.config.NettingProperties;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency of transfers moving money back and forth between a few account pairs,
+ * without netting ('off') and with netting windows of different lengths in microseconds.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NettingBenchmark {
+
+  private static final int PAIRS = 4;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  @Param({"off", "0", "50", "200", "1000"})
+  private String windowMicros;
+
+  private final AtomicInteger threadIds = new AtomicInteger();
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    NettingProperties netting = new NettingProperties();
+    if (!"off".equals(windowMicros)) {
+      netting.setEnabled(true);
+      netting.setWindowMicros(Long.parseLong(windowMicros));
+    }
+    fixture = new ServiceFixture("inMemory", "locking", new HotAccountProperties(), netting);
+    fixture.createAccounts(PAIRS * 2, INITIAL_BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Transfers of one benchmark thread, alternating between both directions of its account pair.
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private AmountTransferRequest forward;
+
+    private AmountTransferRequest back;
+
+    private boolean backNext;
+
+    @Setup(Level.Trial)
+    public void setUp(NettingBenchmark benchmark) {
+      int pair = benchmark.threadIds.getAndIncrement() % PAIRS;
+      String first = String.valueOf(pair * 2);
+      String second = String.valueOf(pair * 2 + 1);
+      forward = new AmountTransferRequest(first, second, AMOUNT);
+      back = new AmountTransferRequest(second, first, AMOUNT);
+    }
+
+    private AmountTransferRequest next() {
+      backNext = !backNext;
+      return backNext ? back : forward;
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public JSONObject backAndForth_1thread(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(16)
+  public JSONObject backAndForth_16threads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(64)
+  public JSONObject backAndForth_64threads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+}
@@ -0,0 +1,220 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.PartitionRouter;
+import com.db.awmd.challenge.service.PartitionedTransfers;
+import com.db.awmd.challenge.util.LatencyHistogram;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test of transfers with accounts partitioned across several nodes. For every number of nodes
+ * it starts that many embedded nodes on one machine, spreads the accounts over them and drives the
+ * transfer endpoint of random nodes with random pairs of accounts, so that most transfers are
+ * forwarded or cross partitions as they would in a real deployment. After every run the total of
+ * all balances is checked against the total created.
+ * <p>
+ * All nodes share the cores of this machine, so the numbers show the cost of forwarding and of the
+ * two-phase protocol rather than the capacity of separate machines. Run with 'gradle
+ * partitionLoadTest', options can be given with -PloadTestArgs='clients seconds nodes', e.g.
+ * -PloadTestArgs='64 10 1,2,4'.
+ */
+public class PartitionScalingLoadTest {
+
+  private static final int ACCOUNTS = 1000;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000");
+
+  private static final String TRANSFER = "/v1/accounts/transfer";
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    String[] nodeCounts = (args.length > 2 ? args[2] : "1,2,4").split(",");
+
+    System.out.printf("%d clients, %d accounts, %d processors%n", clients, ACCOUNTS,
+      Runtime.getRuntime().availableProcessors());
+    System.out.printf("%-6s %10s %10s %10s %10s %8s %10s%n", "nodes", "req/s", "p50 us", "p99 us", "max us",
+      "errors", "cross %");
+    for (String nodeCount : nodeCounts) {
+      run(Integer.parseInt(nodeCount.trim()), clients, seconds);
+    }
+  }
+
+  private static void run(int nodeCount, int clients, int seconds) throws Exception {
+    List<ConfigurableApplicationContext> nodes = start(nodeCount);
+    try {
+      List<String> urls = new ArrayList<>();
+      for (ConfigurableApplicationContext node : nodes) {
+        urls.add("http://localhost:" + node.getEnvironment().getProperty("local.server.port"));
+      }
+      String[] owners = new String[ACCOUNTS];
+      for (int i = 0; i < ACCOUNTS; i++) {
+        for (ConfigurableApplicationContext node : nodes) {
+          PartitionRouter router = node.getBean(PartitionRouter.class);
+          if (router.isLocal(String.valueOf(i))) {
+            node.getBean(AccountsService.class).createAccount(new Account(String.valueOf(i), INITIAL_BALANCE));
+            owners[i] = router.ownerOf(String.valueOf(i));
+            break;
+          }
+        }
+      }
+
+      // Warm up before measuring
+      load(urls, owners, clients, 2);
+      Result result = load(urls, owners, clients, seconds);
+      result.print(nodeCount);
+
+      // Wait for transfers in doubt, then no money may have been created or lost
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (inDoubt(nodes) > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(100);
+      }
+      BigDecimal total = BigDecimal.ZERO;
+      for (ConfigurableApplicationContext node : nodes) {
+        AccountsService accountsService = node.getBean(AccountsService.class);
+        for (int i = 0; i < ACCOUNTS; i++) {
+          Account account = accountsService.getAccount(String.valueOf(i));
+          if (account != null) {
+            total = total.add(account.getBalance());
+          }
+        }
+      }
+      BigDecimal expected = INITIAL_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS));
+      if (total.compareTo(expected) != 0) {
+        System.out.printf("Total balance is %s, expected %s%n", total, expected);
+      }
+    } finally {
+      for (ConfigurableApplicationContext node : nodes) {
+        node.close();
+      }
+    }
+  }
+
+  private static List<ConfigurableApplicationContext> start(int nodeCount) throws IOException {
+    List<String> urls = new ArrayList<>();
+    int[] ports = new int[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      try (ServerSocket socket = new ServerSocket(0)) {
+        ports[i] = socket.getLocalPort();
+      }
+      urls.add("http://localhost:" + ports[i]);
+    }
+    List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    for (int i = 0; i < nodeCount; i++) {
+      nodes.add(new SpringApplicationBuilder(DevChallengeApplication.class)
+        .run("--server.port=" + ports[i],
+          "--partition.enabled=true",
+          "--partition.nodes=" + String.join(",", urls),
+          "--partition.self=" + urls.get(i),
+          "--partition.secret=load-test",
+          "--spring.jmx.enabled=false",
+          "--logging.level.root=WARN"));
+    }
+    return nodes;
+  }
+
+  private static int inDoubt(List<ConfigurableApplicationContext> nodes) {
+    int inDoubt = 0;
+    for (ConfigurableApplicationContext node : nodes) {
+      inDoubt += node.getBean(PartitionedTransfers.class).getInDoubtCount();
+    }
+    return inDoubt;
+  }
+
+  private static Result load(List<String> urls, String[] owners, int clients, int seconds)
+    throws InterruptedException {
+    Result result = new Result(seconds);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    Thread[] threads = new Thread[clients];
+    for (int i = 0; i < clients; i++) {
+      threads[i] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+          int from = random.nextInt(ACCOUNTS);
+          int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+          if (!owners[from].equals(owners[to])) {
+            result.crossPartition.increment();
+          }
+          long start = System.nanoTime();
+          boolean success = transfer(urls.get(random.nextInt(urls.size())), from, to);
+          result.latencies.recordNanos(System.nanoTime() - start);
+          if (!success) {
+            result.errors.increment();
+          }
+        }
+      }, "load-client-" + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return result;
+  }
+
+  private static boolean transfer(String baseUrl, int from, int to) {
+    byte[] body = ("{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to
+      + "\",\"amountToTransfer\":1}").getBytes(StandardCharsets.UTF_8);
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + TRANSFER).openConnection();
+      connection.setRequestMethod("PUT");
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      // Read the body fully so that the keep-alive connection is reused.
+      try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        if (in != null) {
+          while (in.read() >= 0) {
+            // discard
+          }
+        }
+      }
+      return status == 200;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private static final class Result {
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder crossPartition = new LongAdder();
+
+    private final int seconds;
+
+    private Result(int seconds) {
+      this.seconds = seconds;
+    }
+
+    private void print(int nodes) {
+      long count = latencies.getCount();
+      System.out.printf("%-6d %10d %10d %10d %10d %8d %10d%n", nodes, count / seconds,
+        TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(50)),
+        TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(99)),
+        TimeUnit.NANOSECONDS.toMicros(latencies.getMaxNanos()), errors.sum(),
+        count == 0 ? 0 : crossPartition.sum() * 100 / count);
+    }
+  }
+}
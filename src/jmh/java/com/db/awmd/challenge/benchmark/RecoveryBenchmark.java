@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.SnapshotProperties;
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsSnapshotter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of the journaled in-memory store: load of the latest snapshot followed by replay of the
+ * journal written after it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+  private static final BigDecimal BALANCE = new BigDecimal("100.00");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  @Param({"1000000", "10000000"})
+  private int accounts;
+
+  @Param({"100000"})
+  private int journaledTransfers;
+
+  private Path directory;
+
+  private AccountsJournal journal;
+
+  private AccountsSnapshotter snapshotter;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InterruptedException {
+    directory = Files.createTempDirectory("recovery-benchmark");
+    AccountsJournal writer = newJournal();
+    AccountsSnapshotter writerSnapshotter = newSnapshotter(writer);
+    writer.open(0);
+    CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+    for (int i = 0; i < accounts; i++) {
+      last = writer.appendCreate(String.valueOf(i), BALANCE);
+    }
+    last.join();
+    writerSnapshotter.snapshot();
+    for (int i = 0; i < journaledTransfers; i++) {
+      last = writer.appendTransfer(String.valueOf(i % accounts), String.valueOf((i + 1) % accounts), AMOUNT);
+    }
+    last.join();
+    writer.close();
+  }
+
+  @Setup(Level.Invocation)
+  public void newStore() {
+    journal = newJournal();
+    snapshotter = newSnapshotter(journal);
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeStore() throws InterruptedException {
+    journal.close();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public AccountsRepositoryInMemory recover() {
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory(journal, snapshotter);
+    repository.recover();
+    return repository;
+  }
+
+  private AccountsJournal newJournal() {
+    JournalProperties properties = new JournalProperties();
+    properties.setEnabled(true);
+    properties.setDirectory(directory.toString());
+    return new AccountsJournal(properties);
+  }
+
+  private static AccountsSnapshotter newSnapshotter(AccountsJournal journal) {
+    SnapshotProperties properties = new SnapshotProperties();
+    properties.setEnabled(true);
+    return new AccountsSnapshotter(properties, journal);
+  }
+}
@@ -0,0 +1,171 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.FxProperties;
+import com.db.awmd.challenge.config.HotAccountProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.config.LedgerProperties;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.config.NettingProperties;
+import com.db.awmd.challenge.config.NotificationDispatcherProperties;
+import com.db.awmd.challenge.config.ReadCacheProperties;
+import com.db.awmd.challenge.config.ShardedEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryCompact;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.service.AccountReadCache;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AtomicBalanceEngine;
+import com.db.awmd.challenge.service.BalanceEngine;
+import com.db.awmd.challenge.service.FxRateCache;
+import com.db.awmd.challenge.service.HotAccountStriping;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.ShardedBalanceEngine;
+import com.db.awmd.challenge.service.TransferAuditLog;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.service.TransferNetting;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+
+/**
+ * Wires an {@link AccountsService} by hand the way the Spring context would, without starting the
+ * context. Notifications are dispatched asynchronously to a service which discards them and
+ * transfers are audited into the temporary directory.
+ */
+public class ServiceFixture implements AutoCloseable {
+
+  private final AccountsRepository repository;
+
+  private final BalanceEngine engine;
+
+  private final NotificationDispatcher dispatcher;
+
+  private final TransferMetrics metrics;
+
+  private final TransferAuditLog auditLog;
+
+  private final TransferLedger ledger;
+
+  private final HotAccountStriping hotAccountStriping;
+
+  private final TransferNetting transferNetting;
+
+  private final AccountsService service;
+
+  /**
+   * @param repository - 'inMemory' or 'compact'
+   * @param engine - 'locking', 'atomic' or 'sharded', as the 'transfer.engine' property
+   */
+  public ServiceFixture(String repository, String engine) {
+    this(repository, engine, new HotAccountProperties());
+  }
+
+  /**
+   * @param repository - 'inMemory' or 'compact'
+   * @param engine - 'locking', 'atomic' or 'sharded', as the 'transfer.engine' property
+   * @param hotAccounts - accounts whose balance is striped, as the 'transfer.hot-accounts' properties
+   */
+  public ServiceFixture(String repository, String engine, HotAccountProperties hotAccounts) {
+    this(repository, engine, hotAccounts, new NettingProperties());
+  }
+
+  /**
+   * @param repository - 'inMemory' or 'compact'
+   * @param engine - 'locking', 'atomic' or 'sharded', as the 'transfer.engine' property
+   * @param hotAccounts - accounts whose balance is striped, as the 'transfer.hot-accounts' properties
+   * @param netting - netting of single transfers, as the 'transfer.netting' properties
+   */
+  public ServiceFixture(String repository, String engine, HotAccountProperties hotAccounts,
+      NettingProperties netting) {
+    this.repository = newRepository(repository);
+    this.metrics = new TransferMetrics(new MetricsProperties());
+    this.ledger = new TransferLedger(new LedgerProperties());
+    this.engine = newEngine(engine, metrics, ledger);
+    this.dispatcher = new NotificationDispatcher((account, description) -> { },
+      this.repository, new NotificationDispatcherProperties());
+    this.dispatcher.start();
+    AuditProperties auditProperties = new AuditProperties();
+    auditProperties.setDirectory(System.getProperty("java.io.tmpdir"));
+    this.auditLog = new TransferAuditLog(auditProperties);
+    try {
+      auditLog.start();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    this.hotAccountStriping = new HotAccountStriping(hotAccounts, this.repository);
+    this.hotAccountStriping.start();
+    this.transferNetting = new TransferNetting(netting, this.engine);
+    this.transferNetting.start();
+    this.service = new AccountsService(this.repository, dispatcher, this.engine, metrics, auditLog,
+      new IdempotencyProperties(), new AccountReadCache(new ReadCacheProperties(), new ObjectMapper()),
+      ledger, hotAccountStriping, transferNetting,
+      new FxRateCache(new FxProperties()));
+  }
+
+  public AccountsService getService() {
+    return service;
+  }
+
+  public AccountsRepository getRepository() {
+    return repository;
+  }
+
+  /**
+   * Creates accounts with ids 0 to count - 1.
+   * @param count - number of accounts
+   * @param balance - initial balance of every account
+   */
+  public void createAccounts(int count, BigDecimal balance) {
+    for (int i = 0; i < count; i++) {
+      Account account = new Account(String.valueOf(i), balance);
+      hotAccountStriping.prepare(account);
+      repository.createAccount(account);
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    transferNetting.stop();
+    hotAccountStriping.stop();
+    dispatcher.stop();
+    auditLog.stop();
+    auditLog.getFile().delete();
+    ledger.stop();
+    if (engine instanceof ShardedBalanceEngine) {
+      ((ShardedBalanceEngine) engine).stop();
+    }
+  }
+
+  static AccountsRepository newRepository(String repository) {
+    switch (repository) {
+      case "inMemory":
+        return new AccountsRepositoryInMemory();
+      case "compact":
+        return new AccountsRepositoryCompact();
+      default:
+        throw new IllegalArgumentException("Unknown repository " + repository);
+    }
+  }
+
+  private static BalanceEngine newEngine(String engine, TransferMetrics metrics, TransferLedger ledger) {
+    switch (engine) {
+      case "locking":
+        return new LockingBalanceEngine(new LockManager(metrics, new LockProperties()), ledger);
+      case "atomic":
+        return new AtomicBalanceEngine(ledger);
+      case "sharded":
+        ShardedBalanceEngine sharded = new ShardedBalanceEngine(new ShardedEngineProperties(), ledger);
+        sharded.start();
+        return sharded;
+      default:
+        throw new IllegalArgumentException("Unknown engine " + engine);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cost of one transfer on the caller thread with application logging at the production level
+ * (INFO) and with application logging off. Log output is fully formatted and then discarded, so
+ * the benchmark shows what logging costs on the transfer path without measuring the console.
+ * Run with the gc profiler ('gradle jmh' adds it) and compare gc.alloc.rate.norm, the bytes
+ * allocated per transfer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransferAllocationBenchmark {
+
+  private static final String APPLICATION_LOGGER = "com.db.awmd.challenge";
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  @Param({"INFO", "OFF"})
+  private String logLevel;
+
+  @Param({"locking", "atomic"})
+  private String engine;
+
+  private ServiceFixture fixture;
+
+  private AmountTransferRequest request;
+
+  private OutputStreamAppender<ILoggingEvent> appender;
+
+  @Setup
+  public void setUp() {
+    LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+    encoder.setContext(context);
+    encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5level --- [%15.15thread] %-40.40logger{39} : %msg%n");
+    encoder.start();
+    appender = new OutputStreamAppender<>();
+    appender.setContext(context);
+    appender.setEncoder(encoder);
+    appender.setOutputStream(new OutputStream() {
+
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    });
+    appender.start();
+    Logger logger = context.getLogger(APPLICATION_LOGGER);
+    logger.setLevel(Level.toLevel(logLevel));
+    logger.setAdditive(false);
+    logger.addAppender(appender);
+
+    fixture = new ServiceFixture("inMemory", engine);
+    fixture.createAccounts(2, INITIAL_BALANCE);
+    request = new AmountTransferRequest("0", "1", new BigDecimal("1.25"));
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+    Logger logger = ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger(APPLICATION_LOGGER);
+    logger.detachAppender(appender);
+    appender.stop();
+  }
+
+  @Benchmark
+  public JSONObject transfer() {
+    return fixture.getService().transferFunds(request);
+  }
+}
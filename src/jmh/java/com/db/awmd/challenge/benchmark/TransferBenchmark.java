@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link com.db.awmd.challenge.service.AccountsService#transferFunds} end to end, including request
+ * validation, the balance engine and notification dispatch.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+
+  private static final int REQUESTS_PER_THREAD = 1 << 16;
+
+  // Large enough that no account runs dry during a run.
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+  @Param({"locking", "atomic", "sharded"})
+  private String engine;
+
+  @Param({"UNIFORM", "ZIPFIAN", "SELF"})
+  private Workload workload;
+
+  private final AtomicLong seeds = new AtomicLong();
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture("inMemory", engine);
+    fixture.createAccounts(ACCOUNTS, INITIAL_BALANCE);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Pre-generated requests of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Requests {
+
+    private AmountTransferRequest[] requests;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(TransferBenchmark benchmark) {
+      requests = benchmark.workload.requests(ACCOUNTS, REQUESTS_PER_THREAD, AMOUNT,
+        benchmark.seeds.incrementAndGet());
+    }
+
+    private AmountTransferRequest next() {
+      AmountTransferRequest request = requests[next];
+      next = (next + 1) & (REQUESTS_PER_THREAD - 1);
+      return request;
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public JSONObject transfer_1thread(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public JSONObject transfer_4threads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public JSONObject transfer_maxThreads(Requests requests) {
+    return fixture.getService().transferFunds(requests.next());
+  }
+}
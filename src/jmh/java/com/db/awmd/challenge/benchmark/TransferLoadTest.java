@@ -0,0 +1,155 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.RequestExecutor;
+import com.db.awmd.challenge.util.LatencyHistogram;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test of the blocking and the asynchronous transfer endpoints. Starts the application on a
+ * random port with a small servlet thread pool and the durable journal enabled, so that requests
+ * spend most of their time waiting for the group commit, and drives both endpoints with the same
+ * number of concurrent clients.
+ * <p>
+ * Run with 'gradle loadTest', options can be given with -PloadTestArgs='clients seconds
+ * servletThreads virtualThreads', e.g. -PloadTestArgs='512 20 16 true'.
+ */
+public class TransferLoadTest {
+
+  private static final int ACCOUNTS = 1000;
+
+  private static final String BLOCKING = "/v1/accounts/transfer";
+
+  private static final String ASYNC = "/v1/async/accounts/transfer";
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int servletThreads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+    boolean virtualThreads = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+    File directory = Files.createTempDirectory("transfer-load-test").toFile();
+    ConfigurableApplicationContext context = new SpringApplicationBuilder(DevChallengeApplication.class)
+      .properties("server.port=0",
+        "server.tomcat.max-threads=" + servletThreads,
+        "journal.enabled=true",
+        "journal.directory=" + new File(directory, "journal"),
+        "journal.max-delay-micros=2000",
+        "audit.directory=" + new File(directory, "audit"),
+        "async.virtual-threads=" + virtualThreads,
+        "logging.level.root=WARN")
+      .run();
+    try {
+      AccountsService accountsService = context.getBean(AccountsService.class);
+      for (int i = 0; i < ACCOUNTS; i++) {
+        accountsService.createAccount(new Account(String.valueOf(i), new BigDecimal("1000000000")));
+      }
+      String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+      RequestExecutor requestExecutor = context.getBean(RequestExecutor.class);
+
+      System.out.printf("%d clients, %d servlet threads, async executor on %s%n", clients, servletThreads,
+        requestExecutor.isVirtualThreads() ? "virtual threads" : "platform threads");
+      System.out.printf("%-9s %10s %10s %10s %10s %8s %12s%n", "endpoint", "req/s", "p50 us", "p99 us",
+        "max us", "errors", "max in-flight");
+
+      // Warm up both endpoints before measuring.
+      run(baseUrl + BLOCKING, clients, 2);
+      run(baseUrl + ASYNC, clients, 2);
+
+      Result blocking = run(baseUrl + BLOCKING, clients, seconds);
+      blocking.print("blocking", String.valueOf(servletThreads));
+      Result async = run(baseUrl + ASYNC, clients, seconds);
+      async.print("async", String.valueOf(requestExecutor.getMaxInFlight()));
+    } finally {
+      context.close();
+    }
+  }
+
+  private static Result run(String url, int clients, int seconds) throws InterruptedException {
+    Result result = new Result(seconds);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    Thread[] threads = new Thread[clients];
+    for (int i = 0; i < clients; i++) {
+      threads[i] = new Thread(() -> {
+        while (System.nanoTime() < deadline) {
+          long start = System.nanoTime();
+          boolean success = transfer(url);
+          result.latencies.recordNanos(System.nanoTime() - start);
+          if (!success) {
+            result.errors.increment();
+          }
+        }
+      }, "load-client-" + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return result;
+  }
+
+  private static boolean transfer(String url) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int from = random.nextInt(ACCOUNTS);
+    int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+    byte[] body = ("{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to
+      + "\",\"amountToTransfer\":1}").getBytes(StandardCharsets.UTF_8);
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod("PUT");
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      // Read the body fully so that the keep-alive connection is reused.
+      try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        if (in != null) {
+          while (in.read() >= 0) {
+            // discard
+          }
+        }
+      }
+      return status == 200;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private static final class Result {
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final int seconds;
+
+    private Result(int seconds) {
+      this.seconds = seconds;
+    }
+
+    private void print(String endpoint, String maxInFlight) {
+      System.out.printf("%-9s %10d %10d %10d %10d %8d %12s%n", endpoint, latencies.getCount() / seconds,
+        TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(50)),
+        TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(99)),
+        TimeUnit.NANOSECONDS.toMicros(latencies.getMaxNanos()), errors.sum(), maxInFlight);
+    }
+  }
+}
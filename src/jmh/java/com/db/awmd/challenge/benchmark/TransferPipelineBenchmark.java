@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceEngine;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validation and execution of a transfer on few contended accounts: the previous pipeline, which
+ * looked up both accounts for validation and again for execution, compared to resolving them once
+ * into a transfer context, and the whole service call for reference.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TransferPipelineBenchmark {
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000000000.00");
+
+  private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+  @Param({"inMemory", "compact"})
+  private String repository;
+
+  @Param({"16"})
+  private int accounts;
+
+  private ServiceFixture fixture;
+
+  private String[] ids;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fixture = new ServiceFixture(repository, "locking");
+    fixture.createAccounts(accounts, BALANCE);
+    ids = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      ids[i] = String.valueOf(i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  /**
+   * Random generator of one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Pairs {
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private AmountTransferRequest next(TransferPipelineBenchmark benchmark) {
+      int from = random.nextInt(benchmark.accounts);
+      int to = (from + 1 + random.nextInt(benchmark.accounts - 1)) % benchmark.accounts;
+      return new AmountTransferRequest(benchmark.ids[from], benchmark.ids[to], AMOUNT);
+    }
+  }
+
+  @Benchmark
+  public BalanceUpdate lookupTwice(Pairs pairs) {
+    AmountTransferRequest request = pairs.next(this);
+    AccountsRepository accountsRepository = fixture.getRepository();
+    // Validation
+    Account accFrom = accountsRepository.getAccount(request.getAccountFromId());
+    Account accTo = accountsRepository.getAccount(request.getAccountToId());
+    if (accFrom == null || accTo == null) {
+      throw new IllegalStateException();
+    }
+    if (accFrom.getBalance().compareTo(request.getAmountToTransfer()) < 0) {
+      throw new InsufficientBalanceException("You don't have sufficient balance.");
+    }
+    // Execution
+    accFrom = accountsRepository.getAccount(request.getAccountFromId());
+    accTo = accountsRepository.getAccount(request.getAccountToId());
+    return fixture.getService().getBalanceEngine().transfer(accFrom, accTo, request.getAmountToTransfer());
+  }
+
+  @Benchmark
+  public BalanceUpdate resolveOnce(Pairs pairs) {
+    AmountTransferRequest request = pairs.next(this);
+    AccountsRepository accountsRepository = fixture.getRepository();
+    if (request.getAccountFromId().equals(request.getAccountToId())) {
+      throw new IllegalStateException();
+    }
+    Account accFrom = accountsRepository.getAccount(request.getAccountFromId());
+    Account accTo = accountsRepository.getAccount(request.getAccountToId());
+    if (accFrom == null || accTo == null) {
+      throw new IllegalStateException();
+    }
+    // Balance is validated by the engine under the lock
+    BalanceEngine engine = fixture.getService().getBalanceEngine();
+    return engine.transfer(accFrom, accTo, request.getAmountToTransfer());
+  }
+
+  @Benchmark
+  public Object transferFunds(Pairs pairs) {
+    return fixture.getService().transferFunds(pairs.next(this));
+  }
+}
@@ -0,0 +1,129 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.TransferFrame;
+import com.db.awmd.challenge.util.Constants;
+import com.db.awmd.challenge.util.TransferFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding a transfer request and encoding its response as JSON, the way the JSON endpoint does
+ * with Jackson and a json-smart response, compared to the binary frames of
+ * {@link TransferFrameCodec}. Once for the codec alone and once including the transfer through the
+ * service. HTTP handling is the same for both and left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WireProtocolBenchmark {
+
+  private static final BigDecimal BALANCE = new BigDecimal("1000000000.00");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final TransferFrameCodec codec = new TransferFrameCodec();
+
+  private final TransferFrame frame = new TransferFrame();
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+  private ByteArrayInputStream jsonRequest;
+
+  private ByteArrayInputStream binaryRequest;
+
+  private ServiceFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    fixture = new ServiceFixture("inMemory", "locking");
+    fixture.createAccounts(2, BALANCE);
+
+    jsonRequest = new ByteArrayInputStream(
+      "{\"accountFromId\":\"0\",\"accountToId\":\"1\",\"amountToTransfer\":0.01}".getBytes(StandardCharsets.UTF_8));
+    TransferFrame request = new TransferFrame();
+    request.setRequestId(1);
+    request.setAccountFromId(0);
+    request.setAccountToId(1);
+    request.setAmount(1);
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    codec.writeRequest(frames, request);
+    binaryRequest = new ByteArrayInputStream(frames.toByteArray());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    fixture.close();
+  }
+
+  @Benchmark
+  public int jsonCodec() throws IOException {
+    AmountTransferRequest request = readJson();
+    JSONObject response = new JSONObject();
+    response.put(Constants.MESSAGE, "Funds has been transferred successfully");
+    return writeJson(response) + request.getAccountFromId().length();
+  }
+
+  @Benchmark
+  public int binaryCodec() throws IOException {
+    AmountTransferRequest request = readBinary();
+    return writeBinary(TransferFrameCodec.STATUS_OK) + request.getAccountFromId().length();
+  }
+
+  @Benchmark
+  public int jsonTransfer() throws IOException {
+    return writeJson(fixture.getService().transferFunds(readJson()));
+  }
+
+  @Benchmark
+  public int binaryTransfer() throws IOException {
+    JSONObject response = fixture.getService().transferFunds(readBinary());
+    return writeBinary(response != null ? TransferFrameCodec.STATUS_OK : TransferFrameCodec.STATUS_ERROR);
+  }
+
+  private AmountTransferRequest readJson() throws IOException {
+    jsonRequest.reset();
+    return objectMapper.readValue(jsonRequest, AmountTransferRequest.class);
+  }
+
+  private int writeJson(JSONObject response) throws IOException {
+    out.reset();
+    objectMapper.writeValue(out, response);
+    return out.size();
+  }
+
+  private AmountTransferRequest readBinary() throws IOException {
+    binaryRequest.reset();
+    codec.readRequest(binaryRequest, frame);
+    return new AmountTransferRequest(Long.toString(frame.getAccountFromId()), Long.toString(frame.getAccountToId()),
+      BalanceCell.toBigDecimal(frame.getAmount()));
+  }
+
+  private int writeBinary(byte status) throws IOException {
+    out.reset();
+    codec.writeResponse(out, frame.getRequestId(), status);
+    return out.size();
+  }
+}
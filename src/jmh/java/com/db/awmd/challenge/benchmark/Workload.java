@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Account selection patterns used by the transfer benchmarks.
+ */
+public enum Workload {
+
+  /** Source and target accounts picked uniformly. */
+  UNIFORM,
+
+  /** Source and target accounts picked with a Zipfian distribution, a few accounts are very hot. */
+  ZIPFIAN,
+
+  /** Every transfer goes from an account to itself. */
+  SELF;
+
+  private static final double ZIPF_EXPONENT = 0.99;
+
+  /**
+   * Pre-generates transfer requests, so that benchmarks do not measure random number generation.
+   * @param accounts - number of accounts, ids are 0 to accounts - 1
+   * @param count - number of requests to generate
+   * @param amount - amount of every transfer
+   * @param seed - random seed
+   * @return generated requests
+   */
+  public AmountTransferRequest[] requests(int accounts, int count, BigDecimal amount, long seed) {
+    Random random = new Random(seed);
+    double[] cumulative = this == ZIPFIAN ? zipfCumulative(accounts) : null;
+    AmountTransferRequest[] requests = new AmountTransferRequest[count];
+    for (int i = 0; i < count; i++) {
+      int from = pick(random, accounts, cumulative);
+      int to = this == SELF ? from : pick(random, accounts, cumulative);
+      if (this != SELF && to == from) {
+        to = (from + 1) % accounts;
+      }
+      requests[i] = new AmountTransferRequest(String.valueOf(from), String.valueOf(to), amount);
+    }
+    return requests;
+  }
+
+  private static int pick(Random random, int accounts, double[] cumulative) {
+    if (cumulative == null) {
+      return random.nextInt(accounts);
+    }
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(accounts - 1, index >= 0 ? index : -index - 1);
+  }
+
+  private static double[] zipfCumulative(int accounts) {
+    double[] cumulative = new double[accounts];
+    double sum = 0;
+    for (int i = 0; i < accounts; i++) {
+      sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < accounts; i++) {
+      cumulative[i] /= sum;
+    }
+    return cumulative;
+  }
+}
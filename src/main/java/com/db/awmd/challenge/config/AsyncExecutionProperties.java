@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the executor running requests of the asynchronous endpoints, bound from 'async.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "async")
+public class AsyncExecutionProperties {
+
+  /** Number of platform threads executing requests, ignored with virtual threads. */
+  private int threads = 64;
+
+  /** Number of requests waiting for a thread before new requests are rejected. */
+  private int queueCapacity = 10000;
+
+  /**
+   * Whether every request runs on its own virtual thread. Needs a Java runtime with virtual
+   * threads (21 or later), otherwise platform threads are used.
+   */
+  private boolean virtualThreads = false;
+}
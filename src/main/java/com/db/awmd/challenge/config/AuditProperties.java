@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the binary transfer audit log, bound from 'audit.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+  /** Whether every committed transfer is written to the binary audit log. */
+  private boolean enabled;
+
+  /**
+   * Directory of the audit files, one file per application start. A relative directory is
+   * resolved against the working directory.
+   */
+  private String directory = "audit";
+
+  /** Number of pre-allocated audit records between transfer threads and the writer thread. */
+  private int ringSize = 8192;
+
+  /** Share of transfers also logged human-readable at INFO by the writer thread, 0 to 1. */
+  private double logSampleRate = 0.01;
+}
@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the FX rates used for transfers between accounts in different currencies, bound from
+ * 'fx.*'. Rates are given as lines 'FROM,TO,RATE', one unit of FROM being worth RATE units of TO.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "fx")
+public class FxProperties {
+
+  /** Currency of accounts created without one. */
+  private String baseCurrency = "EUR";
+
+  /** Rates configured inline, none by default. */
+  private List<String> rates = new ArrayList<>();
+
+  /** File with one rate per line, read in addition to the inline rates, none by default. */
+  private String ratesFile = "";
+
+  /** Time between two reloads of the rates file, 0 to load it at startup only. */
+  private long refreshIntervalSeconds = 60;
+}
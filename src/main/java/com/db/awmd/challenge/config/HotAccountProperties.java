@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of hot accounts whose balance is striped, bound from 'transfer.hot-accounts.*'.
+ * Striping applies to accounts of the in-memory repository only.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.hot-accounts")
+public class HotAccountProperties {
+
+  /** Ids of the accounts whose balance is split into stripes, none by default. */
+  private List<String> ids = new ArrayList<>();
+
+  /** Number of stripes per hot account, rounded up to a power of two. */
+  private int stripes = 8;
+
+  /** Time between two rebalancings of the stripes of every hot account. */
+  private long rebalanceIntervalMillis = 100;
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the deduplication of transfers with an idempotency key, bound from 'idempotency.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+
+  /** Number of independently locked stripes of the deduplication cache. */
+  private int stripes = 64;
+
+  /** Maximum number of remembered idempotency keys, least recently used keys are evicted first. */
+  private int maxEntries = 100000;
+
+  /** How long the result of a transfer is returned for retries with the same key. */
+  private long ttlSeconds = 3600;
+}
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the bulk account import, bound from 'import.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "import")
+public class ImportProperties {
+
+  /** Number of rows parsed and validated together and then inserted as one batch. */
+  private int chunkSize = 10000;
+
+  /** Threads parsing and validating the rows of a chunk. */
+  private int threads = Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the write-ahead journal of the in-memory account store, bound from 'journal.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "journal")
+public class JournalProperties {
+
+  /** Whether account creations and transfers are journaled and replayed on startup. */
+  private boolean enabled = false;
+
+  /** Directory holding the journal segment files. */
+  private String directory = "journal";
+
+  /** Size of one memory-mapped segment file in bytes. */
+  private int segmentSize = 64 * 1024 * 1024;
+
+  /** Maximum number of records made durable with one fsync. */
+  private int maxBatchSize = 256;
+
+  /** Maximum time the first record of a batch waits for more records to share its fsync. */
+  private long maxDelayMicros = 200;
+}
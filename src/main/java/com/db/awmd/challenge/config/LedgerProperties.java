@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the in-memory transfer ledger behind account statements, bound from 'ledger.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ledger")
+public class LedgerProperties {
+
+  /** Whether executed transfers are kept in the ledger. */
+  private boolean enabled = true;
+
+  /** Number of transfers per segment, rounded up to a power of two. Full segments are compressed. */
+  private int segmentSize = 65536;
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tuning of account locking by the locking balance engine, bound from 'transfer.lock.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.lock")
+public class LockProperties {
+
+  /** How long one attempt waits for a contended lock before all locks taken so far are released. */
+  private long attemptTimeoutMillis = 10;
+
+  /** How long locks are retried in total before the transfer fails. */
+  private long maxWaitMillis = 5000;
+
+  /** Upper bound of the random pause between two attempts. */
+  private long maxBackoffMicros = 1000;
+}
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the transfer metrics, bound from 'metrics.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "metrics")
+public class MetricsProperties {
+
+  /** Whether latencies, outcomes and lock contention of transfers are recorded. */
+  private boolean enabled = true;
+
+  /** Number of most contended accounts tracked. */
+  private int hotAccounts = 32;
+}
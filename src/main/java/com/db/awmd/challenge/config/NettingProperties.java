@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the netting stage collecting single transfers into windows, bound from
+ * 'transfer.netting.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.netting")
+public class NettingProperties {
+
+  /** Whether single transfers are collected and applied per window. */
+  private boolean enabled = false;
+
+  /** Time a window stays open after its first transfer arrived, 0 to take only what is already waiting. */
+  private long windowMicros = 100;
+
+  /** Number of transfers closing a window before its time is up. */
+  private int maxTransfers = 256;
+}
@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.service.BackpressurePolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tuning of the asynchronous notification dispatcher, bound from 'notification.dispatcher.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "notification.dispatcher")
+public class NotificationDispatcherProperties {
+
+  /** Total number of notifications that can wait in memory across all workers. */
+  private int queueCapacity = 10000;
+
+  /** Number of worker threads. Each account is always handled by the same worker. */
+  private int workers = 2;
+
+  /** Maximum number of queued notifications a worker picks up in one go. */
+  private int batchSize = 64;
+
+  /** What to do with a new notification when the worker queue is full. */
+  private BackpressurePolicy backpressure = BackpressurePolicy.BLOCK;
+
+  /** Directory for spilled notifications, used with SPILL_TO_DISK. Defaults to java.io.tmpdir. */
+  private String spillDirectory = System.getProperty("java.io.tmpdir");
+
+  /** Size in bytes at which a spill segment is rolled over to a new one, used with SPILL_TO_DISK. */
+  private int spillSegmentSize = 4 * 1024 * 1024;
+}
@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the partitioned deployment, bound from 'partition.*'. Every node must be given the
+ * same list of nodes, accounts are assigned to them by consistent hashing of the account id.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "partition")
+public class PartitionProperties {
+
+  /** Whether accounts are partitioned across the nodes, a single node keeps all accounts otherwise. */
+  private boolean enabled = false;
+
+  /** Base URLs of all nodes, e.g. http://10.0.0.1:18080, in the same order on every node. */
+  private List<String> nodes = new ArrayList<>();
+
+  /** Base URL of this node, one of the nodes. */
+  private String self = "";
+
+  /** Secret shared by all nodes, a node accepts the phases of transfers only from callers sending it. */
+  private String secret = "";
+
+  /** Points of every node on the hash ring, more points spread the accounts more evenly. */
+  private int virtualNodes = 128;
+
+  /** Time to wait for another node to connect and answer. */
+  private int requestTimeoutMillis = 2000;
+
+  /** Time between two attempts to complete transfers whose outcome on another node is unknown. */
+  private long recoveryIntervalMillis = 1000;
+
+  /** Time a node remembers the outcome of a transfer from another node after its last change, to answer retries. */
+  private long decisionTtlSeconds = 3600;
+
+  /** Maximum number of remembered outcomes, further transfers from other nodes are refused until some expire. */
+  private int maxDecisions = 1_000_000;
+}
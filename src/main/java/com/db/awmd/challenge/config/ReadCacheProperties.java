@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the cache of serialized accounts returned by GET /v1/accounts/{id}, bound from
+ * 'read-cache.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "read-cache")
+public class ReadCacheProperties {
+
+  /** Whether serialized accounts are cached, otherwise every read is serialized. */
+  private boolean enabled = true;
+
+  /** Number of independently locked stripes of the cache. */
+  private int stripes = 64;
+
+  /** Maximum number of cached accounts, least recently read accounts are evicted first. */
+  private int maxEntries = 100000;
+
+  /** How long a serialized account is kept, even if it has not changed. */
+  private long ttlSeconds = 600;
+}
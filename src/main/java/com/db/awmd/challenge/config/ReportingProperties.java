@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the balance reports, bound from 'reporting.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "reporting")
+public class ReportingProperties {
+
+  /** Parallelism of the fork-join pool scanning the accounts. */
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /** Partitions of the accounts per thread, more partitions balance uneven partitions better. */
+  private int partitionsPerThread = 4;
+}
@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tuning of the sharded balance engine, bound from 'transfer.sharded.*'.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "transfer.sharded")
+public class ShardedEngineProperties {
+
+  /** Number of shards, each owned by one thread. */
+  private int shards = Runtime.getRuntime().availableProcessors();
+
+  /** Number of pre-allocated command slots per shard, rounded up to a power of two. */
+  private int ringSize = 1024;
+
+  /** How long a transfer may wait for its shard, it is withdrawn unchanged if not taken by then. */
+  private long timeoutMillis = 30000;
+}
@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of periodic snapshots of the journaled account store, bound from 'snapshot.*'.
+ * Snapshots are written next to the journal segments and require the journal to be enabled.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "snapshot")
+public class SnapshotProperties {
+
+  /** Whether snapshots are taken and used for recovery. */
+  private boolean enabled = false;
+
+  /** Time between two snapshots. */
+  private long intervalSeconds = 60;
+
+  /** Number of most recent snapshot files kept on disk. */
+  private int retained = 2;
+}
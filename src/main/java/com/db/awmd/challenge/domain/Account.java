@@ -4,15 +4,26 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 import org.hibernate.validator.constraints.NotBlank;
 import org.hibernate.validator.constraints.NotEmpty;
 
 @Data
+@ToString(exclude = {"balanceCell", "version"})
+@EqualsAndHashCode(exclude = {"balanceCell", "version"})
 @JsonAutoDetect(fieldVisibility = Visibility.ANY)
 public class Account {
 
@@ -22,27 +33,137 @@ public class Account {
   
   @NotNull
   @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  @Digits(integer = Money.MAX_INTEGER_DIGITS, fraction = Money.SCALE,
+    message = "Balance must have at most 16 digits before and 2 after the decimal point.")
+  private volatile BigDecimal balance;
+
+  // ISO 4217 code, null for the base currency of 'fx.base-currency'
+  @Pattern(regexp = "[A-Z]{3}", message = "Currency must be a three-letter ISO 4217 code.")
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final String currency;
   
-  private final Object lock = new Object(); 
+  private final AccountLock lock; 
+
+  private static final AtomicReferenceFieldUpdater<Account, BalanceCell> BALANCE_CELL =
+    AtomicReferenceFieldUpdater.newUpdater(Account.class, BalanceCell.class, "balanceCell");
+
+  private static final AtomicLongFieldUpdater<Account> VERSION =
+    AtomicLongFieldUpdater.newUpdater(Account.class, "version");
+
+  // Once attached, the cell holds the balance and the BigDecimal field is no longer used.
+  @JsonIgnore
+  private volatile BalanceCell balanceCell;
+
+  // Number of changes of the BigDecimal balance, carried over into the cell when it is attached.
+  @JsonIgnore
+  @Setter(AccessLevel.NONE)
+  private volatile long version;
 
   public Account(String accountId) {
-    this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this(accountId, BigDecimal.ZERO);
+  }
+
+  public Account(String accountId, BigDecimal balance) {
+    this(accountId, balance, null);
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
-    @JsonProperty("balance") BigDecimal balance) {
+    @JsonProperty("balance") BigDecimal balance, @JsonProperty("currency") String currency) {
     this.accountId = accountId;
     this.balance = balance;
+    this.currency = currency;
+    this.lock = new AccountLock();
+  }
+
+  /**
+   * Creates a view of an account whose balance and lock are owned by the repository.
+   * @param accountId - id of the account
+   * @param balanceCell - cell holding the balance
+   * @param lock - lock shared by all views of the account
+   */
+  public Account(String accountId, BalanceCell balanceCell, AccountLock lock) {
+    this.accountId = accountId;
+    this.currency = null;
+    this.balanceCell = balanceCell;
+    this.lock = lock;
   }
   
   @JsonIgnore
-  public Object getLock(){
+  public AccountLock getLock(){
 	  return lock;
   }
-  
-  
-  
+
+  public BigDecimal getBalance() {
+    BalanceCell cell = balanceCell;
+    return cell != null ? cell.toBigDecimal() : balance;
+  }
+
+  public void setBalance(BigDecimal balance) {
+    BalanceCell cell = balanceCell;
+    if (cell != null) {
+      cell.set(BalanceCell.toMinorUnits(balance));
+    } else {
+      this.balance = balance;
+      VERSION.incrementAndGet(this);
+    }
+  }
+
+  /**
+   * @return number of changes of the balance, incremented after the balance has been written
+   */
+  @JsonIgnore
+  public long getVersion() {
+    BalanceCell cell = balanceCell;
+    return cell != null ? cell.getVersion() : version;
+  }
+
+  /**
+   * Reads balance and version without taking the lock of the account. The balance is read again
+   * if its version changed meanwhile. Writers increment the version only after the balance has been
+   * written, so the balance may already include a change the returned version does not count yet.
+   * A changed version tells that the balance may have changed, it does not identify the balance.
+   * @return immutable snapshot of the account
+   */
+  public AccountSnapshot getSnapshot() {
+    while (true) {
+      long current = getVersion();
+      BigDecimal currentBalance = getBalance();
+      if (current == getVersion()) {
+        return new AccountSnapshot(accountId, currentBalance, currency, current);
+      }
+    }
+  }
+
+  /**
+   * Moves the balance into a {@link StripedBalanceCell}, for a hot account receiving many concurrent
+   * transfers. Must be called before the account is used by transfers.
+   * @param stripes - number of stripes
+   */
+  public void stripeBalance(int stripes) {
+    this.balanceCell = new StripedBalanceCell(stripes, BalanceCell.toMinorUnits(getBalance()), getVersion());
+  }
+
+  /**
+   * @return true if the balance is kept in a {@link StripedBalanceCell}
+   */
+  @JsonIgnore
+  public boolean isStriped() {
+    return balanceCell instanceof StripedBalanceCell;
+  }
+
+  /**
+   * Returns the minor-unit cell holding the balance of this account, moving the balance into
+   * a new cell on first use.
+   * @return balance cell of this account
+   */
+  @JsonIgnore
+  public BalanceCell getBalanceCell() {
+    BalanceCell cell = balanceCell;
+    if (cell == null) {
+      BALANCE_CELL.compareAndSet(this, null, BalanceCell.of(BalanceCell.toMinorUnits(balance), version));
+      cell = balanceCell;
+    }
+    return cell;
+  }
 }
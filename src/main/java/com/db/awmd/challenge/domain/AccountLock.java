@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock of an account with a sequence number, unique and fixed for the lifetime of the lock.
+ * Locks of several accounts are always taken in sequence order, which is therefore the same for
+ * every transfer and batch whatever the account ids look like.
+ */
+public class AccountLock extends ReentrantLock {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  private final long sequence = SEQUENCE.incrementAndGet();
+
+  public long getSequence() {
+    return sequence;
+  }
+}
@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Immutable state of an account, serialized like {@link Account}. The version is the one read
+ * together with the balance, see {@link Account#getSnapshot()}.
+ */
+@Data
+public class AccountSnapshot {
+
+  private final String accountId;
+
+  private final BigDecimal balance;
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final String currency;
+
+  @JsonIgnore
+  private final long version;
+}
@@ -3,6 +3,8 @@ package com.db.awmd.challenge.domain;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.Objects;
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import lombok.Data;
@@ -22,15 +24,39 @@ public class AmountTransferRequest {
   
   @NotNull
   @Min(value = 0, message = "Amount to be transferred should be positive")
+  @Digits(integer = Money.MAX_INTEGER_DIGITS, fraction = Money.SCALE,
+    message = "Amount to be transferred must have at most 16 digits before and 2 after the decimal point.")
   private final BigDecimal amountToTransfer;
+
+  /**
+   * Optional key chosen by the client. A retried request with the same key returns the result
+   * of the first request instead of transferring again.
+   */
+  private final String idempotencyKey;
+  
+  public AmountTransferRequest(String accountFromId, String accountToId, BigDecimal amountToTransfer) {
+	  this(accountFromId, accountToId, amountToTransfer, null);
+  }
   
   @JsonCreator
   public AmountTransferRequest(@JsonProperty("accountFromId") String accountFromId,
 		  @JsonProperty("accountToId") String accountToId,
-		  @JsonProperty("amountToTransfer") BigDecimal amountToTransfer) {
+		  @JsonProperty("amountToTransfer") BigDecimal amountToTransfer,
+		  @JsonProperty("idempotencyKey") String idempotencyKey) {
 	  	this.accountFromId = accountFromId;
 	    this.accountToId = accountToId;
 	    this.amountToTransfer = amountToTransfer;
+	    this.idempotencyKey = idempotencyKey;
+  }
+
+  /**
+   * @param other - another request
+   * @return true if both requests describe the same transfer, ignoring the idempotency key
+   */
+  public boolean isSameTransfer(AmountTransferRequest other) {
+	  return Objects.equals(accountFromId, other.accountFromId) && Objects.equals(accountToId, other.accountToId)
+			  && (amountToTransfer == null ? other.amountToTransfer == null
+					  : other.amountToTransfer != null && amountToTransfer.compareTo(other.amountToTransfer) == 0);
   }
 
 }
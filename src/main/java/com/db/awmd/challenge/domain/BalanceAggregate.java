@@ -0,0 +1,186 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.util.Constants;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Number, sum, minimum, maximum and distribution of account balances, accumulated one balance at
+ * a time and combined with the aggregates of other partitions.
+ * <p>
+ * Balances are summed as long minor units. Balances with more decimal places than
+ * {@link Constants#BALANCE_SCALE}, and sums which would overflow a long, are summed exactly as
+ * BigDecimal. The distribution counts balances per decade of minor units: bucket 0 holds zero
+ * balances, bucket k balances from 10^(k-1) up to 10^k minor units.
+ */
+public class BalanceAggregate {
+
+  public static final int BUCKETS = 20;
+
+  private static final long[] POWERS_OF_TEN = new long[BUCKETS - 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private long count;
+
+  private long units;
+
+  private long minUnits = Long.MAX_VALUE;
+
+  private long maxUnits = Long.MIN_VALUE;
+
+  // Sum, minimum and maximum of what does not fit into long minor units
+  private BigDecimal overflow = BigDecimal.ZERO;
+
+  private BigDecimal overflowMin;
+
+  private BigDecimal overflowMax;
+
+  private final long[] buckets = new long[BUCKETS];
+
+  /**
+   * @param balance - balance in minor units
+   */
+  public void add(long balance) {
+    count++;
+    long sum = units + balance;
+    // Overflow if both operands have a sign different from the result
+    if (((units ^ sum) & (balance ^ sum)) < 0) {
+      overflow = overflow.add(BalanceCell.toBigDecimal(balance));
+    } else {
+      units = sum;
+    }
+    if (balance < minUnits) {
+      minUnits = balance;
+    }
+    if (balance > maxUnits) {
+      maxUnits = balance;
+    }
+    buckets[bucket(balance)]++;
+  }
+
+  public void add(BigDecimal balance) {
+    int scale = balance.scale();
+    if (scale >= 0 && scale <= Constants.BALANCE_SCALE) {
+      BigInteger unscaled = balance.unscaledValue();
+      // Small enough to be scaled up to minor units without overflow
+      if (unscaled.bitLength() < 56) {
+        add(unscaled.longValue() * POWERS_OF_TEN[Constants.BALANCE_SCALE - scale]);
+        return;
+      }
+    }
+    count++;
+    overflow = overflow.add(balance);
+    if (overflowMin == null || balance.compareTo(overflowMin) < 0) {
+      overflowMin = balance;
+    }
+    if (overflowMax == null || balance.compareTo(overflowMax) > 0) {
+      overflowMax = balance;
+    }
+    BigDecimal truncated = balance.setScale(Constants.BALANCE_SCALE, RoundingMode.DOWN);
+    buckets[truncated.precision() > 18 ? BUCKETS - 1 : bucket(BalanceCell.toMinorUnits(truncated))]++;
+  }
+
+  /**
+   * Adds the balances of another aggregate to this one.
+   * @param other - aggregate of other accounts
+   * @return this aggregate
+   */
+  public BalanceAggregate combine(BalanceAggregate other) {
+    count += other.count;
+    long sum = units + other.units;
+    if (((units ^ sum) & (other.units ^ sum)) < 0) {
+      overflow = overflow.add(BalanceCell.toBigDecimal(other.units));
+    } else {
+      units = sum;
+    }
+    minUnits = Math.min(minUnits, other.minUnits);
+    maxUnits = Math.max(maxUnits, other.maxUnits);
+    overflow = overflow.add(other.overflow);
+    if (other.overflowMin != null && (overflowMin == null || other.overflowMin.compareTo(overflowMin) < 0)) {
+      overflowMin = other.overflowMin;
+    }
+    if (other.overflowMax != null && (overflowMax == null || other.overflowMax.compareTo(overflowMax) > 0)) {
+      overflowMax = other.overflowMax;
+    }
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] += other.buckets[i];
+    }
+    return this;
+  }
+
+  /**
+   * @return number of accounts
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return sum of all balances
+   */
+  public BigDecimal getTotal() {
+    return BalanceCell.toBigDecimal(units).add(overflow);
+  }
+
+  /**
+   * @return lowest balance, null without accounts
+   */
+  public BigDecimal getMin() {
+    BigDecimal min = count == 0 || minUnits == Long.MAX_VALUE ? null : BalanceCell.toBigDecimal(minUnits);
+    return overflowMin != null && (min == null || overflowMin.compareTo(min) < 0) ? overflowMin : min;
+  }
+
+  /**
+   * @return highest balance, null without accounts
+   */
+  public BigDecimal getMax() {
+    BigDecimal max = count == 0 || maxUnits == Long.MIN_VALUE ? null : BalanceCell.toBigDecimal(maxUnits);
+    return overflowMax != null && (max == null || overflowMax.compareTo(max) > 0) ? overflowMax : max;
+  }
+
+  /**
+   * @param bucket - bucket from 0 to {@link #BUCKETS} - 1
+   * @return number of accounts whose balance falls into the bucket
+   */
+  public long getBucketCount(int bucket) {
+    return buckets[bucket];
+  }
+
+  /**
+   * @param bucket - bucket from 0 to {@link #BUCKETS} - 1
+   * @return lowest balance of the bucket
+   */
+  public static BigDecimal getBucketFrom(int bucket) {
+    return bucket == 0 ? BigDecimal.ZERO : BalanceCell.toBigDecimal(POWERS_OF_TEN[bucket - 1]);
+  }
+
+  /**
+   * @param bucket - bucket from 0 to {@link #BUCKETS} - 1
+   * @return balance from which on accounts fall into the next bucket, null for the last bucket
+   */
+  public static BigDecimal getBucketTo(int bucket) {
+    return bucket == BUCKETS - 1 ? null : BalanceCell.toBigDecimal(POWERS_OF_TEN[bucket]);
+  }
+
+  /**
+   * @return number of decimal digits of the balance, 0 for zero or negative balances
+   */
+  private static int bucket(long balance) {
+    if (balance <= 0) {
+      return 0;
+    }
+    // Estimate the digits from the bits and correct by one comparison
+    int digits = ((64 - Long.numberOfLeadingZeros(balance)) * 1233) >>> 12;
+    if (digits < POWERS_OF_TEN.length && balance >= POWERS_OF_TEN[digits]) {
+      digits++;
+    }
+    return Math.min(digits, BUCKETS - 1);
+  }
+}
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.util.Constants;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Balance of an account kept as a long number of minor units (scale {@link Constants#BALANCE_SCALE}),
+ * updated with compare-and-set instead of monitors and without allocating on the update path.
+ * Subclasses decide where the value is stored.
+ * <p>
+ * Every change of the balance is counted by a version, incremented after the balance has been
+ * written. Updates are lock-free, so a reader may see a new balance before its version; the version
+ * only tells readers that the balance may have changed.
+ */
+public abstract class BalanceCell {
+
+  /** Returned by {@link #tryDebit(long)} when the balance does not cover the amount. */
+  public static final long INSUFFICIENT = Long.MIN_VALUE;
+
+  /**
+   * @param units - initial balance in minor units
+   * @return cell keeping the balance in a field of its own
+   */
+  public static BalanceCell of(long units) {
+    return new FieldBalanceCell(units, 0);
+  }
+
+  /**
+   * @param units - initial balance in minor units
+   * @param version - initial version
+   * @return cell keeping the balance in a field of its own
+   */
+  public static BalanceCell of(long units, long version) {
+    return new FieldBalanceCell(units, version);
+  }
+
+  /**
+   * Converts amount to minor units, see {@link Money#toMinorUnits(BigDecimal)}.
+   * @param amount - amount to be converted
+   * @return amount in minor units
+   * @throws ArithmeticException if amount has more decimal places than supported or does not fit into long
+   */
+  public static long toMinorUnits(BigDecimal amount) {
+    return Money.toMinorUnits(amount);
+  }
+
+  public static BigDecimal toBigDecimal(long units) {
+    return Money.toBigDecimal(units);
+  }
+
+  public abstract long get();
+
+  /**
+   * Sets the balance and increments the version.
+   * @param units - balance in minor units
+   */
+  public abstract void set(long units);
+
+  protected abstract boolean compareAndSet(long expected, long updated);
+
+  /**
+   * @return number of changes of the balance
+   */
+  public abstract long getVersion();
+
+  protected abstract void incrementVersion();
+
+  /**
+   * Debits given amount if the balance covers it.
+   * @param amount - amount in minor units
+   * @return updated balance or {@link #INSUFFICIENT} if balance is lower than the amount
+   */
+  public long tryDebit(long amount) {
+    while (true) {
+      long current = get();
+      if (current < amount) {
+        return INSUFFICIENT;
+      }
+      long updated = current - amount;
+      if (compareAndSet(current, updated)) {
+        incrementVersion();
+        return updated;
+      }
+    }
+  }
+
+  /**
+   * Credits given amount.
+   * @param amount - amount in minor units
+   * @return updated balance
+   * @throws ArithmeticException if updated balance would overflow
+   */
+  public long credit(long amount) {
+    while (true) {
+      long current = get();
+      long updated = Money.add(current, amount);
+      if (compareAndSet(current, updated)) {
+        incrementVersion();
+        return updated;
+      }
+    }
+  }
+
+  public BigDecimal toBigDecimal() {
+    return toBigDecimal(get());
+  }
+
+  @Override
+  public String toString() {
+    return toBigDecimal().toPlainString();
+  }
+
+  private static final class FieldBalanceCell extends BalanceCell {
+
+    private static final AtomicLongFieldUpdater<FieldBalanceCell> UNITS =
+      AtomicLongFieldUpdater.newUpdater(FieldBalanceCell.class, "units");
+
+    private static final AtomicLongFieldUpdater<FieldBalanceCell> VERSION =
+      AtomicLongFieldUpdater.newUpdater(FieldBalanceCell.class, "version");
+
+    private volatile long units;
+
+    private volatile long version;
+
+    private FieldBalanceCell(long units, long version) {
+      this.units = units;
+      this.version = version;
+    }
+
+    @Override
+    public long get() {
+      return units;
+    }
+
+    @Override
+    public void set(long units) {
+      this.units = units;
+      incrementVersion();
+    }
+
+    @Override
+    protected boolean compareAndSet(long expected, long updated) {
+      return UNITS.compareAndSet(this, expected, updated);
+    }
+
+    @Override
+    public long getVersion() {
+      return version;
+    }
+
+    @Override
+    protected void incrementVersion() {
+      VERSION.incrementAndGet(this);
+    }
+  }
+}
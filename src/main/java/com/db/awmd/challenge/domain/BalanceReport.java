@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Balances of all accounts at one point in time, with no transfer half applied.
+ */
+@Data
+public class BalanceReport {
+
+  private final BalanceAggregate aggregate;
+
+  /** Time of the report in epoch milliseconds. */
+  private final long time;
+
+  /** Time balance changes have been held back for the report. */
+  private final long pauseMicros;
+}
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Balances of both accounts right after a transfer has been applied.
+ */
+@Data
+public class BalanceUpdate {
+
+  private final BigDecimal accFromBalance;
+
+  private final BigDecimal accToBalance;
+}
@@ -0,0 +1,36 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import lombok.Data;
+
+/**
+ * Transfer of a batch together with its resolved accounts and, once executed, its outcome.
+ * Exactly one of update and error is set after the batch has been executed. An error raised by the
+ * balance engine comes with the exception behind it.
+ */
+@Data
+public class BatchItem {
+
+  private final int index;
+
+  private final AmountTransferRequest request;
+
+  private Account accFrom;
+
+  private Account accTo;
+
+  private BalanceUpdate update;
+
+  private String error;
+
+  // Exception of the balance engine behind the error, null for errors found before execution
+  private RuntimeException failure;
+
+  // Prepared before execution, records the transfer once it has been applied
+  private Supplier<CompletableFuture<Void>> recorder;
+
+  public boolean isSuccessful() {
+    return update != null && error == null;
+  }
+}
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * How a batch of transfers handles failing items.
+ */
+public enum BatchMode {
+
+  /** Either all transfers of the batch are applied or none of them. */
+  ATOMIC,
+
+  /** Every transfer that can be applied is applied, failing ones are reported per item. */
+  BEST_EFFORT
+}
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Body format of a bulk account import.
+ */
+public enum ImportFormat {
+
+  /** One 'accountId,balance' row per line, an optional header line starting with 'accountId'. */
+  CSV,
+
+  /** One JSON account per line, as in the body of a single account creation. */
+  NDJSON
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Row of a bulk account import together with the parsed account and, if it could not be
+ * imported, the error.
+ */
+@Data
+public class ImportRow {
+
+  private final long index;
+
+  private final String line;
+
+  private String accountId;
+
+  private Account account;
+
+  private String error;
+
+  public boolean isValid() {
+    return account != null && error == null;
+  }
+}
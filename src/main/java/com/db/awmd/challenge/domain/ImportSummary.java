@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk account import.
+ */
+@Data
+public class ImportSummary {
+
+  private final long rows;
+
+  private final long imported;
+
+  private final long failed;
+
+  private final long millis;
+
+  public long getAccountsPerSecond() {
+    return millis == 0 ? imported * 1000 : imported * 1000 / millis;
+  }
+}
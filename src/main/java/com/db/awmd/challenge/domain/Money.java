@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.util.Constants;
+import java.math.BigDecimal;
+
+/**
+ * Amounts of money as long minor units with {@link #SCALE} decimal places, the representation
+ * balances are kept and transferred in. Arithmetic on minor units allocates nothing and fails on
+ * overflow instead of wrapping around.
+ * <p>
+ * BigDecimal is only used at the boundary. {@link #toMinorUnits(BigDecimal)} accepts any scale as
+ * long as no decimal place beyond {@link #SCALE} is set, so '10', '10.0' and '10.00' are the same
+ * amount. {@link #toBigDecimal(long)} returns an amount with the fewest decimal places needed, so
+ * an amount always renders the same, whichever way it was entered.
+ */
+public final class Money {
+
+  public static final int SCALE = Constants.BALANCE_SCALE;
+
+  /** Digits before the decimal point of the largest amount accepted at the boundary. */
+  public static final int MAX_INTEGER_DIGITS = 16;
+
+  // 10 to the power of SCALE
+  private static final long UNITS_PER_MAJOR = 100;
+
+  private Money() {
+  }
+
+  /**
+   * Converts amount to minor units.
+   * @param amount - amount to be converted
+   * @return amount in minor units
+   * @throws ArithmeticException if amount has more decimal places than {@link #SCALE} or does not fit into long
+   */
+  public static long toMinorUnits(BigDecimal amount) {
+    BigDecimal scaled;
+    try {
+      scaled = amount.setScale(SCALE);
+    } catch (ArithmeticException ex) {
+      throw new ArithmeticException("Amount " + amount.toPlainString() + " has more than " + SCALE + " decimal places.");
+    }
+    if (scaled.precision() > 18) {
+      // Up to 18 digits always fit, longer ones are checked exactly
+      try {
+        return scaled.unscaledValue().longValueExact();
+      } catch (ArithmeticException ex) {
+        throw new ArithmeticException("Amount " + amount.toPlainString() + " is out of range.");
+      }
+    }
+    return scaled.unscaledValue().longValue();
+  }
+
+  /**
+   * @param amount - amount to be checked
+   * @return true if amount has at most {@link #SCALE} decimal places and at most
+   * {@link #MAX_INTEGER_DIGITS} digits before the decimal point
+   */
+  public static boolean fits(BigDecimal amount) {
+    return amount.stripTrailingZeros().scale() <= SCALE
+      && amount.precision() - amount.scale() <= MAX_INTEGER_DIGITS;
+  }
+
+  /**
+   * @param units - amount in minor units
+   * @return amount with the fewest decimal places needed, at most {@link #SCALE}
+   */
+  public static BigDecimal toBigDecimal(long units) {
+    if (units % UNITS_PER_MAJOR == 0) {
+      return BigDecimal.valueOf(units / UNITS_PER_MAJOR);
+    }
+    if (units % 10 == 0) {
+      return BigDecimal.valueOf(units / 10, SCALE - 1);
+    }
+    return BigDecimal.valueOf(units, SCALE);
+  }
+
+  /**
+   * @param units - amount in minor units
+   * @param other - amount in minor units
+   * @return sum of both amounts
+   * @throws ArithmeticException if the sum overflows
+   */
+  public static long add(long units, long other) {
+    return Math.addExact(units, other);
+  }
+
+  /**
+   * @param units - amount in minor units
+   * @param other - amount in minor units
+   * @return difference of both amounts
+   * @throws ArithmeticException if the difference overflows
+   */
+  public static long subtract(long units, long other) {
+    return Math.subtractExact(units, other);
+  }
+}
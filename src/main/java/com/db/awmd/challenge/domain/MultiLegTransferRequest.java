@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * Debit of one account credited to many accounts, applied all or nothing.
+ */
+@Data
+public class MultiLegTransferRequest {
+
+  /** Maximum number of legs, all of their accounts are locked at once. */
+  public static final int MAX_LEGS = 1000;
+
+  @NotNull
+  @NotEmpty
+  private final String accountFromId;
+
+  @NotNull
+  @NotEmpty
+  @Size(max = MAX_LEGS, message = "Multi-leg transfer must have at most 1000 legs.")
+  @Valid
+  private final List<TransferLeg> legs;
+
+  @JsonCreator
+  public MultiLegTransferRequest(@JsonProperty("accountFromId") String accountFromId,
+		  @JsonProperty("legs") List<TransferLeg> legs) {
+	  this.accountFromId = accountFromId;
+	  this.legs = legs;
+  }
+}
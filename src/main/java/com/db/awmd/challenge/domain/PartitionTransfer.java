@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Transfer between accounts kept by two nodes, as sent by the node of the debited account to the
+ * node of the credited account in every phase of the transfer.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PartitionTransfer {
+
+  /** Id chosen by the node of the debited account, unique across all nodes. */
+  private final String transferId;
+
+  private final String accountFromId;
+
+  private final String accountToId;
+
+  private final BigDecimal amount;
+
+  /** Currency of the debited account, null for the base currency. */
+  private final String currency;
+
+  /** Balance of the debited account after the debit, sent with the commit only. */
+  private final BigDecimal accFromBalance;
+
+  @JsonCreator
+  public PartitionTransfer(@JsonProperty("transferId") String transferId,
+		  @JsonProperty("accountFromId") String accountFromId,
+		  @JsonProperty("accountToId") String accountToId,
+		  @JsonProperty("amount") BigDecimal amount,
+		  @JsonProperty("currency") String currency,
+		  @JsonProperty("accFromBalance") BigDecimal accFromBalance) {
+	  this.transferId = transferId;
+	  this.accountFromId = accountFromId;
+	  this.accountToId = accountToId;
+	  this.amount = amount;
+	  this.currency = currency;
+	  this.accFromBalance = accFromBalance;
+  }
+
+  /**
+   * @param accFromBalance - balance of the debited account after the debit
+   * @return same transfer carrying the balance of the debited account
+   */
+  public PartitionTransfer withAccFromBalance(BigDecimal accFromBalance) {
+	  return new PartitionTransfer(transferId, accountFromId, accountToId, amount, currency, accFromBalance);
+  }
+}
@@ -0,0 +1,231 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Balance of a hot account split into stripes, so that concurrent credits do not contend on one
+ * value. A credit is added to the stripe of the crediting thread. A debit is taken from the stripe
+ * of the debiting thread and, if that stripe does not cover it, borrows from the other stripes.
+ * {@link #rebalance()} spreads the balance evenly again, so that debits rarely need to borrow.
+ * <p>
+ * Borrowing, rebalancing and {@link #set(long)} move units between stripes one at a time. They run
+ * one at a time and mark the cell as moving meanwhile; {@link #get()} waits for a move to finish,
+ * so it never sees units which have left one stripe and not yet reached another.
+ */
+public class StripedBalanceCell extends BalanceCell {
+
+  // Balance and version of a stripe are 16 longs apart from the next stripe, on a cache line of their own
+  private static final int PADDING = 16;
+
+  private static final int VERSION_OFFSET = 1;
+
+  private final AtomicLongArray stripes;
+
+  private final int mask;
+
+  private final ReentrantLock moveLock = new ReentrantLock();
+
+  // Odd while units are moved between stripes, counts every move as a change of the balance
+  private final AtomicLong moves;
+
+  /**
+   * @param stripeCount - number of stripes, rounded up to a power of two
+   * @param units - initial balance in minor units
+   * @param version - initial version
+   */
+  public StripedBalanceCell(int stripeCount, long units, long version) {
+    int count = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+    this.stripes = new AtomicLongArray(count * PADDING);
+    this.mask = count - 1;
+    this.moves = new AtomicLong(version * 2);
+    stripes.set(0, units);
+  }
+
+  /**
+   * @return number of stripes
+   */
+  public int getStripeCount() {
+    return mask + 1;
+  }
+
+  /**
+   * @param stripe - stripe from 0 to {@link #getStripeCount()} - 1
+   * @return balance of the stripe in minor units
+   */
+  public long getStripe(int stripe) {
+    return stripes.get(stripe * PADDING);
+  }
+
+  @Override
+  public long get() {
+    while (true) {
+      long current = moves.get();
+      if ((current & 1) == 0) {
+        long sum = sum();
+        if (moves.get() == current) {
+          return sum;
+        }
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Sets the balance. Credits applied concurrently are kept, as if they had followed.
+   */
+  @Override
+  public void set(long units) {
+    moveLock.lock();
+    moves.incrementAndGet();
+    try {
+      for (int stripe = 0; stripe <= mask; stripe++) {
+        stripes.getAndSet(stripe * PADDING, 0);
+      }
+      stripes.addAndGet(0, units);
+    } finally {
+      moves.incrementAndGet();
+      moveLock.unlock();
+    }
+  }
+
+  /**
+   * Not used, debits and credits update the stripes themselves.
+   */
+  @Override
+  protected boolean compareAndSet(long expected, long updated) {
+    throw new UnsupportedOperationException("Striped balance is updated per stripe.");
+  }
+
+  @Override
+  public long getVersion() {
+    long version = moves.get() >>> 1;
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      version += stripes.get(stripe * PADDING + VERSION_OFFSET);
+    }
+    return version;
+  }
+
+  @Override
+  protected void incrementVersion() {
+    stripes.incrementAndGet(ownStripe() + VERSION_OFFSET);
+  }
+
+  @Override
+  public long tryDebit(long amount) {
+    int own = ownStripe();
+    if (takeAll(own, amount)) {
+      incrementVersion();
+      return get();
+    }
+
+    moveLock.lock();
+    moves.incrementAndGet();
+    long taken = 0;
+    try {
+      for (int i = 0; i <= mask && taken < amount; i++) {
+        taken += take(((own / PADDING + i) & mask) * PADDING, amount - taken);
+      }
+      if (taken < amount) {
+        // Give back what has been borrowed, the debit did not happen
+        stripes.addAndGet(own, taken);
+      }
+    } finally {
+      moves.incrementAndGet();
+      moveLock.unlock();
+    }
+    if (taken < amount) {
+      return INSUFFICIENT;
+    }
+    incrementVersion();
+    return get();
+  }
+
+  @Override
+  public long credit(long amount) {
+    int own = ownStripe();
+    while (true) {
+      long current = stripes.get(own);
+      long updated = Math.addExact(current, amount);
+      if (stripes.compareAndSet(own, current, updated)) {
+        incrementVersion();
+        return get();
+      }
+    }
+  }
+
+  /**
+   * Spreads the balance evenly over all stripes. Concurrent credits and debits continue meanwhile.
+   */
+  public void rebalance() {
+    moveLock.lock();
+    moves.incrementAndGet();
+    try {
+      long share = sum() / (mask + 1);
+      long pool = 0;
+      for (int stripe = 0; stripe <= mask; stripe++) {
+        long surplus = stripes.get(stripe * PADDING) - share;
+        if (surplus > 0) {
+          pool += take(stripe * PADDING, surplus);
+        }
+      }
+      for (int stripe = 0; stripe <= mask && pool > 0; stripe++) {
+        long deficit = Math.min(pool, share - stripes.get(stripe * PADDING));
+        if (deficit > 0) {
+          stripes.addAndGet(stripe * PADDING, deficit);
+          pool -= deficit;
+        }
+      }
+      stripes.addAndGet(0, pool);
+    } finally {
+      moves.incrementAndGet();
+      moveLock.unlock();
+    }
+  }
+
+  /**
+   * Takes the amount from a stripe if the stripe covers it.
+   */
+  private boolean takeAll(int index, long amount) {
+    while (true) {
+      long current = stripes.get(index);
+      if (current < amount) {
+        return false;
+      }
+      if (stripes.compareAndSet(index, current, current - amount)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Takes up to the given amount from a stripe, never below zero.
+   * @return amount taken
+   */
+  private long take(int index, long amount) {
+    while (true) {
+      long current = stripes.get(index);
+      long taken = Math.min(current, amount);
+      if (taken <= 0) {
+        return 0;
+      }
+      if (stripes.compareAndSet(index, current, current - taken)) {
+        return taken;
+      }
+    }
+  }
+
+  private long sum() {
+    long sum = 0;
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      sum += stripes.get(stripe * PADDING);
+    }
+    return sum;
+  }
+
+  private int ownStripe() {
+    return ((int) Thread.currentThread().getId() & mask) * PADDING;
+  }
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Transfer with both accounts resolved once, carried through validation, execution, recording
+ * and notification. Update is set once the balance engine has applied the transfer.
+ * <p>
+ * Between accounts in different currencies, the amount to transfer is debited in the currency of
+ * the source account and the converted credited amount is set during validation.
+ */
+@Data
+public class TransferContext {
+
+  private final Account accFrom;
+
+  private final Account accTo;
+
+  private final BigDecimal amountToTransfer;
+
+  // Null unless both accounts are in different currencies
+  private BigDecimal creditedAmount;
+
+  private BalanceUpdate update;
+}
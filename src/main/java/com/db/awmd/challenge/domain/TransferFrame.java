@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Transfer request of the binary wire protocol, see {@link com.db.awmd.challenge.util.TransferFrameCodec}.
+ * One instance is reused for every frame of a stream.
+ */
+@Data
+public class TransferFrame {
+
+  /** Chosen by the client and echoed in the response frame, to match responses to requests. */
+  private long requestId;
+
+  private long accountFromId;
+
+  private long accountToId;
+
+  /** Amount in minor units, see {@link BalanceCell#toBigDecimal(long)}. */
+  private long amount;
+}
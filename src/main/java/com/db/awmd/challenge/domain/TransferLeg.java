@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * One credit of a multi-leg transfer.
+ */
+@Data
+public class TransferLeg {
+
+  @NotNull
+  @NotEmpty
+  private final String accountToId;
+
+  @NotNull
+  @Min(value = 0, message = "Amount to be transferred should be positive")
+  @Digits(integer = Money.MAX_INTEGER_DIGITS, fraction = Money.SCALE,
+    message = "Amount to be transferred must have at most 16 digits before and 2 after the decimal point.")
+  private final BigDecimal amountToTransfer;
+
+  @JsonCreator
+  public TransferLeg(@JsonProperty("accountToId") String accountToId,
+		  @JsonProperty("amountToTransfer") BigDecimal amountToTransfer) {
+	  this.accountToId = accountToId;
+	  this.amountToTransfer = amountToTransfer;
+  }
+}
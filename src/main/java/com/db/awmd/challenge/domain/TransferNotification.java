@@ -0,0 +1,68 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * Notification waiting to be delivered to the owner of an account. Notifications about a debit or
+ * credit keep amount and balance and are formatted only when the text is needed, on the
+ * dispatcher thread.
+ */
+@Data
+public class TransferNotification {
+
+  private final Account account;
+
+  private final String message;
+
+  private final boolean debit;
+
+  private final BigDecimal amount;
+
+  private final BigDecimal balance;
+
+  private final long enqueuedAtNanos;
+
+  /**
+   * @param account - account whose owner is notified
+   * @param message - text of the notification
+   * @param enqueuedAtNanos - time the notification was queued
+   */
+  public TransferNotification(Account account, String message, long enqueuedAtNanos) {
+    this(account, message, false, null, null, enqueuedAtNanos);
+  }
+
+  /**
+   * @param account - account whose owner is notified
+   * @param debit - true if the account has been debited, false if it has been credited
+   * @param amount - transferred amount
+   * @param balance - balance of the account after the transfer
+   * @param enqueuedAtNanos - time the notification was queued
+   */
+  public TransferNotification(Account account, boolean debit, BigDecimal amount, BigDecimal balance,
+    long enqueuedAtNanos) {
+    this(account, null, debit, amount, balance, enqueuedAtNanos);
+  }
+
+  private TransferNotification(Account account, String message, boolean debit, BigDecimal amount,
+    BigDecimal balance, long enqueuedAtNanos) {
+    this.account = account;
+    this.message = message;
+    this.debit = debit;
+    this.amount = amount;
+    this.balance = balance;
+    this.enqueuedAtNanos = enqueuedAtNanos;
+  }
+
+  /**
+   * @return text of the notification
+   */
+  public String getTransferDescription() {
+    if (message != null) {
+      return message;
+    }
+    String currency = account.getCurrency() != null ? " " + account.getCurrency() : "";
+    return "Your account has been " + (debit ? "debited" : "credited") + " with amount " + amount + currency
+      + ". Your updated balance is " + balance + currency;
+  }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class CurrencyMismatchException extends RuntimeException{
+
+	public CurrencyMismatchException(String message) {
+	    super(message);
+	}
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidTransferRequestException extends RuntimeException{
+
+	public InvalidTransferRequestException(String message) {
+	    super(message);
+	}
+}
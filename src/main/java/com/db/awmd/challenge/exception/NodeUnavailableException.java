@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class NodeUnavailableException extends RuntimeException{
+
+	public NodeUnavailableException(String message) {
+	    super(message);
+	}
+}
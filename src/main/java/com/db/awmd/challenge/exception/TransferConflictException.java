@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferConflictException extends RuntimeException{
+
+	public TransferConflictException(String message) {
+	    super(message);
+	}
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class UnknownTransferException extends RuntimeException{
+
+	public UnknownTransferException(String message) {
+	    super(message);
+	}
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class UntrustedNodeException extends RuntimeException{
+
+	public UntrustedNodeException(String message) {
+	    super(message);
+	}
+}
@@ -0,0 +1,506 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.JournalProperties;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only write-ahead journal of account creations and transfers, written into memory-mapped
+ * segment files.
+ * <p>
+ * Records are appended by a single writer thread using group commit: the writer collects records
+ * for at most 'journal.max-delay-micros' or until 'journal.max-batch-size' records are waiting,
+ * writes them and makes all of them durable with one fsync. Callers get a future completed once
+ * their record is durable. Records are encoded by the caller, a record which cannot be written
+ * fails on its own without failing the others of its batch.
+ * <p>
+ * Segment files are named by the journal position of their first byte. Each record is stored as
+ * payload length, CRC32 of the payload and the payload, a zero length marks the end of a segment.
+ */
+@Component
+@Slf4j
+public class AccountsJournal {
+
+  static final byte CREATE = 1;
+
+  static final byte TRANSFER = 2;
+
+  static final byte CLEAR = 3;
+
+  private static final int HEADER_SIZE = 8;
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  /**
+   * Receives journal records during replay.
+   */
+  public interface Visitor {
+
+    void onCreate(String accountId, BigDecimal balance);
+
+    void onTransfer(String accountFromId, String accountToId, BigDecimal amount);
+
+    void onClear();
+  }
+
+  private final JournalProperties properties;
+
+  private final File directory;
+
+  private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+
+  private final LongAdder recordCount = new LongAdder();
+
+  private final LongAdder byteCount = new LongAdder();
+
+  private final LongAdder syncCount = new LongAdder();
+
+  private final LongAdder totalDurabilityNanos = new LongAdder();
+
+  private final AtomicLong maxDurabilityNanos = new AtomicLong();
+
+  // Writer state, touched by the writer thread only once the journal is open.
+  private MappedByteBuffer segment;
+
+  private long segmentBase;
+
+  private volatile long position;
+
+  private Thread writer;
+
+  private volatile boolean running;
+
+  @Autowired
+  public AccountsJournal(JournalProperties properties) {
+    this.properties = properties;
+    this.directory = new File(properties.getDirectory());
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  /**
+   * Reads all records starting at given position.
+   * @param fromPosition - journal position of the first record to read, 0 for the whole journal
+   * @param visitor - receives the records in journal order
+   * @return journal position right after the last valid record
+   */
+  public long replay(long fromPosition, Visitor visitor) {
+    return replay(fromPosition, Long.MAX_VALUE, visitor);
+  }
+
+  /**
+   * Reads records between given positions.
+   * @param fromPosition - journal position of the first record to read
+   * @param toPosition - journal position at which reading stops
+   * @param visitor - receives the records in journal order
+   * @return journal position right after the last record read
+   */
+  public long replay(long fromPosition, long toPosition, Visitor visitor) {
+    long end = fromPosition;
+    List<Long> bases = segmentBases();
+    for (int i = 0; i < bases.size() && end < toPosition; i++) {
+      long base = bases.get(i);
+      long nextBase = i + 1 < bases.size() ? bases.get(i + 1) : Long.MAX_VALUE;
+      if (nextBase <= fromPosition || base >= toPosition) {
+        continue;
+      }
+      try (RandomAccessFile file = new RandomAccessFile(segmentFile(base), "r");
+        FileChannel channel = file.getChannel()) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.position((int) Math.max(0, fromPosition - base));
+        buffer.limit((int) Math.min(buffer.capacity(), toPosition - base));
+        end = base + readRecords(buffer, visitor);
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Failed to replay journal segment " + base, ex);
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Deletes segment files holding only records before given position, which are no longer needed
+   * once a snapshot at that position exists.
+   * @param position - journal position covered by a snapshot
+   */
+  public void deleteSegmentsBefore(long position) {
+    List<Long> bases = segmentBases();
+    for (int i = 0; i + 1 < bases.size() && bases.get(i + 1) <= position; i++) {
+      if (!segmentFile(bases.get(i)).delete()) {
+        log.warn("Could not delete journal segment {}", bases.get(i));
+      }
+    }
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Opens the journal for appending at given position and starts the writer thread.
+   * @param endPosition - position right after the last valid record, as returned by replay
+   */
+  public synchronized void open(long endPosition) {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IllegalStateException("Cannot create journal directory " + directory);
+    }
+    // Continue in the segment holding the end position, anything behind it is not valid journal.
+    long base = endPosition;
+    for (long existing : segmentBases()) {
+      if (existing <= endPosition) {
+        base = existing;
+      } else if (!segmentFile(existing).delete()) {
+        throw new IllegalStateException("Cannot delete invalid journal segment " + existing);
+      }
+    }
+    mapSegment(base);
+    segment.position((int) (endPosition - base));
+    ByteBuffer tail = segment.duplicate();
+    while (tail.hasRemaining()) {
+      tail.put((byte) 0);
+    }
+    position = endPosition;
+
+    running = true;
+    writer = new Thread(this::writeLoop, "accounts-journal");
+    writer.setDaemon(true);
+    writer.start();
+    log.info("Accounts journal opened in {} at position {}", directory.getAbsolutePath(), endPosition);
+  }
+
+  @PreDestroy
+  public synchronized void close() throws InterruptedException {
+    running = false;
+    if (writer != null) {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+      writer = null;
+    }
+  }
+
+  public CompletableFuture<Void> appendCreate(String accountId, BigDecimal balance) {
+    return append(encode(CREATE, accountId, null, balance));
+  }
+
+  public CompletableFuture<Void> appendTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+    return append(prepareTransfer(accountFromId, accountToId, amount));
+  }
+
+  public CompletableFuture<Void> appendClear() {
+    return append(encode(CLEAR, null, null, null));
+  }
+
+  /**
+   * Encodes a transfer record without appending it, so that a transfer which cannot be journaled
+   * is rejected before it is applied.
+   * @param accountFromId - account to be debited
+   * @param accountToId - account to be credited
+   * @param amount - amount to be transferred
+   * @return record to be appended once, after the transfer has been applied
+   * @throws IllegalArgumentException if the record cannot be journaled
+   */
+  public PendingRecord prepareTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+    return encode(TRANSFER, accountFromId, accountToId, amount);
+  }
+
+  /**
+   * Hands an encoded record over to the writer thread.
+   * @param record - record which has not been appended yet
+   * @return future completed once the record is durable
+   */
+  public CompletableFuture<Void> append(PendingRecord record) {
+    if (!running) {
+      throw new IllegalStateException("Accounts journal is not open");
+    }
+    record.enqueuedAtNanos = System.nanoTime();
+    queue.add(record);
+    return record.durable;
+  }
+
+  /**
+   * @return journal position right after the last durable record
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  public long getRecordCount() {
+    return recordCount.sum();
+  }
+
+  public long getByteCount() {
+    return byteCount.sum();
+  }
+
+  public long getSyncCount() {
+    return syncCount.sum();
+  }
+
+  /**
+   * @return average number of records made durable by one fsync
+   */
+  public double getAverageBatchSize() {
+    long syncs = syncCount.sum();
+    return syncs == 0 ? 0 : (double) recordCount.sum() / syncs;
+  }
+
+  /**
+   * @return average time between appending a record and the record being durable in microseconds
+   */
+  public long getAverageDurabilityLatencyMicros() {
+    long records = recordCount.sum();
+    return records == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDurabilityNanos.sum() / records);
+  }
+
+  public long getMaxDurabilityLatencyMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxDurabilityNanos.get());
+  }
+
+  /**
+   * @return base positions of all segment files, in ascending order
+   */
+  List<Long> segmentBases() {
+    List<Long> bases = new ArrayList<>();
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    bases.sort(null);
+    return bases;
+  }
+
+  File segmentFile(long base) {
+    return new File(directory, String.format("%020d%s", base, SEGMENT_SUFFIX));
+  }
+
+  private void writeLoop() {
+    List<PendingRecord> batch = new ArrayList<>(properties.getMaxBatchSize());
+    long maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(properties.getMaxDelayMicros());
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingRecord first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = first.enqueuedAtNanos + maxDelayNanos;
+        while (batch.size() < properties.getMaxBatchSize()) {
+          long remaining = deadline - System.nanoTime();
+          PendingRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        commit(batch);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void commit(List<PendingRecord> batch) {
+    List<PendingRecord> written = new ArrayList<>(batch.size());
+    long bytes = 0;
+    for (PendingRecord record : batch) {
+      try {
+        bytes += write(record.payload);
+        written.add(record);
+      } catch (RuntimeException ex) {
+        // Fails this record only, nothing of it has been written
+        log.error("Failed to write journal record", ex);
+        record.durable.completeExceptionally(ex);
+      }
+    }
+    if (written.isEmpty()) {
+      return;
+    }
+    try {
+      segment.force();
+    } catch (RuntimeException ex) {
+      log.error("Failed to sync {} journal records", written.size(), ex);
+      for (PendingRecord record : written) {
+        record.durable.completeExceptionally(ex);
+      }
+      return;
+    }
+    position = segmentBase + segment.position();
+
+    // Count the batch before completing it, so that a caller sees its own record in the metrics.
+    recordCount.add(written.size());
+    byteCount.add(bytes);
+    syncCount.increment();
+    long now = System.nanoTime();
+    for (PendingRecord record : written) {
+      long latency = now - record.enqueuedAtNanos;
+      totalDurabilityNanos.add(latency);
+      maxDurabilityNanos.accumulateAndGet(latency, Math::max);
+      record.durable.complete(null);
+    }
+  }
+
+  private int write(byte[] payload) {
+    int size = HEADER_SIZE + payload.length;
+    if (segment.remaining() < size + 4) {
+      // Current segment ends with a zero length, continue in a new one.
+      segment.force();
+      mapSegment(segmentBase + segment.position());
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    segment.putInt(payload.length);
+    segment.putInt((int) crc.getValue());
+    segment.put(payload);
+    return size;
+  }
+
+  private void mapSegment(long base) {
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile(base), "rw");
+      FileChannel channel = file.getChannel()) {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, properties.getSegmentSize());
+      segmentBase = base;
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to map journal segment " + base, ex);
+    }
+  }
+
+  /**
+   * @return offset right after the last valid record of the segment
+   */
+  private static int readRecords(ByteBuffer buffer, Visitor visitor) {
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        return start;
+      }
+      byte[] payload = new byte[length];
+      buffer.get(payload);
+      crc.reset();
+      crc.update(payload, 0, length);
+      if ((int) crc.getValue() != checksum) {
+        log.warn("Journal record at offset {} is corrupted, ignoring the rest of the segment", start);
+        return start;
+      }
+      decode(ByteBuffer.wrap(payload), visitor);
+    }
+    return buffer.position();
+  }
+
+  private static void decode(ByteBuffer payload, Visitor visitor) {
+    byte type = payload.get();
+    switch (type) {
+      case CREATE:
+        visitor.onCreate(readString(payload), readDecimal(payload));
+        break;
+      case TRANSFER:
+        visitor.onTransfer(readString(payload), readString(payload), readDecimal(payload));
+        break;
+      case CLEAR:
+        visitor.onClear();
+        break;
+      default:
+        throw new IllegalStateException("Unknown journal record type " + type);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static BigDecimal readDecimal(ByteBuffer buffer) {
+    int scale = buffer.getInt();
+    byte[] unscaled = new byte[buffer.get() & 0xFF];
+    buffer.get(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  /**
+   * Encodes a record and checks that it fits into a segment.
+   */
+  private PendingRecord encode(byte type, String first, String second, BigDecimal amount) {
+    byte[] firstBytes = first != null ? first.getBytes(StandardCharsets.UTF_8) : null;
+    byte[] secondBytes = second != null ? second.getBytes(StandardCharsets.UTF_8) : null;
+    byte[] unscaled = amount != null ? amount.unscaledValue().toByteArray() : null;
+
+    int size = 1;
+    size += firstBytes != null ? 2 + firstBytes.length : 0;
+    size += secondBytes != null ? 2 + secondBytes.length : 0;
+    size += unscaled != null ? 5 + unscaled.length : 0;
+    if (HEADER_SIZE + size + 4 > properties.getSegmentSize()) {
+      throw new IllegalArgumentException("Journal record of " + (HEADER_SIZE + size) + " bytes does not fit into a segment");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put(type);
+    putString(buffer, firstBytes);
+    putString(buffer, secondBytes);
+    if (unscaled != null) {
+      if (unscaled.length > 0xFF) {
+        throw new IllegalArgumentException("Amount is too large to be journaled");
+      }
+      buffer.putInt(amount.scale());
+      buffer.put((byte) unscaled.length);
+      buffer.put(unscaled);
+    }
+    return new PendingRecord(buffer.array());
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] bytes) {
+    if (bytes != null) {
+      if (bytes.length > 0xFFFF) {
+        throw new IllegalArgumentException("Account id is too long to be journaled");
+      }
+      buffer.putShort((short) bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  /**
+   * Encoded record, waiting for the writer thread once appended.
+   */
+  public static final class PendingRecord {
+
+    private final byte[] payload;
+
+    private long enqueuedAtNanos;
+
+    private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+    private PendingRecord(byte[] payload) {
+      this.payload = payload;
+    }
+  }
+}
@@ -2,12 +2,71 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Creates many accounts at once, in the given order. An account which cannot be created, e.g.
+   * because its id already exists, does not stop the others.
+   * @param accounts - accounts to be created
+   * @return for every account the exception it failed with, null if it has been created
+   */
+  default RuntimeException[] createAccounts(List<Account> accounts) {
+    RuntimeException[] failures = new RuntimeException[accounts.size()];
+    for (int i = 0; i < failures.length; i++) {
+      try {
+        createAccount(accounts.get(i));
+      } catch (RuntimeException ex) {
+        failures[i] = ex;
+      }
+    }
+    return failures;
+  }
+
   Account getAccount(String accountId);
 
   void clearAccounts();
+
+  /**
+   * Splits the accounts into partitions which together cover every account once. Balances are
+   * read as they are while scanning, the caller has to keep them from changing for a consistent
+   * result.
+   * @param count - number of partitions wanted, fewer may be returned
+   * @return partitions of the accounts
+   */
+  List<BalancePartition> getBalancePartitions(int count);
+
+  /**
+   * Prepares the record of a transfer before the transfer is applied, so that a transfer which
+   * cannot be recorded is rejected while nothing has changed yet. Repositories without durable
+   * storage have nothing to record.
+   * @param accountFromId - account to be debited
+   * @param accountToId - account to be credited
+   * @param amount - amount to be transferred
+   * @return recorder to be called once after the transfer has been applied to the balances of both
+   *     accounts, its future completes once the transfer is durable
+   * @throws InvalidTransferRequestException if the transfer cannot be recorded
+   */
+  default Supplier<CompletableFuture<Void>> prepareTransfer(String accountFromId, String accountToId,
+      BigDecimal amount) {
+    return () -> CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Records a transfer which has already been applied to the balances of both accounts.
+   * @param accountFromId - account which has been debited
+   * @param accountToId - account which has been credited
+   * @param amount - transferred amount
+   * @return future completed once the transfer is durable
+   */
+  default CompletableFuture<Void> recordTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+    return prepareTransfer(accountFromId, accountToId, amount).get();
+  }
 }
@@ -0,0 +1,366 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLock;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Memory-compact account store for tens of millions of accounts, active with the 'compact' profile.
+ * <p>
+ * Numeric account ids are kept as longs in a primitive open-addressing table mapping the id to a
+ * dense account index. Balances are scaled longs (minor units) in fixed-size chunks addressed by
+ * that index, so they never move when the table grows. {@link #getAccount(String)} returns a
+ * flyweight {@link Account} view whose balance cell reads and writes the chunk directly. Balance
+ * versions are kept in chunks of their own. Locks are created only for accounts which are actually
+ * looked up.
+ * <p>
+ * Ids which are not canonical non-negative numbers are kept as regular accounts in a map.
+ * Balances must fit into {@link com.db.awmd.challenge.util.Constants#BALANCE_SCALE} decimal places.
+ * Accounts keep no currency, accounts with a currency are rejected.
+ */
+@Repository
+@Profile("compact")
+public class AccountsRepositoryCompact implements AccountsRepository {
+
+  private static final int CHUNK_BITS = 16;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private static final long NO_INDEX = -1;
+
+  private static final int MAX_NUMERIC_ID_LENGTH = 18;
+
+  private final Object writeLock = new Object();
+
+  private final Map<String, Account> otherAccounts = new ConcurrentHashMap<>();
+
+  // Readers access these without locking, writers replace them under writeLock.
+  private volatile Table table = new Table(INITIAL_CAPACITY);
+
+  private volatile AtomicLongArray[] balanceChunks = new AtomicLongArray[0];
+
+  private volatile AtomicLongArray[] versionChunks = new AtomicLongArray[0];
+
+  private volatile AtomicReferenceArray<AccountLock>[] lockChunks = newLockChunks(0);
+
+  private int size;
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    if (account.getCurrency() != null) {
+      throw new CurrencyMismatchException("Accounts with a currency are not supported by the compact store.");
+    }
+    long key = numericKey(account.getAccountId());
+    if (key == NO_INDEX) {
+      Account previousAccount = otherAccounts.putIfAbsent(account.getAccountId(), account);
+      if (previousAccount != null) {
+        throw duplicate(account.getAccountId());
+      }
+      return;
+    }
+
+    long units = BalanceCell.toMinorUnits(account.getBalance());
+    synchronized (writeLock) {
+      if (!insert(key, units)) {
+        throw duplicate(account.getAccountId());
+      }
+    }
+  }
+
+  /**
+   * Creates the accounts under one acquisition of the write lock.
+   */
+  @Override
+  public RuntimeException[] createAccounts(List<Account> accounts) {
+    RuntimeException[] failures = new RuntimeException[accounts.size()];
+    long[] keys = new long[failures.length];
+    long[] units = new long[failures.length];
+    for (int i = 0; i < failures.length; i++) {
+      Account account = accounts.get(i);
+      keys[i] = numericKey(account.getAccountId());
+      try {
+        if (keys[i] == NO_INDEX || account.getCurrency() != null) {
+          keys[i] = NO_INDEX;
+          createAccount(account);
+        } else {
+          units[i] = BalanceCell.toMinorUnits(account.getBalance());
+        }
+      } catch (RuntimeException ex) {
+        failures[i] = ex;
+      }
+    }
+    synchronized (writeLock) {
+      for (int i = 0; i < failures.length; i++) {
+        if (keys[i] != NO_INDEX && failures[i] == null && !insert(keys[i], units[i])) {
+          failures[i] = duplicate(accounts.get(i).getAccountId());
+        }
+      }
+    }
+    return failures;
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    long key = numericKey(accountId);
+    if (key == NO_INDEX) {
+      return otherAccounts.get(accountId);
+    }
+    long found = table.find(key);
+    if (found == NO_INDEX) {
+      return null;
+    }
+    int index = (int) found;
+    AtomicLongArray balances = balanceChunks[index >>> CHUNK_BITS];
+    AtomicLongArray versions = versionChunks[index >>> CHUNK_BITS];
+    return new Account(accountId, new ChunkBalanceCell(balances, versions, index & CHUNK_MASK), lockOf(index));
+  }
+
+  @Override
+  public void clearAccounts() {
+    synchronized (writeLock) {
+      table = new Table(INITIAL_CAPACITY);
+      balanceChunks = new AtomicLongArray[0];
+      versionChunks = new AtomicLongArray[0];
+      lockChunks = newLockChunks(0);
+      size = 0;
+      otherAccounts.clear();
+    }
+  }
+
+  /**
+   * Splits the numeric accounts into ranges of account indices, read straight from the balance
+   * chunks. The other accounts form a partition of their own.
+   */
+  @Override
+  public List<BalancePartition> getBalancePartitions(int count) {
+    int numericSize;
+    AtomicLongArray[] balances;
+    synchronized (writeLock) {
+      numericSize = size;
+      balances = balanceChunks;
+    }
+    List<BalancePartition> partitions = new ArrayList<>(count + 1);
+    int rangeSize = Math.max(1, (numericSize + count - 1) / Math.max(1, count));
+    for (int from = 0; from < numericSize; from += rangeSize) {
+      int start = from;
+      int end = Math.min(numericSize, from + rangeSize);
+      partitions.add(aggregate -> {
+        for (int index = start; index < end; ) {
+          AtomicLongArray chunk = balances[index >>> CHUNK_BITS];
+          int chunkEnd = Math.min(end, (index | CHUNK_MASK) + 1);
+          for (int offset = index & CHUNK_MASK; index < chunkEnd; index++, offset++) {
+            aggregate.add(chunk.get(offset));
+          }
+        }
+      });
+    }
+    partitions.add(aggregate -> otherAccounts.values().forEach(account -> aggregate.add(account.getBalance())));
+    return partitions;
+  }
+
+  /**
+   * @return number of accounts in the store
+   */
+  public int size() {
+    synchronized (writeLock) {
+      return size + otherAccounts.size();
+    }
+  }
+
+  /**
+   * Adds a numeric account, to be called holding the write lock.
+   * @return false if the account already exists
+   */
+  private boolean insert(long key, long units) {
+    if (table.find(key) != NO_INDEX) {
+      return false;
+    }
+    int index = size;
+    ensureChunk(index);
+    balanceChunks[index >>> CHUNK_BITS].set(index & CHUNK_MASK, units);
+    if ((size + 1) * 2 > table.capacity()) {
+      table = table.resize();
+    }
+    table.insert(key, index);
+    size++;
+    return true;
+  }
+
+  private AccountLock lockOf(int index) {
+    AtomicReferenceArray<AccountLock> locks = lockChunks[index >>> CHUNK_BITS];
+    int offset = index & CHUNK_MASK;
+    AccountLock lock = locks.get(offset);
+    if (lock == null) {
+      locks.compareAndSet(offset, null, new AccountLock());
+      lock = locks.get(offset);
+    }
+    return lock;
+  }
+
+  private void ensureChunk(int index) {
+    int chunk = index >>> CHUNK_BITS;
+    if (chunk < balanceChunks.length) {
+      return;
+    }
+    AtomicLongArray[] balances = new AtomicLongArray[chunk + 1];
+    System.arraycopy(balanceChunks, 0, balances, 0, balanceChunks.length);
+    balances[chunk] = new AtomicLongArray(CHUNK_SIZE);
+    AtomicLongArray[] versions = new AtomicLongArray[chunk + 1];
+    System.arraycopy(versionChunks, 0, versions, 0, versionChunks.length);
+    versions[chunk] = new AtomicLongArray(CHUNK_SIZE);
+    AtomicReferenceArray<AccountLock>[] locks = newLockChunks(chunk + 1);
+    System.arraycopy(lockChunks, 0, locks, 0, lockChunks.length);
+    locks[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+    // Locks and versions first: a reader seeing the new balance chunk must find the others too.
+    lockChunks = locks;
+    versionChunks = versions;
+    balanceChunks = balances;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AtomicReferenceArray<AccountLock>[] newLockChunks(int length) {
+    return new AtomicReferenceArray[length];
+  }
+
+  private static DuplicateAccountIdException duplicate(String accountId) {
+    return new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+  }
+
+  /**
+   * @return id + 1 if account id is a canonical non-negative number, {@link #NO_INDEX} otherwise
+   */
+  static long numericKey(String accountId) {
+    int length = accountId.length();
+    if (length == 0 || length > MAX_NUMERIC_ID_LENGTH || (length > 1 && accountId.charAt(0) == '0')) {
+      return NO_INDEX;
+    }
+    long id = 0;
+    for (int i = 0; i < length; i++) {
+      char digit = accountId.charAt(i);
+      if (digit < '0' || digit > '9') {
+        return NO_INDEX;
+      }
+      id = id * 10 + (digit - '0');
+    }
+    // Zero marks an empty slot in the table
+    return id + 1;
+  }
+
+  /**
+   * Open-addressing table with linear probing from account key to account index. Keys are
+   * published after their index so that lock-free readers never see a key without its index.
+   */
+  private static final class Table {
+
+    private final AtomicLongArray keys;
+
+    private final int[] indices;
+
+    private final int mask;
+
+    private Table(int capacity) {
+      this.keys = new AtomicLongArray(capacity);
+      this.indices = new int[capacity];
+      this.mask = capacity - 1;
+    }
+
+    private int capacity() {
+      return indices.length;
+    }
+
+    private long find(long key) {
+      for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+        long current = keys.get(slot);
+        if (current == key) {
+          return indices[slot];
+        }
+        if (current == 0) {
+          return NO_INDEX;
+        }
+      }
+    }
+
+    private void insert(long key, int index) {
+      int slot = slot(key);
+      while (keys.get(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      indices[slot] = index;
+      keys.set(slot, key);
+    }
+
+    private Table resize() {
+      Table resized = new Table(capacity() * 2);
+      for (int slot = 0; slot < capacity(); slot++) {
+        long key = keys.get(slot);
+        if (key != 0) {
+          resized.insert(key, indices[slot]);
+        }
+      }
+      return resized;
+    }
+
+    private int slot(long key) {
+      long hash = key * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+  }
+
+  /**
+   * Balance cell backed by a slot of a balance chunk.
+   */
+  private static final class ChunkBalanceCell extends BalanceCell {
+
+    private final AtomicLongArray balances;
+
+    private final AtomicLongArray versions;
+
+    private final int offset;
+
+    private ChunkBalanceCell(AtomicLongArray balances, AtomicLongArray versions, int offset) {
+      this.balances = balances;
+      this.versions = versions;
+      this.offset = offset;
+    }
+
+    @Override
+    public long get() {
+      return balances.get(offset);
+    }
+
+    @Override
+    public void set(long units) {
+      balances.set(offset, units);
+      incrementVersion();
+    }
+
+    @Override
+    protected boolean compareAndSet(long expected, long updated) {
+      return balances.compareAndSet(offset, expected, updated);
+    }
+
+    @Override
+    public long getVersion() {
+      return versions.get(offset);
+    }
+
+    @Override
+    protected void incrementVersion() {
+      versions.incrementAndGet(offset);
+    }
+  }
+}
@@ -1,23 +1,116 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Keeps accounts in memory. With 'journal.enabled' every account creation and transfer is
+ * written to the {@link AccountsJournal}, which is replayed on startup to rebuild the accounts.
+ * With 'snapshot.enabled' recovery starts from the latest snapshot and replays only the journal
+ * written after it. The journal keeps no currencies, accounts with a currency are rejected while
+ * it is enabled.
+ */
 @Repository
+@Profile("!compact")
+@Slf4j
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+  private final AccountsJournal journal;
+
+  private final AccountsSnapshotter snapshotter;
+
+  @Getter
+  private long recoveryMillis;
+
+  public AccountsRepositoryInMemory() {
+    this(null, null);
+  }
+
+  @Autowired
+  public AccountsRepositoryInMemory(AccountsJournal journal, AccountsSnapshotter snapshotter) {
+    this.journal = journal != null && journal.isEnabled() ? journal : null;
+    this.snapshotter = snapshotter != null && snapshotter.isEnabled() ? snapshotter : null;
+  }
+
+  @PostConstruct
+  public void recover() {
+    if (journal == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    long snapshotPosition = 0;
+    if (snapshotter != null) {
+      snapshotPosition = snapshotter.load((accountId, balance) ->
+        accounts.put(accountId, new Account(accountId, balance)));
+    }
+    long endPosition = journal.replay(snapshotPosition, new JournalReplay());
+    journal.open(endPosition);
+    recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+    log.info("Recovered {} accounts from snapshot at {} and journal up to {} in {} ms", accounts.size(),
+      snapshotPosition, endPosition, recoveryMillis);
+  }
+
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
+    checkCurrency(account);
     Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
     if (previousAccount != null) {
       throw new DuplicateAccountIdException(
         "Account id " + account.getAccountId() + " already exists!");
     }
+    if (journal != null) {
+      journal.appendCreate(account.getAccountId(), account.getBalance()).join();
+    }
+  }
+
+  /**
+   * Creates the accounts and, with the journal enabled, waits once until all of them are durable,
+   * so that they share journal writes.
+   */
+  @Override
+  public RuntimeException[] createAccounts(List<Account> newAccounts) {
+    RuntimeException[] failures = new RuntimeException[newAccounts.size()];
+    List<CompletableFuture<Void>> journaled = new ArrayList<>();
+    for (int i = 0; i < failures.length; i++) {
+      Account account = newAccounts.get(i);
+      if (journal != null && account.getCurrency() != null) {
+        failures[i] = currencyNotSupported();
+      } else if (accounts.putIfAbsent(account.getAccountId(), account) != null) {
+        failures[i] = new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+      } else if (journal != null) {
+        journaled.add(journal.appendCreate(account.getAccountId(), account.getBalance()));
+      }
+    }
+    CompletableFuture.allOf(journaled.toArray(new CompletableFuture<?>[0])).join();
+    return failures;
+  }
+
+  private void checkCurrency(Account account) {
+    if (journal != null && account.getCurrency() != null) {
+      throw currencyNotSupported();
+    }
+  }
+
+  private static CurrencyMismatchException currencyNotSupported() {
+    return new CurrencyMismatchException("Accounts with a currency are not supported while the journal is enabled.");
   }
 
   @Override
@@ -25,9 +118,79 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
     return accounts.get(accountId);
   }
 
+  /**
+   * Splits the account map by its own spliterator, which divides the hash table into ranges.
+   */
+  @Override
+  public List<BalancePartition> getBalancePartitions(int count) {
+    List<Spliterator<Account>> parts = new ArrayList<>(count);
+    parts.add(accounts.values().spliterator());
+    for (boolean split = true; split && parts.size() < count; ) {
+      split = false;
+      for (int i = parts.size() - 1; i >= 0 && parts.size() < count; i--) {
+        Spliterator<Account> part = parts.get(i).trySplit();
+        if (part != null) {
+          parts.add(part);
+          split = true;
+        }
+      }
+    }
+    List<BalancePartition> partitions = new ArrayList<>(parts.size());
+    for (Spliterator<Account> part : parts) {
+      partitions.add(aggregate -> part.forEachRemaining(account -> aggregate.add(account.getBalance())));
+    }
+    return partitions;
+  }
+
   @Override
   public void clearAccounts() {
     accounts.clear();
+    if (journal != null) {
+      journal.appendClear().join();
+    }
+  }
+
+  @Override
+  public Supplier<CompletableFuture<Void>> prepareTransfer(String accountFromId, String accountToId,
+      BigDecimal amount) {
+    if (journal == null) {
+      return AccountsRepository.super.prepareTransfer(accountFromId, accountToId, amount);
+    }
+    AccountsJournal.PendingRecord record;
+    try {
+      record = journal.prepareTransfer(accountFromId, accountToId, amount);
+    } catch (IllegalArgumentException ex) {
+      throw new InvalidTransferRequestException(ex.getMessage());
+    }
+    return () -> journal.append(record);
   }
 
+  /**
+   * Rebuilds the accounts from journal records. Transfers are journaled after they have been
+   * applied, so a transfer may show up before the creation of its account; deltas are
+   * commutative, therefore balances are simply summed up regardless of record order.
+   */
+  private class JournalReplay implements AccountsJournal.Visitor {
+
+    @Override
+    public void onCreate(String accountId, BigDecimal balance) {
+      add(accountId, balance);
+    }
+
+    @Override
+    public void onTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+      add(accountFromId, amount.negate());
+      add(accountToId, amount);
+    }
+
+    @Override
+    public void onClear() {
+      accounts.clear();
+    }
+
+    private void add(String accountId, BigDecimal amount) {
+      Account account = accounts.computeIfAbsent(accountId, Account::new);
+      account.setBalance(account.getBalance().add(amount));
+    }
+  }
 }
@@ -0,0 +1,251 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.SnapshotProperties;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Takes periodic point-in-time snapshots of the journaled account store, so that recovery loads the
+ * latest snapshot and replays only the journal written after it.
+ * <p>
+ * A snapshot is derived from the journal rather than from the live accounts: the previous snapshot
+ * is loaded into a private copy and the journal records up to the current durable position are
+ * applied to it. The result is exactly the state at that journal position and transfers are never
+ * stopped or slowed down while it is built.
+ * <p>
+ * Snapshot file layout: magic, format version, journal position, account count, then per account
+ * the UTF-8 id (length prefixed), balance scale and balance as scaled long, and finally a CRC32 of
+ * all account entries.
+ */
+@Component
+@Slf4j
+public class AccountsSnapshotter {
+
+  private static final int MAGIC = 0x41434E53;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 24;
+
+  private static final String SNAPSHOT_SUFFIX = ".snap";
+
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  private final SnapshotProperties properties;
+
+  private final AccountsJournal journal;
+
+  private ScheduledExecutorService scheduler;
+
+  @Autowired
+  public AccountsSnapshotter(SnapshotProperties properties, AccountsJournal journal) {
+    this.properties = properties;
+    this.journal = journal;
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled() && journal.isEnabled();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled()) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "accounts-snapshotter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::snapshotQuietly, properties.getIntervalSeconds(),
+      properties.getIntervalSeconds(), TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Loads the latest valid snapshot.
+   * @param consumer - receives id and balance of every account in the snapshot
+   * @return journal position covered by the snapshot, 0 if there is no snapshot
+   */
+  public long load(BiConsumer<String, BigDecimal> consumer) {
+    List<Long> positions = snapshotPositions();
+    for (int i = positions.size() - 1; i >= 0; i--) {
+      File file = snapshotFile(positions.get(i));
+      try {
+        return read(file, consumer);
+      } catch (IOException | RuntimeException ex) {
+        log.warn("Snapshot {} is not usable, trying an older one", file, ex);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes a snapshot of the state at the current durable journal position and removes journal
+   * segments and snapshots no longer needed.
+   * @return journal position covered by the new snapshot
+   */
+  public synchronized long snapshot() throws IOException {
+    long start = System.nanoTime();
+    Map<String, BigDecimal> balances = new HashMap<>();
+    long fromPosition = load(balances::put);
+    long position = journal.replay(fromPosition, journal.getPosition(), new AccountsJournal.Visitor() {
+
+      @Override
+      public void onCreate(String accountId, BigDecimal balance) {
+        balances.merge(accountId, balance, BigDecimal::add);
+      }
+
+      @Override
+      public void onTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+        balances.merge(accountFromId, amount.negate(), BigDecimal::add);
+        balances.merge(accountToId, amount, BigDecimal::add);
+      }
+
+      @Override
+      public void onClear() {
+        balances.clear();
+      }
+    });
+    if (position == fromPosition && fromPosition > 0) {
+      return position;
+    }
+
+    write(position, balances);
+    journal.deleteSegmentsBefore(position);
+    List<Long> positions = snapshotPositions();
+    for (int i = 0; i < positions.size() - Math.max(1, properties.getRetained()); i++) {
+      Files.deleteIfExists(snapshotFile(positions.get(i)).toPath());
+    }
+    log.info("Snapshot of {} accounts at journal position {} written in {} ms", balances.size(),
+      position, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return position;
+  }
+
+  private void snapshotQuietly() {
+    try {
+      snapshot();
+    } catch (Exception ex) {
+      log.error("Failed to take snapshot of accounts", ex);
+    }
+  }
+
+  private void write(long position, Map<String, BigDecimal> balances) throws IOException {
+    File target = snapshotFile(position);
+    File temporary = new File(target.getPath() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+      FileChannel channel = file.getChannel()) {
+      file.setLength(0);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+      buffer.putInt(MAGIC).putInt(VERSION).putLong(position).putLong(balances.size());
+      flush(channel, buffer, null);
+
+      for (Map.Entry<String, BigDecimal> balance : balances.entrySet()) {
+        byte[] id = balance.getKey().getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < id.length + 11) {
+          flush(channel, buffer, crc);
+        }
+        int scale = balance.getValue().scale();
+        if (scale != (byte) scale) {
+          throw new ArithmeticException("Balance of account " + balance.getKey() + " has unsupported scale");
+        }
+        buffer.putShort((short) id.length).put(id);
+        buffer.put((byte) scale);
+        buffer.putLong(balance.getValue().unscaledValue().longValueExact());
+      }
+      flush(channel, buffer, crc);
+      buffer.putInt((int) crc.getValue());
+      flush(channel, buffer, null);
+      channel.force(true);
+    }
+    Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+    buffer.flip();
+    if (crc != null) {
+      crc.update(buffer.duplicate());
+    }
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static long read(File file, BiConsumer<String, BigDecimal> consumer) throws IOException {
+    try (RandomAccessFile snapshot = new RandomAccessFile(file, "r");
+      FileChannel channel = snapshot.getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Not a snapshot file");
+      }
+      long position = buffer.getLong();
+      long count = buffer.getLong();
+
+      // Verify the checksum before handing out any account.
+      ByteBuffer entries = buffer.duplicate();
+      entries.position(HEADER_SIZE).limit(buffer.capacity() - 4);
+      CRC32 crc = new CRC32();
+      crc.update(entries);
+      if ((int) crc.getValue() != buffer.getInt(buffer.capacity() - 4)) {
+        throw new IOException("Snapshot checksum does not match");
+      }
+
+      byte[] id = new byte[0xFFFF];
+      for (long i = 0; i < count; i++) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.get(id, 0, length);
+        int scale = buffer.get();
+        long unscaled = buffer.getLong();
+        consumer.accept(new String(id, 0, length, StandardCharsets.UTF_8), BigDecimal.valueOf(unscaled, scale));
+      }
+      return position;
+    }
+  }
+
+  private List<Long> snapshotPositions() {
+    List<Long> positions = new ArrayList<>();
+    File[] files = journal.getDirectory().listFiles((dir, name) -> name.endsWith(SNAPSHOT_SUFFIX));
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        positions.add(Long.parseLong(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length())));
+      }
+    }
+    positions.sort(null);
+    return positions;
+  }
+
+  private File snapshotFile(long position) {
+    return new File(journal.getDirectory(), String.format("%020d%s", position, SNAPSHOT_SUFFIX));
+  }
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.BalanceAggregate;
+
+/**
+ * Part of the accounts of a repository, scanned on its own and in parallel with the other parts.
+ */
+public interface BalancePartition {
+
+  /**
+   * Adds the balance of every account of this partition to the aggregate. A partition is scanned
+   * once.
+   * @param aggregate - aggregate of this partition
+   */
+  void scan(BalanceAggregate aggregate);
+}
@@ -0,0 +1,641 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.LedgerProperties;
+import com.db.awmd.challenge.domain.Money;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only in-memory ledger of executed transfers with a per-account index for statements.
+ * <p>
+ * Transfers are numbered by a global sequence and stored in fixed-size columnar segments: time,
+ * both account ids as codes of an account dictionary, and debited amount, credited amount and both
+ * balances after the transfer as unscaled value and scale. Both amounts differ only for transfers
+ * between currencies, the credited one is compressed as its difference to the debited one. A full segment is sealed by a background thread: its columns
+ * are compressed block by block with delta-encoded times and variable-length integers, so that one
+ * block of {@link #BLOCK_SIZE} entries can be decoded without touching the rest of the segment.
+ * <p>
+ * Every account keeps the ascending sequences of its transfers in chunks. Sequence and time are
+ * assigned under a short lock, so times never decrease with the sequence and a statement finds its
+ * first entry by binary search in the account index, then reads entries one by one.
+ * <p>
+ * The balance engine appends a transfer while it still holds the locks of both accounts, so the
+ * transfers of an account are in the order they changed its balance.
+ */
+@Component
+@Slf4j
+public class TransferLedger {
+
+  static final int BLOCK_SIZE = 128;
+
+  private static final int CHUNK_BITS = 10;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final boolean enabled;
+
+  private final int segmentBits;
+
+  private final int segmentMask;
+
+  private final Object appendLock = new Object();
+
+  private final Map<String, AccountIndex> accounts = new ConcurrentHashMap<>();
+
+  private final ExecutorService sealer;
+
+  private final LongAdder sealedBytes = new LongAdder();
+
+  private final LongAdder sealedSegments = new LongAdder();
+
+  // Account id of every dictionary code, chunks are added under appendLock.
+  private volatile String[][] accountIds = new String[0][];
+
+  private volatile Segment[] segments = new Segment[0];
+
+  // Number of appended entries, written under appendLock after the entry is complete.
+  private volatile long size;
+
+  private int accountCount;
+
+  private long lastTime;
+
+  @Autowired
+  public TransferLedger(LedgerProperties properties) {
+    this.enabled = properties.isEnabled();
+    int segmentSize = Integer.highestOneBit(Math.max(BLOCK_SIZE, properties.getSegmentSize()) * 2 - 1);
+    this.segmentBits = Integer.numberOfTrailingZeros(segmentSize);
+    this.segmentMask = segmentSize - 1;
+    this.sealer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ledger-sealer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    sealer.shutdown();
+    sealer.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return ledger which records nothing, for balance engines used without a ledger
+   */
+  public static TransferLedger disabled() {
+    LedgerProperties properties = new LedgerProperties();
+    properties.setEnabled(false);
+    return new TransferLedger(properties);
+  }
+
+  /**
+   * Appends an applied transfer.
+   * @param accountFromId - account which has been debited
+   * @param accountToId - account which has been credited
+   * @param amount - transferred amount
+   * @param accFromBalance - balance of the debited account after the transfer
+   * @param accToBalance - balance of the credited account after the transfer
+   */
+  public void record(String accountFromId, String accountToId, BigDecimal amount, BigDecimal accFromBalance,
+    BigDecimal accToBalance) {
+    record(accountFromId, accountToId, amount, amount, accFromBalance, accToBalance);
+  }
+
+  /**
+   * Appends an applied transfer between accounts in different currencies.
+   * @param accountFromId - account which has been debited
+   * @param accountToId - account which has been credited
+   * @param amount - debited amount, in the currency of the debited account
+   * @param creditedAmount - credited amount, in the currency of the credited account
+   * @param accFromBalance - balance of the debited account after the transfer
+   * @param accToBalance - balance of the credited account after the transfer
+   */
+  public void record(String accountFromId, String accountToId, BigDecimal amount, BigDecimal creditedAmount,
+    BigDecimal accFromBalance, BigDecimal accToBalance) {
+    if (!enabled) {
+      return;
+    }
+    long unscaledAmount;
+    long unscaledCredit;
+    long unscaledFromBalance;
+    long unscaledToBalance;
+    try {
+      unscaledAmount = unscaled(amount);
+      unscaledCredit = unscaled(creditedAmount);
+      unscaledFromBalance = unscaled(accFromBalance);
+      unscaledToBalance = unscaled(accToBalance);
+    } catch (ArithmeticException ex) {
+      log.warn("Transfer from {} to {} of {} does not fit into the ledger", accountFromId, accountToId, amount);
+      return;
+    }
+    append(accountFromId, accountToId, unscaledAmount, (byte) amount.scale(), unscaledCredit,
+      (byte) creditedAmount.scale(), unscaledFromBalance, (byte) accFromBalance.scale(), unscaledToBalance,
+      (byte) accToBalance.scale());
+  }
+
+  /**
+   * Appends an applied transfer given in minor units, without allocating. Called by the balance
+   * engine while it holds the locks of both accounts, so that entries follow the order of balance
+   * changes.
+   * @param accountFromId - account which has been debited
+   * @param accountToId - account which has been credited
+   * @param debitUnits - debited amount in minor units of the debited account
+   * @param creditUnits - credited amount in minor units of the credited account
+   * @param accFromBalance - balance of the debited account after the transfer in minor units
+   * @param accToBalance - balance of the credited account after the transfer in minor units
+   */
+  public void recordUnits(String accountFromId, String accountToId, long debitUnits, long creditUnits,
+    long accFromBalance, long accToBalance) {
+    if (!enabled) {
+      return;
+    }
+    append(accountFromId, accountToId, debitUnits, (byte) Money.SCALE, creditUnits, (byte) Money.SCALE,
+      accFromBalance, (byte) Money.SCALE, accToBalance, (byte) Money.SCALE);
+  }
+
+  private void append(String accountFromId, String accountToId, long unscaledAmount, byte amountScale,
+    long unscaledCredit, byte creditScale, long unscaledFromBalance, byte fromScale, long unscaledToBalance,
+    byte toScale) {
+    synchronized (appendLock) {
+      long sequence = size;
+      Segment segment = segmentOf(sequence);
+      int offset = (int) (sequence & segmentMask);
+      lastTime = Math.max(lastTime, System.currentTimeMillis());
+      AccountIndex from = indexOf(accountFromId);
+      AccountIndex to = indexOf(accountToId);
+      Columns columns = segment.open;
+      columns.times[offset] = lastTime;
+      columns.fromCodes[offset] = from.code;
+      columns.toCodes[offset] = to.code;
+      columns.amounts[offset] = unscaledAmount;
+      columns.amountScales[offset] = amountScale;
+      columns.credits[offset] = unscaledCredit;
+      columns.creditScales[offset] = creditScale;
+      columns.fromBalances[offset] = unscaledFromBalance;
+      columns.fromScales[offset] = fromScale;
+      columns.toBalances[offset] = unscaledToBalance;
+      columns.toScales[offset] = toScale;
+      from.add(sequence);
+      if (to != from) {
+        to.add(sequence);
+      }
+      size = sequence + 1;
+      if (offset == segmentMask) {
+        sealer.execute(() -> seal(segment));
+      }
+    }
+  }
+
+  /**
+   * Reads the transfers of an account in ascending sequence. Entries appended after this call are
+   * not part of the statement.
+   * @param accountId - id of the account
+   * @param fromTime - inclusive lower bound of the transfer time in epoch milliseconds
+   * @param toTime - exclusive upper bound of the transfer time in epoch milliseconds
+   * @param afterSequence - only transfers with a higher sequence are read, -1 to read from the start
+   * @return statement positioned before its first transfer
+   */
+  public Statement statement(String accountId, long fromTime, long toTime, long afterSequence) {
+    AccountIndex index = accounts.get(accountId);
+    if (index == null) {
+      return new Statement(null, 0, 0, toTime);
+    }
+    int end = index.size;
+    Statement statement = new Statement(index, 0, end, toTime);
+    int low = 0;
+    int high = end;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (index.get(middle) <= afterSequence) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    // Times never decrease, nothing to skip if the first transfer after the cursor is in range
+    high = low < end && statement.timeAt(low) < fromTime ? end : low;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (statement.timeAt(middle) < fromTime) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    statement.position = low;
+    return statement;
+  }
+
+  /**
+   * @return number of transfers in the ledger
+   */
+  public long getSize() {
+    return size;
+  }
+
+  public long getSealedSegmentCount() {
+    return sealedSegments.sum();
+  }
+
+  /**
+   * @return size of all sealed segments after compression
+   */
+  public long getSealedBytes() {
+    return sealedBytes.sum();
+  }
+
+  private Segment segmentOf(long sequence) {
+    int index = (int) (sequence >>> segmentBits);
+    Segment[] current = segments;
+    if (index < current.length) {
+      return current[index];
+    }
+    Segment[] grown = new Segment[index + 1];
+    System.arraycopy(current, 0, grown, 0, current.length);
+    grown[index] = new Segment(new Columns(segmentMask + 1));
+    segments = grown;
+    return grown[index];
+  }
+
+  private AccountIndex indexOf(String accountId) {
+    AccountIndex index = accounts.get(accountId);
+    if (index != null) {
+      return index;
+    }
+    int code = accountCount++;
+    String[][] ids = accountIds;
+    if ((code >>> CHUNK_BITS) == ids.length) {
+      String[][] grown = new String[ids.length + 1][];
+      System.arraycopy(ids, 0, grown, 0, ids.length);
+      grown[ids.length] = new String[CHUNK_SIZE];
+      ids = grown;
+    }
+    ids[code >>> CHUNK_BITS][code & CHUNK_MASK] = accountId;
+    accountIds = ids;
+    index = new AccountIndex(code);
+    accounts.put(accountId, index);
+    return index;
+  }
+
+  private String accountId(int code) {
+    return accountIds[code >>> CHUNK_BITS][code & CHUNK_MASK];
+  }
+
+  private void seal(Segment segment) {
+    Columns open = segment.open;
+    int blocks = open.times.length / BLOCK_SIZE;
+    int[] blockOffsets = new int[blocks];
+    ByteArrayOutputStream out = new ByteArrayOutputStream(open.times.length * 16);
+    long[] creditDifferences = new long[open.times.length];
+    for (int block = 0; block < blocks; block++) {
+      blockOffsets[block] = out.size();
+      int start = block * BLOCK_SIZE;
+      long previousTime = 0;
+      for (int i = start; i < start + BLOCK_SIZE; i++) {
+        writeVarLong(out, open.times[i] - previousTime);
+        previousTime = open.times[i];
+      }
+      for (int i = start; i < start + BLOCK_SIZE; i++) {
+        writeVarLong(out, open.fromCodes[i]);
+      }
+      for (int i = start; i < start + BLOCK_SIZE; i++) {
+        writeVarLong(out, open.toCodes[i]);
+      }
+      writeUnscaled(out, open.amounts, open.amountScales, start);
+      for (int i = start; i < start + BLOCK_SIZE; i++) {
+        creditDifferences[i] = open.credits[i] - open.amounts[i];
+      }
+      writeUnscaled(out, creditDifferences, open.creditScales, start);
+      writeUnscaled(out, open.fromBalances, open.fromScales, start);
+      writeUnscaled(out, open.toBalances, open.toScales, start);
+    }
+    segment.sealed = new SealedColumns(out.toByteArray(), blockOffsets);
+    segment.open = null;
+    sealedSegments.increment();
+    sealedBytes.add(out.size());
+  }
+
+  private static long unscaled(BigDecimal value) {
+    if (value.scale() != (byte) value.scale()) {
+      throw new ArithmeticException("Scale of " + value + " is out of range");
+    }
+    return value.unscaledValue().longValueExact();
+  }
+
+  private static void writeUnscaled(ByteArrayOutputStream out, long[] unscaled, byte[] scales, int start) {
+    for (int i = start; i < start + BLOCK_SIZE; i++) {
+      writeVarLong(out, (unscaled[i] << 1) ^ (unscaled[i] >> 63));
+    }
+    out.write(scales, start, BLOCK_SIZE);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Ascending sequences of the transfers of one account, in chunks so that growing never copies
+   * them. Written under the append lock, read without locking up to the published size.
+   */
+  private static final class AccountIndex {
+
+    private final int code;
+
+    private volatile long[][] chunks = new long[0][];
+
+    private volatile int size;
+
+    private AccountIndex(int code) {
+      this.code = code;
+    }
+
+    private void add(long sequence) {
+      int position = size;
+      long[][] current = chunks;
+      if ((position >>> CHUNK_BITS) == current.length) {
+        long[][] grown = new long[current.length + 1][];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new long[CHUNK_SIZE];
+        current = grown;
+        chunks = grown;
+      }
+      current[position >>> CHUNK_BITS][position & CHUNK_MASK] = sequence;
+      size = position + 1;
+    }
+
+    private long get(int position) {
+      return chunks[position >>> CHUNK_BITS][position & CHUNK_MASK];
+    }
+  }
+
+  /**
+   * Segment of the ledger, open while it is filled and sealed once it is full.
+   */
+  private static final class Segment {
+
+    // Sealed columns are set before the open ones are dropped, readers check open first.
+    private volatile Columns open;
+
+    private volatile SealedColumns sealed;
+
+    private Segment(Columns open) {
+      this.open = open;
+    }
+  }
+
+  /**
+   * Uncompressed columns of an open segment or of one decoded block.
+   */
+  private static final class Columns {
+
+    private final long[] times;
+
+    private final int[] fromCodes;
+
+    private final int[] toCodes;
+
+    private final long[] amounts;
+
+    private final long[] credits;
+
+    private final long[] fromBalances;
+
+    private final long[] toBalances;
+
+    private final byte[] amountScales;
+
+    private final byte[] creditScales;
+
+    private final byte[] fromScales;
+
+    private final byte[] toScales;
+
+    private Columns(int size) {
+      this.times = new long[size];
+      this.fromCodes = new int[size];
+      this.toCodes = new int[size];
+      this.amounts = new long[size];
+      this.credits = new long[size];
+      this.fromBalances = new long[size];
+      this.toBalances = new long[size];
+      this.amountScales = new byte[size];
+      this.creditScales = new byte[size];
+      this.fromScales = new byte[size];
+      this.toScales = new byte[size];
+    }
+  }
+
+  /**
+   * Compressed columns of a sealed segment, block by block.
+   */
+  private static final class SealedColumns {
+
+    private final byte[] data;
+
+    private final int[] blockOffsets;
+
+    private SealedColumns(byte[] data, int[] blockOffsets) {
+      this.data = data;
+      this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Decodes the time of one entry, times are the first column of a block.
+     */
+    private long decodeTime(int block, int offset) {
+      int[] position = {blockOffsets[block]};
+      long time = 0;
+      for (int i = 0; i <= offset; i++) {
+        time += readVarLong(position);
+      }
+      return time;
+    }
+
+    private void decode(int block, Columns target) {
+      int[] position = {blockOffsets[block]};
+      long time = 0;
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        time += readVarLong(position);
+        target.times[i] = time;
+      }
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        target.fromCodes[i] = (int) readVarLong(position);
+      }
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        target.toCodes[i] = (int) readVarLong(position);
+      }
+      readUnscaled(position, target.amounts, target.amountScales);
+      readUnscaled(position, target.credits, target.creditScales);
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        target.credits[i] += target.amounts[i];
+      }
+      readUnscaled(position, target.fromBalances, target.fromScales);
+      readUnscaled(position, target.toBalances, target.toScales);
+    }
+
+    private void readUnscaled(int[] position, long[] unscaled, byte[] scales) {
+      for (int i = 0; i < BLOCK_SIZE; i++) {
+        long zigZag = readVarLong(position);
+        unscaled[i] = (zigZag >>> 1) ^ -(zigZag & 1);
+      }
+      System.arraycopy(data, position[0], scales, 0, BLOCK_SIZE);
+      position[0] += BLOCK_SIZE;
+    }
+
+    private long readVarLong(int[] position) {
+      long value = 0;
+      int shift = 0;
+      byte next;
+      do {
+        next = data[position[0]++];
+        value |= (long) (next & 0x7F) << shift;
+        shift += 7;
+      } while (next < 0);
+      return value;
+    }
+  }
+
+  /**
+   * Cursor over the transfers of one account. The current transfer is described from the point of
+   * view of the account: the amount is in the currency of the account and negative for a debit, and
+   * the balance is the balance of the account after the transfer. Not thread-safe.
+   */
+  public final class Statement {
+
+    private final AccountIndex index;
+
+    private final int end;
+
+    private final long toTime;
+
+    private int position;
+
+    // Last decoded block of a sealed segment.
+    private final Columns decoded = new Columns(BLOCK_SIZE);
+
+    private Segment decodedSegment;
+
+    private int decodedBlock = -1;
+
+    private long sequence;
+
+    private long time;
+
+    private String counterpartyId;
+
+    private BigDecimal amount;
+
+    private BigDecimal balance;
+
+    private Statement(AccountIndex index, int position, int end, long toTime) {
+      this.index = index;
+      this.position = position;
+      this.end = end;
+      this.toTime = toTime;
+    }
+
+    /**
+     * Moves to the next transfer.
+     * @return false if there are no more transfers in the requested range
+     */
+    public boolean next() {
+      if (position >= end) {
+        return false;
+      }
+      long current = index.get(position);
+      Columns columns = columnsOf(current);
+      int offset = offsetIn(columns, current);
+      if (columns.times[offset] >= toTime) {
+        position = end;
+        return false;
+      }
+      sequence = current;
+      time = columns.times[offset];
+      boolean debit = columns.fromCodes[offset] == index.code;
+      counterpartyId = accountId(debit ? columns.toCodes[offset] : columns.fromCodes[offset]);
+      amount = debit ? BigDecimal.valueOf(columns.amounts[offset], columns.amountScales[offset]).negate()
+        : BigDecimal.valueOf(columns.credits[offset], columns.creditScales[offset]);
+      balance = debit ? BigDecimal.valueOf(columns.fromBalances[offset], columns.fromScales[offset])
+        : BigDecimal.valueOf(columns.toBalances[offset], columns.toScales[offset]);
+      position++;
+      return true;
+    }
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return time of the transfer in epoch milliseconds
+     */
+    public long getTime() {
+      return time;
+    }
+
+    public String getCounterpartyId() {
+      return counterpartyId;
+    }
+
+    public BigDecimal getAmount() {
+      return amount;
+    }
+
+    public BigDecimal getBalance() {
+      return balance;
+    }
+
+    private long timeAt(int indexPosition) {
+      long current = index.get(indexPosition);
+      Segment segment = segments[(int) (current >>> segmentBits)];
+      Columns open = segment.open;
+      int offset = (int) (current & segmentMask);
+      if (open != null) {
+        return open.times[offset];
+      }
+      return segment.sealed.decodeTime(offset / BLOCK_SIZE, offset & (BLOCK_SIZE - 1));
+    }
+
+    private int offsetIn(Columns columns, long current) {
+      int offset = (int) (current & segmentMask);
+      return columns == decoded ? offset & (BLOCK_SIZE - 1) : offset;
+    }
+
+    /**
+     * @return open columns of the segment holding the sequence, or the decoded block holding it
+     */
+    private Columns columnsOf(long current) {
+      Segment segment = segments[(int) (current >>> segmentBits)];
+      Columns open = segment.open;
+      if (open != null) {
+        return open;
+      }
+      int block = (int) (current & segmentMask) / BLOCK_SIZE;
+      if (segment != decodedSegment || block != decodedBlock) {
+        segment.sealed.decode(block, decoded);
+        decodedSegment = segment;
+        decodedBlock = block;
+      }
+      return decoded;
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.ImportProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ImportFormat;
+import com.db.awmd.challenge.domain.ImportRow;
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.db.awmd.challenge.domain.Money;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Imports accounts from a CSV or NDJSON stream without reading the whole stream into memory.
+ * <p>
+ * Rows are read in chunks. The rows of a chunk are parsed and validated in parallel, with the same
+ * constraints as a single account creation, while the next chunk is read. Valid rows are then
+ * created in one batch through
+ * {@link com.db.awmd.challenge.repository.AccountsRepository#createAccounts}. A row which cannot be
+ * imported, also because its account id exists already, is reported and does not stop the import.
+ */
+@Service
+@Slf4j
+public class AccountImporter {
+
+  private static final String CSV_HEADER = "accountid";
+
+  private final AccountsService accountsService;
+
+  private final ObjectMapper objectMapper;
+
+  private final Validator validator;
+
+  private final int chunkSize;
+
+  private final int threads;
+
+  private final ExecutorService executor;
+
+  /**
+   * Receives every row which could not be imported, in row order.
+   */
+  public interface FailureListener {
+
+    void onFailure(ImportRow row) throws IOException;
+  }
+
+  @Autowired
+  public AccountImporter(AccountsService accountsService, ObjectMapper objectMapper, Validator validator,
+    ImportProperties properties) {
+    this.accountsService = accountsService;
+    this.objectMapper = objectMapper;
+    this.validator = validator;
+    this.chunkSize = Math.max(1, properties.getChunkSize());
+    this.threads = Math.max(1, properties.getThreads());
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "account-import-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Imports all rows of the reader.
+   * @param reader - rows to be imported
+   * @param format - format of the rows
+   * @param listener - receives the rows which could not be imported
+   * @return number of rows, imported and failed accounts
+   * @throws IOException if the rows cannot be read or the listener fails
+   */
+  public ImportSummary importAccounts(BufferedReader reader, ImportFormat format, FailureListener listener)
+    throws IOException {
+    long start = System.nanoTime();
+    long rows = 0;
+    long imported = 0;
+    CompletableFuture<List<ImportRow>> previous = null;
+    List<ImportRow> chunk;
+    do {
+      chunk = readChunk(reader, format, rows);
+      rows += chunk.size();
+      CompletableFuture<List<ImportRow>> current = chunk.isEmpty() ? null : parse(chunk, format);
+      // Insert the previous chunk while the current one is parsed
+      if (previous != null) {
+        imported += insert(await(previous), listener);
+      }
+      previous = current;
+    } while (!chunk.isEmpty());
+
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    ImportSummary summary = new ImportSummary(rows, imported, rows - imported, millis);
+    log.info("Imported {} of {} accounts in {} ms ({} accounts/s)", imported, rows, millis,
+      summary.getAccountsPerSecond());
+    return summary;
+  }
+
+  private List<ImportRow> readChunk(BufferedReader reader, ImportFormat format, long firstIndex) throws IOException {
+    List<ImportRow> chunk = new ArrayList<>(chunkSize);
+    String line;
+    while (chunk.size() < chunkSize && (line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      boolean header = format == ImportFormat.CSV && firstIndex == 0 && chunk.isEmpty()
+        && line.trim().toLowerCase().startsWith(CSV_HEADER);
+      if (!header) {
+        chunk.add(new ImportRow(firstIndex + chunk.size(), line));
+      }
+    }
+    return chunk;
+  }
+
+  /**
+   * Parses and validates the rows of a chunk in slices on the import threads.
+   */
+  private CompletableFuture<List<ImportRow>> parse(List<ImportRow> chunk, ImportFormat format) {
+    int slices = Math.min(threads, chunk.size());
+    int sliceSize = (chunk.size() + slices - 1) / slices;
+    List<CompletableFuture<Void>> parsed = new ArrayList<>(slices);
+    for (int from = 0; from < chunk.size(); from += sliceSize) {
+      List<ImportRow> slice = chunk.subList(from, Math.min(chunk.size(), from + sliceSize));
+      parsed.add(CompletableFuture.runAsync(() -> slice.forEach(row -> parse(row, format)), executor));
+    }
+    return CompletableFuture.allOf(parsed.toArray(new CompletableFuture<?>[0])).thenApply(done -> chunk);
+  }
+
+  private void parse(ImportRow row, ImportFormat format) {
+    Account account = format == ImportFormat.CSV ? parseCsv(row) : parseJson(row);
+    if (account == null) {
+      return;
+    }
+    row.setAccountId(account.getAccountId());
+    // Bean validation costs microseconds per row, it is only needed to describe an invalid account
+    if (isValid(account)) {
+      row.setAccount(account);
+      return;
+    }
+    Set<ConstraintViolation<Account>> violations = validator.validate(account);
+    if (violations.isEmpty()) {
+      row.setAccount(account);
+      return;
+    }
+    Set<String> messages = new TreeSet<>();
+    for (ConstraintViolation<Account> violation : violations) {
+      messages.add(violation.getPropertyPath() + ": " + violation.getMessage());
+    }
+    row.setError(String.join("; ", messages));
+  }
+
+  /**
+   * Checks the constraints declared on {@link Account} without the validator.
+   */
+  private static boolean isValid(Account account) {
+    return account.getAccountId() != null && !account.getAccountId().isEmpty()
+      && account.getBalance() != null && account.getBalance().signum() >= 0 && Money.fits(account.getBalance());
+  }
+
+  private Account parseCsv(ImportRow row) {
+    String line = row.getLine();
+    int comma = line.indexOf(',');
+    if (comma < 0 || line.indexOf(',', comma + 1) >= 0) {
+      row.setError("Expected accountId and balance separated by a comma.");
+      return null;
+    }
+    String accountId = unquote(line.substring(0, comma).trim());
+    String balance = unquote(line.substring(comma + 1).trim());
+    row.setAccountId(accountId);
+    try {
+      return new Account(accountId, balance.isEmpty() ? null : new BigDecimal(balance));
+    } catch (NumberFormatException ex) {
+      row.setError("Invalid balance '" + balance + "'.");
+      return null;
+    }
+  }
+
+  private Account parseJson(ImportRow row) {
+    try {
+      return objectMapper.readValue(row.getLine(), Account.class);
+    } catch (JsonProcessingException ex) {
+      row.setError("Invalid JSON: " + ex.getOriginalMessage());
+      return null;
+    } catch (IOException ex) {
+      row.setError("Invalid JSON: " + ex.getMessage());
+      return null;
+    }
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+  /**
+   * Creates the valid accounts of a chunk in one batch and reports the failed rows.
+   * @return number of created accounts
+   */
+  private long insert(List<ImportRow> chunk, FailureListener listener) throws IOException {
+    List<ImportRow> valid = new ArrayList<>(chunk.size());
+    List<Account> accounts = new ArrayList<>(chunk.size());
+    for (ImportRow row : chunk) {
+      if (row.isValid()) {
+        valid.add(row);
+        accounts.add(row.getAccount());
+      }
+    }
+    RuntimeException[] failures = accountsService.createAccounts(accounts);
+    for (int i = 0; i < failures.length; i++) {
+      if (failures[i] != null) {
+        valid.get(i).setError(failures[i].getMessage());
+      }
+    }
+
+    long created = 0;
+    for (ImportRow row : chunk) {
+      if (row.getError() != null) {
+        listener.onFailure(row);
+      } else {
+        created++;
+      }
+    }
+    return created;
+  }
+
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while importing accounts", ex);
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Failed to parse accounts", ex.getCause());
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.ReadCacheProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.util.ExpiringCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of accounts serialized to JSON, keyed by account id. An account is serialized once per
+ * version; reads of an unchanged account return the cached bytes. Reads take a snapshot of the
+ * account without its lock, so they never wait for transfers. A snapshot may pair a balance with
+ * the version before it, therefore a hit requires the balance to match as well.
+ */
+@Component
+public class AccountReadCache {
+
+  private final ObjectMapper objectMapper;
+
+  private final boolean enabled;
+
+  // Latest serialized version per account id, a hit requires version and balance to match.
+  private final ExpiringCache<String, SerializedAccount> cache;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  @Autowired
+  public AccountReadCache(ReadCacheProperties properties, ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    this.enabled = properties.isEnabled();
+    this.cache = new ExpiringCache<>(properties.getStripes(), properties.getMaxEntries(),
+      properties.getTtlSeconds(), TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param account - account to be serialized
+   * @return JSON of the account at its current version
+   */
+  public SerializedAccount get(Account account) {
+    AccountSnapshot snapshot = account.getSnapshot();
+    SerializedAccount cached = enabled ? cache.get(account.getAccountId()) : null;
+    if (cached != null && cached.version == snapshot.getVersion()
+      && cached.balance.compareTo(snapshot.getBalance()) == 0) {
+      hits.increment();
+      return cached;
+    }
+    misses.increment();
+    SerializedAccount serialized = serialize(snapshot);
+    if (enabled) {
+      cache.put(account.getAccountId(), serialized);
+    }
+    return serialized;
+  }
+
+  /**
+   * Forgets the account, to be called when an account id may start again from version 0.
+   * @param accountId - id of the account
+   */
+  public void invalidate(String accountId) {
+    cache.remove(accountId);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  private SerializedAccount serialize(AccountSnapshot snapshot) {
+    try {
+      return new SerializedAccount(snapshot.getVersion(), snapshot.getBalance(),
+        objectMapper.writeValueAsBytes(snapshot));
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Account " + snapshot.getAccountId() + " cannot be serialized", ex);
+    }
+  }
+
+  /**
+   * JSON of an account with its entity tag. The tag is derived from the balance and the content,
+   * not from the version, so it always describes the JSON it is sent with.
+   */
+  @Getter
+  public static final class SerializedAccount {
+
+    private final long version;
+
+    private final BigDecimal balance;
+
+    private final byte[] json;
+
+    private final String eTag;
+
+    private SerializedAccount(long version, BigDecimal balance, byte[] json) {
+      this.version = version;
+      this.balance = balance;
+      this.json = json;
+      this.eTag = "\"" + balance.toPlainString() + "-" + Integer.toHexString(Arrays.hashCode(json)) + "\"";
+    }
+  }
+}
@@ -1,15 +1,38 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.config.IdempotencyProperties;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferContext;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.util.ExpiringCache;
 import static com.db.awmd.challenge.util.Constants.*;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.minidev.json.JSONObject;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -21,12 +44,56 @@ public class AccountsService {
   private final AccountsRepository accountsRepository;
 
   @Getter 
-  private NotificationService emailNotificationService;
+  private final NotificationDispatcher notificationDispatcher;
+
+  @Getter
+  private final BalanceEngine balanceEngine;
+
+  @Getter
+  private final TransferMetrics transferMetrics;
+
+  @Getter
+  private final TransferAuditLog auditLog;
+
+  @Getter
+  private final AccountReadCache accountReadCache;
+
+  @Getter
+  private final TransferLedger transferLedger;
+
+  private final HotAccountStriping hotAccountStriping;
+
+  @Getter
+  private final TransferNetting transferNetting;
+
+  @Getter
+  private final FxRateCache fxRateCache;
+
+  // Every change of balances passes this gate, a balance report closes it for a consistent view.
+  @Getter
+  private final TransferGate transferGate = new TransferGate();
+
+  // Transfers by idempotency key, completed once the first request with the key has finished.
+  private final ExpiringCache<String, IdempotentTransfer> idempotentTransfers;
   
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository, NotificationService emailNotificationService) {
+  public AccountsService(AccountsRepository accountsRepository, NotificationDispatcher notificationDispatcher,
+		  BalanceEngine balanceEngine, TransferMetrics transferMetrics, TransferAuditLog auditLog,
+		  IdempotencyProperties idempotencyProperties, AccountReadCache accountReadCache,
+		  TransferLedger transferLedger, HotAccountStriping hotAccountStriping, TransferNetting transferNetting,
+		  FxRateCache fxRateCache) {
     this.accountsRepository = accountsRepository;
-    this.emailNotificationService = emailNotificationService;
+    this.notificationDispatcher = notificationDispatcher;
+    this.balanceEngine = balanceEngine;
+    this.transferMetrics = transferMetrics;
+    this.auditLog = auditLog;
+    this.accountReadCache = accountReadCache;
+    this.transferLedger = transferLedger;
+    this.hotAccountStriping = hotAccountStriping;
+    this.transferNetting = transferNetting;
+    this.fxRateCache = fxRateCache;
+    this.idempotentTransfers = new ExpiringCache<>(idempotencyProperties.getStripes(),
+    		idempotencyProperties.getMaxEntries(), idempotencyProperties.getTtlSeconds(), TimeUnit.SECONDS);
   }
  
   /**
@@ -34,7 +101,36 @@ public class AccountsService {
    * @param account - account details of customer
    */
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    this.hotAccountStriping.prepare(account);
+    int stripe = transferGate.enter();
+    try {
+      this.accountsRepository.createAccount(account);
+    } finally {
+      transferGate.exit(stripe);
+    }
+    this.accountReadCache.invalidate(account.getAccountId());
+  }
+
+  /**
+   * Creates many accounts of customers at once
+   * @param accounts - account details of customers
+   * @return for every account the exception it failed with, null if it has been created
+   */
+  public RuntimeException[] createAccounts(List<Account> accounts) {
+    RuntimeException[] failures;
+    accounts.forEach(this.hotAccountStriping::prepare);
+    int stripe = transferGate.enter();
+    try {
+      failures = this.accountsRepository.createAccounts(accounts);
+    } finally {
+      transferGate.exit(stripe);
+    }
+    for (int i = 0; i < failures.length; i++) {
+      if (failures[i] == null) {
+        this.accountReadCache.invalidate(accounts.get(i).getAccountId());
+      }
+    }
+    return failures;
   }
 
   /**
@@ -45,27 +141,105 @@ public class AccountsService {
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
+
+  /**
+   * Returns account details of given account ID serialized to JSON, without waiting for transfers
+   * @param accountId - account whose details need to be returned
+   * @return JSON of the account at its current version, null if the account does not exist
+   */
+  public AccountReadCache.SerializedAccount getSerializedAccount(String accountId) {
+    Account account = this.accountsRepository.getAccount(accountId);
+    return account == null ? null : this.accountReadCache.get(account);
+  }
+
+  /**
+   * Returns the transfers of given account ID from the ledger, read lazily in ascending order
+   * @param accountId - account whose transfers need to be returned
+   * @param fromTime - inclusive lower bound of the transfer time in epoch milliseconds
+   * @param toTime - exclusive upper bound of the transfer time in epoch milliseconds
+   * @param cursor - sequence of the last transfer of the previous page, -1 for the first page
+   * @return statement of the account
+   */
+  public TransferLedger.Statement getStatement(String accountId, long fromTime, long toTime, long cursor) {
+	  if (null == accountsRepository.getAccount(accountId)) {
+		  throw new InvalidAccountException("Account with number '" + accountId + "' does not exist. "
+		  		+ "Please provide valid account number.");
+	  }
+	  return transferLedger.statement(accountId, fromTime, toTime, cursor);
+  }
   
   /**
-   * Transfers money from one account to another. 
+   * Transfers money from one account to another. A request with an idempotency key which has been
+   * seen before is not executed again, it returns the result or throws the error of the first request
+   * with that key, waiting for it if it is still running.
    * @param transferRequest - request containing money transfer details
    * @return JSON response with success or error message.
    */
   public JSONObject transferFunds(AmountTransferRequest transferRequest){
+	  String idempotencyKey = transferRequest.getIdempotencyKey();
+	  if (idempotencyKey == null) {
+		  return executeTransfer(transferRequest);
+	  }
+
+	  IdempotentTransfer transfer = new IdempotentTransfer(transferRequest);
+	  IdempotentTransfer previous = idempotentTransfers.putIfAbsent(idempotencyKey, transfer);
+	  if (previous != null) {
+		  return replay(previous, transferRequest);
+	  }
+	  try {
+		  JSONObject response = executeTransfer(transferRequest);
+		  transfer.result.complete(response);
+		  return response;
+	  } catch (InvalidAccountException | InsufficientBalanceException | SameAccountTransferException ex) {
+		  // Rejected requests stay rejected for retries with the same key.
+		  transfer.result.completeExceptionally(ex);
+		  throw ex;
+	  } catch (RuntimeException ex) {
+		  // Unexpected failure, let a retry execute the transfer again.
+		  idempotentTransfers.remove(idempotencyKey, transfer);
+		  transfer.result.completeExceptionally(ex);
+		  throw ex;
+	  }
+  }
+
+  private JSONObject replay(IdempotentTransfer previous, AmountTransferRequest transferRequest) {
+	  if (!previous.request.isSameTransfer(transferRequest)) {
+		  throw new IdempotencyKeyReusedException("Idempotency key '" + transferRequest.getIdempotencyKey()
+		  		+ "' has already been used for a different transfer.");
+	  }
+	  transferMetrics.transferReplayed();
+	  try {
+		  return previous.result.join();
+	  } catch (CompletionException ex) {
+		  if (ex.getCause() instanceof RuntimeException) {
+			  throw (RuntimeException) ex.getCause();
+		  }
+		  throw ex;
+	  }
+  }
+
+  private JSONObject executeTransfer(AmountTransferRequest transferRequest){
 	  // Validate request and throw appropriate exception if request is invalid
 	  log.debug("Validating transferRequest: {}", transferRequest);
-	  validateRequest(transferRequest);
-	  log.info("Request is validated successfully");
+	  long validationStart = transferMetrics.start();
+	  TransferContext context;
+	  try {
+		  context = validateRequest(transferRequest);
+	  } catch (InvalidAccountException | SameAccountTransferException ex) {
+		  transferMetrics.invalidAccount();
+		  throw ex;
+	  } catch (InsufficientBalanceException ex) {
+		  transferMetrics.insufficientBalance();
+		  throw ex;
+	  } finally {
+		  transferMetrics.recordValidation(validationStart);
+	  }
+	  log.debug("Request is validated successfully");
 
-	  // Read request details
-	  Account accFrom = accountsRepository.getAccount(transferRequest.getAccountFromId());
-	  Account accTo = accountsRepository.getAccount(transferRequest.getAccountToId());
-	  BigDecimal amountToTransfer = transferRequest.getAmountToTransfer();
-	  log.debug("{} amount will be transferred from account {} to account {}", amountToTransfer, accFrom.getAccountId(), accTo.getAccountId());
-	  
-	  JSONObject response = executeTransaction(accFrom, accTo, amountToTransfer);
+	  JSONObject response = executeTransaction(context);
 	  if(null != response) {
-		  log.info("Funds has been transferred successfully");
+		  transferMetrics.transferSucceeded();
+		  log.debug("Funds has been transferred successfully");
 	  }else {
 		  log.info("Funds transfer failed");
 	  }
@@ -73,68 +247,272 @@ public class AccountsService {
 	  return response;
   }
   
+  /**
+   * Transfers money for a whole batch of requests. All account lookups are resolved in one pass,
+   * each distinct account is looked up once, and the balance engine locks every account once
+   * for the whole batch.
+   * @param transferRequests - transfers in the order they should be applied
+   * @param mode - whether the batch is applied all-or-nothing or best-effort
+   * @return outcome of every request, in request order
+   */
+  public List<BatchItem> transferFundsBatch(List<AmountTransferRequest> transferRequests, BatchMode mode){
+	  boolean atomic = mode == BatchMode.ATOMIC;
+	  List<BatchItem> items = new ArrayList<>(transferRequests.size());
+	  Map<String, Account> accounts = new HashMap<>();
+	  boolean invalid = false;
+
+	  for (AmountTransferRequest transferRequest : transferRequests) {
+		  BatchItem item = new BatchItem(items.size(), transferRequest);
+		  items.add(item);
+		  if (transferRequest == null || transferRequest.getAmountToTransfer() == null
+				  || transferRequest.getAmountToTransfer().signum() < 0
+				  || !Money.fits(transferRequest.getAmountToTransfer())
+				  || isEmpty(transferRequest.getAccountFromId()) || isEmpty(transferRequest.getAccountToId())) {
+			  item.setError("Invalid transfer request.");
+			  invalid = true;
+			  continue;
+		  }
+		  if (transferRequest.getAccountFromId().equals(transferRequest.getAccountToId())) {
+			  item.setError(SAME_ACCOUNT_MESSAGE);
+			  invalid = true;
+			  continue;
+		  }
+		  item.setAccFrom(accounts.computeIfAbsent(transferRequest.getAccountFromId(), accountsRepository::getAccount));
+		  item.setAccTo(accounts.computeIfAbsent(transferRequest.getAccountToId(), accountsRepository::getAccount));
+		  String missingAccountId = item.getAccFrom() == null ? transferRequest.getAccountFromId()
+				  : item.getAccTo() == null ? transferRequest.getAccountToId() : null;
+		  if (missingAccountId != null) {
+			  item.setError("Account with number '" + missingAccountId + "' does not exist. "
+				  		+ "Please provide valid account number.");
+			  invalid = true;
+		  } else if (!isSameCurrency(item.getAccFrom(), item.getAccTo())) {
+			  item.setError(CURRENCY_MISMATCH_MESSAGE);
+			  invalid = true;
+		  } else {
+			  try {
+				  item.setRecorder(accountsRepository.prepareTransfer(transferRequest.getAccountFromId(),
+						  transferRequest.getAccountToId(), transferRequest.getAmountToTransfer()));
+			  } catch (InvalidTransferRequestException ex) {
+				  item.setError(ex.getMessage());
+				  invalid = true;
+			  }
+		  }
+	  }
+	  log.info("Batch of {} transfers is validated, mode: {}", items.size(), mode);
+
+	  if (atomic && invalid) {
+		  for (BatchItem item : items) {
+			  if (item.getError() == null) {
+				  item.setError(BATCH_ABORTED_MESSAGE);
+			  }
+		  }
+		  return items;
+	  }
+
+	  int stripe = transferGate.enter();
+	  try {
+		  balanceEngine.transferBatch(items, atomic);
+	  } finally {
+		  transferGate.exit(stripe);
+	  }
+	  commit(items);
+	  return items;
+  }
+
+  /**
+   * Moves money from one account to many accounts in one step. All legs are validated and resolved
+   * up front, the balance engine locks every involved account once and applies all legs in a single
+   * critical section. If any leg cannot be applied, none is.
+   * @param transferRequest - source account and the legs crediting target accounts
+   * @return JSON response with success message and the number of legs
+   */
+  public JSONObject transferFundsMultiLeg(MultiLegTransferRequest transferRequest) {
+	  String accountFromId = transferRequest.getAccountFromId();
+	  Account accFrom = accountsRepository.getAccount(accountFromId);
+	  if (accFrom == null) {
+		  transferMetrics.invalidAccount();
+		  throw new InvalidAccountException("Account with number '" + accountFromId + "' does not exist. "
+		  		+ "Please provide valid account number.");
+	  }
+
+	  List<BatchItem> legs = new ArrayList<>(transferRequest.getLegs().size());
+	  Map<String, Account> accounts = new HashMap<>();
+	  BigDecimal total = BigDecimal.ZERO;
+	  for (TransferLeg leg : transferRequest.getLegs()) {
+		  if (accountFromId.equals(leg.getAccountToId())) {
+			  transferMetrics.invalidAccount();
+			  throw new SameAccountTransferException(SAME_ACCOUNT_MESSAGE);
+		  }
+		  BatchItem item = new BatchItem(legs.size(),
+				  new AmountTransferRequest(accountFromId, leg.getAccountToId(), leg.getAmountToTransfer()));
+		  item.setAccFrom(accFrom);
+		  item.setAccTo(accounts.computeIfAbsent(leg.getAccountToId(), accountsRepository::getAccount));
+		  if (item.getAccTo() == null) {
+			  transferMetrics.invalidAccount();
+			  throw new InvalidAccountException("Account with number '" + leg.getAccountToId() + "' does not exist. "
+			  		+ "Please provide valid account number.");
+		  }
+		  if (!isSameCurrency(accFrom, item.getAccTo())) {
+			  throw new CurrencyMismatchException(CURRENCY_MISMATCH_MESSAGE);
+		  }
+		  item.setRecorder(accountsRepository.prepareTransfer(accountFromId, leg.getAccountToId(),
+				  leg.getAmountToTransfer()));
+		  legs.add(item);
+		  total = total.add(leg.getAmountToTransfer());
+	  }
+	  // Fail fast, the engine validates the balance again under the locks
+	  if (accFrom.getBalance().compareTo(total) < 0) {
+		  transferMetrics.insufficientBalance();
+		  throw new InsufficientBalanceException("You don't have sufficient balance.");
+	  }
+
+	  int stripe = transferGate.enter();
+	  try {
+		  balanceEngine.transferMultiLeg(legs);
+	  } catch (InsufficientBalanceException ex) {
+		  transferMetrics.insufficientBalance();
+		  throw ex;
+	  } finally {
+		  transferGate.exit(stripe);
+	  }
+	  if (!commit(legs)) {
+		  throw new IllegalStateException(NOT_RECORDED_MESSAGE);
+	  }
+	  log.info("Multi-leg transfer of {} legs from account {} is committed", legs.size(), accountFromId);
+
+	  JSONObject response = new JSONObject();
+	  response.put(MESSAGE, "Funds has been transferred successfully");
+	  response.put(TRANSFERS, legs.size());
+	  return response;
+  }
+
+  /**
+   * Makes the applied transfers of a batch durable, then audits them and notifies the acc holders.
+   * The balance engine has kept them in the ledger already. A transfer which cannot be recorded
+   * gets an error, the others are committed regardless.
+   * @param items - executed transfers, only successful ones are recorded
+   * @return true if every successful transfer has been recorded
+   */
+  private boolean commit(List<BatchItem> items) {
+	  List<CompletableFuture<Void>> recorded = new ArrayList<>(items.size());
+	  for (BatchItem item : items) {
+		  recorded.add(item.isSuccessful() ? item.getRecorder().get() : null);
+	  }
+
+	  // Audit and notify acc holders of every transfer which is durable
+	  boolean allRecorded = true;
+	  for (int i = 0; i < items.size(); i++) {
+		  BatchItem item = items.get(i);
+		  if (recorded.get(i) != null) {
+			  try {
+				  recorded.get(i).join();
+			  } catch (CompletionException ex) {
+				  log.error("Transfer {} of the batch has been applied but could not be recorded.", item.getIndex(), ex);
+				  item.setError(NOT_RECORDED_MESSAGE);
+				  allRecorded = false;
+				  continue;
+			  }
+			  BigDecimal amountToTransfer = item.getRequest().getAmountToTransfer();
+			  auditLog.record(item.getAccFrom().getAccountId(), item.getAccTo().getAccountId(), amountToTransfer,
+					  item.getUpdate().getAccFromBalance(), item.getUpdate().getAccToBalance());
+			  notificationDispatcher.dispatchTransfer(item.getAccFrom(), item.getAccTo(), amountToTransfer, item.getUpdate());
+		  }
+	  }
+	  return allRecorded;
+  }
+  
   /**
    * Executes amount transfer transaction from one account to another in thread safe manner.
+   * Account holders are notified only after the balance engine has applied the transfer.
    * @param accFrom - account from which amount should be debited
    * @param accTo  - account to which amount should be credited
    * @param amountToTransfer - amount to be transferred 
    * @return JSON response with success or error message.
    */
   private JSONObject executeTransaction(Account accFrom, Account accTo, BigDecimal amountToTransfer) {
-	  // Obtain locks on both account objects. Obtain first lock on account with lower id.
-	  int accFromId = Integer.parseInt(accFrom.getAccountId());
-	  int accToId = Integer.parseInt(accFrom.getAccountId());
-	  Object lockOnAccWithLowerId = accFromId < accToId ? accFrom.getLock() : accTo.getLock();
-	  Object lockOnAccWithHigherId = accFromId < accToId ? accTo.getLock() : accFrom.getLock();
-	  JSONObject response = null;
-	  
+	  return executeTransaction(new TransferContext(accFrom, accTo, amountToTransfer));
+  }
+
+  /**
+   * Executes a transfer whose accounts have been resolved. The balance engine validates the balance
+   * of the source account under its lock, atomically with the debit.
+   * @param context - resolved transfer
+   * @return JSON response with success or error message.
+   */
+  private JSONObject executeTransaction(TransferContext context) {
+	  Account accFrom = context.getAccFrom();
+	  Account accTo = context.getAccTo();
+	  BigDecimal amountToTransfer = context.getAmountToTransfer();
+	  BigDecimal creditedAmount = context.getCreditedAmount() != null ? context.getCreditedAmount() : amountToTransfer;
+	  BalanceUpdate update;
+	  // Fails before anything has changed if the transfer cannot be recorded
+	  Supplier<CompletableFuture<Void>> recorder = accountsRepository.prepareTransfer(accFrom.getAccountId(),
+			  accTo.getAccountId(), amountToTransfer);
+	  int stripe = transferGate.enter();
 	  try {
-		  synchronized (lockOnAccWithLowerId) {
-		     synchronized (lockOnAccWithHigherId) {
-			 	  //Subtract amount from source account
-				  BigDecimal accFromBalance = accFrom.getBalance();
-				  log.debug("Balance of account {} before debit: {}",accFrom.getAccountId(), accFromBalance);
-				  accFromBalance = accFromBalance.subtract(amountToTransfer);
-				  accFrom.setBalance(accFromBalance);
-				  log.info("Account {} has been debited with amount:{}. Updated balance: {}", accFromId, amountToTransfer, accFrom.getBalance());
-				  
-				  log.debug("Sending notfication to source acc holder");
-				  // Send notification to source acc holder
-				  emailNotificationService.notifyAboutTransfer(accFrom, "Your account has been"
-				  		+ " debited with amount "+ amountToTransfer + ". Your updated balance is "+accFrom.getBalance());
-		
-				  //Add amount to target account
-				  BigDecimal accToBalance = accTo.getBalance();
-				  log.debug("Balance of account {} before credit: {}",accTo.getAccountId(), accToBalance);
-				  accToBalance = accToBalance.add(amountToTransfer);
-				  accTo.setBalance(accToBalance);
-				  log.info("Account {} has been credited with amount:{}. Updated balance: {}", accToId, amountToTransfer, accTo.getBalance());
-				  
-				  log.debug("Sending notification to dest acc holder");
-				  // Send notification to target acc holder
-				  emailNotificationService.notifyAboutTransfer(accTo, "Your account has been credited with amount "+ amountToTransfer 
-						  + ". Your updated balance is "+accTo.getBalance());
-				 
-				  log.debug("Generating JSON response");
-				  // Generate JSON response with transaction status details
-				  response =  new JSONObject();
-	         	  response.put(MESSAGE, "Funds has been transferred successfully");
-	         	  log.info("Response: {}", response);
-	          }
+		  if (context.getCreditedAmount() != null) {
+			  // Between currencies, never netted: a window nets amounts of one currency only
+			  update = balanceEngine.exchange(accFrom, accTo, Money.toMinorUnits(amountToTransfer),
+					  Money.toMinorUnits(creditedAmount));
+		  } else {
+			  // With netting, the transfer is applied together with the others of its window
+			  update = transferNetting.isEnabled() ? transferNetting.transfer(accFrom, accTo, amountToTransfer)
+					  : balanceEngine.transfer(accFrom, accTo, amountToTransfer);
 		  }
+		  context.setUpdate(update);
+	  }
+	  catch(InsufficientBalanceException ex) {
+		  transferMetrics.insufficientBalance();
+		  throw ex;
+	  }
+	  catch(LockTimeoutException | CurrencyMismatchException ex) {
+		  // Nothing has been changed, the client may retry the transfer or has to change it
+		  throw ex;
 	  }
 	  catch(Exception ex) {
 		log.error("Exception occurred while executing transaction.", ex);  
+		return null;
+	  }
+	  finally {
+		  transferGate.exit(stripe);
 	  }
 	  
+	  // Wait until the transfer is durable, many concurrent transfers share one journal write
+	  try {
+		  recorder.get().join();
+	  }
+	  catch(CompletionException ex) {
+		  log.error(NOT_RECORDED_MESSAGE, ex);
+		  return null;
+	  }
+	  
+	  // Transfer is committed, audit it and notify both acc holders without holding any lock.
+	  // Both only hand references over to background threads, which do the formatting and I/O.
+	  auditLog.record(accFrom.getAccountId(), accTo.getAccountId(), amountToTransfer,
+			  update.getAccFromBalance(), update.getAccToBalance());
+	  long notificationStart = transferMetrics.start();
+	  notificationDispatcher.dispatchTransfer(accFrom, accTo, amountToTransfer, creditedAmount, update);
+	  transferMetrics.recordNotification(notificationStart);
+	  
+	  // Generate JSON response with transaction status details
+	  JSONObject response =  new JSONObject();
+	  response.put(MESSAGE, "Funds has been transferred successfully");
+	  log.debug("Response: {}", response);
 	  return response;
   }
   
   /**
-   * Validates request and throws exception if request is invalid 
+   * Validates request and throws exception if request is invalid. Self-transfers and unknown
+   * accounts are rejected before any lock is taken, each account is looked up once. The balance
+   * is only pre-checked here to fail fast, it may still change until the engine holds the lock.
    * @param transferRequest
+   * @return transfer with resolved accounts
    */
-  private void validateRequest(AmountTransferRequest transferRequest){
+  private TransferContext validateRequest(AmountTransferRequest transferRequest){
+	  if (transferRequest.getAccountFromId() != null
+			  && transferRequest.getAccountFromId().equals(transferRequest.getAccountToId())) {
+		  throw new SameAccountTransferException(SAME_ACCOUNT_MESSAGE);
+	  }
 	  Account accFrom = accountsRepository.getAccount(transferRequest.getAccountFromId());
 	  Account accTo = accountsRepository.getAccount(transferRequest.getAccountToId());
 	  
@@ -151,12 +529,41 @@ public class AccountsService {
 	  }
 	  
 	  BigDecimal amountToTransfer = transferRequest.getAmountToTransfer();
-	  BigDecimal accFromBalance = accFrom.getBalance();
-	  
-	  if(accFromBalance.compareTo(amountToTransfer) == -1){
+	  long amount = Money.toMinorUnits(amountToTransfer);
+	  // Compared in minor units, without converting the balance to BigDecimal
+	  if(accFrom.getBalanceCell().get() < amount){
 		  log.error("There is no sufficient balance to transfer.");
 		  throw new InsufficientBalanceException("You don't have sufficient balance.");
 	  }
+	  TransferContext context = new TransferContext(accFrom, accTo, amountToTransfer);
+	  if (!isSameCurrency(accFrom, accTo)) {
+		  // Amount is given in the currency of the source account, converted with the current rates
+		  long credit = fxRateCache.convert(amount, fxRateCache.currencyOf(accFrom), fxRateCache.currencyOf(accTo));
+		  context.setCreditedAmount(Money.toBigDecimal(credit));
+	  }
+	  return context;
+  }
+
+  private boolean isSameCurrency(Account accFrom, Account accTo) {
+	  return accFrom.getCurrency() == accTo.getCurrency()
+			  || fxRateCache.currencyOf(accFrom).equals(fxRateCache.currencyOf(accTo));
+  }
+  
+  private static boolean isEmpty(String value) {
+	  return value == null || value.isEmpty();
+  }
+
+  /**
+   * First request seen with an idempotency key and its eventual result.
+   */
+  private static final class IdempotentTransfer {
+
+	  private final AmountTransferRequest request;
+
+	  private final CompletableFuture<JSONObject> result = new CompletableFuture<>();
+
+	  private IdempotentTransfer(AmountTransferRequest request) {
+		  this.request = request;
+	  }
   }
-   
 }
@@ -0,0 +1,84 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.TransferLedger;
+import java.math.BigDecimal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lock-free engine, keeps balances as minor units in {@link BalanceCell}s and applies the debit
+ * and the credit with compare-and-set. The debit is validated atomically, so concurrent transfers
+ * can never overdraw the source account.
+ * <p>
+ * Both sides are not applied as one atomic step: for a short moment the amount has left the
+ * source account but has not yet reached the target account. A transfer is appended to the
+ * {@link TransferLedger} right after its credit; without locks, transfers of an account running at
+ * the same time may be listed in a different order than they changed its balance.
+ */
+@Component
+@ConditionalOnProperty(prefix = "transfer", name = "engine", havingValue = "atomic")
+@Slf4j
+public class AtomicBalanceEngine implements BalanceEngine {
+
+  private final TransferLedger transferLedger;
+
+  public AtomicBalanceEngine() {
+    this(TransferLedger.disabled());
+  }
+
+  @Autowired
+  public AtomicBalanceEngine(TransferLedger transferLedger) {
+    this.transferLedger = transferLedger;
+  }
+
+  @Override
+  public BalanceUpdate transfer(Account accFrom, Account accTo, BigDecimal amountToTransfer) {
+    long amount = BalanceCell.toMinorUnits(amountToTransfer);
+    return exchange(accFrom, accTo, amount, amount);
+  }
+
+  @Override
+  public BalanceUpdate exchange(Account accFrom, Account accTo, long debitUnits, long creditUnits) {
+    BalanceCell from = accFrom.getBalanceCell();
+    BalanceCell to = accTo.getBalanceCell();
+
+    long accFromBalance = from.tryDebit(debitUnits);
+    if (accFromBalance == BalanceCell.INSUFFICIENT) {
+      log.error("There is no sufficient balance to transfer.");
+      throw new InsufficientBalanceException("You don't have sufficient balance.");
+    }
+
+    long accToBalance;
+    try {
+      accToBalance = to.credit(creditUnits);
+    } catch (ArithmeticException ex) {
+      // Give the amount back, the transfer did not happen.
+      from.credit(debitUnits);
+      throw ex;
+    }
+    transferLedger.recordUnits(accFrom.getAccountId(), accTo.getAccountId(), debitUnits, creditUnits,
+      accFromBalance, accToBalance);
+
+    return new BalanceUpdate(BalanceCell.toBigDecimal(accFromBalance), BalanceCell.toBigDecimal(accToBalance));
+  }
+
+  @Override
+  public long debit(Account account, long units) {
+    long balance = account.getBalanceCell().tryDebit(units);
+    if (balance == BalanceCell.INSUFFICIENT) {
+      throw new InsufficientBalanceException("You don't have sufficient balance.");
+    }
+    return balance;
+  }
+
+  @Override
+  public long credit(Account account, long units) {
+    return account.getBalanceCell().credit(units);
+  }
+}
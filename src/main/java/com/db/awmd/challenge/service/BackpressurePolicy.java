@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.service;
+
+/**
+ * Behaviour of the notification dispatcher when a worker queue is full.
+ */
+public enum BackpressurePolicy {
+
+  /** Caller waits until the worker frees up space. */
+  BLOCK,
+
+  /** Oldest queued notification is discarded to make room for the new one. */
+  DROP_OLDEST,
+
+  /** Notification is appended to a spill file and re-queued once the worker catches up. */
+  SPILL_TO_DISK
+}
@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.util.Constants;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Applies the debit and credit of a transfer to account balances in a thread safe manner.
+ * Implementation is selected with the 'transfer.engine' property.
+ */
+public interface BalanceEngine {
+
+  /**
+   * Moves amount from one account to another. The balance of the source account is validated
+   * atomically with the debit, so concurrent transfers can never overdraw it.
+   * @param accFrom - account from which amount should be debited
+   * @param accTo - account to which amount should be credited
+   * @param amountToTransfer - amount to be transferred
+   * @return balances of both accounts after the transfer
+   * @throws InsufficientBalanceException if balance of the source account is lower than the amount
+   */
+  BalanceUpdate transfer(Account accFrom, Account accTo, BigDecimal amountToTransfer);
+
+  /**
+   * Moves money between accounts in different currencies: debits one amount and credits another,
+   * both already converted. Balance of the source account is validated atomically with the debit.
+   * <p>
+   * Default implementation does not support transfers between currencies.
+   * @param accFrom - account from which amount should be debited
+   * @param accTo - account to which amount should be credited
+   * @param debitUnits - amount in minor units of the currency of the source account
+   * @param creditUnits - amount in minor units of the currency of the target account
+   * @return balances of both accounts after the transfer
+   * @throws InsufficientBalanceException if balance of the source account is lower than the debit
+   * @throws CurrencyMismatchException if the engine does not support transfers between currencies
+   */
+  default BalanceUpdate exchange(Account accFrom, Account accTo, long debitUnits, long creditUnits) {
+    throw new CurrencyMismatchException("Transfers between currencies are not supported by this balance engine.");
+  }
+
+  /**
+   * Debits one account alone, for a transfer whose other account is kept by another node.
+   * <p>
+   * Default implementation does not support single-account updates.
+   * @param account - account from which amount should be debited
+   * @param units - amount in minor units
+   * @return balance of the account after the debit, in minor units
+   * @throws InsufficientBalanceException if balance of the account is lower than the amount
+   * @throws UnsupportedOperationException if the engine does not support single-account updates
+   */
+  default long debit(Account account, long units) {
+    throw new UnsupportedOperationException("Transfers between partitions are not supported by this balance engine.");
+  }
+
+  /**
+   * Credits one account alone, for a transfer whose other account is kept by another node.
+   * <p>
+   * Default implementation does not support single-account updates.
+   * @param account - account to which amount should be credited
+   * @param units - amount in minor units
+   * @return balance of the account after the credit, in minor units
+   * @throws UnsupportedOperationException if the engine does not support single-account updates
+   */
+  default long credit(Account account, long units) {
+    throw new UnsupportedOperationException("Transfers between partitions are not supported by this balance engine.");
+  }
+
+  /**
+   * Applies a batch of transfers in list order. Items which already carry an error are skipped,
+   * every other item gets either its balance update or an error.
+   * <p>
+   * Default implementation applies the transfers one by one and supports best-effort batches only.
+   * @param items - transfers of the batch with resolved accounts
+   * @param atomic - true if either all transfers or none of them must be applied
+   * @throws UnsupportedOperationException if atomic batch is requested from an engine not supporting it
+   */
+  default void transferBatch(List<BatchItem> items, boolean atomic) {
+    if (atomic) {
+      throw new UnsupportedOperationException("Atomic batches are supported by the locking balance engine only.");
+    }
+    for (BatchItem item : items) {
+      if (item.getError() != null) {
+        continue;
+      }
+      try {
+        item.setUpdate(transfer(item.getAccFrom(), item.getAccTo(), item.getRequest().getAmountToTransfer()));
+      } catch (InsufficientBalanceException ex) {
+        item.setError(ex.getMessage());
+        item.setFailure(ex);
+      } catch (RuntimeException ex) {
+        item.setError(Constants.ERROR_MESSAGE);
+        item.setFailure(ex);
+      }
+    }
+  }
+
+  /**
+   * Applies all legs of a multi-leg transfer or none of them. Every leg is debited from the same
+   * source account and gets its balance update, in list order.
+   * <p>
+   * Default implementation does not support multi-leg transfers.
+   * @param legs - legs with resolved accounts
+   * @throws InsufficientBalanceException if balance of the source account is lower than the sum of all legs
+   * @throws UnsupportedOperationException if the engine does not support multi-leg transfers
+   */
+  default void transferMultiLeg(List<BatchItem> legs) {
+    throw new UnsupportedOperationException("Multi-leg transfers are supported by the locking balance engine only.");
+  }
+}
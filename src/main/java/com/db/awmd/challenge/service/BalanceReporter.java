@@ -0,0 +1,102 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.ReportingProperties;
+import com.db.awmd.challenge.domain.BalanceAggregate;
+import com.db.awmd.challenge.domain.BalanceReport;
+import com.db.awmd.challenge.repository.BalancePartition;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reports number, sum and distribution of all balances as of one point in time.
+ * <p>
+ * Balance changes are held back at the {@link TransferGate} of the {@link AccountsService} while
+ * the accounts are scanned, so a transfer is either fully contained in the report or not at all
+ * and the total is conserved across transfers in flight. To keep that pause short, the partitions
+ * of the repository are scanned in parallel by fork-join tasks and the partial aggregates combined.
+ */
+@Service
+@Slf4j
+public class BalanceReporter {
+
+  private final AccountsService accountsService;
+
+  private final ForkJoinPool pool;
+
+  private final int partitions;
+
+  @Autowired
+  public BalanceReporter(AccountsService accountsService, ReportingProperties properties) {
+    this.accountsService = accountsService;
+    int threads = Math.max(1, properties.getThreads());
+    this.pool = new ForkJoinPool(threads, forkJoinPool -> {
+      ForkJoinWorkerThread thread =
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+      thread.setName("balance-report-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+    this.partitions = threads * Math.max(1, properties.getPartitionsPerThread());
+  }
+
+  @PreDestroy
+  public void stop() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Scans all accounts while no balance changes.
+   * @return balances of all accounts
+   */
+  public BalanceReport report() {
+    long start = System.nanoTime();
+    BalanceAggregate aggregate = accountsService.getTransferGate().whileClosed(() -> {
+      List<BalancePartition> parts = accountsService.getAccountsRepository().getBalancePartitions(partitions);
+      return pool.invoke(new AggregateTask(parts, 0, parts.size()));
+    });
+    long pauseMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    log.debug("Aggregated {} balances in {} us", aggregate.getCount(), pauseMicros);
+    return new BalanceReport(aggregate, System.currentTimeMillis(), pauseMicros);
+  }
+
+  /**
+   * Aggregates a range of partitions, splitting it in halves down to single partitions.
+   */
+  private static final class AggregateTask extends RecursiveTask<BalanceAggregate> {
+
+    private final List<BalancePartition> partitions;
+
+    private final int from;
+
+    private final int to;
+
+    private AggregateTask(List<BalancePartition> partitions, int from, int to) {
+      this.partitions = partitions;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected BalanceAggregate compute() {
+      if (to - from <= 1) {
+        BalanceAggregate aggregate = new BalanceAggregate();
+        if (to > from) {
+          partitions.get(from).scan(aggregate);
+        }
+        return aggregate;
+      }
+      int middle = (from + to) >>> 1;
+      AggregateTask left = new AggregateTask(partitions, from, middle);
+      left.fork();
+      BalanceAggregate right = new AggregateTask(partitions, middle, to).compute();
+      return left.join().combine(right);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.FxProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.CurrencyConversionException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * FX rates for transfers between accounts in different currencies, loaded from 'fx.rates' and
+ * 'fx.rates-file'.
+ * <p>
+ * Rates are kept in an immutable table of fixed-point longs with {@link #RATE_SCALE} decimal places,
+ * one per pair of currencies. Inverse rates and cross rates via the base currency are derived with
+ * BigDecimal when a table is built, so a conversion is one multiplication and one division by a
+ * constant of longs. A reload builds a new table and swaps it in atomically: transfers read the
+ * table without locking and never wait for a reload.
+ */
+@Component
+@Slf4j
+public class FxRateCache {
+
+  /** Decimal places of the fixed-point rates. */
+  public static final int RATE_SCALE = 9;
+
+  private static final long RATE_ONE = 1_000_000_000L;
+
+  private final FxProperties properties;
+
+  private final String baseCurrency;
+
+  private final AtomicReference<RateTable> table = new AtomicReference<>();
+
+  private ScheduledExecutorService scheduler;
+
+  @Autowired
+  public FxRateCache(FxProperties properties) {
+    this.properties = properties;
+    this.baseCurrency = properties.getBaseCurrency();
+    this.table.set(RateTable.build(baseCurrency, new LinkedHashMap<>()));
+  }
+
+  /**
+   * Loads the configured rates and, with a rates file and a refresh interval, starts reloading it.
+   */
+  @PostConstruct
+  public void start() {
+    reload();
+    if (properties.getRatesFile().isEmpty() || properties.getRefreshIntervalSeconds() <= 0) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "fx-rate-refresher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::reload, properties.getRefreshIntervalSeconds(),
+      properties.getRefreshIntervalSeconds(), TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public String getBaseCurrency() {
+    return baseCurrency;
+  }
+
+  /**
+   * @param account - any account
+   * @return currency of the account, the base currency if it has none
+   */
+  public String currencyOf(Account account) {
+    String currency = account.getCurrency();
+    return currency != null ? currency : baseCurrency;
+  }
+
+  /**
+   * Converts an amount with the current rates, rounding half up to whole minor units.
+   * @param units - non-negative amount in minor units of the source currency
+   * @param fromCurrency - currency of the amount
+   * @param toCurrency - currency to convert into
+   * @return amount in minor units of the target currency
+   * @throws CurrencyConversionException if there is no rate for the pair or the result is out of range
+   */
+  public long convert(long units, String fromCurrency, String toCurrency) {
+    return table.get().convert(units, fromCurrency, toCurrency);
+  }
+
+  /**
+   * Reads the inline rates and the rates file again and swaps in the new rates. If they cannot be
+   * read, the current rates stay in use.
+   */
+  public void reload() {
+    List<String> lines = new ArrayList<>(properties.getRates());
+    try {
+      if (!properties.getRatesFile().isEmpty()) {
+        lines.addAll(Files.readAllLines(Paths.get(properties.getRatesFile()), StandardCharsets.UTF_8));
+      }
+      update(lines);
+      log.info("Loaded FX rates from {} lines", lines.size());
+    } catch (IOException | RuntimeException ex) {
+      log.warn("FX rates could not be loaded, keeping the current rates", ex);
+    }
+  }
+
+  /**
+   * Replaces all rates.
+   * @param lines - rates as 'FROM,TO,RATE', blank lines and lines starting with '#' are skipped
+   * @throws IllegalArgumentException if a line is not a valid rate
+   */
+  public void update(List<String> lines) {
+    Map<String, BigDecimal> rates = new LinkedHashMap<>();
+    for (String line : lines) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      String[] fields = trimmed.split(",");
+      if (fields.length != 3 || !isCurrency(fields[0].trim()) || !isCurrency(fields[1].trim())) {
+        throw new IllegalArgumentException("Invalid FX rate '" + line + "', expected FROM,TO,RATE");
+      }
+      BigDecimal rate = new BigDecimal(fields[2].trim());
+      if (rate.signum() <= 0) {
+        throw new IllegalArgumentException("FX rate '" + line + "' must be positive");
+      }
+      rates.put(fields[0].trim() + fields[1].trim(), rate);
+    }
+    RateTable built = RateTable.build(baseCurrency, rates);
+    table.set(built);
+    log.debug("Loaded {} FX rates between {} currencies", rates.size(), built.indices.size());
+  }
+
+  private static boolean isCurrency(String code) {
+    if (code.length() != 3) {
+      return false;
+    }
+    for (int i = 0; i < 3; i++) {
+      if (code.charAt(i) < 'A' || code.charAt(i) > 'Z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Fixed-point rate of every pair of known currencies, 0 where no rate can be derived.
+   */
+  private static final class RateTable {
+
+    private final Map<String, Integer> indices;
+
+    private final long[] rates;
+
+    private RateTable(Map<String, Integer> indices, long[] rates) {
+      this.indices = indices;
+      this.rates = rates;
+    }
+
+    /**
+     * @param rates - given rates keyed by the concatenated codes of both currencies
+     */
+    private static RateTable build(String baseCurrency, Map<String, BigDecimal> rates) {
+      Map<String, Integer> indices = new HashMap<>();
+      indices.put(baseCurrency, 0);
+      for (String pair : rates.keySet()) {
+        indices.putIfAbsent(pair.substring(0, 3), indices.size());
+        indices.putIfAbsent(pair.substring(3), indices.size());
+      }
+      int size = indices.size();
+      BigDecimal[][] exact = new BigDecimal[size][size];
+      for (int i = 0; i < size; i++) {
+        exact[i][i] = BigDecimal.ONE;
+      }
+      for (Map.Entry<String, BigDecimal> rate : rates.entrySet()) {
+        exact[indices.get(rate.getKey().substring(0, 3))][indices.get(rate.getKey().substring(3))] = rate.getValue();
+      }
+      // Inverse of a given rate, unless the opposite rate is given as well
+      for (Map.Entry<String, BigDecimal> rate : rates.entrySet()) {
+        int from = indices.get(rate.getKey().substring(0, 3));
+        int to = indices.get(rate.getKey().substring(3));
+        if (exact[to][from] == null) {
+          exact[to][from] = BigDecimal.ONE.divide(rate.getValue(), MathContext.DECIMAL64);
+        }
+      }
+      // Cross rate via the base currency, at index 0
+      for (int from = 1; from < size; from++) {
+        for (int to = 1; to < size; to++) {
+          if (exact[from][to] == null && exact[from][0] != null && exact[0][to] != null) {
+            exact[from][to] = exact[from][0].multiply(exact[0][to], MathContext.DECIMAL64);
+          }
+        }
+      }
+
+      long[] fixed = new long[size * size];
+      for (int from = 0; from < size; from++) {
+        for (int to = 0; to < size; to++) {
+          if (exact[from][to] != null) {
+            fixed[from * size + to] = toFixedPoint(exact[from][to]);
+          }
+        }
+      }
+      return new RateTable(indices, fixed);
+    }
+
+    private static long toFixedPoint(BigDecimal rate) {
+      BigInteger scaled = rate.setScale(RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue();
+      if (scaled.signum() == 0 || scaled.bitLength() > 63) {
+        throw new IllegalArgumentException("FX rate " + rate + " is out of range");
+      }
+      return scaled.longValue();
+    }
+
+    private long convert(long units, String fromCurrency, String toCurrency) {
+      if (fromCurrency.equals(toCurrency)) {
+        return units;
+      }
+      Integer from = indices.get(fromCurrency);
+      Integer to = indices.get(toCurrency);
+      long rate = from == null || to == null ? 0 : rates[from * indices.size() + to];
+      if (rate == 0) {
+        throw new CurrencyConversionException("No FX rate from " + fromCurrency + " to " + toCurrency
+          + " is available.");
+      }
+      if (units <= Long.MAX_VALUE / rate) {
+        long product = units * rate;
+        long converted = product / RATE_ONE;
+        return product % RATE_ONE >= RATE_ONE / 2 ? converted + 1 : converted;
+      }
+      // Rare: the product does not fit into a long
+      BigInteger product = BigInteger.valueOf(units).multiply(BigInteger.valueOf(rate))
+        .add(BigInteger.valueOf(RATE_ONE / 2));
+      BigInteger converted = product.divide(BigInteger.valueOf(RATE_ONE));
+      if (converted.bitLength() > 63) {
+        throw new CurrencyConversionException("Converted amount is out of range.");
+      }
+      return converted.longValue();
+    }
+  }
+}
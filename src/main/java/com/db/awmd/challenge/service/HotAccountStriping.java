@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.HotAccountProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.StripedBalanceCell;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Splits the balance of the accounts listed in 'transfer.hot-accounts.ids' into
+ * {@link StripedBalanceCell stripes}, so that the many transfers crediting them do not contend on
+ * one balance and one lock. A background thread spreads the balance of every hot account evenly
+ * over its stripes again, so that debits rarely have to borrow from other stripes.
+ * <p>
+ * Striping needs accounts which keep their own balance, as those of the in-memory repository.
+ * Views handed out by the compact repository are not striped.
+ */
+@Component
+@Slf4j
+public class HotAccountStriping {
+
+  private final HotAccountProperties properties;
+
+  private final AccountsRepository accountsRepository;
+
+  private final Set<String> hotAccountIds;
+
+  private ScheduledExecutorService scheduler;
+
+  @Autowired
+  public HotAccountStriping(HotAccountProperties properties, AccountsRepository accountsRepository) {
+    this.properties = properties;
+    this.accountsRepository = accountsRepository;
+    this.hotAccountIds = new HashSet<>(properties.getIds());
+  }
+
+  /**
+   * Stripes the hot accounts already in the repository and starts rebalancing them.
+   */
+  @PostConstruct
+  public void start() {
+    if (hotAccountIds.isEmpty()) {
+      return;
+    }
+    for (String accountId : hotAccountIds) {
+      Account account = accountsRepository.getAccount(accountId);
+      if (account != null && !account.isStriped()) {
+        account.stripeBalance(properties.getStripes());
+      }
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "hot-account-rebalancer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::rebalance, properties.getRebalanceIntervalMillis(),
+      properties.getRebalanceIntervalMillis(), TimeUnit.MILLISECONDS);
+    log.info("Striping balances of hot accounts {} into {} stripes", hotAccountIds, properties.getStripes());
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Stripes the balance of a new account if it is a hot account, to be called before the account
+   * is stored.
+   * @param account - account to be created
+   */
+  public void prepare(Account account) {
+    if (hotAccountIds.contains(account.getAccountId())) {
+      account.stripeBalance(properties.getStripes());
+    }
+  }
+
+  /**
+   * Spreads the balance of every striped hot account evenly over its stripes.
+   */
+  public void rebalance() {
+    try {
+      for (String accountId : hotAccountIds) {
+        Account account = accountsRepository.getAccount(accountId);
+        if (account != null && account.isStriped()) {
+          BalanceCell cell = account.getBalanceCell();
+          ((StripedBalanceCell) cell).rebalance();
+        }
+      }
+    } catch (RuntimeException ex) {
+      log.warn("Rebalancing hot accounts failed", ex);
+    }
+  }
+}
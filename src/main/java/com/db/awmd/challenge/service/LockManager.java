@@ -0,0 +1,225 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountLock;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Takes the locks of any number of accounts without deadlocks.
+ * <p>
+ * Locks are always taken in the order of their {@link AccountLock#getSequence() sequence}, so two
+ * transfers never wait for each other in opposite order. A contended lock is waited for at most
+ * 'transfer.lock.attempt-timeout-millis'; if it is not acquired, all locks taken so far are released
+ * and the attempt is repeated after a random backoff, until 'transfer.lock.max-wait-millis' have
+ * passed. Waiting and holding times, contended accounts, retries and timeouts are recorded in
+ * {@link TransferMetrics}.
+ */
+@Component
+public class LockManager {
+
+  private static final Comparator<Account> BY_SEQUENCE =
+    Comparator.comparingLong(account -> account.getLock().getSequence());
+
+  private final TransferMetrics metrics;
+
+  private final long attemptTimeoutNanos;
+
+  private final long maxWaitNanos;
+
+  private final long maxBackoffNanos;
+
+  @Autowired
+  public LockManager(TransferMetrics metrics, LockProperties properties) {
+    this.metrics = metrics;
+    this.attemptTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getAttemptTimeoutMillis());
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxWaitMillis());
+    this.maxBackoffNanos = Math.max(1, TimeUnit.MICROSECONDS.toNanos(properties.getMaxBackoffMicros()));
+  }
+
+  /**
+   * Locks both accounts of a transfer.
+   * @param accFrom - account from which amount is debited
+   * @param accTo - account to which amount is credited
+   * @return start of the lock hold time, to be passed to {@link #unlock(Account, Account, long)}
+   * @throws LockTimeoutException if the locks could not be acquired in time
+   */
+  public long lock(Account accFrom, Account accTo) {
+    long start = metrics.start();
+    AccountLock first = accFrom.getLock();
+    AccountLock second = accTo.getLock();
+    if (first == second) {
+      acquire(new Account[] {accFrom});
+      return metrics.recordLockWait(start);
+    }
+    // Uncontended locks are taken without sorting or allocating
+    boolean fromFirst = first.getSequence() < second.getSequence();
+    AccountLock lower = fromFirst ? first : second;
+    AccountLock higher = fromFirst ? second : first;
+    if (lower.tryLock()) {
+      if (higher.tryLock()) {
+        return metrics.recordLockWait(start);
+      }
+      lower.unlock();
+    }
+    acquire(fromFirst ? new Account[] {accFrom, accTo} : new Account[] {accTo, accFrom});
+    return metrics.recordLockWait(start);
+  }
+
+  /**
+   * Unlocks both accounts of a transfer.
+   * @param accFrom - account from which amount has been debited
+   * @param accTo - account to which amount has been credited
+   * @param holdStart - value returned by {@link #lock(Account, Account)}
+   */
+  public void unlock(Account accFrom, Account accTo, long holdStart) {
+    AccountLock first = accFrom.getLock();
+    AccountLock second = accTo.getLock();
+    second.unlock();
+    if (first != second) {
+      first.unlock();
+    }
+    metrics.recordLockHold(holdStart);
+  }
+
+  /**
+   * Locks a single account, for a transfer whose other account is striped and needs no lock.
+   * @param account - account to be locked
+   * @return start of the lock hold time, to be passed to {@link #unlock(Account, long)}
+   * @throws LockTimeoutException if the lock could not be acquired in time
+   */
+  public long lock(Account account) {
+    long start = metrics.start();
+    if (!account.getLock().tryLock()) {
+      acquire(new Account[] {account});
+    }
+    return metrics.recordLockWait(start);
+  }
+
+  /**
+   * Unlocks an account locked by {@link #lock(Account)}.
+   * @param account - locked account
+   * @param holdStart - value returned by {@link #lock(Account)}
+   */
+  public void unlock(Account account, long holdStart) {
+    account.getLock().unlock();
+    metrics.recordLockHold(holdStart);
+  }
+
+  /**
+   * Locks every given account once, accounts may be given several times and in any order.
+   * @param accounts - accounts to be locked
+   * @return locked accounts, to be passed to {@link #unlockAll(LockedAccounts)}
+   * @throws LockTimeoutException if the locks could not be acquired in time
+   */
+  public LockedAccounts lockAll(Collection<Account> accounts) {
+    long start = metrics.start();
+    Account[] ordered = accounts.toArray(new Account[0]);
+    Arrays.sort(ordered, BY_SEQUENCE);
+    // Views of the same account share one lock, keep one of them
+    int distinct = 0;
+    for (Account account : ordered) {
+      if (distinct == 0 || ordered[distinct - 1].getLock() != account.getLock()) {
+        ordered[distinct++] = account;
+      }
+    }
+    Account[] locked = Arrays.copyOf(ordered, distinct);
+    acquire(locked);
+    return new LockedAccounts(locked, metrics.recordLockWait(start));
+  }
+
+  /**
+   * Unlocks accounts locked by {@link #lockAll(Collection)}.
+   * @param locked - accounts returned by {@link #lockAll(Collection)}
+   */
+  public void unlockAll(LockedAccounts locked) {
+    release(locked.accounts, locked.accounts.length);
+    metrics.recordLockHold(locked.holdStart);
+  }
+
+  /**
+   * Takes the locks of the accounts in the given order, releasing and retrying after a backoff
+   * whenever one of them is not acquired within the attempt timeout.
+   */
+  private void acquire(Account[] ordered) {
+    long deadline = 0;
+    for (int attempt = 0; ; attempt++) {
+      int held = 0;
+      try {
+        while (held < ordered.length && tryLock(ordered[held], attempt == 0)) {
+          held++;
+        }
+      } catch (InterruptedException ex) {
+        release(ordered, held);
+        Thread.currentThread().interrupt();
+        throw new LockTimeoutException("Interrupted while waiting for account locks.");
+      }
+      if (held == ordered.length) {
+        return;
+      }
+      release(ordered, held);
+
+      long now = System.nanoTime();
+      if (deadline == 0) {
+        deadline = now + maxWaitNanos;
+      }
+      if (now - deadline >= 0) {
+        metrics.lockTimedOut();
+        throw new LockTimeoutException("Accounts are busy, please retry later.");
+      }
+      metrics.lockRetried();
+      long backoff = Math.min(maxBackoffNanos, 1000L << Math.min(attempt, 20));
+      LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(backoff) + 1);
+    }
+  }
+
+  /**
+   * Contention is counted on the first attempt only, retries are counted separately.
+   */
+  private boolean tryLock(Account account, boolean firstAttempt) throws InterruptedException {
+    AccountLock lock = account.getLock();
+    if (lock.tryLock()) {
+      return true;
+    }
+    if (firstAttempt) {
+      metrics.lockContended(account.getAccountId());
+    }
+    return lock.tryLock(attemptTimeoutNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static void release(Account[] ordered, int held) {
+    for (int i = held - 1; i >= 0; i--) {
+      ordered[i].getLock().unlock();
+    }
+  }
+
+  /**
+   * Accounts locked together and the time their locks were acquired.
+   */
+  public static final class LockedAccounts {
+
+    private final Account[] accounts;
+
+    private final long holdStart;
+
+    private LockedAccounts(Account[] accounts, long holdStart) {
+      this.accounts = accounts;
+      this.holdStart = holdStart;
+    }
+
+    /**
+     * @return number of distinct accounts locked
+     */
+    public int size() {
+      return accounts.length;
+    }
+  }
+}
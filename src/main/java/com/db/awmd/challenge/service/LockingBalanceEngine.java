@@ -0,0 +1,359 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.util.Constants;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Default engine, validates and updates balances while holding the locks of all involved accounts.
+ * Locks are taken by the {@link LockManager} in the same order for single transfers and batches,
+ * which also records the time waiting for and holding them.
+ * <p>
+ * Hot accounts with a {@link com.db.awmd.challenge.domain.StripedBalanceCell striped balance} are
+ * credited without their lock, so that transfers to them do not queue up behind each other. They
+ * are still locked to be debited, which keeps a balance validated under the lock covered until it
+ * is written: lock-free credits can only raise it. Balances of striped accounts are therefore
+ * written as the difference to the balance read under the lock, never overwritten.
+ * <p>
+ * Every applied transfer is appended to the {@link TransferLedger} before the locks are released,
+ * so the ledger lists the transfers of an account in the order they changed its balance. Only the
+ * lock-free credits of striped accounts may be listed in a slightly different order.
+ */
+@Component
+@ConditionalOnProperty(prefix = "transfer", name = "engine", havingValue = "locking", matchIfMissing = true)
+public class LockingBalanceEngine implements BalanceEngine {
+
+  private final LockManager lockManager;
+
+  private final TransferLedger transferLedger;
+
+  public LockingBalanceEngine(LockManager lockManager) {
+    this(lockManager, TransferLedger.disabled());
+  }
+
+  @Autowired
+  public LockingBalanceEngine(LockManager lockManager, TransferLedger transferLedger) {
+    this.lockManager = lockManager;
+    this.transferLedger = transferLedger;
+  }
+
+  @Override
+  public BalanceUpdate transfer(Account accFrom, Account accTo, BigDecimal amountToTransfer) {
+	  long amount = Money.toMinorUnits(amountToTransfer);
+	  return exchange(accFrom, accTo, amount, amount);
+  }
+
+  @Override
+  public BalanceUpdate exchange(Account accFrom, Account accTo, long debitUnits, long creditUnits) {
+	  if (accFrom.isStriped() || accTo.isStriped()) {
+		  return transferStriped(accFrom, accTo, debitUnits, creditUnits);
+	  }
+	  // Obtain locks on both account objects, in lock sequence order.
+	  long lockHoldStart = lockManager.lock(accFrom, accTo);
+	  try {
+		  // No logging while the locks are held, applied transfers are audited by the caller.
+		  // Balance is validated under the locks, where no other transfer can change it meanwhile.
+		  BalanceCell from = accFrom.getBalanceCell();
+		  BalanceCell to = accTo.getBalanceCell();
+		  long accFromBalance = from.get();
+		  if (accFromBalance < debitUnits) {
+			  throw new InsufficientBalanceException("You don't have sufficient balance.");
+		  }
+
+		  // Both balances are computed first, an overflow leaves both accounts unchanged
+		  accFromBalance = Money.subtract(accFromBalance, debitUnits);
+		  long accToBalance = Money.add(to.get(), creditUnits);
+		  from.set(accFromBalance);
+		  to.set(accToBalance);
+		  transferLedger.recordUnits(accFrom.getAccountId(), accTo.getAccountId(), debitUnits, creditUnits,
+				  accFromBalance, accToBalance);
+
+		  return new BalanceUpdate(Money.toBigDecimal(accFromBalance), Money.toBigDecimal(accToBalance));
+	  } finally {
+		  lockManager.unlock(accFrom, accTo, lockHoldStart);
+	  }
+  }
+
+  /**
+   * Debits the account under its lock, striped accounts included.
+   */
+  @Override
+  public long debit(Account account, long units) {
+	  long lockHoldStart = lockManager.lock(account);
+	  try {
+		  BalanceCell cell = account.getBalanceCell();
+		  if (account.isStriped()) {
+			  long balance = cell.tryDebit(units);
+			  if (balance == BalanceCell.INSUFFICIENT) {
+				  throw new InsufficientBalanceException("You don't have sufficient balance.");
+			  }
+			  return balance;
+		  }
+		  long balance = cell.get();
+		  if (balance < units) {
+			  throw new InsufficientBalanceException("You don't have sufficient balance.");
+		  }
+		  cell.set(balance - units);
+		  return balance - units;
+	  } finally {
+		  lockManager.unlock(account, lockHoldStart);
+	  }
+  }
+
+  /**
+   * Credits the account under its lock, striped accounts without it.
+   */
+  @Override
+  public long credit(Account account, long units) {
+	  if (account.isStriped()) {
+		  return account.getBalanceCell().credit(units);
+	  }
+	  long lockHoldStart = lockManager.lock(account);
+	  try {
+		  BalanceCell cell = account.getBalanceCell();
+		  long balance = Money.add(cell.get(), units);
+		  cell.set(balance);
+		  return balance;
+	  } finally {
+		  lockManager.unlock(account, lockHoldStart);
+	  }
+  }
+
+  /**
+   * Takes the lock of every account of the batch once, computes all balances in minor units on
+   * local copies in list order and writes each changed balance back once. Balance is validated at
+   * every transfer's position in the batch. A transfer overflowing a balance fails before anything
+   * is written, like an insufficient balance.
+   */
+  @Override
+  public void transferBatch(List<BatchItem> items, boolean atomic) {
+	  List<Account> accounts = new ArrayList<>(items.size() * 2);
+	  for (BatchItem item : items) {
+		  if (item.getError() == null) {
+			  accounts.add(item.getAccFrom());
+			  accounts.add(item.getAccTo());
+		  }
+	  }
+
+	  LockManager.LockedAccounts locked;
+	  try {
+		  locked = lockManager.lockAll(accounts);
+	  } catch (LockTimeoutException ex) {
+		  for (BatchItem item : items) {
+			  if (item.getError() == null) {
+				  item.setError(ex.getMessage());
+				  item.setFailure(ex);
+			  }
+		  }
+		  return;
+	  }
+	  try {
+		  Map<Account, Long> balances = new IdentityHashMap<>(accounts.size() * 2);
+		  Map<Account, Long> stripedBalances = new IdentityHashMap<>();
+		  for (BatchItem item : items) {
+			  if (item.getError() != null) {
+				  continue;
+			  }
+			  long amount = Money.toMinorUnits(item.getRequest().getAmountToTransfer());
+			  long accFromBalance = balances.computeIfAbsent(item.getAccFrom(), account -> read(account, stripedBalances));
+			  long accToBalance = balances.computeIfAbsent(item.getAccTo(), account -> read(account, stripedBalances));
+			  try {
+				  if (accFromBalance < amount) {
+					  throw new InsufficientBalanceException(Constants.INSUFFICIENT_BALANCE_MESSAGE);
+				  }
+				  accFromBalance = Money.subtract(accFromBalance, amount);
+				  accToBalance = Money.add(accToBalance, amount);
+			  } catch (InsufficientBalanceException | ArithmeticException ex) {
+				  item.setError(ex instanceof InsufficientBalanceException ? ex.getMessage() : Constants.ERROR_MESSAGE);
+				  item.setFailure(ex);
+				  if (atomic) {
+					  abort(items, item);
+					  return;
+				  }
+				  continue;
+			  }
+			  balances.put(item.getAccFrom(), accFromBalance);
+			  balances.put(item.getAccTo(), accToBalance);
+			  item.setUpdate(new BalanceUpdate(Money.toBigDecimal(accFromBalance), Money.toBigDecimal(accToBalance)));
+		  }
+
+		  for (Map.Entry<Account, Long> balance : balances.entrySet()) {
+			  write(balance.getKey(), balance.getValue(), stripedBalances);
+		  }
+		  for (BatchItem item : items) {
+			  if (item.getUpdate() != null) {
+				  record(item);
+			  }
+		  }
+	  } finally {
+		  lockManager.unlockAll(locked);
+	  }
+  }
+
+  /**
+   * Takes the lock of every account of the transfer once and validates the sum of all legs against
+   * the balance of the source account. All new balances are computed in minor units before any is
+   * written, so a leg overflowing a balance rejects the whole transfer. The source account is
+   * debited once.
+   */
+  @Override
+  public void transferMultiLeg(List<BatchItem> legs) {
+	  Account accFrom = legs.get(0).getAccFrom();
+	  List<Account> accounts = new ArrayList<>(legs.size() + 1);
+	  accounts.add(accFrom);
+	  long[] amounts = new long[legs.size()];
+	  long total = 0;
+	  for (int i = 0; i < legs.size(); i++) {
+		  accounts.add(legs.get(i).getAccTo());
+		  amounts[i] = Money.toMinorUnits(legs.get(i).getRequest().getAmountToTransfer());
+		  total = Money.add(total, amounts[i]);
+	  }
+
+	  LockManager.LockedAccounts locked = lockManager.lockAll(accounts);
+	  try {
+		  Map<Account, Long> stripedBalances = new IdentityHashMap<>();
+		  long accFromBalance = read(accFrom, stripedBalances);
+		  if (accFromBalance < total) {
+			  throw new InsufficientBalanceException("You don't have sufficient balance.");
+		  }
+		  // A target may be credited by several legs
+		  Map<Account, Long> balances = new IdentityHashMap<>(legs.size() * 2);
+		  BalanceUpdate[] updates = new BalanceUpdate[legs.size()];
+		  for (int i = 0; i < legs.size(); i++) {
+			  Account accTo = legs.get(i).getAccTo();
+			  accFromBalance -= amounts[i];
+			  long accToBalance = Money.add(balances.computeIfAbsent(accTo, account -> read(account, stripedBalances)), amounts[i]);
+			  balances.put(accTo, accToBalance);
+			  updates[i] = new BalanceUpdate(Money.toBigDecimal(accFromBalance), Money.toBigDecimal(accToBalance));
+		  }
+
+		  write(accFrom, accFromBalance, stripedBalances);
+		  for (Map.Entry<Account, Long> balance : balances.entrySet()) {
+			  write(balance.getKey(), balance.getValue(), stripedBalances);
+		  }
+		  for (int i = 0; i < legs.size(); i++) {
+			  legs.get(i).setUpdate(updates[i]);
+			  record(legs.get(i));
+		  }
+	  } finally {
+		  lockManager.unlockAll(locked);
+	  }
+  }
+
+  /**
+   * Locks the source account, and the target account unless it is striped, and moves the amount
+   * through the balance cells of striped accounts.
+   */
+  private BalanceUpdate transferStriped(Account accFrom, Account accTo, long debitUnits, long creditUnits) {
+	  boolean lockTo = !accTo.isStriped();
+	  long lockHoldStart = lockTo ? lockManager.lock(accFrom, accTo) : lockManager.lock(accFrom);
+	  try {
+		  BalanceCell from = accFrom.getBalanceCell();
+		  BalanceCell to = accTo.getBalanceCell();
+		  long accFromBalance;
+		  if (accFrom.isStriped()) {
+			  accFromBalance = from.tryDebit(debitUnits);
+			  if (accFromBalance == BalanceCell.INSUFFICIENT) {
+				  throw new InsufficientBalanceException("You don't have sufficient balance.");
+			  }
+		  } else {
+			  accFromBalance = from.get();
+			  if (accFromBalance < debitUnits) {
+				  throw new InsufficientBalanceException("You don't have sufficient balance.");
+			  }
+			  accFromBalance -= debitUnits;
+		  }
+
+		  long accToBalance;
+		  try {
+			  if (lockTo) {
+				  accToBalance = Money.add(to.get(), creditUnits);
+				  to.set(accToBalance);
+			  } else {
+				  accToBalance = to.credit(creditUnits);
+			  }
+		  } catch (RuntimeException ex) {
+			  if (accFrom.isStriped()) {
+				  // Give the amount back, the transfer did not happen
+				  from.credit(debitUnits);
+			  }
+			  throw ex;
+		  }
+		  if (!accFrom.isStriped()) {
+			  from.set(accFromBalance);
+		  }
+		  transferLedger.recordUnits(accFrom.getAccountId(), accTo.getAccountId(), debitUnits, creditUnits,
+				  accFromBalance, accToBalance);
+		  return new BalanceUpdate(Money.toBigDecimal(accFromBalance), Money.toBigDecimal(accToBalance));
+	  } finally {
+		  if (lockTo) {
+			  lockManager.unlock(accFrom, accTo, lockHoldStart);
+		  } else {
+			  lockManager.unlock(accFrom, lockHoldStart);
+		  }
+	  }
+  }
+
+  /**
+   * Reads the balance of a locked account in minor units, remembering it if the account is striped.
+   */
+  private static long read(Account account, Map<Account, Long> stripedBalances) {
+	  long balance = account.getBalanceCell().get();
+	  if (account.isStriped()) {
+		  stripedBalances.put(account, balance);
+	  }
+	  return balance;
+  }
+
+  /**
+   * Writes the balance of a locked account in minor units. A striped account is changed by the
+   * difference to the balance read, keeping the credits it received meanwhile without its lock.
+   */
+  private static void write(Account account, long balance, Map<Account, Long> stripedBalances) {
+	  Long read = stripedBalances.get(account);
+	  if (read == null) {
+		  account.getBalanceCell().set(balance);
+		  return;
+	  }
+	  long difference = balance - read;
+	  if (difference > 0) {
+		  account.getBalanceCell().credit(difference);
+	  } else if (difference < 0 && account.getBalanceCell().tryDebit(-difference) == BalanceCell.INSUFFICIENT) {
+		  // Only credits run without the lock, the balance read is still covered
+		  throw new IllegalStateException("Striped balance of account " + account.getAccountId() + " dropped while locked.");
+	  }
+  }
+
+  /**
+   * Appends an applied transfer of a batch or a leg to the ledger, its accounts still locked.
+   */
+  private void record(BatchItem item) {
+	  BalanceUpdate update = item.getUpdate();
+	  long amount = Money.toMinorUnits(item.getRequest().getAmountToTransfer());
+	  transferLedger.recordUnits(item.getAccFrom().getAccountId(), item.getAccTo().getAccountId(), amount, amount,
+			  Money.toMinorUnits(update.getAccFromBalance()), Money.toMinorUnits(update.getAccToBalance()));
+  }
+
+  private void abort(List<BatchItem> items, BatchItem failed) {
+	  for (BatchItem item : items) {
+		  item.setUpdate(null);
+		  if (item != failed && item.getError() == null) {
+			  item.setError(Constants.BATCH_ABORTED_MESSAGE);
+		  }
+	  }
+  }
+}
@@ -0,0 +1,486 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.NotificationDispatcherProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.domain.TransferNotification;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers transfer notifications asynchronously so that a slow {@link NotificationService}
+ * never extends the time a transfer holds its account locks.
+ * <p>
+ * Notifications are routed to a fixed worker by account id, which keeps them in order per account.
+ * Each worker drains its queue in batches and coalesces all notifications of the same account
+ * into a single call of the underlying service.
+ */
+@Component
+@Slf4j
+public class NotificationDispatcher {
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final NotificationService notificationService;
+
+  private final AccountsRepository accountsRepository;
+
+  private final NotificationDispatcherProperties properties;
+
+  private final Worker[] workers;
+
+  private final LongAdder dispatchedCount = new LongAdder();
+
+  private final LongAdder droppedCount = new LongAdder();
+
+  private final LongAdder spilledCount = new LongAdder();
+
+  private final LongAdder totalLatencyNanos = new LongAdder();
+
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  private volatile boolean running;
+
+  @Autowired
+  public NotificationDispatcher(NotificationService notificationService,
+    AccountsRepository accountsRepository, NotificationDispatcherProperties properties) {
+    this.notificationService = notificationService;
+    this.accountsRepository = accountsRepository;
+    this.properties = properties;
+
+    int workerCount = Math.max(1, properties.getWorkers());
+    int capacityPerWorker = Math.max(1, properties.getQueueCapacity() / workerCount);
+    this.workers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new Worker(i, capacityPerWorker);
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    if (properties.getBackpressure() == BackpressurePolicy.SPILL_TO_DISK) {
+      File directory = new File(properties.getSpillDirectory());
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IllegalStateException("Cannot create spill directory " + directory.getAbsolutePath());
+      }
+    }
+    running = true;
+    for (Worker worker : workers) {
+      worker.thread.start();
+    }
+    log.info("Notification dispatcher started with {} workers and {} backpressure",
+      workers.length, properties.getBackpressure());
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    for (Worker worker : workers) {
+      worker.thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  /**
+   * Queues notification for the owner of given account. Must be called only after the transfer
+   * described by the notification has been committed.
+   * @param account - account whose owner should be notified
+   * @param transferDescription - text of the notification
+   */
+  public void dispatch(Account account, String transferDescription) {
+    dispatch(new TransferNotification(account, transferDescription, System.nanoTime()));
+  }
+
+  /**
+   * Queues notifications about a committed transfer for the owners of both accounts. The text of
+   * the notifications is built by the dispatcher thread, not by the caller.
+   * @param accFrom - debited account
+   * @param accTo - credited account
+   * @param amount - transferred amount
+   * @param update - balances of both accounts after the transfer
+   */
+  public void dispatchTransfer(Account accFrom, Account accTo, BigDecimal amount, BalanceUpdate update) {
+    dispatchTransfer(accFrom, accTo, amount, amount, update);
+  }
+
+  /**
+   * Queues notifications about a committed transfer between accounts in different currencies.
+   * @param accFrom - debited account
+   * @param accTo - credited account
+   * @param amount - debited amount, in the currency of the debited account
+   * @param creditedAmount - credited amount, in the currency of the credited account
+   * @param update - balances of both accounts after the transfer
+   */
+  public void dispatchTransfer(Account accFrom, Account accTo, BigDecimal amount, BigDecimal creditedAmount,
+    BalanceUpdate update) {
+    long now = System.nanoTime();
+    dispatch(new TransferNotification(accFrom, true, amount, update.getAccFromBalance(), now));
+    dispatch(new TransferNotification(accTo, false, creditedAmount, update.getAccToBalance(), now));
+  }
+
+  /**
+   * Queues the notification about one side of a committed transfer whose other account is kept
+   * by another node.
+   * @param account - debited or credited account
+   * @param debit - true if the account has been debited, false if it has been credited
+   * @param amount - transferred amount
+   * @param balance - balance of the account after the transfer
+   */
+  public void dispatchTransferSide(Account account, boolean debit, BigDecimal amount, BigDecimal balance) {
+    dispatch(new TransferNotification(account, debit, amount, balance, System.nanoTime()));
+  }
+
+  private void dispatch(TransferNotification notification) {
+    if (!running) {
+      // Not started yet or already shut down, deliver on the caller thread.
+      deliver(notification.getAccount(), notification.getTransferDescription());
+      recordDispatched(notification, System.nanoTime());
+      return;
+    }
+    workerFor(notification.getAccount().getAccountId()).enqueue(notification);
+  }
+
+  /**
+   * @return number of notifications waiting for delivery, including spilled ones
+   */
+  public long getQueueDepth() {
+    long depth = 0;
+    for (Worker worker : workers) {
+      depth += worker.queue.size() + worker.spilledPending;
+    }
+    return depth;
+  }
+
+  public long getDispatchedCount() {
+    return dispatchedCount.sum();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  public long getSpilledCount() {
+    return spilledCount.sum();
+  }
+
+  /**
+   * @return average time between queueing and delivery of a notification in microseconds
+   */
+  public long getAverageDispatchLatencyMicros() {
+    long dispatched = dispatchedCount.sum();
+    return dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.sum() / dispatched);
+  }
+
+  /**
+   * @return longest time between queueing and delivery of a notification in microseconds
+   */
+  public long getMaxDispatchLatencyMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+  }
+
+  private Worker workerFor(String accountId) {
+    return workers[(accountId.hashCode() & Integer.MAX_VALUE) % workers.length];
+  }
+
+  private void deliver(Account account, String transferDescription) {
+    try {
+      notificationService.notifyAboutTransfer(account, transferDescription);
+    } catch (Exception ex) {
+      log.error("Failed to notify owner of account {}", account.getAccountId(), ex);
+    }
+  }
+
+  private void recordDispatched(TransferNotification notification, long nowNanos) {
+    long latency = nowNanos - notification.getEnqueuedAtNanos();
+    dispatchedCount.increment();
+    totalLatencyNanos.add(latency);
+    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+  }
+
+  /**
+   * Single thread owning a bounded queue and, with SPILL_TO_DISK, spill segments. Spilled
+   * notifications are appended to one open segment, which is rolled over once it reaches
+   * 'spill-segment-size'. They are read back from the oldest segment, which is deleted once read.
+   */
+  private final class Worker implements Runnable {
+
+    private final BlockingQueue<TransferNotification> queue;
+
+    private final Thread thread;
+
+    private final String spillPrefix;
+
+    private final Object spillLock = new Object();
+
+    // Written under spillLock, read without it for metrics and fast-path checks.
+    private volatile int spilledPending;
+
+    // Segment appended to and its open stream, null until the next spill, guarded by spillLock.
+    private long writeSegment;
+
+    private DataOutputStream spillOut;
+
+    // Segment read from and position of the first notification not read back yet, guarded by spillLock.
+    private long readSegment;
+
+    private long spillReadOffset;
+
+    private Worker(int index, int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.thread = new Thread(this, "notification-dispatcher-" + index);
+      this.thread.setDaemon(true);
+      this.spillPrefix = "notifications-" + index + "-" + System.identityHashCode(this) + "-";
+    }
+
+    private File segmentFile(long segment) {
+      return new File(properties.getSpillDirectory(), spillPrefix + segment + ".spill");
+    }
+
+    private void enqueue(TransferNotification notification) {
+      switch (properties.getBackpressure()) {
+        case DROP_OLDEST:
+          while (!queue.offer(notification)) {
+            if (queue.poll() != null) {
+              droppedCount.increment();
+            }
+          }
+          break;
+        case SPILL_TO_DISK:
+          // Once anything is spilled, later notifications follow it to the file to keep their order.
+          if (spilledPending > 0 || !queue.offer(notification)) {
+            spill(notification);
+          }
+          break;
+        default:
+          try {
+            queue.put(notification);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            droppedCount.increment();
+          }
+      }
+    }
+
+    @Override
+    public void run() {
+      List<TransferNotification> batch = new ArrayList<>(properties.getBatchSize());
+      while (running || !queue.isEmpty() || spilledPending > 0) {
+        try {
+          TransferNotification first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+          if (first != null) {
+            batch.add(first);
+            queue.drainTo(batch, properties.getBatchSize() - 1);
+          } else if (spilledPending > 0) {
+            readSpilled(batch);
+          }
+          if (!batch.isEmpty()) {
+            deliverBatch(batch);
+            batch.clear();
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private void deliverBatch(List<TransferNotification> batch) {
+      Map<String, List<TransferNotification>> byAccount = new LinkedHashMap<>();
+      for (TransferNotification notification : batch) {
+        byAccount.computeIfAbsent(notification.getAccount().getAccountId(), id -> new ArrayList<>())
+          .add(notification);
+      }
+
+      for (List<TransferNotification> notifications : byAccount.values()) {
+        TransferNotification first = notifications.get(0);
+        if (notifications.size() == 1) {
+          deliver(first.getAccount(), first.getTransferDescription());
+        } else {
+          StringBuilder description = new StringBuilder();
+          for (TransferNotification notification : notifications) {
+            if (description.length() > 0) {
+              description.append('\n');
+            }
+            description.append(notification.getTransferDescription());
+          }
+          deliver(first.getAccount(), description.toString());
+        }
+        long now = System.nanoTime();
+        for (TransferNotification notification : notifications) {
+          recordDispatched(notification, now);
+        }
+      }
+    }
+
+    private void spill(TransferNotification notification) {
+      synchronized (spillLock) {
+        try {
+          if (spillOut == null) {
+            spillOut = new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(segmentFile(writeSegment), true)));
+          }
+          // Buffered, flushed when the buffer is full or before reading back
+          spillOut.writeUTF(notification.getAccount().getAccountId());
+          spillOut.writeUTF(notification.getTransferDescription());
+          spillOut.writeLong(notification.getEnqueuedAtNanos());
+          spilledPending++;
+          spilledCount.increment();
+          if (spillOut.size() >= properties.getSpillSegmentSize()) {
+            spillOut.close();
+            spillOut = null;
+            writeSegment++;
+          }
+        } catch (IOException ex) {
+          log.error("Failed to spill notification for account {}, dropping it",
+            notification.getAccount().getAccountId(), ex);
+          droppedCount.increment();
+          // Keep a partly written notification at the end of its segment
+          closeSpillOut();
+          writeSegment++;
+        }
+      }
+    }
+
+    /**
+     * Reads at most one batch of spilled notifications, continuing where the previous call stopped.
+     * Segments are deleted once everything spilled to them has been read back.
+     */
+    private void readSpilled(List<TransferNotification> batch) {
+      synchronized (spillLock) {
+        try {
+          if (spillOut != null) {
+            spillOut.flush();
+          }
+          while (batch.size() < properties.getBatchSize() && spilledPending > 0) {
+            boolean segmentRead = readSegment(batch);
+            if (!segmentRead || readSegment == writeSegment) {
+              break;
+            }
+            deleteSegment(readSegment);
+            readSegment++;
+            spillReadOffset = 0;
+          }
+        } catch (IOException ex) {
+          log.error("Failed to read spilled notifications from {}", segmentFile(readSegment), ex);
+          droppedCount.add(spilledPending);
+          spilledPending = 0;
+        }
+        if (spilledPending == 0) {
+          // Everything has been read back, start over with a new segment
+          closeSpillOut();
+          for (long segment = readSegment; segment <= writeSegment; segment++) {
+            deleteSegment(segment);
+          }
+          writeSegment++;
+          readSegment = writeSegment;
+          spillReadOffset = 0;
+        }
+      }
+    }
+
+    /**
+     * Reads notifications of the read segment into the batch until the batch is full.
+     * @return true if the end of the segment has been reached
+     */
+    private boolean readSegment(List<TransferNotification> batch) throws IOException {
+      File segment = segmentFile(readSegment);
+      if (!segment.exists()) {
+        return true;
+      }
+      try (FileInputStream file = new FileInputStream(segment)) {
+        file.getChannel().position(spillReadOffset);
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(file));
+        DataInputStream in = new DataInputStream(counting);
+        try {
+          while (batch.size() < properties.getBatchSize() && spilledPending > 0) {
+            String accountId = in.readUTF();
+            String transferDescription = in.readUTF();
+            long enqueuedAtNanos = in.readLong();
+            Account account = accountsRepository.getAccount(accountId);
+            batch.add(new TransferNotification(account != null ? account : new Account(accountId),
+              transferDescription, enqueuedAtNanos));
+            spilledPending--;
+            spillReadOffset += counting.count;
+            counting.count = 0;
+          }
+          return false;
+        } catch (EOFException ex) {
+          // Segments hold whole notifications only, everything written has been flushed
+          return true;
+        }
+      }
+    }
+
+    private void closeSpillOut() {
+      if (spillOut != null) {
+        try {
+          spillOut.close();
+        } catch (IOException ex) {
+          log.warn("Could not close spill segment {}", segmentFile(writeSegment), ex);
+        }
+        spillOut = null;
+      }
+    }
+
+    private void deleteSegment(long segment) {
+      File file = segmentFile(segment);
+      if (!file.delete() && file.exists()) {
+        log.warn("Could not delete spill segment {}", file);
+      }
+    }
+  }
+
+  /**
+   * Counts the bytes read through it, so that reading a spill file can continue at the next record.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+  }
+}
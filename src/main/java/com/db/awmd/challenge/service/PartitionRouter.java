@@ -0,0 +1,177 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.PartitionProperties;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.util.ConsistentHashRing;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Knows which node keeps an account and sends requests to other nodes.
+ * <p>
+ * Accounts are assigned to the configured nodes by a {@link ConsistentHashRing} over the account
+ * id, every node builds the same ring from the same list of nodes. Without partitioning this node
+ * keeps every account and nothing is ever sent to another node.
+ */
+@Component
+@Slf4j
+public class PartitionRouter {
+
+  /** Header marking a request sent by another node, such a request is never forwarded again. */
+  public static final String FORWARDED_HEADER = "X-Partition-Forwarded";
+
+  /** Header carrying the secret shared by the nodes, see {@link #isTrusted(String)}. */
+  public static final String SECRET_HEADER = "X-Partition-Secret";
+
+  private final boolean enabled;
+
+  private final String self;
+
+  private final byte[] secret;
+
+  private final ConsistentHashRing ring;
+
+  private final RestTemplate restTemplate;
+
+  @Autowired
+  public PartitionRouter(PartitionProperties properties) {
+    this.enabled = properties.isEnabled();
+    this.self = trimSlash(properties.getSelf());
+    this.secret = properties.getSecret().getBytes(StandardCharsets.UTF_8);
+    if (enabled) {
+      if (secret.length == 0) {
+        throw new IllegalStateException("'partition.secret' must be set when partitioning is enabled");
+      }
+      List<String> nodes = properties.getNodes().stream().map(PartitionRouter::trimSlash).collect(Collectors.toList());
+      this.ring = new ConsistentHashRing(nodes, properties.getVirtualNodes());
+      if (!ring.getNodes().contains(self)) {
+        throw new IllegalStateException("Node '" + self + "' of 'partition.self' is not one of 'partition.nodes'");
+      }
+      log.info("Partitioning accounts across {} nodes, this node is {}", nodes.size(), self);
+    } else {
+      this.ring = null;
+    }
+
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(properties.getRequestTimeoutMillis());
+    requestFactory.setReadTimeout(properties.getRequestTimeoutMillis());
+    this.restTemplate = new RestTemplate(requestFactory);
+    // Error responses of the other node are passed on as they are
+    this.restTemplate.setErrorHandler(new ResponseErrorHandler() {
+      @Override
+      public boolean hasError(ClientHttpResponse response) {
+        return false;
+      }
+
+      @Override
+      public void handleError(ClientHttpResponse response) {
+      }
+    });
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param secret - secret sent by the caller, null for none
+   * @return true if the caller is one of the configured nodes, always false without partitioning
+   */
+  public boolean isTrusted(String secret) {
+    // Compared in constant time, so the secret cannot be guessed from response times
+    return enabled && secret != null && MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return base URL of this node, empty without partitioning
+   */
+  public String getSelf() {
+    return self;
+  }
+
+  /**
+   * @return position of this node in the list of nodes, 0 without partitioning
+   */
+  public int getSelfIndex() {
+    return enabled ? ring.getNodes().indexOf(self) : 0;
+  }
+
+  /**
+   * @param accountId - id of any account, existing or not
+   * @return true if the account belongs to this node, always true without partitioning
+   */
+  public boolean isLocal(String accountId) {
+    return !enabled || accountId == null || self.equals(ring.nodeFor(accountId));
+  }
+
+  /**
+   * @param accountId - id of any account, existing or not
+   * @return base URL of the node the account belongs to
+   */
+  public String ownerOf(String accountId) {
+    return enabled ? ring.nodeFor(accountId) : self;
+  }
+
+  /**
+   * Sends a request to another node and waits for its response.
+   * @param node - base URL of the node
+   * @param method - HTTP method
+   * @param path - path and query of the request
+   * @param body - JSON body, null for none
+   * @param ifNoneMatch - If-None-Match header to pass on, null for none
+   * @return response of the node with its status, body, Content-Type and ETag
+   * @throws NodeUnavailableException if the node cannot be reached or does not answer in time
+   */
+  public ResponseEntity<byte[]> send(String node, HttpMethod method, String path, byte[] body,
+    String ifNoneMatch) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(FORWARDED_HEADER, self);
+    headers.set(SECRET_HEADER, new String(secret, StandardCharsets.UTF_8));
+    if (body != null) {
+      headers.setContentType(MediaType.APPLICATION_JSON);
+    }
+    if (ifNoneMatch != null) {
+      headers.setIfNoneMatch(ifNoneMatch);
+    }
+    ResponseEntity<byte[]> response;
+    try {
+      response = restTemplate.exchange(new RequestEntity<>(body, headers, method, URI.create(node + path)),
+        byte[].class);
+    } catch (ResourceAccessException ex) {
+      log.warn("Node {} is not available: {}", node, ex.getMessage());
+      throw new NodeUnavailableException("Node of the account is not available, please retry later.");
+    }
+
+    // Connection headers of the other node do not apply to this response
+    HttpHeaders responseHeaders = new HttpHeaders();
+    if (response.getHeaders().getContentType() != null) {
+      responseHeaders.setContentType(response.getHeaders().getContentType());
+    }
+    if (response.getHeaders().getETag() != null) {
+      responseHeaders.setETag(response.getHeaders().getETag());
+    }
+    HttpStatus status = response.getStatusCode();
+    return new ResponseEntity<>(response.getBody(), responseHeaders, status);
+  }
+
+  private static String trimSlash(String url) {
+    return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+}
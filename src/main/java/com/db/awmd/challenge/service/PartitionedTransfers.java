@@ -0,0 +1,556 @@
+package com.db.awmd.challenge.service;
+
+import static com.db.awmd.challenge.util.Constants.*;
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.PartitionProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.PartitionTransfer;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.TransferConflictException;
+import com.db.awmd.challenge.exception.UnknownTransferException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Transfers between accounts kept by different nodes, in two phases.
+ * <p>
+ * The node of the debited account coordinates the transfer. It reserves the amount by debiting it,
+ * then asks the node of the credited account to prepare the transfer, which checks the credited
+ * account but changes nothing. If the other node refuses or cannot be reached, the amount is
+ * credited back and the transfer has failed. Otherwise the coordinator decides to commit and the
+ * other node credits the amount. A commit whose answer is lost stays in doubt and is sent again
+ * by a recovery thread until the other node answers, the other node applies a repeated commit only
+ * once. Only an explicit refusal of the commit credits the amount back. A commit the other node
+ * does not know (any more) stays in doubt, as it may have been applied already.
+ * <p>
+ * The other node remembers every decision for 'partition.decision-ttl-seconds' after its last
+ * change and never forgets one earlier. Once it remembers 'partition.max-decisions' decisions, it
+ * refuses to prepare further transfers until decisions have expired.
+ * <p>
+ * The other node never credits anything without a commit, and the coordinator sends a commit only
+ * after the other node has prepared the transfer, so money is neither created nor lost when
+ * either node fails. Money of a transfer in doubt is missing from the balances of both nodes
+ * until the commit arrives. Protocol state is kept in memory, like the accounts.
+ */
+@Service
+@Slf4j
+public class PartitionedTransfers {
+
+  public static final String TRANSFERS_PATH = "/v1/partition/transfers/";
+
+  private static final String CURRENCY_MISMATCH =
+    "Transfers between partitions are supported between accounts of one currency only.";
+
+  private final PartitionProperties properties;
+
+  private final PartitionRouter router;
+
+  private final AccountsService accountsService;
+
+  private final ObjectMapper objectMapper;
+
+  // Unique per node and start of the node, so that restarted nodes never reuse transfer ids
+  private final String idPrefix;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  // Coordinator: committed transfers the other node has not acknowledged yet, by transfer id
+  private final Map<String, InDoubtTransfer> inDoubt = new ConcurrentHashMap<>();
+
+  // Participant: transfers from other nodes and the state they have reached, by transfer id.
+  // Never evicted by size, a forgotten commit could not be told from one never prepared.
+  private final Map<String, Decision> decisions = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService recovery;
+
+  @Autowired
+  public PartitionedTransfers(PartitionProperties properties, PartitionRouter router,
+    AccountsService accountsService, ObjectMapper objectMapper, JournalProperties journalProperties) {
+    if (router.isEnabled() && journalProperties.isEnabled()) {
+      throw new IllegalStateException("Journal cannot be enabled together with partitioning");
+    }
+    this.properties = properties;
+    this.router = router;
+    this.accountsService = accountsService;
+    this.objectMapper = objectMapper;
+    this.idPrefix = router.getSelfIndex() + "-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!router.isEnabled()) {
+      return;
+    }
+    recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "partition-recovery");
+      thread.setDaemon(true);
+      return thread;
+    });
+    recovery.scheduleWithFixedDelay(this::recover, properties.getRecoveryIntervalMillis(),
+      properties.getRecoveryIntervalMillis(), TimeUnit.MILLISECONDS);
+    long expiryIntervalSeconds = Math.max(1, properties.getDecisionTtlSeconds() / 10);
+    recovery.scheduleWithFixedDelay(this::expireDecisions, expiryIntervalSeconds, expiryIntervalSeconds,
+      TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (recovery != null) {
+      recovery.shutdownNow();
+    }
+  }
+
+  /**
+   * @return number of committed transfers the node of the credited account has not acknowledged yet
+   */
+  public int getInDoubtCount() {
+    return inDoubt.size();
+  }
+
+  /**
+   * @return number of transfers from other nodes whose decision is remembered
+   */
+  public int getDecisionCount() {
+    return decisions.size();
+  }
+
+  /**
+   * Transfers money from an account of this node to an account of another node.
+   * @param transferRequest - request whose source account belongs to this node
+   * @return JSON response with success message, or with {@link com.db.awmd.challenge.util.Constants#PENDING}
+   * 		if the amount has been debited and the credit is completed later by recovery
+   * @throws InvalidTransferRequestException if the request carries an idempotency key or the amount
+   * is not positive, the other node would refuse to prepare it
+   * @throws NodeUnavailableException if the other node is not available, nothing has been transferred then
+   */
+  public JSONObject transferFunds(AmountTransferRequest transferRequest) {
+    if (transferRequest.getIdempotencyKey() != null) {
+      throw new InvalidTransferRequestException("Idempotency keys are not supported for transfers between partitions.");
+    }
+    TransferMetrics metrics = accountsService.getTransferMetrics();
+    Account accFrom = accountsService.getAccount(transferRequest.getAccountFromId());
+    if (accFrom == null) {
+      metrics.invalidAccount();
+      throw new InvalidAccountException("Account with number '" + transferRequest.getAccountFromId()
+        + "' does not exist. Please provide valid account number.");
+    }
+    BigDecimal amount = transferRequest.getAmountToTransfer();
+    checkAmount(amount);
+    long units = Money.toMinorUnits(amount);
+    String node = router.ownerOf(transferRequest.getAccountToId());
+    PartitionTransfer transfer = new PartitionTransfer(idPrefix + sequence.incrementAndGet(),
+      accFrom.getAccountId(), transferRequest.getAccountToId(), amount, accFrom.getCurrency(), null);
+
+    // Reserve: the amount leaves the debited account before the other node is asked
+    long accFromBalance;
+    int stripe = accountsService.getTransferGate().enter();
+    try {
+      accFromBalance = accountsService.getBalanceEngine().debit(accFrom, units);
+    } catch (InsufficientBalanceException ex) {
+      metrics.insufficientBalance();
+      throw ex;
+    } finally {
+      accountsService.getTransferGate().exit(stripe);
+    }
+
+    // Prepare: the other node checks the credited account, nothing is credited yet
+    ResponseEntity<byte[]> prepared;
+    try {
+      prepared = send(node, transfer, "prepare");
+    } catch (RuntimeException ex) {
+      refund(accFrom, units);
+      abortLater(node, transfer);
+      throw new NodeUnavailableException("Node of account '" + transfer.getAccountToId()
+        + "' is not available, the transfer has not been executed.");
+    }
+    if (!prepared.getStatusCode().is2xxSuccessful()) {
+      refund(accFrom, units);
+      if (prepared.getStatusCode().is4xxClientError()) {
+        metrics.invalidAccount();
+        throw new InvalidAccountException(errorOf(prepared));
+      }
+      abortLater(node, transfer);
+      throw new NodeUnavailableException("Node of account '" + transfer.getAccountToId()
+        + "' is not available, the transfer has not been executed.");
+    }
+
+    // Commit: decided here, sent again by recovery until the other node answers
+    InDoubtTransfer committed = new InDoubtTransfer(node, accFrom,
+      transfer.withAccFromBalance(Money.toBigDecimal(accFromBalance)));
+    inDoubt.put(transfer.getTransferId(), committed);
+    ResponseEntity<byte[]> response = commit(committed);
+    if (response == null || !isDefinite(response)) {
+      log.warn("Commit of transfer {} on node {} is in doubt, it is completed by recovery",
+        transfer.getTransferId(), node);
+      JSONObject pending = new JSONObject();
+      pending.put(MESSAGE, PENDING_MESSAGE);
+      pending.put(TRANSFER_ID, transfer.getTransferId());
+      pending.put(PENDING, true);
+      return pending;
+    }
+    if (!response.getStatusCode().is2xxSuccessful()) {
+      throw new InvalidAccountException(errorOf(response));
+    }
+    JSONObject success = new JSONObject();
+    success.put(MESSAGE, "Funds has been transferred successfully");
+    return success;
+  }
+
+  /**
+   * Sends the commit of a transfer and completes or refunds it on a definite answer. Either the
+   * request thread or recovery acts on the answer, whichever removes the transfer first.
+   * @return answer of the other node, null if the other node has not answered
+   */
+  private ResponseEntity<byte[]> commit(InDoubtTransfer committed) {
+    PartitionTransfer transfer = committed.transfer;
+    ResponseEntity<byte[]> response;
+    try {
+      response = send(committed.node, transfer, "commit");
+    } catch (RuntimeException ex) {
+      return null;
+    }
+    if (response.getStatusCode().is2xxSuccessful()) {
+      if (inDoubt.remove(transfer.getTransferId(), committed)) {
+        complete(committed, balanceOf(response));
+      }
+      return response;
+    }
+    if (response.getStatusCode() == HttpStatus.CONFLICT) {
+      // The other node has refused the commit and will never apply it
+      if (inDoubt.remove(transfer.getTransferId(), committed)) {
+        log.warn("Transfer {} has been refused by node {}: {}", transfer.getTransferId(), committed.node,
+          errorOf(response));
+        refund(committed.accFrom, Money.toMinorUnits(transfer.getAmount()));
+      }
+      return response;
+    }
+    // Unknown to the other node or failed there, it may have been applied all the same
+    return response;
+  }
+
+  /**
+   * @return true if the answer to a commit completes the transfer, by applying or refusing it
+   */
+  private static boolean isDefinite(ResponseEntity<byte[]> response) {
+    return response.getStatusCode().is2xxSuccessful() || response.getStatusCode() == HttpStatus.CONFLICT;
+  }
+
+  private void complete(InDoubtTransfer committed, BigDecimal accToBalance) {
+    PartitionTransfer transfer = committed.transfer;
+    accountsService.getAuditLog().record(transfer.getAccountFromId(), transfer.getAccountToId(),
+      transfer.getAmount(), transfer.getAccFromBalance(), accToBalance);
+    accountsService.getTransferLedger().record(transfer.getAccountFromId(), transfer.getAccountToId(),
+      transfer.getAmount(), transfer.getAccFromBalance(), accToBalance);
+    accountsService.getNotificationDispatcher().dispatchTransferSide(committed.accFrom, true,
+      transfer.getAmount(), transfer.getAccFromBalance());
+    accountsService.getTransferMetrics().transferSucceeded();
+  }
+
+  private void refund(Account accFrom, long units) {
+    int stripe = accountsService.getTransferGate().enter();
+    try {
+      accountsService.getBalanceEngine().credit(accFrom, units);
+    } finally {
+      accountsService.getTransferGate().exit(stripe);
+    }
+  }
+
+  /**
+   * Tells the other node that a transfer will never be committed. Only tidies up, the other node
+   * never credits a transfer without its commit.
+   */
+  private void abortLater(String node, PartitionTransfer transfer) {
+    if (recovery == null) {
+      return;
+    }
+    recovery.execute(() -> {
+      try {
+        router.send(node, HttpMethod.PUT, TRANSFERS_PATH + transfer.getTransferId() + "/abort", null, null);
+      } catch (RuntimeException ex) {
+        log.debug("Abort of transfer {} has not reached node {}", transfer.getTransferId(), node);
+      }
+    });
+  }
+
+  /**
+   * Sends the commit of every transfer in doubt again, until the other node applies or refuses it.
+   * A transfer is never given up: its amount has been debited and may have been credited already.
+   * One still in doubt after half the decision TTL, or not known by the other node, is reported
+   * once to be reconciled and its commit keeps being sent.
+   */
+  private void recover() {
+    long now = System.nanoTime();
+    long minAgeNanos = TimeUnit.MILLISECONDS.toNanos(properties.getRequestTimeoutMillis());
+    long reportAgeNanos = TimeUnit.SECONDS.toNanos(properties.getDecisionTtlSeconds()) / 2;
+    for (InDoubtTransfer committed : inDoubt.values()) {
+      PartitionTransfer transfer = committed.transfer;
+      long age = now - committed.decidedAtNanos;
+      if (age < minAgeNanos) {
+        // Request thread is probably still waiting for the answer
+        continue;
+      }
+      try {
+        ResponseEntity<byte[]> response = commit(committed);
+        if (response != null && isDefinite(response)) {
+          log.info("Transfer {} in doubt has been answered by node {} with {}", transfer.getTransferId(),
+            committed.node, response.getStatusCode());
+        } else if (!committed.reported && (age > reportAgeNanos
+          || response != null && response.getStatusCode() == HttpStatus.NOT_FOUND)) {
+          committed.reported = true;
+          log.error("Transfer {} of {} from account {} to account {} on node {} is still in doubt and has to be "
+            + "reconciled, last answer: {}", transfer.getTransferId(), transfer.getAmount(), transfer.getAccountFromId(),
+            transfer.getAccountToId(), committed.node, response != null ? errorOf(response) : "none");
+        }
+      } catch (RuntimeException ex) {
+        log.error("Recovery of transfer {} failed", transfer.getTransferId(), ex);
+      }
+    }
+  }
+
+  /**
+   * Forgets decisions which have not changed for the decision TTL.
+   */
+  private void expireDecisions() {
+    long now = System.nanoTime();
+    long ttlNanos = TimeUnit.SECONDS.toNanos(properties.getDecisionTtlSeconds());
+    for (Iterator<Decision> iterator = decisions.values().iterator(); iterator.hasNext(); ) {
+      Decision decision = iterator.next();
+      synchronized (decision) {
+        if (now - decision.changedAtNanos > ttlNanos) {
+          decision.expired = true;
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Prepares a transfer from another node to an account of this node. Repeating a prepare has no
+   * further effect.
+   * @param transfer - transfer as sent by the node of the debited account
+   * @throws InvalidTransferRequestException if the amount is missing, not positive or has more than
+   * {@link Money#SCALE} decimal places
+   * @throws InvalidAccountException if the credited account does not exist
+   * @throws CurrencyMismatchException if the credited account is in another currency
+   * @throws TransferConflictException if the transfer has already been aborted
+   * @throws NodeUnavailableException if this node remembers as many decisions as it may
+   */
+  public void prepare(PartitionTransfer transfer) {
+    checkAmount(transfer.getAmount());
+    Account accTo = accountsService.getAccount(transfer.getAccountToId());
+    if (accTo == null) {
+      throw new InvalidAccountException("Account with number '" + transfer.getAccountToId()
+        + "' does not exist. Please provide valid account number.");
+    }
+    FxRateCache fxRateCache = accountsService.getFxRateCache();
+    String currency = transfer.getCurrency() != null ? transfer.getCurrency() : fxRateCache.getBaseCurrency();
+    if (!fxRateCache.currencyOf(accTo).equals(currency)) {
+      throw new CurrencyMismatchException(CURRENCY_MISMATCH);
+    }
+    Decision previous = decisions.get(transfer.getTransferId());
+    if (previous == null) {
+      // Nothing is prepared yet, so the coordinator can safely credit the amount back
+      if (decisions.size() >= properties.getMaxDecisions()) {
+        throw new NodeUnavailableException("Too many transfers between partitions in progress, please retry later.");
+      }
+      previous = decisions.putIfAbsent(transfer.getTransferId(), new Decision(transfer, Decision.PREPARED));
+    }
+    if (previous != null) {
+      synchronized (previous) {
+        if (previous.state == Decision.ABORTED) {
+          throw new TransferConflictException("Transfer '" + transfer.getTransferId() + "' has been aborted.");
+        }
+      }
+    }
+  }
+
+  /**
+   * Credits a prepared transfer from another node. A repeated commit is not applied again, it
+   * returns the balance of the first one.
+   * @param transfer - transfer as sent by the node of the debited account, with its balance
+   * @return balance of the credited account after the transfer
+   * @throws TransferConflictException if the transfer has been aborted
+   * @throws UnknownTransferException if the transfer has not been prepared or has been forgotten
+   */
+  public BigDecimal commit(PartitionTransfer transfer) {
+    Decision decision = decisions.get(transfer.getTransferId());
+    if (decision == null) {
+      throw unknown(transfer.getTransferId());
+    }
+    synchronized (decision) {
+      if (decision.expired) {
+        throw unknown(transfer.getTransferId());
+      }
+      if (decision.state == Decision.ABORTED) {
+        throw new TransferConflictException("Transfer '" + transfer.getTransferId() + "' has been aborted.");
+      }
+      if (decision.state == Decision.PREPARED) {
+        PartitionTransfer prepared = decision.transfer;
+        Account accTo = accountsService.getAccount(prepared.getAccountToId());
+        long accToBalance;
+        int stripe = accountsService.getTransferGate().enter();
+        try {
+          accToBalance = accountsService.getBalanceEngine().credit(accTo, Money.toMinorUnits(prepared.getAmount()));
+        } catch (ArithmeticException ex) {
+          decision.change(Decision.ABORTED);
+          throw new TransferConflictException("Amount cannot be credited to account '" + prepared.getAccountToId()
+            + "'.");
+        } finally {
+          accountsService.getTransferGate().exit(stripe);
+        }
+        decision.change(Decision.COMMITTED);
+        decision.accToBalance = Money.toBigDecimal(accToBalance);
+
+        accountsService.getTransferLedger().record(prepared.getAccountFromId(), prepared.getAccountToId(),
+          prepared.getAmount(), transfer.getAccFromBalance(), decision.accToBalance);
+        accountsService.getNotificationDispatcher().dispatchTransferSide(accTo, false, prepared.getAmount(),
+          decision.accToBalance);
+      }
+      return decision.accToBalance;
+    }
+  }
+
+  /**
+   * Aborts a transfer from another node, a later prepare or commit of it is refused.
+   * @param transferId - id of the transfer
+   * @throws TransferConflictException if the transfer has already been committed
+   */
+  public void abort(String transferId) {
+    Decision decision = decisions.get(transferId);
+    if (decision == null) {
+      // Refuses a prepare still on its way, unless already full: a late prepare is never committed
+      if (decisions.size() >= properties.getMaxDecisions()) {
+        return;
+      }
+      decision = decisions.putIfAbsent(transferId, new Decision(null, Decision.ABORTED));
+    }
+    if (decision != null) {
+      synchronized (decision) {
+        if (decision.state == Decision.COMMITTED) {
+          throw new TransferConflictException("Transfer '" + transferId + "' has been committed.");
+        }
+        decision.change(Decision.ABORTED);
+      }
+    }
+  }
+
+  private static void checkAmount(BigDecimal amount) {
+    if (amount == null || amount.signum() <= 0 || !Money.fits(amount)) {
+      throw new InvalidTransferRequestException("Amount to be transferred must be positive with at most "
+        + Money.SCALE + " decimal places.");
+    }
+  }
+
+  private static UnknownTransferException unknown(String transferId) {
+    return new UnknownTransferException("Transfer '" + transferId + "' has not been prepared or has been forgotten.");
+  }
+
+  private ResponseEntity<byte[]> send(String node, PartitionTransfer transfer, String phase) {
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(transfer);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Transfer " + transfer.getTransferId() + " cannot be serialized", ex);
+    }
+    return router.send(node, HttpMethod.PUT, TRANSFERS_PATH + transfer.getTransferId() + "/" + phase, body, null);
+  }
+
+  private String errorOf(ResponseEntity<byte[]> response) {
+    JsonNode error = readTree(response).get(ERROR);
+    return error != null ? error.asText() : "Transfer has been refused by the node of the account.";
+  }
+
+  private BigDecimal balanceOf(ResponseEntity<byte[]> response) {
+    JsonNode balance = readTree(response).get(BALANCE);
+    return balance != null ? balance.decimalValue() : null;
+  }
+
+  private JsonNode readTree(ResponseEntity<byte[]> response) {
+    try {
+      return response.getBody() != null ? objectMapper.readTree(response.getBody()) : objectMapper.createObjectNode();
+    } catch (IOException ex) {
+      return objectMapper.createObjectNode();
+    }
+  }
+
+  /**
+   * Transfer debited on this node whose commit has been decided.
+   */
+  private static final class InDoubtTransfer {
+
+    private final String node;
+
+    private final Account accFrom;
+
+    private final PartitionTransfer transfer;
+
+    private final long decidedAtNanos = System.nanoTime();
+
+    // Reported to be reconciled, written by the recovery thread only
+    private boolean reported;
+
+    private InDoubtTransfer(String node, Account accFrom, PartitionTransfer transfer) {
+      this.node = node;
+      this.accFrom = accFrom;
+      this.transfer = transfer;
+    }
+  }
+
+  /**
+   * State of a transfer from another node, changed and expired under the monitor of the decision.
+   */
+  private static final class Decision {
+
+    private static final int PREPARED = 0;
+
+    private static final int COMMITTED = 1;
+
+    private static final int ABORTED = 2;
+
+    private final PartitionTransfer transfer;
+
+    private int state;
+
+    private BigDecimal accToBalance;
+
+    private long changedAtNanos = System.nanoTime();
+
+    // Removed from the decisions, a commit still holding it must not apply it
+    private boolean expired;
+
+    private Decision(PartitionTransfer transfer, int state) {
+      this.transfer = transfer;
+      this.state = state;
+    }
+
+    private void change(int state) {
+      this.state = state;
+      this.changedAtNanos = System.nanoTime();
+    }
+  }
+}
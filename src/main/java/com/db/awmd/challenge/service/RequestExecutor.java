@@ -0,0 +1,123 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.AsyncExecutionProperties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dedicated executor of the asynchronous endpoints, so that servlet threads are released while a
+ * request waits for account locks or the journal.
+ * <p>
+ * Requests run on a bounded pool of platform threads with a bounded queue, or, when enabled and
+ * supported by the Java runtime, each on its own virtual thread. Virtual threads are created
+ * through reflection, so the application still builds and runs on Java 8.
+ */
+@Component
+@Slf4j
+public class RequestExecutor {
+
+  private final ExecutorService executor;
+
+  private final boolean virtualThreads;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private final LongAdder rejectedCount = new LongAdder();
+
+  @Autowired
+  public RequestExecutor(AsyncExecutionProperties properties) {
+    ExecutorService virtualThreadExecutor = properties.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+    this.virtualThreads = virtualThreadExecutor != null;
+    if (virtualThreads) {
+      this.executor = virtualThreadExecutor;
+    } else {
+      AtomicInteger threadNumber = new AtomicInteger();
+      int threads = Math.max(1, properties.getThreads());
+      this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())), runnable -> {
+          Thread thread = new Thread(runnable, "request-executor-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    }
+    log.info("Asynchronous requests run on {}", virtualThreads ? "virtual threads" : "a pool of platform threads");
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Runs the task on the executor.
+   * @param task - work of one request
+   * @return future completed with the result or the exception of the task, or with a
+   * 		{@link RejectedExecutionException} if the executor is saturated
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          result.complete(task.get());
+        } catch (Throwable ex) {
+          result.completeExceptionally(ex);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      rejectedCount.increment();
+      result.completeExceptionally(ex);
+    }
+    return result;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * @return number of requests currently executing
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return highest number of requests executing at the same time
+   */
+  public int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      log.warn("Virtual threads are not available on Java {}, using platform threads",
+        System.getProperty("java.version"));
+      return null;
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.ShardedEngineProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.repository.TransferLedger;
+import java.math.BigDecimal;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-writer engine. Accounts are partitioned into shards by account id hash and every shard is
+ * owned by one thread, which is the only thread ever changing the balances of its accounts.
+ * Transfers are published as commands into a pre-allocated ring buffer of the shard owning the
+ * source account, so no lock is taken on the transfer path.
+ * <p>
+ * A transfer between two shards is done in two phases: the source shard validates and applies the
+ * debit, then hands the credit over to the target shard. The caller returns once the credit has
+ * been applied. The target shard appends the transfer to the {@link TransferLedger} right after the
+ * credit, so credits of an account are listed in order, its debits in the order their credits
+ * followed.
+ * <p>
+ * A transfer which its shard has not taken within the timeout is withdrawn and fails without any
+ * change. Once taken, it is always waited for, a caller never returns while its transfer is still
+ * being applied.
+ */
+@Component
+@ConditionalOnProperty(prefix = "transfer", name = "engine", havingValue = "sharded")
+@Slf4j
+public class ShardedBalanceEngine implements BalanceEngine {
+
+  private static final int SPINS_BEFORE_YIELD = 100;
+
+  private static final int YIELDS_BEFORE_PARK = 100;
+
+  private final ShardedEngineProperties properties;
+
+  private final TransferLedger transferLedger;
+
+  private final Shard[] shards;
+
+  private volatile boolean running;
+
+  public ShardedBalanceEngine(ShardedEngineProperties properties) {
+    this(properties, TransferLedger.disabled());
+  }
+
+  @Autowired
+  public ShardedBalanceEngine(ShardedEngineProperties properties, TransferLedger transferLedger) {
+    this.properties = properties;
+    this.transferLedger = transferLedger;
+    int shardCount = Math.max(1, properties.getShards());
+    int ringSize = Integer.highestOneBit(Math.max(2, properties.getRingSize()) * 2 - 1);
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(i, ringSize);
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    for (Shard shard : shards) {
+      shard.thread.start();
+    }
+    log.info("Sharded balance engine started with {} shards", shards.length);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    for (Shard shard : shards) {
+      LockSupport.unpark(shard.thread);
+      shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  @Override
+  public BalanceUpdate transfer(Account accFrom, Account accTo, BigDecimal amountToTransfer) {
+    long amount = BalanceCell.toMinorUnits(amountToTransfer);
+    PendingTransfer result = new PendingTransfer();
+    shardOf(accFrom).publish(accFrom, accTo, amount, result);
+
+    try {
+      try {
+        return result.get(properties.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException ex) {
+        if (result.withdraw()) {
+          throw new LockTimeoutException("Accounts are busy, please retry later.");
+        }
+        // Taken by its shard meanwhile, the transfer completes without waiting for anything else
+        log.warn("Transfer from account {} was taken after {} ms", accFrom.getAccountId(),
+          properties.getTimeoutMillis());
+        return result.get();
+      }
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw new IllegalStateException("Transfer failed", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for transfer", ex);
+    }
+  }
+
+  private Shard shardOf(Account account) {
+    return shards[(account.getAccountId().hashCode() & Integer.MAX_VALUE) % shards.length];
+  }
+
+  private static void backOff(int attempt) {
+    if (attempt < SPINS_BEFORE_YIELD) {
+      return;
+    }
+    if (attempt < SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+    }
+  }
+
+  /**
+   * Result of a transfer. Either the shard takes the transfer before applying it or the caller
+   * withdraws it after the timeout, never both.
+   */
+  private static final class PendingTransfer extends CompletableFuture<BalanceUpdate> {
+
+    private final AtomicBoolean decided = new AtomicBoolean();
+
+    private boolean take() {
+      return decided.compareAndSet(false, true);
+    }
+
+    private boolean withdraw() {
+      return decided.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * Transfer command. Slots of the ring buffer are allocated once and reused.
+   */
+  private static final class Command {
+
+    // Sequence under which the slot was last published, -1 when never used.
+    private volatile long sequence = -1;
+
+    private Account accFrom;
+
+    private Account accTo;
+
+    private long amount;
+
+    // Balance of the source account after the debit, set when the credit is handed over.
+    private long accFromBalance;
+
+    private PendingTransfer result;
+
+    private void set(Account accFrom, Account accTo, long amount, long accFromBalance,
+      PendingTransfer result) {
+      this.accFrom = accFrom;
+      this.accTo = accTo;
+      this.amount = amount;
+      this.accFromBalance = accFromBalance;
+      this.result = result;
+    }
+
+    private void clear() {
+      set(null, null, 0, 0, null);
+    }
+  }
+
+  /**
+   * Partition of accounts owned by a single thread. New transfers arrive through a bounded
+   * multi-producer ring buffer, credits handed over by other shards through an unbounded inbox so
+   * that two shards can never block each other.
+   */
+  private final class Shard implements Runnable {
+
+    private final Command[] ring;
+
+    private final int mask;
+
+    private final AtomicLong claimSequence = new AtomicLong();
+
+    // Next sequence to be consumed, written by the owner thread only.
+    private volatile long consumeSequence;
+
+    private final Queue<Command> creditInbox = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    private Shard(int index, int ringSize) {
+      this.ring = new Command[ringSize];
+      for (int i = 0; i < ringSize; i++) {
+        ring[i] = new Command();
+      }
+      this.mask = ringSize - 1;
+      this.thread = new Thread(this, "balance-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    private void publish(Account accFrom, Account accTo, long amount,
+      PendingTransfer result) {
+      long sequence = claimSequence.getAndIncrement();
+      // Wait until the owner has consumed the slot published one lap ago.
+      for (int attempt = 0; sequence - consumeSequence >= ring.length; attempt++) {
+        backOff(attempt);
+      }
+      Command command = ring[(int) sequence & mask];
+      command.set(accFrom, accTo, amount, 0, result);
+      command.sequence = sequence;
+      LockSupport.unpark(thread);
+    }
+
+    private void handOverCredit(Account accFrom, Account accTo, long amount, long accFromBalance,
+      PendingTransfer result) {
+      Command command = new Command();
+      command.set(accFrom, accTo, amount, accFromBalance, result);
+      creditInbox.offer(command);
+      LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (running) {
+        boolean worked = false;
+
+        Command credit;
+        while ((credit = creditInbox.poll()) != null) {
+          applyCredit(credit);
+          worked = true;
+        }
+
+        long sequence = consumeSequence;
+        Command command = ring[(int) sequence & mask];
+        if (command.sequence == sequence) {
+          // A withdrawn transfer only frees its slot
+          if (command.result.take()) {
+            applyDebit(command);
+          }
+          command.clear();
+          consumeSequence = sequence + 1;
+          worked = true;
+        }
+
+        if (worked) {
+          idle = 0;
+        } else {
+          backOff(idle++);
+        }
+      }
+    }
+
+    private void applyDebit(Command command) {
+      try {
+        long accFromBalance = command.accFrom.getBalanceCell().tryDebit(command.amount);
+        if (accFromBalance == BalanceCell.INSUFFICIENT) {
+          command.result.completeExceptionally(
+            new InsufficientBalanceException("You don't have sufficient balance."));
+          return;
+        }
+
+        Shard target = shardOf(command.accTo);
+        if (target == this) {
+          applyCredit(command.accFrom, command.accTo, command.amount, accFromBalance, command.result);
+        } else {
+          target.handOverCredit(command.accFrom, command.accTo, command.amount, accFromBalance,
+            command.result);
+        }
+      } catch (RuntimeException ex) {
+        command.result.completeExceptionally(ex);
+      }
+    }
+
+    private void applyCredit(Command command) {
+      applyCredit(command.accFrom, command.accTo, command.amount, command.accFromBalance,
+        command.result);
+    }
+
+    private void applyCredit(Account accFrom, Account accTo, long amount, long accFromBalance,
+      PendingTransfer result) {
+      try {
+        long accToBalance = accTo.getBalanceCell().credit(amount);
+        transferLedger.recordUnits(accFrom.getAccountId(), accTo.getAccountId(), amount, amount, accFromBalance,
+          accToBalance);
+        result.complete(new BalanceUpdate(BalanceCell.toBigDecimal(accFromBalance),
+          BalanceCell.toBigDecimal(accToBalance)));
+      } catch (RuntimeException ex) {
+        // Credit overflowed, hand the amount back to the source shard.
+        shardOf(accFrom).handOverRefund(accFrom, amount);
+        result.completeExceptionally(ex);
+      }
+    }
+
+    private void handOverRefund(Account accFrom, long amount) {
+      if (Thread.currentThread() == thread) {
+        accFrom.getBalanceCell().credit(amount);
+      } else {
+        // Refund is a credit to the source account with nothing to report back.
+        handOverCredit(accFrom, accFrom, amount, 0, new PendingTransfer());
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Asynchronous binary audit log of committed transfers. Transfer threads only copy references into
+ * a pre-allocated ring buffer, which a background thread encodes and writes to the audit file, so
+ * recording a transfer neither allocates nor formats text nor does any I/O.
+ * <p>
+ * A configurable sample of the records is also logged human-readable at INFO, by the writer thread.
+ * <p>
+ * File layout: magic and format version, then per transfer the wall clock time in milliseconds,
+ * both account ids (unsigned short char count followed by UTF-16 chars), the amount and both updated balances
+ * (each as scale byte and unscaled long).
+ */
+@Component
+@Slf4j
+public class TransferAuditLog {
+
+  private static final int MAGIC = 0x41554454;
+
+  private static final int VERSION = 1;
+
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+  // Fixed part of a record: time, two id lengths, three scales and three unscaled values.
+  private static final int FIXED_RECORD_SIZE = 8 + 2 + 2 + 3 * (1 + 8);
+
+  private static final int SPINS_BEFORE_YIELD = 100;
+
+  private static final int YIELDS_BEFORE_PARK = 100;
+
+  private final AuditProperties properties;
+
+  private final Entry[] ring;
+
+  private final int mask;
+
+  private final long logEvery;
+
+  private final AtomicLong claimSequence = new AtomicLong();
+
+  // Next sequence to be written, changed by the writer thread only.
+  private volatile long consumeSequence;
+
+  private final LongAdder writtenCount = new LongAdder();
+
+  private final LongAdder failedCount = new LongAdder();
+
+  private volatile boolean running;
+
+  private Thread writer;
+
+  private File file;
+
+  @Autowired
+  public TransferAuditLog(AuditProperties properties) {
+    this.properties = properties;
+    int ringSize = Integer.highestOneBit(Math.max(2, properties.getRingSize()) * 2 - 1);
+    this.ring = new Entry[ringSize];
+    for (int i = 0; i < ringSize; i++) {
+      ring[i] = new Entry();
+    }
+    this.mask = ringSize - 1;
+    double sampleRate = Math.min(1, properties.getLogSampleRate());
+    this.logEvery = sampleRate > 0 ? Math.round(1 / sampleRate) : 0;
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  @PostConstruct
+  public synchronized void start() throws IOException {
+    if (!isEnabled() || running) {
+      return;
+    }
+    File directory = new File(properties.getDirectory());
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create audit directory " + directory.getAbsolutePath());
+    }
+    file = new File(directory, String.format("audit-%d.bin", System.currentTimeMillis()));
+    running = true;
+    writer = new Thread(this::writeLoop, "transfer-audit-writer");
+    writer.setDaemon(true);
+    writer.start();
+    log.info("Transfer audit log is written to {}", file.getAbsolutePath());
+  }
+
+  @PreDestroy
+  public synchronized void stop() throws InterruptedException {
+    running = false;
+    if (writer != null) {
+      LockSupport.unpark(writer);
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+      writer = null;
+    }
+  }
+
+  /**
+   * Records a committed transfer. Waits only when the writer thread is a whole ring behind.
+   * @param accountFromId - id of the debited account
+   * @param accountToId - id of the credited account
+   * @param amount - transferred amount
+   * @param accFromBalance - balance of the debited account after the transfer
+   * @param accToBalance - balance of the credited account after the transfer
+   */
+  public void record(String accountFromId, String accountToId, BigDecimal amount,
+    BigDecimal accFromBalance, BigDecimal accToBalance) {
+    if (!running) {
+      return;
+    }
+    long sequence = claimSequence.getAndIncrement();
+    for (int attempt = 0; sequence - consumeSequence >= ring.length; attempt++) {
+      if (!running) {
+        return;
+      }
+      backOff(attempt);
+    }
+    Entry entry = ring[(int) sequence & mask];
+    entry.timeMillis = System.currentTimeMillis();
+    entry.accountFromId = accountFromId;
+    entry.accountToId = accountToId;
+    entry.amount = amount;
+    entry.accFromBalance = accFromBalance;
+    entry.accToBalance = accToBalance;
+    entry.sequence = sequence;
+  }
+
+  /**
+   * @return file the audit records are written to, null when the audit log is not running
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return number of records written to the audit file
+   */
+  public long getWrittenCount() {
+    return writtenCount.sum();
+  }
+
+  /**
+   * @return number of records which could not be written
+   */
+  public long getFailedCount() {
+    return failedCount.sum();
+  }
+
+  private void writeLoop() {
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+      FileChannel channel = output.getChannel()) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+      buffer.putInt(MAGIC).putInt(VERSION);
+      int idle = 0;
+      while (running || consumeSequence < claimSequence.get()) {
+        long sequence = consumeSequence;
+        Entry entry = ring[(int) sequence & mask];
+        if (entry.sequence != sequence) {
+          // Nothing published, or a claimed slot not filled yet.
+          if (buffer.position() > 0) {
+            flush(channel, buffer);
+          }
+          backOff(idle++);
+          continue;
+        }
+        idle = 0;
+        int size = FIXED_RECORD_SIZE + 2 * (entry.accountFromId.length() + entry.accountToId.length());
+        if (buffer.remaining() < size) {
+          flush(channel, buffer);
+        }
+        if (buffer.remaining() < size) {
+          log.error("Audit record of transfer from account {} is too large, skipping it", entry.accountFromId);
+          failedCount.increment();
+        } else {
+          encode(entry, buffer);
+          if (logEvery > 0 && sequence % logEvery == 0) {
+            log.info("Transferred {} from account {} to account {}. Updated balances: {} and {}",
+              entry.amount, entry.accountFromId, entry.accountToId, entry.accFromBalance, entry.accToBalance);
+          }
+        }
+        entry.clear();
+        consumeSequence = sequence + 1;
+      }
+      flush(channel, buffer);
+    } catch (IOException | RuntimeException ex) {
+      log.error("Transfer audit log failed, no further transfers are audited", ex);
+      running = false;
+    }
+  }
+
+  private void encode(Entry entry, ByteBuffer buffer) {
+    buffer.putLong(entry.timeMillis);
+    putString(buffer, entry.accountFromId);
+    putString(buffer, entry.accountToId);
+    putDecimal(buffer, entry.amount);
+    putDecimal(buffer, entry.accFromBalance);
+    putDecimal(buffer, entry.accToBalance);
+    writtenCount.increment();
+  }
+
+  private static void putString(ByteBuffer buffer, String value) {
+    buffer.putShort((short) value.length());
+    for (int i = 0; i < value.length(); i++) {
+      buffer.putChar(value.charAt(i));
+    }
+  }
+
+  private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+    buffer.put((byte) value.scale());
+    buffer.putLong(value.unscaledValue().longValue());
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static void backOff(int attempt) {
+    if (attempt < SPINS_BEFORE_YIELD) {
+      return;
+    }
+    if (attempt < SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+  }
+
+  /**
+   * Audit record. Slots of the ring buffer are allocated once and reused.
+   */
+  private static final class Entry {
+
+    // Sequence under which the slot was last published, -1 when never used.
+    private volatile long sequence = -1;
+
+    private long timeMillis;
+
+    private String accountFromId;
+
+    private String accountToId;
+
+    private BigDecimal amount;
+
+    private BigDecimal accFromBalance;
+
+    private BigDecimal accToBalance;
+
+    private void clear() {
+      accountFromId = null;
+      accountToId = null;
+      amount = null;
+      accFromBalance = null;
+      accToBalance = null;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lets balance changes run concurrently with each other and excludes them while a consistent view
+ * of all balances is taken.
+ * <p>
+ * A balance change enters the gate before it touches a balance and exits once all balances it
+ * changes have been written. Entering increments a counter of one of many stripes, chosen by
+ * thread, so concurrent transfers do not contend on a shared counter. {@link #whileClosed(Supplier)}
+ * closes the gate, waits until no balance change is in flight, runs the action and opens the gate
+ * again. Balance changes arriving meanwhile wait at the gate.
+ */
+public class TransferGate {
+
+  private static final int STRIPES = 64;
+
+  // Counters are 16 longs apart, so that each stripe has a cache line of its own
+  private static final int PADDING = 16;
+
+  private final AtomicLongArray inFlight = new AtomicLongArray(STRIPES * PADDING);
+
+  private final ReentrantLock closeLock = new ReentrantLock();
+
+  private final Object openMonitor = new Object();
+
+  private volatile boolean closed;
+
+  private volatile long closedCount;
+
+  private volatile long maxClosedNanos;
+
+  /**
+   * Enters the gate, waiting while it is closed.
+   * @return stripe to be passed to {@link #exit(int)}
+   */
+  public int enter() {
+    int stripe = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+    while (true) {
+      inFlight.incrementAndGet(stripe);
+      if (!closed) {
+        return stripe;
+      }
+      inFlight.decrementAndGet(stripe);
+      awaitOpen();
+    }
+  }
+
+  /**
+   * Exits the gate after all balances of the change have been written.
+   * @param stripe - stripe returned by {@link #enter()}
+   */
+  public void exit(int stripe) {
+    inFlight.decrementAndGet(stripe);
+  }
+
+  /**
+   * Runs the action while no balance change is in flight. Only one action runs at a time.
+   * @param action - action reading balances
+   * @return result of the action
+   */
+  public <T> T whileClosed(Supplier<T> action) {
+    closeLock.lock();
+    long start = System.nanoTime();
+    try {
+      closed = true;
+      awaitDrained();
+      return action.get();
+    } finally {
+      synchronized (openMonitor) {
+        closed = false;
+        openMonitor.notifyAll();
+      }
+      long nanos = System.nanoTime() - start;
+      closedCount++;
+      maxClosedNanos = Math.max(maxClosedNanos, nanos);
+      closeLock.unlock();
+    }
+  }
+
+  /**
+   * @return number of times the gate has been closed
+   */
+  public long getClosedCount() {
+    return closedCount;
+  }
+
+  /**
+   * @return longest time the gate has been closed, in microseconds
+   */
+  public long getMaxClosedMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(maxClosedNanos);
+  }
+
+  private void awaitDrained() {
+    for (int stripe = 0; stripe < inFlight.length(); stripe += PADDING) {
+      for (int spins = 0; inFlight.get(stripe) != 0; spins++) {
+        if (spins < 100) {
+          Thread.yield();
+        } else {
+          LockSupport.parkNanos(10_000);
+        }
+      }
+    }
+  }
+
+  private void awaitOpen() {
+    synchronized (openMonitor) {
+      while (closed) {
+        try {
+          openMonitor.wait();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for a balance report", ex);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.util.Constants;
+import com.db.awmd.challenge.util.LatencyHistogram;
+import com.db.awmd.challenge.util.TopCounter;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latencies, outcomes and lock contention of fund transfers.
+ * <p>
+ * Recording costs one {@link System#nanoTime()} call and a few uncontended counter increments per
+ * measured step, so the metrics are meant to stay enabled in production. When disabled, every
+ * method returns immediately and no clock is read. Contended accounts are only counted when a lock
+ * is not immediately available, i.e. on a path which is about to block anyway.
+ */
+@Component
+public class TransferMetrics {
+
+  private static final int HOT_ACCOUNTS_REPORTED = 10;
+
+  private final boolean enabled;
+
+  private final LatencyHistogram lockWait = new LatencyHistogram();
+
+  private final LatencyHistogram lockHold = new LatencyHistogram();
+
+  private final LatencyHistogram validation = new LatencyHistogram();
+
+  private final LatencyHistogram notification = new LatencyHistogram();
+
+  private final LatencyHistogram total = new LatencyHistogram();
+
+  private final LongAdder succeeded = new LongAdder();
+
+  private final LongAdder insufficientBalance = new LongAdder();
+
+  private final LongAdder invalidAccount = new LongAdder();
+
+  private final LongAdder replayed = new LongAdder();
+
+  private final LongAdder contended = new LongAdder();
+
+  private final LongAdder lockRetries = new LongAdder();
+
+  private final LongAdder lockTimeouts = new LongAdder();
+
+  private final TopCounter hotAccounts;
+
+  @Autowired
+  public TransferMetrics(MetricsProperties properties) {
+    this.enabled = properties.isEnabled();
+    this.hotAccounts = new TopCounter(properties.getHotAccounts());
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return start time of a measured step, 0 when metrics are disabled
+   */
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the time spent waiting for account locks.
+   * @param start - value of {@link #start()} before the first lock was requested
+   * @return time all locks were acquired, start of the lock hold time
+   */
+  public long recordLockWait(long start) {
+    return record(lockWait, start);
+  }
+
+  /**
+   * Records the time account locks were held.
+   * @param start - value returned by {@link #recordLockWait(long)}
+   */
+  public void recordLockHold(long start) {
+    record(lockHold, start);
+  }
+
+  /**
+   * Records the time spent validating a transfer request.
+   * @param start - value of {@link #start()} before validation
+   */
+  public void recordValidation(long start) {
+    record(validation, start);
+  }
+
+  /**
+   * Records the time spent handing notifications over to the dispatcher.
+   * @param start - value of {@link #start()} before the first notification
+   */
+  public void recordNotification(long start) {
+    record(notification, start);
+  }
+
+  /**
+   * Records the time of the whole transfer request.
+   * @param start - value of {@link #start()} when the request was received
+   */
+  public void recordTotal(long start) {
+    record(total, start);
+  }
+
+  public void transferSucceeded() {
+    if (enabled) {
+      succeeded.increment();
+    }
+  }
+
+  public void insufficientBalance() {
+    if (enabled) {
+      insufficientBalance.increment();
+    }
+  }
+
+  public void invalidAccount() {
+    if (enabled) {
+      invalidAccount.increment();
+    }
+  }
+
+  /**
+   * Counts a retried request answered with the result of an earlier request with the same key.
+   */
+  public void transferReplayed() {
+    if (enabled) {
+      replayed.increment();
+    }
+  }
+
+  /**
+   * Counts a lock of the account which was not immediately available.
+   * @param accountId - id of the contended account
+   */
+  public void lockContended(String accountId) {
+    if (enabled) {
+      contended.increment();
+      hotAccounts.increment(accountId);
+    }
+  }
+
+  /**
+   * Counts an attempt to lock accounts which has been given up and is retried after a backoff.
+   */
+  public void lockRetried() {
+    if (enabled) {
+      lockRetries.increment();
+    }
+  }
+
+  /**
+   * Counts a transfer failed because its accounts could not be locked in time.
+   */
+  public void lockTimedOut() {
+    if (enabled) {
+      lockTimeouts.increment();
+    }
+  }
+
+  /**
+   * @return all metrics as JSON, latencies in microseconds
+   */
+  public JSONObject toJson() {
+    JSONObject counters = new JSONObject();
+    counters.put("succeeded", succeeded.sum());
+    counters.put("insufficientBalance", insufficientBalance.sum());
+    counters.put("invalidAccount", invalidAccount.sum());
+    counters.put("replayed", replayed.sum());
+    counters.put("lockContended", contended.sum());
+    counters.put("lockRetries", lockRetries.sum());
+    counters.put("lockTimeouts", lockTimeouts.sum());
+
+    JSONObject latencies = new JSONObject();
+    latencies.put("total", total.toJson());
+    latencies.put("validation", validation.toJson());
+    latencies.put("lockWait", lockWait.toJson());
+    latencies.put("lockHold", lockHold.toJson());
+    latencies.put("notification", notification.toJson());
+
+    JSONArray hottest = new JSONArray();
+    for (Map.Entry<String, Long> account : hotAccounts.top(HOT_ACCOUNTS_REPORTED)) {
+      JSONObject hotAccount = new JSONObject();
+      hotAccount.put(Constants.ACCOUNT_ID, account.getKey());
+      hotAccount.put("contended", account.getValue());
+      hottest.add(hotAccount);
+    }
+
+    JSONObject json = new JSONObject();
+    json.put("enabled", enabled);
+    json.put("counters", counters);
+    json.put("latencies", latencies);
+    json.put("hotAccounts", hottest);
+    return json;
+  }
+
+  private long record(LatencyHistogram histogram, long start) {
+    if (!enabled) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    histogram.recordNanos(now - start);
+    return now;
+  }
+}
@@ -0,0 +1,194 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.config.NettingProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Netting stage in front of the balance engine, active when 'transfer.netting.enabled' is set.
+ * <p>
+ * Single transfers are queued and collected by one thread into windows of at most
+ * 'transfer.netting.window-micros' or 'transfer.netting.max-transfers' transfers. Each window is
+ * applied as one best-effort batch of the {@link BalanceEngine}: the locking engine takes the lock
+ * of every account of the window once, validates every transfer at its position in arrival order and
+ * writes the net change of each account once. Transfers back and forth between the same accounts
+ * thus cost one balance write per account and window. Every caller waits for its window and gets
+ * the outcome of its own transfer.
+ */
+@Component
+@Slf4j
+public class TransferNetting {
+
+  private final NettingProperties properties;
+
+  private final BalanceEngine balanceEngine;
+
+  private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+
+  private final long windowNanos;
+
+  private final int maxTransfers;
+
+  private volatile Thread worker;
+
+  @Autowired
+  public TransferNetting(NettingProperties properties, BalanceEngine balanceEngine) {
+    this.properties = properties;
+    this.balanceEngine = balanceEngine;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, properties.getWindowMicros()));
+    this.maxTransfers = Math.max(1, properties.getMaxTransfers());
+  }
+
+  public boolean isEnabled() {
+    return worker != null;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!properties.isEnabled()) {
+      return;
+    }
+    Thread thread = new Thread(this::run, "transfer-netting");
+    thread.setDaemon(true);
+    worker = thread;
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    Thread thread = worker;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join();
+    }
+  }
+
+  /**
+   * Queues the transfer for the next window and waits until the window has been applied.
+   * @param accFrom - account from which amount should be debited
+   * @param accTo - account to which amount should be credited
+   * @param amountToTransfer - amount to be transferred
+   * @return balances of both accounts right after the transfer
+   * @throws InsufficientBalanceException if balance of the source account did not cover the amount at
+   * the position of the transfer in its window
+   * @throws LockTimeoutException if the accounts of the window could not be locked in time
+   */
+  public BalanceUpdate transfer(Account accFrom, Account accTo, BigDecimal amountToTransfer) {
+    BatchItem item = new BatchItem(0,
+      new AmountTransferRequest(accFrom.getAccountId(), accTo.getAccountId(), amountToTransfer));
+    item.setAccFrom(accFrom);
+    item.setAccTo(accTo);
+    PendingTransfer pending = new PendingTransfer(item);
+    queue.add(pending);
+    if (worker == null) {
+      // Stopped meanwhile, nobody applies the queue anymore
+      if (queue.remove(pending)) {
+        return balanceEngine.transfer(accFrom, accTo, amountToTransfer);
+      }
+    }
+    try {
+      pending.done.join();
+    } catch (CompletionException ex) {
+      throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+    }
+
+    if (item.getError() == null) {
+      return item.getUpdate();
+    }
+    // Failed as it would have without netting
+    if (item.getFailure() != null) {
+      throw item.getFailure();
+    }
+    throw new IllegalStateException("Netted transfer failed: " + item.getError());
+  }
+
+  private void run() {
+    List<PendingTransfer> window = new ArrayList<>(maxTransfers);
+    List<BatchItem> items = new ArrayList<>(maxTransfers);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        collect(window);
+        for (PendingTransfer pending : window) {
+          items.add(pending.item);
+        }
+        try {
+          balanceEngine.transferBatch(items, false);
+          for (PendingTransfer pending : window) {
+            pending.done.complete(null);
+          }
+        } catch (RuntimeException ex) {
+          log.error("Applying a window of {} netted transfers failed", window.size(), ex);
+          for (PendingTransfer pending : window) {
+            pending.done.completeExceptionally(ex);
+          }
+        }
+        window.clear();
+        items.clear();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      worker = null;
+      for (PendingTransfer pending : window) {
+        pending.done.completeExceptionally(new IllegalStateException("Transfer netting has been stopped."));
+      }
+      PendingTransfer pending;
+      while ((pending = queue.poll()) != null) {
+        pending.done.completeExceptionally(new IllegalStateException("Transfer netting has been stopped."));
+      }
+    }
+  }
+
+  /**
+   * Waits for the first transfer of a window, then collects further transfers until the window is
+   * full or its time is up.
+   */
+  private void collect(List<PendingTransfer> window) throws InterruptedException {
+    window.add(queue.take());
+    long deadline = System.nanoTime() + windowNanos;
+    queue.drainTo(window, maxTransfers - window.size());
+    while (window.size() < maxTransfers) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return;
+      }
+      PendingTransfer next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      window.add(next);
+      queue.drainTo(window, maxTransfers - window.size());
+    }
+  }
+
+  /**
+   * Transfer waiting for its window to be applied.
+   */
+  private static final class PendingTransfer {
+
+    private final BatchItem item;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private PendingTransfer(BatchItem item) {
+      this.item = item;
+    }
+  }
+}
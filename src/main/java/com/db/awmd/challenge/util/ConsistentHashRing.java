@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns keys to nodes by consistent hashing. Every node is placed on a ring of 64-bit hashes at
+ * a number of virtual points, and a key belongs to the node of the first point at or after the
+ * hash of the key. Adding or removing a node moves only the keys between its points and their
+ * predecessors, about one share of the keys.
+ * <p>
+ * Hashes depend only on the characters of keys and node names, so every node computes the same
+ * assignment. The ring is immutable and can be read by any number of threads.
+ */
+public class ConsistentHashRing {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final List<String> nodes;
+
+  // Hashes of all virtual points in ascending order, and the index of the node of every point
+  private final long[] points;
+
+  private final int[] owners;
+
+  /**
+   * @param nodes - names of the nodes, not empty and without duplicates
+   * @param virtualNodes - number of points of every node on the ring
+   */
+  public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("Hash ring needs at least one node");
+    }
+    this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    int perNode = Math.max(1, virtualNodes);
+    // Hash and node index of every point
+    long[][] sorted = new long[nodes.size() * perNode][];
+    for (int node = 0; node < nodes.size(); node++) {
+      for (int point = 0; point < perNode; point++) {
+        sorted[node * perNode + point] = new long[] {hash(nodes.get(node) + "#" + point), node};
+      }
+    }
+    Arrays.sort(sorted, (a, b) -> Long.compareUnsigned(a[0], b[0]));
+    this.points = new long[sorted.length];
+    this.owners = new int[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      points[i] = sorted[i][0];
+      owners[i] = (int) sorted[i][1];
+    }
+  }
+
+  public List<String> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @param key - any key
+   * @return node the key belongs to
+   */
+  public String nodeFor(String key) {
+    return nodes.get(owners[pointFor(hash(key))]);
+  }
+
+  /**
+   * Binary search for the first point at or after the hash, in unsigned order, wrapping around.
+   */
+  private int pointFor(long hash) {
+    int low = 0;
+    int high = points.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (Long.compareUnsigned(points[middle], hash) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low == points.length ? 0 : low;
+  }
+
+  /**
+   * 64-bit FNV-1a over the characters, followed by a finalizer spreading similar keys apart.
+   */
+  static long hash(String value) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+}
@@ -8,6 +8,35 @@ public class Constants {
 	public static final String SOURCE_ACC = "sourceAcc";
 	public static final String DEST_ACC = "destAcc";
 	public static final String ERROR_MESSAGE = "Something went wrong";
+	public static final String SAME_ACCOUNT_MESSAGE = "Funds cannot be transferred to the same account.";
+	public static final String INSUFFICIENT_BALANCE_MESSAGE = "You don't have sufficient balance.";
+	public static final String CURRENCY_MISMATCH_MESSAGE = "Transfers between currencies are supported for single transfers only.";
+	public static final String BATCH_ABORTED_MESSAGE = "Not executed, another transfer of the batch failed.";
+	public static final String NOT_RECORDED_MESSAGE = "Transfer has been applied but could not be recorded.";
+	public static final String INDEX = "index";
+	public static final String TRANSFERS = "transfers";
+	public static final String SEQUENCE = "sequence";
+	public static final String TIME = "time";
+	public static final String COUNTERPARTY_ID = "counterpartyId";
+	public static final String AMOUNT = "amount";
+	public static final String NEXT_CURSOR = "nextCursor";
+	public static final String ERRORS = "errors";
+	public static final String ROWS = "rows";
+	public static final String IMPORTED = "imported";
+	public static final String FAILED = "failed";
+	public static final String ACCOUNTS_PER_SECOND = "accountsPerSecond";
+	public static final String ACCOUNTS = "accounts";
+	public static final String TOTAL_BALANCE = "totalBalance";
+	public static final String MIN_BALANCE = "minBalance";
+	public static final String MAX_BALANCE = "maxBalance";
+	public static final String HISTOGRAM = "histogram";
+	public static final String FROM = "from";
+	public static final String TO = "to";
+	public static final String PAUSE_MICROS = "pauseMicros";
+	public static final String TRANSFER_ID = "transferId";
+	public static final String PENDING = "pending";
+	public static final String PENDING_MESSAGE = "Funds has been debited, the credit will be completed once the node of the target account is available.";
+	public static final int BALANCE_SCALE = 2;
 
 	
 }
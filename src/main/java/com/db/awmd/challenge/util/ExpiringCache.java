@@ -0,0 +1,217 @@
+package com.db.awmd.challenge.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache whose entries expire a fixed time after they were added.
+ * <p>
+ * Keys are spread by hash over independent stripes, each a small access-ordered map guarded by
+ * its own lock, so concurrent callers rarely wait for each other and a lookup is one hash, one
+ * uncontended lock and one map access. When a stripe is full its least recently used entry is
+ * evicted. Expired entries are dropped when they are looked up or reach the eldest end of a stripe.
+ * @param <K> - key type
+ * @param <V> - value type
+ */
+public class ExpiringCache<K, V> {
+
+  private final Stripe[] stripes;
+
+  private final int stripeShift;
+
+  private final long ttlNanos;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param stripes - number of independently locked stripes, rounded up to a power of two
+   * @param maxSize - maximum number of entries of the whole cache
+   * @param ttl - time an entry is kept after it was added
+   * @param unit - unit of the ttl
+   */
+  @SuppressWarnings("unchecked")
+  public ExpiringCache(int stripes, int maxSize, long ttl, TimeUnit unit) {
+    int stripeCount = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+    int maxStripeSize = Math.max(1, maxSize / stripeCount);
+    this.stripes = new ExpiringCache.Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      this.stripes[i] = new Stripe(maxStripeSize);
+    }
+    this.stripeShift = 32 - Integer.numberOfTrailingZeros(stripeCount);
+    this.ttlNanos = unit.toNanos(ttl);
+  }
+
+  /**
+   * @param key - key to look up
+   * @return value of the key, null if absent or expired
+   */
+  public V get(K key) {
+    Stripe stripe = stripeOf(key);
+    long now = System.nanoTime();
+    synchronized (stripe) {
+      CacheEntry<V> entry = stripe.get(key);
+      if (entry != null && now - entry.expiresAtNanos >= 0) {
+        stripe.remove(key);
+        entry = null;
+      }
+      return countLookup(entry);
+    }
+  }
+
+  /**
+   * Adds the value unless the key has a value which has not expired yet.
+   * @param key - key to add
+   * @param value - value to add
+   * @return current value of the key, null if the given value has been added
+   */
+  public V putIfAbsent(K key, V value) {
+    Stripe stripe = stripeOf(key);
+    long now = System.nanoTime();
+    synchronized (stripe) {
+      CacheEntry<V> entry = stripe.get(key);
+      if (entry != null && now - entry.expiresAtNanos < 0) {
+        return countLookup(entry);
+      }
+      misses.increment();
+      stripe.put(key, new CacheEntry<>(value, now + ttlNanos));
+      stripe.evictExpired(now);
+      return null;
+    }
+  }
+
+  /**
+   * Adds the value, replacing the current value of the key.
+   * @param key - key to add
+   * @param value - value to add
+   */
+  public void put(K key, V value) {
+    Stripe stripe = stripeOf(key);
+    long now = System.nanoTime();
+    synchronized (stripe) {
+      stripe.put(key, new CacheEntry<>(value, now + ttlNanos));
+      stripe.evictExpired(now);
+    }
+  }
+
+  /**
+   * Removes the key regardless of its value.
+   * @param key - key to remove
+   */
+  public void remove(K key) {
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      stripe.remove(key);
+    }
+  }
+
+  /**
+   * Removes the key if it is mapped to the given value.
+   * @param key - key to remove
+   * @param value - expected value
+   * @return true if the key has been removed
+   */
+  public boolean remove(K key, V value) {
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      CacheEntry<V> entry = stripe.get(key);
+      if (entry == null || entry.value != value) {
+        return false;
+      }
+      stripe.remove(key);
+      return true;
+    }
+  }
+
+  /**
+   * @return number of entries, including expired ones not dropped yet
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  private V countLookup(CacheEntry<V> entry) {
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.value;
+  }
+
+  private Stripe stripeOf(K key) {
+    // High bits of a mixed hash, the maps of the stripes index their buckets with the low bits.
+    if (stripes.length == 1) {
+      return stripes[0];
+    }
+    return stripes[(key.hashCode() * 0x9E3779B9) >>> stripeShift];
+  }
+
+  private static final class CacheEntry<V> {
+
+    private final V value;
+
+    private final long expiresAtNanos;
+
+    private CacheEntry(V value, long expiresAtNanos) {
+      this.value = value;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+
+  /**
+   * Access-ordered map evicting its least recently used entry when full.
+   */
+  private final class Stripe extends LinkedHashMap<K, CacheEntry<V>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private Stripe(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+      if (size() > maxSize) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+
+    private void evictExpired(long now) {
+      Iterator<CacheEntry<V>> entries = values().iterator();
+      while (entries.hasNext() && now - entries.next().expiresAtNanos >= 0) {
+        entries.remove();
+        evictions.increment();
+      }
+    }
+  }
+}
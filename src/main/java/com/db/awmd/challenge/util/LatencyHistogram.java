@@ -0,0 +1,154 @@
+package com.db.awmd.challenge.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import net.minidev.json.JSONObject;
+
+/**
+ * Concurrent latency histogram with log-linear buckets, in the spirit of HdrHistogram. Every power
+ * of two range is split into 32 linear sub-buckets, so recorded values keep about 3% precision from
+ * nanoseconds up to a minute while the histogram stays a fixed array of counters.
+ * <p>
+ * Recording is wait-free and does not allocate. Counters are striped by thread so that threads
+ * recording at the same time do not write to the same cache line.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Values above 2^36 ns (about 68 seconds) are counted in the last bucket.
+  private static final int MAX_EXPONENT = 36;
+
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private static final int MAX_STRIPES = 8;
+
+  private final AtomicLongArray counts;
+
+  private final int stripeMask;
+
+  private final LongAdder totalNanos = new LongAdder();
+
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    this.counts = new AtomicLongArray(BUCKETS * stripes);
+    this.stripeMask = stripes - 1;
+  }
+
+  /**
+   * Records one latency.
+   * @param nanos - latency in nanoseconds, negative values are recorded as 0
+   */
+  public void recordNanos(long nanos) {
+    long value = Math.max(0, nanos);
+    int stripe = (int) Thread.currentThread().getId() & stripeMask;
+    counts.incrementAndGet(stripe * BUCKETS + bucketOf(value));
+    totalNanos.add(value);
+    maxNanos.accumulate(value);
+  }
+
+  /**
+   * @return number of recorded latencies
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @param percentile - percentile between 0 and 100
+   * @return highest value of the bucket holding the given percentile in nanoseconds, 0 when empty
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] merged = mergedCounts();
+    long count = 0;
+    for (long bucketCount : merged) {
+      count += bucketCount;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += merged[bucket];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(bucket), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  /**
+   * @return highest recorded latency in nanoseconds
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return mean of the recorded latencies in nanoseconds, 0 when empty
+   */
+  public long getMeanNanos() {
+    long count = getCount();
+    return count == 0 ? 0 : totalNanos.sum() / count;
+  }
+
+  /**
+   * @return count, mean, percentiles and max in microseconds
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("count", getCount());
+    json.put("meanMicros", micros(getMeanNanos()));
+    json.put("p50Micros", micros(getValueAtPercentile(50)));
+    json.put("p90Micros", micros(getValueAtPercentile(90)));
+    json.put("p99Micros", micros(getValueAtPercentile(99)));
+    json.put("p999Micros", micros(getValueAtPercentile(99.9)));
+    json.put("maxMicros", micros(getMaxNanos()));
+    return json;
+  }
+
+  private long[] mergedCounts() {
+    long[] merged = new long[BUCKETS];
+    for (int i = 0; i < counts.length(); i++) {
+      merged[i % BUCKETS] += counts.get(i);
+    }
+    return merged;
+  }
+
+  private static double micros(long nanos) {
+    return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValueOf(int bucket) {
+    int range = bucket / SUB_BUCKETS;
+    long subBucket = bucket % SUB_BUCKETS;
+    if (range == 0) {
+      return subBucket;
+    }
+    int shift = range - 1;
+    return ((subBucket + SUB_BUCKETS + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,68 @@
+package com.db.awmd.challenge.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate top-k counter using the space-saving algorithm: at most a fixed number of keys is
+ * tracked and a new key replaces the least counted one, inheriting its count. Keys occurring often
+ * are guaranteed to be tracked, counts may be overestimated by at most the count of the replaced key.
+ * <p>
+ * Counting is synchronized, it is meant for events which are already on a slow path.
+ */
+public class TopCounter {
+
+  private final int capacity;
+
+  private final Map<String, long[]> counts;
+
+  /**
+   * @param capacity - maximum number of keys tracked
+   */
+  public TopCounter(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    this.counts = new HashMap<>(this.capacity * 2);
+  }
+
+  /**
+   * Counts one occurrence of the key.
+   * @param key - counted key
+   */
+  public synchronized void increment(String key) {
+    long[] count = counts.get(key);
+    if (count != null) {
+      count[0]++;
+      return;
+    }
+    if (counts.size() < capacity) {
+      counts.put(key, new long[] {1});
+      return;
+    }
+    String minKey = null;
+    long min = Long.MAX_VALUE;
+    for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+      if (entry.getValue()[0] < min) {
+        min = entry.getValue()[0];
+        minKey = entry.getKey();
+      }
+    }
+    counts.remove(minKey);
+    counts.put(key, new long[] {min + 1});
+  }
+
+  /**
+   * @param limit - maximum number of keys returned
+   * @return keys with the highest counts, highest first
+   */
+  public synchronized List<Map.Entry<String, Long>> top(int limit) {
+    List<Map.Entry<String, Long>> top = new ArrayList<>(counts.size());
+    for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+      top.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()[0]));
+    }
+    top.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+    return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+  }
+}
@@ -0,0 +1,170 @@
+package com.db.awmd.challenge.util;
+
+import com.db.awmd.challenge.domain.TransferFrame;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes and decodes the binary wire protocol for transfers, a stream of length-prefixed frames.
+ * All numbers are big-endian.
+ * <pre>
+ * request:  int length (32) | long requestId | long accountFromId | long accountToId | long amount
+ * response: int length (9)  | long requestId | byte status
+ * </pre>
+ * Account ids are numeric, the amount is in minor units ({@link Constants#BALANCE_SCALE} decimal
+ * places). Bytes of a frame beyond the fields known here are skipped, so fields can be appended
+ * later. A client may send any number of frames without waiting for responses; responses are sent
+ * in request order.
+ * <p>
+ * A codec reads and writes through a buffer of its own and is used by one thread at a time.
+ */
+public class TransferFrameCodec {
+
+  public static final String CONTENT_TYPE = "application/x-transfer-frames";
+
+  public static final int REQUEST_LENGTH = 32;
+
+  public static final int RESPONSE_LENGTH = 9;
+
+  public static final byte STATUS_OK = 0;
+
+  public static final byte STATUS_INVALID_ACCOUNT = 1;
+
+  public static final byte STATUS_INSUFFICIENT_BALANCE = 2;
+
+  public static final byte STATUS_SAME_ACCOUNT = 3;
+
+  public static final byte STATUS_INVALID_REQUEST = 4;
+
+  /** Accounts are locked by other transfers, nothing has been changed and the transfer may be retried. */
+  public static final byte STATUS_BUSY = 5;
+
+  public static final byte STATUS_ERROR = 6;
+
+  private static final int MAX_FRAME_LENGTH = 1024;
+
+  private final byte[] buffer = new byte[4 + MAX_FRAME_LENGTH];
+
+  private long responseRequestId;
+
+  /**
+   * Reads the next request frame into the given frame.
+   * @param in - stream of request frames
+   * @param frame - frame to be overwritten
+   * @return false if the stream ended before the next frame
+   * @throws IOException if the stream ends within a frame or the frame length is invalid
+   */
+  public boolean readRequest(InputStream in, TransferFrame frame) throws IOException {
+    int length = readLength(in, REQUEST_LENGTH);
+    if (length < 0) {
+      return false;
+    }
+    frame.setRequestId(getLong(buffer, 0));
+    frame.setAccountFromId(getLong(buffer, 8));
+    frame.setAccountToId(getLong(buffer, 16));
+    frame.setAmount(getLong(buffer, 24));
+    return true;
+  }
+
+  /**
+   * Writes a request frame.
+   * @param out - stream of request frames
+   * @param frame - frame to be written
+   */
+  public void writeRequest(OutputStream out, TransferFrame frame) throws IOException {
+    putInt(buffer, 0, REQUEST_LENGTH);
+    putLong(buffer, 4, frame.getRequestId());
+    putLong(buffer, 12, frame.getAccountFromId());
+    putLong(buffer, 20, frame.getAccountToId());
+    putLong(buffer, 28, frame.getAmount());
+    out.write(buffer, 0, 4 + REQUEST_LENGTH);
+  }
+
+  /**
+   * Reads the next response frame, its request id is returned by {@link #getResponseRequestId()}.
+   * @param in - stream of response frames
+   * @return status of the response, -1 if the stream ended before the next frame
+   * @throws IOException if the stream ends within a frame or the frame length is invalid
+   */
+  public int readResponse(InputStream in) throws IOException {
+    int length = readLength(in, RESPONSE_LENGTH);
+    if (length < 0) {
+      return -1;
+    }
+    responseRequestId = getLong(buffer, 0);
+    return buffer[8];
+  }
+
+  /**
+   * @return request id of the response frame read last
+   */
+  public long getResponseRequestId() {
+    return responseRequestId;
+  }
+
+  /**
+   * Writes a response frame.
+   * @param out - stream of response frames
+   * @param requestId - id of the request frame
+   * @param status - one of the STATUS constants
+   */
+  public void writeResponse(OutputStream out, long requestId, byte status) throws IOException {
+    putInt(buffer, 0, RESPONSE_LENGTH);
+    putLong(buffer, 4, requestId);
+    buffer[12] = status;
+    out.write(buffer, 0, 4 + RESPONSE_LENGTH);
+  }
+
+  /**
+   * Reads the length of the next frame and the frame itself into the buffer.
+   * @return length of the frame, -1 at the end of the stream
+   */
+  private int readLength(InputStream in, int minLength) throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      return -1;
+    }
+    buffer[0] = (byte) first;
+    readFully(in, 1, 3);
+    int length = getInt(buffer, 0);
+    if (length < minLength || length > MAX_FRAME_LENGTH) {
+      throw new IOException("Invalid frame length " + length + ".");
+    }
+    readFully(in, 0, length);
+    return length;
+  }
+
+  private void readFully(InputStream in, int offset, int length) throws IOException {
+    while (length > 0) {
+      int read = in.read(buffer, offset, length);
+      if (read < 0) {
+        throw new EOFException("Stream ended within a frame.");
+      }
+      offset += read;
+      length -= read;
+    }
+  }
+
+  private static int getInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+      | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+  }
+
+  private static long getLong(byte[] bytes, int offset) {
+    return (long) getInt(bytes, offset) << 32 | (getInt(bytes, offset + 4) & 0xFFFFFFFFL);
+  }
+
+  private static void putInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static void putLong(byte[] bytes, int offset, long value) {
+    putInt(bytes, offset, (int) (value >>> 32));
+    putInt(bytes, offset + 4, (int) value);
+  }
+}
@@ -1,46 +1,118 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.*;
+import com.db.awmd.challenge.exception.CurrencyConversionException;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.service.AccountReadCache;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.service.AccountImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.PartitionRouter;
+import com.db.awmd.challenge.service.PartitionedTransfers;
+import com.db.awmd.challenge.service.TransferMetrics;
 import com.db.awmd.challenge.util.Constants;
+import com.db.awmd.challenge.util.TransferFrameCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import net.minidev.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+/**
+ * Accounts and transfers. With partitioning, requests for an account of another node are forwarded
+ * to that node: account creation and retrieval, statements and single transfers, which go to the
+ * node of the debited account. Batch, multi-leg, binary and imported transfers and accounts are
+ * handled by the receiving node and see only its own accounts.
+ */
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
+  public static final int MAX_STATEMENT_LIMIT = 10000;
+
   private final AccountsService accountsService;
 
+  private final ObjectMapper objectMapper;
+
+  private final TransferMetrics transferMetrics;
+
+  private final AccountImporter accountImporter;
+
+  private final PartitionRouter partitionRouter;
+
+  private final PartitionedTransfers partitionedTransfers;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, ObjectMapper objectMapper,
+		  TransferMetrics transferMetrics, AccountImporter accountImporter, PartitionRouter partitionRouter,
+		  PartitionedTransfers partitionedTransfers) {
 	this.accountsService = accountsService;
+	this.objectMapper = objectMapper;
+	this.transferMetrics = transferMetrics;
+	this.accountImporter = accountImporter;
+	this.partitionRouter = partitionRouter;
+	this.partitionedTransfers = partitionedTransfers;
   }
   
   /**
    * Creates account with given details in request.
    * @param account - account to be created
+   * @param forwardedBy - node which has forwarded the request, null if sent by a client
    * @return If account is created successfully, returns HTTP 201 status,
    * 		if account details are invalid, returns error response with HTTP 400 status.
    */
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
+  public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account,
+		  @RequestHeader(value = PartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+	ResponseEntity<byte[]> forwarded = forward(account.getAccountId(), forwardedBy, HttpMethod.POST,
+			"/v1/accounts", account, null);
+	if (forwarded != null) {
+		return new ResponseEntity<>(forwarded.getBody(), forwarded.getHeaders(), forwarded.getStatusCode());
+	}
 	log.info("Creating account {}", account);
 	try {
 		this.accountsService.createAccount(account);
@@ -53,42 +125,337 @@ public class AccountsController {
   /**
    * Performs fund transfer from one account to another.
    * @param transfer is a input request
+   * @param forwardedBy - node which has forwarded the request, null if sent by a client
    * @return JSON response with success message in case of successful funds transfer, 
-   * 		otherwise returns error message 
+   * 		otherwise returns error message. A transfer to an account of another node whose credit
+   * 		is completed later is answered with HTTP 202.
    */
   @PutMapping(path="/transfer",consumes = MediaType.APPLICATION_JSON_VALUE,
 		  produces = MediaType.APPLICATION_JSON_VALUE	)
-  public ResponseEntity<Object> transferMoney(@RequestBody @Valid AmountTransferRequest transfer) {
-    log.info("Transferring money: {}", transfer);
+  public ResponseEntity<Object> transferMoney(@RequestBody @Valid AmountTransferRequest transfer,
+		  @RequestHeader(value = PartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+    log.debug("Transferring money: {}", transfer);
+    long start = transferMetrics.start();
     JSONObject response = null;
     
     try {
+    	// Executed by the node of the debited account
+    	ResponseEntity<byte[]> forwarded = forward(transfer.getAccountFromId(), forwardedBy, HttpMethod.PUT,
+    			"/v1/accounts/transfer", transfer, null);
+    	if (forwarded != null) {
+    		return new ResponseEntity<>(forwarded.getBody(), forwarded.getHeaders(), forwarded.getStatusCode());
+    	}
+    	if (!partitionRouter.isLocal(transfer.getAccountToId())) {
+    		response = this.partitionedTransfers.transferFunds(transfer);
+    		return new ResponseEntity<>(response,
+    				Boolean.TRUE.equals(response.get(Constants.PENDING)) ? HttpStatus.ACCEPTED : HttpStatus.OK);
+    	}
     	response = this.accountsService.transferFunds(transfer);
     	if(null != response){
-    		log.info("Response: {}", response);
-    		log.info("Transaction was successful.");
+    		log.debug("Transaction was successful: {}", response);
     	    return new ResponseEntity<>(response, HttpStatus.OK);
     	}
     	
     	log.error("Funds transfer failed.");
         return new ResponseEntity<>(Constants.ERROR_MESSAGE, HttpStatus.INTERNAL_SERVER_ERROR);
 
-    }catch (InvalidAccountException | InsufficientBalanceException ex) {
+    }catch (InvalidAccountException | InsufficientBalanceException | IdempotencyKeyReusedException
+    		| SameAccountTransferException | CurrencyConversionException | InvalidTransferRequestException ex) {
     	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
-    } 
+    } catch (LockTimeoutException | NodeUnavailableException ex) {
+    	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+    } finally {
+    	transferMetrics.recordTotal(start);
+    }
+  }
+
+  /**
+   * Performs fund transfers sent as binary frames instead of JSON, see {@link TransferFrameCodec}.
+   * Frames are executed and answered in order. Responses are flushed whenever no further request
+   * frame has arrived yet, so a client can pipeline requests on one connection.
+   * @param request - HTTP request carrying request frames
+   * @param response - HTTP response carrying a response frame for every request frame
+   */
+  @PutMapping(path="/transfer", consumes = TransferFrameCodec.CONTENT_TYPE, produces = TransferFrameCodec.CONTENT_TYPE)
+  public void transferMoneyBinary(HttpServletRequest request, HttpServletResponse response) throws IOException {
+	response.setContentType(TransferFrameCodec.CONTENT_TYPE);
+	TransferFrameCodec codec = new TransferFrameCodec();
+	TransferFrame frame = new TransferFrame();
+	InputStream in = request.getInputStream();
+	OutputStream out = new BufferedOutputStream(response.getOutputStream());
+	while (codec.readRequest(in, frame)) {
+		codec.writeResponse(out, frame.getRequestId(), transferMoney(frame));
+		if (in.available() == 0) {
+			out.flush();
+		}
+	}
+	out.flush();
+  }
+
+  private byte transferMoney(TransferFrame frame) {
+	long start = transferMetrics.start();
+	try {
+		if (frame.getAccountFromId() < 0 || frame.getAccountToId() < 0 || frame.getAmount() < 0) {
+			return TransferFrameCodec.STATUS_INVALID_REQUEST;
+		}
+		JSONObject response = this.accountsService.transferFunds(new AmountTransferRequest(
+				Long.toString(frame.getAccountFromId()), Long.toString(frame.getAccountToId()),
+				BalanceCell.toBigDecimal(frame.getAmount())));
+		return null != response ? TransferFrameCodec.STATUS_OK : TransferFrameCodec.STATUS_ERROR;
+	} catch (InvalidAccountException ex) {
+		return TransferFrameCodec.STATUS_INVALID_ACCOUNT;
+	} catch (InsufficientBalanceException ex) {
+		return TransferFrameCodec.STATUS_INSUFFICIENT_BALANCE;
+	} catch (SameAccountTransferException ex) {
+		return TransferFrameCodec.STATUS_SAME_ACCOUNT;
+	} catch (CurrencyConversionException | CurrencyMismatchException ex) {
+		return TransferFrameCodec.STATUS_INVALID_REQUEST;
+	} catch (LockTimeoutException ex) {
+		return TransferFrameCodec.STATUS_BUSY;
+	} catch (RuntimeException ex) {
+		log.error("Binary transfer failed", ex);
+		return TransferFrameCodec.STATUS_ERROR;
+	} finally {
+		transferMetrics.recordTotal(start);
+	}
+  }
+
+  /**
+   * Imports many accounts at once. Body is either CSV ('accountId,balance' per line, optional header)
+   * or newline delimited JSON (one account per line), it is read and imported as a stream.
+   * @param request - HTTP request carrying the accounts
+   * @return JSON with an error for every row which has not been imported, written while importing,
+   * 		followed by the number of rows, imported and failed accounts and the import throughput
+   */
+  @PostMapping(path = "/import", consumes = {TEXT_CSV_VALUE, APPLICATION_NDJSON_VALUE},
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> importAccounts(HttpServletRequest request) {
+	ImportFormat format = MediaType.parseMediaType(request.getContentType())
+			.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE)) ? ImportFormat.CSV : ImportFormat.NDJSON;
+	log.info("Importing accounts from {}", format);
+
+	StreamingResponseBody body = outputStream -> {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+			JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+			generator.writeStartObject();
+			generator.writeArrayFieldStart(Constants.ERRORS);
+			ImportSummary summary = accountImporter.importAccounts(reader, format, row -> {
+				generator.writeStartObject();
+				generator.writeNumberField(Constants.INDEX, row.getIndex());
+				if (row.getAccountId() != null) {
+					generator.writeStringField(Constants.ACCOUNT_ID, row.getAccountId());
+				}
+				generator.writeStringField(Constants.ERROR, row.getError());
+				generator.writeEndObject();
+			});
+			generator.writeEndArray();
+			generator.writeNumberField(Constants.ROWS, summary.getRows());
+			generator.writeNumberField(Constants.IMPORTED, summary.getImported());
+			generator.writeNumberField(Constants.FAILED, summary.getFailed());
+			generator.writeNumberField(Constants.ACCOUNTS_PER_SECOND, summary.getAccountsPerSecond());
+			generator.writeEndObject();
+		}
+	};
+	return new ResponseEntity<>(body, HttpStatus.OK);
+  }
+
+  /**
+   * Performs a batch of fund transfers. Body is either a JSON array of transfer requests or
+   * newline delimited JSON (one request per line) and is parsed as a stream.
+   * @param mode - ATOMIC to apply all transfers or none, BEST_EFFORT to apply every valid transfer
+   * @param request - HTTP request carrying the transfers
+   * @return JSON array with a success message or an error for every transfer, in request order,
+   * 		written as a stream
+   */
+  @PostMapping(path="/transfer/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> transferMoneyBatch(
+		  @RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode, HttpServletRequest request) throws IOException {
+	List<AmountTransferRequest> transfers = new ArrayList<>();
+	try (MappingIterator<AmountTransferRequest> iterator =
+			objectMapper.readerFor(AmountTransferRequest.class).readValues(request.getInputStream())) {
+		while (iterator.hasNextValue()) {
+			transfers.add(iterator.nextValue());
+		}
+	} catch (JsonProcessingException ex) {
+		throw new InvalidTransferRequestException("Batch cannot be read: " + ex.getOriginalMessage());
+	}
+	log.info("Transferring money in batch of {} transfers", transfers.size());
+
+	List<BatchItem> results = this.accountsService.transferFundsBatch(transfers, mode);
+	StreamingResponseBody body = outputStream -> {
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+			generator.writeStartArray();
+			for (BatchItem result : results) {
+				generator.writeStartObject();
+				generator.writeNumberField(Constants.INDEX, result.getIndex());
+				if (result.isSuccessful()) {
+					generator.writeStringField(Constants.MESSAGE, "Funds has been transferred successfully");
+				} else {
+					generator.writeStringField(Constants.ERROR, result.getError());
+				}
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+	};
+	return new ResponseEntity<>(body, HttpStatus.OK);
   }
 
   /**
-   * Retrieves account details of the given accountId
+   * Transfers money from one account to many accounts, applying either all legs or none.
+   * @param transfer - source account and the legs crediting target accounts
+   * @return JSON response with success message and the number of legs in case of successful
+   * 		funds transfer, otherwise returns error message
+   */
+  @PostMapping(path="/transfer/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE,
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transferMoneyMultiLeg(@RequestBody @Valid MultiLegTransferRequest transfer) {
+	log.info("Transferring money from account {} in {} legs", transfer.getAccountFromId(), transfer.getLegs().size());
+	try {
+		return new ResponseEntity<>(this.accountsService.transferFundsMultiLeg(transfer), HttpStatus.OK);
+	} catch (InsufficientBalanceException | SameAccountTransferException ex) {
+		return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
+	} catch (LockTimeoutException ex) {
+		return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+  }
+
+  @ExceptionHandler({CurrencyMismatchException.class, InvalidAccountException.class,
+		  InvalidTransferRequestException.class})
+  public ResponseEntity<Object> handleBadRequest(RuntimeException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
+  }
+
+  @ExceptionHandler(NodeUnavailableException.class)
+  public ResponseEntity<Object> handleNodeUnavailable(NodeUnavailableException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
+  /**
+   * Retrieves account details of the given accountId. The response carries an ETag of the account
+   * balance and JSON, a request with a matching If-None-Match header is answered with HTTP 304 and no body.
    * @param accountId - id of the account
-   * @return account details of the given accountId
+   * @param forwardedBy - node which has forwarded the request, null if sent by a client
+   * @param ifNoneMatch - If-None-Match header, passed on when the request is forwarded
+   * @return account details of the given accountId, empty body if the account does not exist
    */
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
-    log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+  public ResponseEntity<byte[]> getAccount(@PathVariable String accountId,
+		  @RequestHeader(value = PartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy,
+		  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    ResponseEntity<byte[]> forwarded = forward(accountId, forwardedBy, HttpMethod.GET,
+    		UriComponentsBuilder.fromPath("/v1/accounts/{accountId}").buildAndExpand(accountId).encode().toUriString(),
+    		null, ifNoneMatch);
+    if (forwarded != null) {
+    	return forwarded;
+    }
+    log.debug("Retrieving account for id {}", accountId);
+    return toResponse(this.accountsService.getSerializedAccount(accountId));
+  }
+
+  /**
+   * Retrieves the transfers of the given accountId from the ledger, oldest first. The statement is
+   * read and written as a stream, one page at a time.
+   * @param accountId - id of the account
+   * @param from - inclusive lower bound of the transfer time in epoch milliseconds
+   * @param to - exclusive upper bound of the transfer time in epoch milliseconds
+   * @param cursor - nextCursor of the previous page, omitted for the first page
+   * @param limit - maximum number of transfers of the page, between 1 and {@link #MAX_STATEMENT_LIMIT}
+   * @param forwardedBy - node which has forwarded the request, null if sent by a client
+   * @return JSON with the transfers of the page and the cursor of the next page, null on the last page
+   */
+  @GetMapping(path = "/{accountId}/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getTransfers(@PathVariable String accountId,
+		  @RequestParam(defaultValue = "0") long from, @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+		  @RequestParam(defaultValue = "-1") long cursor, @RequestParam(defaultValue = "100") int limit,
+		  @RequestHeader(value = PartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+	ResponseEntity<byte[]> forwarded = forward(accountId, forwardedBy, HttpMethod.GET,
+			UriComponentsBuilder.fromPath("/v1/accounts/{accountId}/transfers").queryParam("from", from)
+					.queryParam("to", to).queryParam("cursor", cursor).queryParam("limit", limit)
+					.buildAndExpand(accountId).encode().toUriString(), null, null);
+	if (forwarded != null) {
+		byte[] forwardedBody = forwarded.getBody();
+		return new ResponseEntity<>(outputStream -> {
+			if (forwardedBody != null) {
+				outputStream.write(forwardedBody);
+			}
+		}, forwarded.getHeaders(), forwarded.getStatusCode());
+	}
+	log.debug("Retrieving transfers of account {}", accountId);
+	TransferLedger.Statement statement = accountsService.getStatement(accountId, from, to, cursor);
+	int pageSize = Math.max(1, Math.min(limit, MAX_STATEMENT_LIMIT));
+	StreamingResponseBody body = outputStream -> {
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+			generator.writeStartObject();
+			generator.writeStringField(Constants.ACCOUNT_ID, accountId);
+			generator.writeArrayFieldStart(Constants.TRANSFERS);
+			int count = 0;
+			while (count < pageSize && statement.next()) {
+				generator.writeStartObject();
+				generator.writeNumberField(Constants.SEQUENCE, statement.getSequence());
+				generator.writeNumberField(Constants.TIME, statement.getTime());
+				generator.writeStringField(Constants.COUNTERPARTY_ID, statement.getCounterpartyId());
+				generator.writeNumberField(Constants.AMOUNT, statement.getAmount());
+				generator.writeNumberField(Constants.BALANCE, statement.getBalance());
+				generator.writeEndObject();
+				count++;
+			}
+			generator.writeEndArray();
+			long lastSequence = statement.getSequence();
+			// A full page is followed by another one only if there is a further transfer
+			if (count == pageSize && statement.next()) {
+				generator.writeNumberField(Constants.NEXT_CURSOR, lastSequence);
+			} else {
+				generator.writeNullField(Constants.NEXT_CURSOR);
+			}
+			generator.writeEndObject();
+		}
+	};
+	return new ResponseEntity<>(body, HttpStatus.OK);
+  }
+
+  /**
+   * Builds the response of a serialized account. Spring answers with HTTP 304 when the ETag matches
+   * the If-None-Match header of the request.
+   * @param account - serialized account, null if it does not exist
+   * @return response with the JSON of the account and its ETag
+   */
+  static ResponseEntity<byte[]> toResponse(AccountReadCache.SerializedAccount account) {
+    if (account == null) {
+      return ResponseEntity.ok().build();
+    }
+    return ResponseEntity.ok().eTag(account.getETag()).contentType(MediaType.APPLICATION_JSON_UTF8)
+      .body(account.getJson());
   }
   
+  /**
+   * Sends a request for an account of another node to that node. Requests forwarded by another node
+   * are always handled by this node, so that nodes never forward to each other in a loop.
+   * @param accountId - id of the account the request belongs to
+   * @param forwardedBy - node which has forwarded the request, null if sent by a client
+   * @param method - HTTP method of the request
+   * @param path - path and query of the request
+   * @param body - body of the request, serialized to JSON, null for none
+   * @param ifNoneMatch - If-None-Match header of the request, null for none
+   * @return response of the other node, null if the request is to be handled by this node
+   */
+  private ResponseEntity<byte[]> forward(String accountId, String forwardedBy, HttpMethod method, String path,
+		  Object body, String ifNoneMatch) {
+	if (forwardedBy != null || partitionRouter.isLocal(accountId)) {
+		return null;
+	}
+	String node = partitionRouter.ownerOf(accountId);
+	log.debug("Forwarding {} {} to node {}", method, path, node);
+	try {
+		return partitionRouter.send(node, method, path, body == null ? null : objectMapper.writeValueAsBytes(body),
+				ifNoneMatch);
+	} catch (JsonProcessingException ex) {
+		throw new IllegalStateException("Request cannot be forwarded", ex);
+	}
+  }
+
   /**
    * Generates error response in JSON format.
    * @param message - error message to be returned in the response 
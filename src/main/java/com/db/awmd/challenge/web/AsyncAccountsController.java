@@ -0,0 +1,137 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.exception.CurrencyConversionException;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.RequestExecutor;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.util.Constants;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import javax.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Asynchronous variant of the account endpoints with the same requests and responses. The servlet
+ * thread is released as soon as the request is handed to the {@link RequestExecutor}, the response
+ * is written when the returned future completes. Requests are answered with HTTP 503 when the
+ * executor is saturated.
+ */
+@RestController
+@RequestMapping("/v1/async/accounts")
+@Slf4j
+public class AsyncAccountsController {
+
+  private final AccountsService accountsService;
+
+  private final RequestExecutor requestExecutor;
+
+  private final TransferMetrics transferMetrics;
+
+  @Autowired
+  public AsyncAccountsController(AccountsService accountsService, RequestExecutor requestExecutor,
+		  TransferMetrics transferMetrics) {
+	this.accountsService = accountsService;
+	this.requestExecutor = requestExecutor;
+	this.transferMetrics = transferMetrics;
+  }
+
+  /**
+   * Creates account with given details in request.
+   * @param account - account to be created
+   * @return future of HTTP 201 if account is created, HTTP 400 with error if the id exists
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public CompletableFuture<ResponseEntity<Object>> createAccount(@RequestBody @Valid Account account) {
+	log.debug("Creating account {}", account);
+	return requestExecutor.submit(() -> {
+		accountsService.createAccount(account);
+		return new ResponseEntity<Object>(HttpStatus.CREATED);
+	}).exceptionally(AsyncAccountsController::toErrorResponse);
+  }
+
+  /**
+   * Performs fund transfer from one account to another.
+   * @param transfer - transfer request
+   * @return future of the JSON response with success message, or with error message
+   */
+  @PutMapping(path="/transfer", consumes = MediaType.APPLICATION_JSON_VALUE,
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public CompletableFuture<ResponseEntity<Object>> transferMoney(@RequestBody @Valid AmountTransferRequest transfer) {
+	log.debug("Transferring money: {}", transfer);
+	long start = transferMetrics.start();
+	return requestExecutor.submit(() -> {
+		JSONObject response = accountsService.transferFunds(transfer);
+		if (null == response) {
+			log.error("Funds transfer failed.");
+			return new ResponseEntity<Object>(Constants.ERROR_MESSAGE, HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return new ResponseEntity<Object>(response, HttpStatus.OK);
+	}).exceptionally(AsyncAccountsController::toErrorResponse)
+	  .whenComplete((response, ex) -> transferMetrics.recordTotal(start));
+  }
+
+  /**
+   * Retrieves account details of the given accountId
+   * @param accountId - id of the account
+   * @return future of the account details with ETag, empty body if the account does not exist
+   */
+  @GetMapping(path = "/{accountId}")
+  public CompletableFuture<ResponseEntity<?>> getAccount(@PathVariable String accountId) {
+	log.debug("Retrieving account for id {}", accountId);
+	return requestExecutor.<ResponseEntity<?>>submit(
+			() -> AccountsController.toResponse(accountsService.getSerializedAccount(accountId)))
+		.exceptionally(AsyncAccountsController::toErrorResponse);
+  }
+
+  /**
+   * Maps a failure of an asynchronous request to the response of the blocking endpoints.
+   * @param failure - exception the request failed with
+   * @return error response
+   */
+  private static ResponseEntity<Object> toErrorResponse(Throwable failure) {
+	Throwable ex = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+	if (ex instanceof InvalidAccountException || ex instanceof InsufficientBalanceException
+			|| ex instanceof IdempotencyKeyReusedException || ex instanceof DuplicateAccountIdException
+			|| ex instanceof SameAccountTransferException || ex instanceof CurrencyConversionException
+			|| ex instanceof CurrencyMismatchException) {
+		return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
+	}
+	if (ex instanceof LockTimeoutException) {
+		return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+	if (ex instanceof RejectedExecutionException) {
+		return new ResponseEntity<>(generateErrorResponse("Too many requests in progress, please retry later."),
+				HttpStatus.SERVICE_UNAVAILABLE);
+	}
+	log.error("Asynchronous request failed", ex);
+	return new ResponseEntity<>(Constants.ERROR_MESSAGE, HttpStatus.INTERNAL_SERVER_ERROR);
+  }
+
+  private static JSONObject generateErrorResponse(String message) {
+	JSONObject errorResponse = new JSONObject();
+	errorResponse.put(Constants.ERROR, message);
+	return errorResponse;
+  }
+}
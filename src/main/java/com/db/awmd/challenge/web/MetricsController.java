@@ -0,0 +1,98 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.service.AccountReadCache;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.RequestExecutor;
+import com.db.awmd.challenge.service.TransferMetrics;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Exposes transfer latencies and counters, the most contended accounts and the state of the
+ * notification dispatcher, the executor of asynchronous requests, the account read cache, the
+ * transfer ledger and the journal.
+ */
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+  private final TransferMetrics transferMetrics;
+
+  private final NotificationDispatcher notificationDispatcher;
+
+  private final AccountsJournal journal;
+
+  private final RequestExecutor requestExecutor;
+
+  private final AccountReadCache accountReadCache;
+
+  private final TransferLedger transferLedger;
+
+  @Autowired
+  public MetricsController(TransferMetrics transferMetrics, NotificationDispatcher notificationDispatcher,
+		  AccountsJournal journal, RequestExecutor requestExecutor, AccountReadCache accountReadCache,
+		  TransferLedger transferLedger) {
+	this.transferMetrics = transferMetrics;
+	this.notificationDispatcher = notificationDispatcher;
+	this.journal = journal;
+	this.requestExecutor = requestExecutor;
+	this.accountReadCache = accountReadCache;
+	this.transferLedger = transferLedger;
+  }
+
+  /**
+   * Returns current metrics, latencies are given in microseconds.
+   * @return metrics of transfers, notifications and, if enabled, of the journal
+   */
+  @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+  public JSONObject getMetrics() {
+	JSONObject notifications = new JSONObject();
+	notifications.put("queueDepth", notificationDispatcher.getQueueDepth());
+	notifications.put("dispatched", notificationDispatcher.getDispatchedCount());
+	notifications.put("dropped", notificationDispatcher.getDroppedCount());
+	notifications.put("spilled", notificationDispatcher.getSpilledCount());
+	notifications.put("averageLatencyMicros", notificationDispatcher.getAverageDispatchLatencyMicros());
+	notifications.put("maxLatencyMicros", notificationDispatcher.getMaxDispatchLatencyMicros());
+
+	JSONObject async = new JSONObject();
+	async.put("virtualThreads", requestExecutor.isVirtualThreads());
+	async.put("inFlight", requestExecutor.getInFlight());
+	async.put("maxInFlight", requestExecutor.getMaxInFlight());
+	async.put("rejected", requestExecutor.getRejectedCount());
+
+	JSONObject accountReads = new JSONObject();
+	accountReads.put("cacheHits", accountReadCache.getHitCount());
+	accountReads.put("cacheMisses", accountReadCache.getMissCount());
+
+	JSONObject metrics = new JSONObject();
+	metrics.put("transfers", transferMetrics.toJson());
+	metrics.put("notifications", notifications);
+	metrics.put("async", async);
+	metrics.put("accountReads", accountReads);
+	if (transferLedger.isEnabled()) {
+		JSONObject ledger = new JSONObject();
+		ledger.put("transfers", transferLedger.getSize());
+		ledger.put("sealedSegments", transferLedger.getSealedSegmentCount());
+		ledger.put("sealedBytes", transferLedger.getSealedBytes());
+		metrics.put("ledger", ledger);
+	}
+	if (journal.isEnabled()) {
+		JSONObject journalMetrics = new JSONObject();
+		journalMetrics.put("position", journal.getPosition());
+		journalMetrics.put("records", journal.getRecordCount());
+		journalMetrics.put("bytes", journal.getByteCount());
+		journalMetrics.put("syncs", journal.getSyncCount());
+		journalMetrics.put("averageBatchSize", journal.getAverageBatchSize());
+		journalMetrics.put("averageDurabilityLatencyMicros", journal.getAverageDurabilityLatencyMicros());
+		journalMetrics.put("maxDurabilityLatencyMicros", journal.getMaxDurabilityLatencyMicros());
+		metrics.put("journal", journalMetrics);
+	}
+	return metrics;
+  }
+}
@@ -0,0 +1,151 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.PartitionTransfer;
+import com.db.awmd.challenge.exception.CurrencyMismatchException;
+import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.TransferConflictException;
+import com.db.awmd.challenge.exception.UnknownTransferException;
+import com.db.awmd.challenge.exception.UntrustedNodeException;
+import com.db.awmd.challenge.service.PartitionRouter;
+import com.db.awmd.challenge.service.PartitionedTransfers;
+import com.db.awmd.challenge.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Phases of transfers between partitions, called by the node of the debited account on the node
+ * of the credited account, see {@link PartitionedTransfers}. Every phase may be repeated.
+ * <p>
+ * The phases are only answered with partitioning enabled, HTTP 404 otherwise, and only for callers
+ * sending the secret shared by the nodes, HTTP 403 otherwise.
+ */
+@RestController
+@RequestMapping(PartitionedTransfers.TRANSFERS_PATH)
+@Slf4j
+public class PartitionController {
+
+  private final PartitionedTransfers partitionedTransfers;
+
+  private final PartitionRouter router;
+
+  @Autowired
+  public PartitionController(PartitionedTransfers partitionedTransfers, PartitionRouter router) {
+	this.partitionedTransfers = partitionedTransfers;
+	this.router = router;
+  }
+
+  /**
+   * Checks the credited account of a transfer and remembers the transfer as prepared.
+   * @param transferId - id of the transfer
+   * @param transfer - transfer without the balance of the debited account
+   * @param secret - secret shared by the nodes
+   * @return HTTP 200 if the transfer can be committed, 400 if the amount is invalid or the credited account cannot take it,
+   * 		409 if it has been aborted, 503 if this node cannot remember further transfers for now
+   */
+  @PutMapping(path = "/{transferId}/prepare", consumes = MediaType.APPLICATION_JSON_VALUE,
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> prepare(@PathVariable String transferId, @RequestBody PartitionTransfer transfer,
+		  @RequestHeader(value = PartitionRouter.SECRET_HEADER, required = false) String secret) {
+	checkCaller(secret);
+	log.debug("Preparing transfer {}", transfer);
+	checkId(transferId, transfer);
+	partitionedTransfers.prepare(transfer);
+	return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  /**
+   * Credits a prepared transfer, once.
+   * @param transferId - id of the transfer
+   * @param transfer - transfer with the balance of the debited account
+   * @param secret - secret shared by the nodes
+   * @return JSON with the balance of the credited account after the transfer, HTTP 409 if the transfer
+   * 		has been aborted, 404 if it has not been prepared or has been forgotten
+   */
+  @PutMapping(path = "/{transferId}/commit", consumes = MediaType.APPLICATION_JSON_VALUE,
+		  produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> commit(@PathVariable String transferId, @RequestBody PartitionTransfer transfer,
+		  @RequestHeader(value = PartitionRouter.SECRET_HEADER, required = false) String secret) {
+	checkCaller(secret);
+	log.debug("Committing transfer {}", transfer);
+	checkId(transferId, transfer);
+	JSONObject response = new JSONObject();
+	response.put(Constants.BALANCE, partitionedTransfers.commit(transfer));
+	return new ResponseEntity<>(response, HttpStatus.OK);
+  }
+
+  /**
+   * Aborts a transfer which will never be committed.
+   * @param transferId - id of the transfer
+   * @param secret - secret shared by the nodes
+   * @return HTTP 200, 409 if the transfer has been committed
+   */
+  @PutMapping(path = "/{transferId}/abort", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> abort(@PathVariable String transferId,
+		  @RequestHeader(value = PartitionRouter.SECRET_HEADER, required = false) String secret) {
+	checkCaller(secret);
+	log.debug("Aborting transfer {}", transferId);
+	partitionedTransfers.abort(transferId);
+	return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  @ExceptionHandler({InvalidTransferRequestException.class, CurrencyMismatchException.class,
+	  InvalidAccountException.class})
+  public ResponseEntity<Object> handleBadRequest(RuntimeException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
+  }
+
+  @ExceptionHandler(TransferConflictException.class)
+  public ResponseEntity<Object> handleConflict(TransferConflictException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.CONFLICT);
+  }
+
+  @ExceptionHandler(UnknownTransferException.class)
+  public ResponseEntity<Object> handleUnknown(UnknownTransferException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.NOT_FOUND);
+  }
+
+  @ExceptionHandler(UntrustedNodeException.class)
+  public ResponseEntity<Object> handleUntrusted(UntrustedNodeException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.FORBIDDEN);
+  }
+
+  @ExceptionHandler(NodeUnavailableException.class)
+  public ResponseEntity<Object> handleUnavailable(NodeUnavailableException ex) {
+	return new ResponseEntity<>(generateErrorResponse(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
+  private void checkCaller(String secret) {
+	if (!router.isEnabled()) {
+		throw new UnknownTransferException("Accounts are not partitioned on this node.");
+	}
+	if (!router.isTrusted(secret)) {
+		log.warn("Refused a transfer phase from a caller without the secret of the nodes");
+		throw new UntrustedNodeException("Transfers between partitions are only accepted from other nodes.");
+	}
+  }
+
+  private static void checkId(String transferId, PartitionTransfer transfer) {
+	if (!transferId.equals(transfer.getTransferId())) {
+		throw new InvalidTransferRequestException("Transfer id of the path and of the body differ.");
+	}
+  }
+
+  private JSONObject generateErrorResponse(String message) {
+	JSONObject errorResponse = new JSONObject();
+	errorResponse.put(Constants.ERROR, message);
+	return errorResponse;
+  }
+}
@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.BalanceAggregate;
+import com.db.awmd.challenge.domain.BalanceReport;
+import com.db.awmd.challenge.service.BalanceReporter;
+import com.db.awmd.challenge.util.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import net.minidev.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Exposes reports over the balances of all accounts.
+ */
+@RestController
+@RequestMapping("/v1/reports")
+@Slf4j
+public class ReportsController {
+
+  private final BalanceReporter balanceReporter;
+
+  @Autowired
+  public ReportsController(BalanceReporter balanceReporter) {
+	this.balanceReporter = balanceReporter;
+  }
+
+  /**
+   * Returns number, total, lowest and highest balance of all accounts and the number of accounts per
+   * decade of balance, all as of the same point in time.
+   * @return JSON of the balance report, empty histogram buckets are left out
+   */
+  @GetMapping(path = "/balances", produces = MediaType.APPLICATION_JSON_VALUE)
+  public JSONObject getBalanceReport() {
+	BalanceReport report = balanceReporter.report();
+	BalanceAggregate aggregate = report.getAggregate();
+	log.info("Balance report of {} accounts took {} us", aggregate.getCount(), report.getPauseMicros());
+
+	List<JSONObject> histogram = new ArrayList<>();
+	for (int bucket = 0; bucket < BalanceAggregate.BUCKETS; bucket++) {
+		long count = aggregate.getBucketCount(bucket);
+		if (count > 0) {
+			JSONObject entry = new JSONObject();
+			entry.put(Constants.FROM, BalanceAggregate.getBucketFrom(bucket));
+			entry.put(Constants.TO, BalanceAggregate.getBucketTo(bucket));
+			entry.put(Constants.ACCOUNTS, count);
+			histogram.add(entry);
+		}
+	}
+
+	JSONObject response = new JSONObject();
+	response.put(Constants.TIME, report.getTime());
+	response.put(Constants.ACCOUNTS, aggregate.getCount());
+	response.put(Constants.TOTAL_BALANCE, aggregate.getTotal());
+	response.put(Constants.MIN_BALANCE, aggregate.getMin());
+	response.put(Constants.MAX_BALANCE, aggregate.getMax());
+	response.put(Constants.HISTOGRAM, histogram);
+	response.put(Constants.PAUSE_MICROS, report.getPauseMicros());
+	return response;
+  }
+}
@@ -1,14 +1,24 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferFrame;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.util.TransferFrameCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -20,6 +30,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 @RunWith(SpringRunner.class)
@@ -104,6 +115,123 @@ public class AccountsControllerTest {
         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
   
+  @Test
+  public void getAccount_returnsNotModifiedUntilBalanceChanges() throws Exception {
+    this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+    String eTag = this.mockMvc.perform(get("/v1/accounts/456")).andExpect(status().isOk())
+      .andReturn().getResponse().getHeader("ETag");
+    assertThat(eTag).isNotEmpty();
+
+    this.mockMvc.perform(get("/v1/accounts/456").header("If-None-Match", eTag))
+      .andExpect(status().isNotModified()).andExpect(content().string(""));
+
+    this.accountsService.transferFunds(new AmountTransferRequest("456", "123", new BigDecimal("100")));
+    this.mockMvc.perform(get("/v1/accounts/456").header("If-None-Match", eTag))
+      .andExpect(status().isOk())
+      .andExpect(content().string("{\"accountId\":\"456\",\"balance\":900}"));
+  }
+  
+  @Test
+  public void getTransfers_returnsStatementPageByPage() throws Exception {
+	  // The ledger keeps transfers of earlier tests, use ids of its own
+	  String from = "Id-" + System.currentTimeMillis();
+	  String to = from + "-to";
+	  this.accountsService.createAccount(new Account(from, new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account(to, new BigDecimal("1000")));
+	  this.accountsService.transferFunds(new AmountTransferRequest(from, to, new BigDecimal("100")));
+	  this.accountsService.transferFunds(new AmountTransferRequest(to, from, new BigDecimal("30")));
+	  
+	  MvcResult result = this.mockMvc.perform(get("/v1/accounts/" + from + "/transfers?limit=1"))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  result.getAsyncResult();
+	  JsonNode page = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+	  assertThat(page.get("transfers")).hasSize(1);
+	  assertThat(page.get("transfers").get(0).get("counterpartyId").asText()).isEqualTo(to);
+	  assertThat(page.get("transfers").get(0).get("amount").decimalValue()).isEqualByComparingTo("-100");
+	  assertThat(page.get("transfers").get(0).get("balance").decimalValue()).isEqualByComparingTo("900");
+	  
+	  result = this.mockMvc.perform(get("/v1/accounts/" + from + "/transfers?limit=1&cursor=" + page.get("nextCursor").asLong()))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  result.getAsyncResult();
+	  page = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+	  assertThat(page.get("transfers")).hasSize(1);
+	  assertThat(page.get("transfers").get(0).get("amount").decimalValue()).isEqualByComparingTo("30");
+	  assertThat(page.get("transfers").get(0).get("balance").decimalValue()).isEqualByComparingTo("930");
+	  assertThat(page.get("nextCursor").isNull()).isTrue();
+	  
+	  this.mockMvc.perform(get("/v1/accounts/789/transfers")).andExpect(status().isBadRequest());
+  }
+  
+  @Test
+  public void importAccounts_reportsRowsWhichCannotBeImported() throws Exception {
+	this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10")));
+	String csv = "accountId,balance\nId-1,100\nId-2,200\nId-3,-5\nId-4,abc\nId-5\n\"Id-6\",600.50\n";
+
+	MvcResult result = this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv").content(csv))
+			.andExpect(request().asyncStarted()).andReturn();
+	result.getAsyncResult();
+	JsonNode summary = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+	assertThat(summary.get("rows").asLong()).isEqualTo(6);
+	assertThat(summary.get("imported").asLong()).isEqualTo(2);
+	assertThat(summary.get("failed").asLong()).isEqualTo(4);
+	JsonNode errors = summary.get("errors");
+	assertThat(errors).hasSize(4);
+	assertThat(errors.get(0).get("index").asLong()).isEqualTo(0);
+	assertThat(errors.get(0).get("error").asText()).contains("already exists");
+	assertThat(errors.get(1).get("accountId").asText()).isEqualTo("Id-3");
+	assertThat(errors.get(1).get("error").asText()).startsWith("balance:");
+	assertThat(errors.get(2).get("error").asText()).isEqualTo("Invalid balance 'abc'.");
+	assertThat(errors.get(3).get("index").asLong()).isEqualTo(4);
+
+	assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+	assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("200");
+	assertThat(accountsService.getAccount("Id-6").getBalance()).isEqualByComparingTo("600.50");
+  }
+
+  @Test
+  public void importAccounts_readsNewlineDelimitedJson() throws Exception {
+	String ndjson = "{\"accountId\":\"Id-1\",\"balance\":100}\n{\"accountId\":\"Id-1\",\"balance\":5}\n{oops\n";
+
+	MvcResult result = this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson")
+			.content(ndjson)).andExpect(request().asyncStarted()).andReturn();
+	result.getAsyncResult();
+	JsonNode summary = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+	assertThat(summary.get("imported").asLong()).isEqualTo(1);
+	assertThat(summary.get("errors")).hasSize(2);
+	assertThat(summary.get("errors").get(1).get("error").asText()).startsWith("Invalid JSON");
+	assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  public void getBalanceReport() throws Exception {
+	this.accountsService.createAccount(new Account("Id-1", new BigDecimal("5")));
+	this.accountsService.createAccount(new Account("Id-2", new BigDecimal("250.50")));
+
+	String content = this.mockMvc.perform(get("/v1/reports/balances")).andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString();
+	JsonNode report = new ObjectMapper().readTree(content);
+	assertThat(report.get("accounts").asLong()).isEqualTo(2);
+	assertThat(report.get("totalBalance").decimalValue()).isEqualByComparingTo("255.50");
+	assertThat(report.get("minBalance").decimalValue()).isEqualByComparingTo("5");
+	assertThat(report.get("histogram")).hasSize(2);
+	assertThat(report.get("histogram").get(0).get("from").decimalValue()).isEqualByComparingTo("1");
+	assertThat(report.get("histogram").get(0).get("to").decimalValue()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void partitionTransfer_isNotFoundWithoutPartitioning() throws Exception {
+    this.accountsService.createAccount(new Account("123", new BigDecimal("10")));
+    String transfer = "{\"transferId\":\"remote-1\",\"accountFromId\":\"456\",\"accountToId\":\"123\","
+      + "\"amount\":500,\"accFromBalance\":0}";
+    this.mockMvc.perform(put("/v1/partition/transfers/remote-1/prepare").contentType(MediaType.APPLICATION_JSON)
+      .content(transfer)).andExpect(status().isNotFound());
+    this.mockMvc.perform(put("/v1/partition/transfers/remote-1/commit").contentType(MediaType.APPLICATION_JSON)
+      .content(transfer)).andExpect(status().isNotFound());
+    this.mockMvc.perform(put("/v1/partition/transfers/remote-1/abort")).andExpect(status().isNotFound());
+    assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("10");
+  }
+
   @Test
   public void transferMoney_failsForNonExistingAccountId() throws Exception {
     this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
@@ -111,6 +239,15 @@ public class AccountsControllerTest {
     andExpect(status().isBadRequest());
   }
   
+  @Test
+  public void transferMoney_failsForSameAccount() throws Exception {
+    this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountFromId\":\"123\",\"accountToId\":\"123\",\"amountToTransfer\":100}")).
+    andExpect(status().isBadRequest());
+    assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+  }
+  
   @Test
   public void transferMoney_failsForNegativeAmountToTransfer() throws Exception {
     this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
@@ -118,6 +255,15 @@ public class AccountsControllerTest {
     andExpect(status().isBadRequest());
   }
   
+  @Test
+  public void transferMoney_failsForTooManyDecimalPlaces() throws Exception {
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":0.001}")).
+    andExpect(status().isBadRequest());
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountId\":\"Id-123\",\"balance\":10.005}")).andExpect(status().isBadRequest());
+  }
+  
   @Test
   public void transferMoney_failsWhenBalanceIsLessThanAmountToTransfer() throws Exception {
 	  Account accountFrom = new Account("456", new BigDecimal("1000"));
@@ -141,4 +287,190 @@ public class AccountsControllerTest {
 			  .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":500}")).
 	  	andExpect(status().is2xxSuccessful());
   }
+  
+  @Test
+  public void transferMoneyBinary_answersEveryPipelinedFrame() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+
+	  TransferFrameCodec codec = new TransferFrameCodec();
+	  ByteArrayOutputStream requests = new ByteArrayOutputStream();
+	  long[][] frames = {{1, 456, 123, 60000}, {2, 456, 123, 60000}, {3, 789, 123, 100}, {4, 123, 123, 100}};
+	  for (long[] fields : frames) {
+		  TransferFrame frame = new TransferFrame();
+		  frame.setRequestId(fields[0]);
+		  frame.setAccountFromId(fields[1]);
+		  frame.setAccountToId(fields[2]);
+		  frame.setAmount(fields[3]);
+		  codec.writeRequest(requests, frame);
+	  }
+
+	  MvcResult result = this.mockMvc.perform(put("/v1/accounts/transfer").contentType(TransferFrameCodec.CONTENT_TYPE)
+			  .accept(TransferFrameCodec.CONTENT_TYPE).content(requests.toByteArray()))
+			  .andExpect(status().isOk()).andReturn();
+
+	  ByteArrayInputStream responses = new ByteArrayInputStream(result.getResponse().getContentAsByteArray());
+	  int[] expected = {TransferFrameCodec.STATUS_OK, TransferFrameCodec.STATUS_INSUFFICIENT_BALANCE,
+			  TransferFrameCodec.STATUS_INVALID_ACCOUNT, TransferFrameCodec.STATUS_SAME_ACCOUNT};
+	  for (int i = 0; i < expected.length; i++) {
+		  assertThat(codec.readResponse(responses)).isEqualTo(expected[i]);
+		  assertThat(codec.getResponseRequestId()).isEqualTo(i + 1);
+	  }
+	  assertThat(codec.readResponse(responses)).isEqualTo(-1);
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("400");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1600");
+  }
+
+  @Test
+  public void transferMoneyBatch_bestEffortAppliesValidTransfers() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	  
+	  MvcResult result = this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+			  .content("[{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":600},"
+					  + "{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":600},"
+					  + "{\"accountFromId\":\"789\",\"accountToId\":\"123\",\"amountToTransfer\":1}]"))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  // Streamed body is written to the original response once async processing completes
+	  result.getAsyncResult();
+	  assertThat(result.getResponse().getStatus()).isEqualTo(200);
+	  assertThat(result.getResponse().getContentAsString()).isEqualTo("[{\"index\":0,\"message\":\"Funds has been transferred successfully\"},"
+	  			+ "{\"index\":1,\"error\":\"You don't have sufficient balance.\"},"
+	  			+ "{\"index\":2,\"error\":\"Account with number '789' does not exist. Please provide valid account number.\"}]");
+	  
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("400");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1600");
+  }
+  
+  @Test
+  public void transferMoneyBatch_atomicAppliesNothingWhenOneTransferFails() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	  
+	  MvcResult result = this.mockMvc.perform(post("/v1/accounts/transfer/batch?mode=ATOMIC")
+			  .contentType("application/x-ndjson")
+			  .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":600}\n"
+					  + "{\"accountFromId\":\"123\",\"accountToId\":\"456\",\"amountToTransfer\":100}\n"
+					  + "{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":600}\n"))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  // Streamed body is written to the original response once async processing completes
+	  result.getAsyncResult();
+	  assertThat(result.getResponse().getStatus()).isEqualTo(200);
+	  assertThat(result.getResponse().getContentAsString()).isEqualTo("[{\"index\":0,\"error\":\"Not executed, another transfer of the batch failed.\"},"
+	  			+ "{\"index\":1,\"error\":\"Not executed, another transfer of the batch failed.\"},"
+	  			+ "{\"index\":2,\"error\":\"You don't have sufficient balance.\"}]");
+	  
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("1000");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+  }
+  
+  @Test
+  public void transferMoneyBatch_rejectsMalformedBody() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+
+	  this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+			  .content("[{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":600},{\"accountFromId\":"))
+			  .andExpect(status().isBadRequest());
+	  this.mockMvc.perform(post("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+			  .content("[{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":\"many\"}]"))
+			  .andExpect(status().isBadRequest());
+
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("1000");
+  }
+
+  @Test
+  public void transferMoneyMultiLeg_creditsEveryLeg() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("0")));
+	  this.accountsService.createAccount(new Account("789", new BigDecimal("0")));
+
+	  this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"legs\":[{\"accountToId\":\"123\",\"amountToTransfer\":250},"
+					  + "{\"accountToId\":\"789\",\"amountToTransfer\":750}]}"))
+			  .andExpect(status().isOk());
+
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("0");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("250");
+	  assertThat(accountsService.getAccount("789").getBalance()).isEqualByComparingTo("750");
+  }
+
+  @Test
+  public void transferMoneyMultiLeg_failsForNonExistingAccountId() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("0")));
+
+	  this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"legs\":[{\"accountToId\":\"123\",\"amountToTransfer\":250},"
+					  + "{\"accountToId\":\"789\",\"amountToTransfer\":750}]}"))
+			  .andExpect(status().isBadRequest());
+
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("1000");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("0");
+  }
+
+  @Test
+  public void transferMoneyMultiLeg_failsForTooManyLegs() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("10000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("0")));
+
+	  StringBuilder legs = new StringBuilder();
+	  for (int i = 0; i <= MultiLegTransferRequest.MAX_LEGS; i++) {
+		  legs.append(i == 0 ? "" : ",").append("{\"accountToId\":\"123\",\"amountToTransfer\":1}");
+	  }
+	  this.mockMvc.perform(post("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"legs\":[" + legs + "]}"))
+			  .andExpect(status().isBadRequest());
+
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("10000");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("0");
+  }
+
+  @Test
+  public void getMetrics_reportsTransferOutcomes() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	  
+	  this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":500}"))
+	  	.andExpect(status().isOk());
+	  this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"789\",\"accountToId\":\"123\",\"amountToTransfer\":500}"))
+	  	.andExpect(status().isBadRequest());
+	  
+	  String metrics = this.mockMvc.perform(get("/v1/metrics")).andExpect(status().isOk())
+	  	.andReturn().getResponse().getContentAsString();
+	  JsonNode transfers = new ObjectMapper().readTree(metrics).get("transfers");
+	  assertThat(transfers.get("enabled").asBoolean()).isTrue();
+	  assertThat(transfers.get("counters").get("succeeded").asLong()).isGreaterThanOrEqualTo(1);
+	  assertThat(transfers.get("counters").get("invalidAccount").asLong()).isGreaterThanOrEqualTo(1);
+	  assertThat(transfers.get("latencies").get("total").get("count").asLong()).isGreaterThanOrEqualTo(2);
+	  assertThat(transfers.get("latencies").get("lockHold").has("p99Micros")).isTrue();
+  }
+  
+  @Test
+  public void asyncTransferMoney_successForValidAccountAndValidAmountToTransfer() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	  
+	  MvcResult result = this.mockMvc.perform(put("/v1/async/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":500}"))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+	  
+	  assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("500");
+	  assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1500");
+  }
+  
+  @Test
+  public void asyncTransferMoney_failsWhenBalanceIsLessThanAmountToTransfer() throws Exception {
+	  this.accountsService.createAccount(new Account("456", new BigDecimal("100")));
+	  this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	  
+	  MvcResult result = this.mockMvc.perform(put("/v1/async/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+			  .content("{\"accountFromId\":\"456\",\"accountToId\":\"123\",\"amountToTransfer\":500}"))
+			  .andExpect(request().asyncStarted()).andReturn();
+	  this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest())
+	  	.andExpect(content().string("{\"error\":\"You don't have sufficient balance.\"}"));
+  }
 }
@@ -0,0 +1,138 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.JournalProperties;
+import com.db.awmd.challenge.config.SnapshotProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InvalidTransferRequestException;
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsSnapshotter;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccountsJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private JournalProperties properties;
+
+  private AccountsJournal journal;
+
+  private AccountsSnapshotter snapshotter;
+
+  @Before
+  public void setup() throws Exception {
+    properties = new JournalProperties();
+    properties.setEnabled(true);
+    properties.setDirectory(folder.getRoot().getAbsolutePath());
+    properties.setSegmentSize(4096);
+    properties.setMaxDelayMicros(2000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  @Test
+  public void recover_rebuildsAccountsAndBalances() throws Exception {
+    AccountsRepositoryInMemory repository = openRepository();
+    repository.createAccount(new Account("123", new BigDecimal("1000")));
+    repository.createAccount(new Account("456", new BigDecimal("50.25")));
+    // Enough records to roll over several segments
+    for (int i = 0; i < 200; i++) {
+      repository.recordTransfer("123", "456", new BigDecimal("1.50")).join();
+    }
+    journal.close();
+
+    AccountsRepositoryInMemory recovered = openRepository();
+    assertThat(new File(properties.getDirectory()).list().length).isGreaterThan(1);
+    assertThat(recovered.getAccount("123").getBalance()).isEqualByComparingTo("700");
+    assertThat(recovered.getAccount("456").getBalance()).isEqualByComparingTo("350.25");
+
+    // Journal continues where the previous run stopped
+    recovered.recordTransfer("456", "123", new BigDecimal("0.25")).join();
+    journal.close();
+    AccountsRepositoryInMemory recoveredAgain = openRepository();
+    assertThat(recoveredAgain.getAccount("456").getBalance()).isEqualByComparingTo("350");
+  }
+
+  @Test
+  public void append_sharesFsyncBetweenConcurrentRecords() throws Exception {
+    AccountsRepositoryInMemory repository = openRepository();
+    List<CompletableFuture<Void>> durable = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      durable.add(repository.recordTransfer("1", "2", BigDecimal.ONE));
+    }
+    CompletableFuture.allOf(durable.toArray(new CompletableFuture<?>[0])).join();
+
+    assertThat(journal.getRecordCount()).isEqualTo(100);
+    assertThat(journal.getSyncCount()).isLessThan(100);
+    assertThat(journal.getAverageBatchSize()).isGreaterThan(1);
+  }
+
+  @Test
+  public void prepareTransfer_rejectsRecordNotFittingIntoSegmentBeforeAnythingIsAppended() throws Exception {
+    AccountsRepositoryInMemory repository = openRepository();
+    CompletableFuture<Void> first = repository.recordTransfer("1", "2", BigDecimal.ONE);
+    char[] id = new char[properties.getSegmentSize()];
+    Arrays.fill(id, '9');
+    try {
+      repository.prepareTransfer("1", new String(id), BigDecimal.ONE);
+      fail("Should have failed when the record does not fit into a segment");
+    } catch (InvalidTransferRequestException ex) {
+      assertThat(ex.getMessage()).contains("does not fit into a segment");
+    }
+    CompletableFuture<Void> second = repository.recordTransfer("2", "1", BigDecimal.ONE);
+
+    CompletableFuture.allOf(first, second).join();
+    assertThat(journal.getRecordCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void recover_startsFromSnapshotAndReplaysJournalTail() throws Exception {
+    AccountsRepositoryInMemory repository = openRepository();
+    repository.createAccount(new Account("123", new BigDecimal("1000")));
+    repository.createAccount(new Account("456", new BigDecimal("0")));
+    for (int i = 0; i < 200; i++) {
+      repository.recordTransfer("123", "456", new BigDecimal("2.5")).join();
+    }
+    long position = snapshotter.snapshot();
+    assertThat(position).isEqualTo(journal.getPosition());
+    // Segments fully covered by the snapshot are gone
+    assertThat(new File(properties.getDirectory()).list((dir, name) -> name.endsWith(".log")).length).isEqualTo(1);
+
+    repository.createAccount(new Account("789", new BigDecimal("1.01")));
+    repository.recordTransfer("456", "789", new BigDecimal("100")).join();
+    journal.close();
+
+    AccountsRepositoryInMemory recovered = openRepository();
+    assertThat(recovered.getAccount("123").getBalance()).isEqualByComparingTo("500");
+    assertThat(recovered.getAccount("456").getBalance()).isEqualByComparingTo("400");
+    assertThat(recovered.getAccount("789").getBalance()).isEqualByComparingTo("101.01");
+  }
+
+  private AccountsRepositoryInMemory openRepository() {
+    journal = new AccountsJournal(properties);
+    SnapshotProperties snapshotProperties = new SnapshotProperties();
+    snapshotProperties.setEnabled(true);
+    snapshotter = new AccountsSnapshotter(snapshotProperties, journal);
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory(journal, snapshotter);
+    repository.recover();
+    return repository;
+  }
+}
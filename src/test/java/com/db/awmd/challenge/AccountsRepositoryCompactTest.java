@@ -0,0 +1,78 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceAggregate;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepositoryCompact;
+import com.db.awmd.challenge.repository.BalancePartition;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class AccountsRepositoryCompactTest {
+
+  private final AccountsRepositoryCompact repository = new AccountsRepositoryCompact();
+
+  @Test
+  public void createAccount_storesNumericAndOtherIds() throws Exception {
+    repository.createAccount(new Account("123", new BigDecimal("10.5")));
+    repository.createAccount(new Account("Id-123", new BigDecimal("20")));
+    repository.createAccount(new Account("0123", new BigDecimal("30")));
+
+    assertThat(repository.getAccount("123").getBalance()).isEqualByComparingTo("10.5");
+    assertThat(repository.getAccount("Id-123").getBalance()).isEqualByComparingTo("20");
+    assertThat(repository.getAccount("0123").getBalance()).isEqualByComparingTo("30");
+    assertThat(repository.getAccount("124")).isNull();
+    assertThat(repository.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void createAccount_failsOnDuplicateId() throws Exception {
+    repository.createAccount(new Account("123", BigDecimal.ONE));
+    try {
+      repository.createAccount(new Account("123", BigDecimal.ONE));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id 123 already exists!");
+    }
+  }
+
+  @Test
+  public void getAccount_returnsViewsSharingBalanceAndLock() throws Exception {
+    repository.createAccount(new Account("7", new BigDecimal("100")));
+
+    Account first = repository.getAccount("7");
+    Account second = repository.getAccount("7");
+    first.getBalanceCell().tryDebit(2550);
+
+    assertThat(second.getBalance()).isEqualByComparingTo("74.50");
+    assertThat(second.getLock()).isSameAs(first.getLock());
+    assertThat(second.getVersion()).isEqualTo(1);
+    assertThat(second.getSnapshot().getBalance()).isEqualByComparingTo("74.50");
+  }
+
+  @Test
+  public void createAccount_growsBeyondOneChunk() throws Exception {
+    for (int i = 0; i < 200_000; i++) {
+      repository.createAccount(new Account(String.valueOf(i), BigDecimal.valueOf(i)));
+    }
+    for (int i = 0; i < 200_000; i += 997) {
+      assertThat(repository.getAccount(String.valueOf(i)).getBalance()).isEqualByComparingTo(BigDecimal.valueOf(i));
+    }
+    assertThat(repository.size()).isEqualTo(200_000);
+
+    repository.createAccount(new Account("Id-other", new BigDecimal("0.5")));
+    BalanceAggregate aggregate = new BalanceAggregate();
+    for (BalancePartition partition : repository.getBalancePartitions(7)) {
+      partition.scan(aggregate);
+    }
+    assertThat(aggregate.getCount()).isEqualTo(200_001);
+    // Sum of 0 to 199999 plus 0.5
+    assertThat(aggregate.getTotal()).isEqualByComparingTo("19999900000.5");
+    assertThat(aggregate.getMax()).isEqualByComparingTo("199999");
+    assertThat(aggregate.getBucketCount(0)).isEqualTo(1);
+    // Balances from 1000.00 up to 9999.99 have 6 digits in minor units
+    assertThat(aggregate.getBucketCount(6)).isEqualTo(9000);
+  }
+}
@@ -4,16 +4,43 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.ReadCacheProperties;
+import com.db.awmd.challenge.config.ShardedEngineProperties;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
 import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceAggregate;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.CurrencyConversionException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.service.AccountReadCache;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AtomicBalanceEngine;
+import com.db.awmd.challenge.service.BalanceReporter;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.ShardedBalanceEngine;
 import com.db.awmd.challenge.service.NotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.minidev.json.JSONObject;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,6 +57,9 @@ public class AccountsServiceTest {
 
   @Autowired
   private AccountsService accountsService;
+
+  @Autowired
+  private BalanceReporter balanceReporter;
   
   @Mock
   private AccountsRepository accountsRepository;
@@ -155,4 +185,373 @@ public class AccountsServiceTest {
  
  	 Whitebox.invokeMethod(accountsService, "transferFunds", transferRequest);
   }
+  
+  @Test
+  public void transferFunds_replaysResultForSameIdempotencyKey() throws Exception {
+	 String idempotencyKey = "key-" + System.nanoTime();
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+
+	 JSONObject first = accountsService.transferFunds(new AmountTransferRequest("123", "456", new BigDecimal("500"), idempotencyKey));
+	 JSONObject retry = accountsService.transferFunds(new AmountTransferRequest("123", "456", new BigDecimal("500.00"), idempotencyKey));
+	 assertThat(retry).isSameAs(first);
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("500");
+	 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("1500");
+  }
+  
+  @Test
+  public void transferFunds_rejectsIdempotencyKeyOfDifferentTransfer() throws Exception {
+	 String idempotencyKey = "key-" + System.nanoTime();
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.createAccount(new Account("456", new BigDecimal("1000")));
+
+	 accountsService.transferFunds(new AmountTransferRequest("123", "456", new BigDecimal("100"), idempotencyKey));
+	 try {
+		 accountsService.transferFunds(new AmountTransferRequest("123", "456", new BigDecimal("200"), idempotencyKey));
+		 fail("Should have failed when reusing an idempotency key for another transfer");
+	 } catch (IdempotencyKeyReusedException ex) {
+		 assertThat(ex.getMessage()).isEqualTo("Idempotency key '" + idempotencyKey
+				 + "' has already been used for a different transfer.");
+	 }
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("900");
+  }
+  
+  @Test
+  public void getSerializedAccount_reusesJsonUntilBalanceChanges() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal("1000")));
+
+    AccountReadCache.SerializedAccount first = this.accountsService.getSerializedAccount("Id-1");
+    assertThat(this.accountsService.getSerializedAccount("Id-1")).isSameAs(first);
+
+    this.accountsService.transferFunds(new AmountTransferRequest("Id-1", "Id-2", new BigDecimal("100")));
+    AccountReadCache.SerializedAccount updated = this.accountsService.getSerializedAccount("Id-1");
+    assertThat(updated.getVersion()).isGreaterThan(first.getVersion());
+    assertThat(updated.getETag()).isNotEqualTo(first.getETag());
+    assertThat(new String(updated.getJson(), "UTF-8")).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":900}");
+  }
+
+  @Test
+  public void accountReadCache_missesWhenBalanceChangedAtSameVersion() throws Exception {
+    // Snapshot taken after a balance has been written, before its version has been incremented
+    BigDecimal[] balance = {new BigDecimal("1000")};
+    Account account = new Account("Id-1", balance[0]) {
+      @Override
+      public AccountSnapshot getSnapshot() {
+        return new AccountSnapshot(getAccountId(), balance[0], null, 7);
+      }
+    };
+    AccountReadCache cache = new AccountReadCache(new ReadCacheProperties(), new ObjectMapper());
+
+    AccountReadCache.SerializedAccount first = cache.get(account);
+    balance[0] = new BigDecimal("900");
+    AccountReadCache.SerializedAccount updated = cache.get(account);
+
+    assertThat(updated).isNotSameAs(first);
+    assertThat(updated.getETag()).isNotEqualTo(first.getETag());
+    assertThat(new String(updated.getJson(), "UTF-8")).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":900}");
+  }
+
+  @Test
+  public void statement_listsTransfersInTheOrderTheyChangedTheBalance() throws Exception {
+	 for (int i = 0; i < 3; i++) {
+		 this.accountsService.createAccount(new Account("Ledger-" + i, new BigDecimal("1000")));
+	 }
+	 Thread[] threads = new Thread[4];
+	 for (int t = 0; t < threads.length; t++) {
+		 threads[t] = new Thread(() -> {
+			 ThreadLocalRandom random = ThreadLocalRandom.current();
+			 for (int i = 0; i < 500; i++) {
+				 int from = random.nextInt(3);
+				 int to = (from + 1 + random.nextInt(2)) % 3;
+				 try {
+					 accountsService.transferFunds(new AmountTransferRequest("Ledger-" + from, "Ledger-" + to,
+							 BigDecimal.valueOf(1 + random.nextInt(5000), 2)));
+				 } catch (InsufficientBalanceException ex) {
+					 // expected now and then
+				 }
+			 }
+		 });
+		 threads[t].start();
+	 }
+	 for (Thread thread : threads) {
+		 thread.join();
+	 }
+
+	 for (int i = 0; i < 3; i++) {
+		 TransferLedger.Statement statement = accountsService.getStatement("Ledger-" + i, 0, Long.MAX_VALUE, -1);
+		 BigDecimal balance = new BigDecimal("1000");
+		 while (statement.next()) {
+			 balance = balance.add(statement.getAmount());
+			 assertThat(statement.getBalance()).isEqualByComparingTo(balance);
+		 }
+		 assertThat(accountsService.getAccount("Ledger-" + i).getBalance()).isEqualByComparingTo(balance);
+	 }
+  }
+
+  @Test
+  public void balanceReport_conservesTotalWhileTransfersRun() throws Exception {
+	 for (int i = 0; i < 100; i++) {
+		 this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+	 }
+	 this.accountsService.createAccount(new Account("Id-fraction", new BigDecimal("0.01")));
+	 AtomicBoolean running = new AtomicBoolean(true);
+	 Thread[] threads = new Thread[4];
+	 for (int t = 0; t < threads.length; t++) {
+		 threads[t] = new Thread(() -> {
+			 ThreadLocalRandom random = ThreadLocalRandom.current();
+			 while (running.get()) {
+				 int from = random.nextInt(100);
+				 int to = (from + 1 + random.nextInt(99)) % 100;
+				 try {
+					 accountsService.transferFunds(new AmountTransferRequest("Id-" + from, "Id-" + to,
+							 BigDecimal.valueOf(random.nextInt(5000), 2)));
+				 } catch (InsufficientBalanceException ex) {
+					 // expected now and then
+				 }
+			 }
+		 });
+		 threads[t].start();
+	 }
+	 try {
+		 for (int i = 0; i < 50; i++) {
+			 BalanceAggregate aggregate = balanceReporter.report().getAggregate();
+			 assertThat(aggregate.getCount()).isEqualTo(101);
+			 assertThat(aggregate.getTotal()).isEqualByComparingTo("100000.01");
+			 long bucketed = 0;
+			 for (int bucket = 0; bucket < BalanceAggregate.BUCKETS; bucket++) {
+				 bucketed += aggregate.getBucketCount(bucket);
+			 }
+			 assertThat(bucketed).isEqualTo(101);
+			 assertThat(aggregate.getMin()).isEqualByComparingTo("0.01");
+		 }
+	 } finally {
+		 running.set(false);
+		 for (Thread thread : threads) {
+			 thread.join();
+		 }
+	 }
+  }
+
+  @Test(expected=SameAccountTransferException.class)
+  public void transferFunds_rejectsTransferToSameAccount() throws Exception {
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.transferFunds(new AmountTransferRequest("123", "123", new BigDecimal("10")));
+  }
+
+  @Test
+  public void transferFundsMultiLeg_appliesAllLegs() throws Exception {
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.createAccount(new Account("456", new BigDecimal("0")));
+	 this.accountsService.createAccount(new Account("789", new BigDecimal("0")));
+
+	 JSONObject response = this.accountsService.transferFundsMultiLeg(new MultiLegTransferRequest("123", Arrays.asList(
+			 new TransferLeg("456", new BigDecimal("100")), new TransferLeg("789", new BigDecimal("200")),
+			 new TransferLeg("456", new BigDecimal("300")))));
+	 assertEquals("Funds has been transferred successfully", response.get("message"));
+	 assertEquals(3, response.get("transfers"));
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("400");
+	 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("400");
+	 assertThat(accountsService.getAccount("789").getBalance()).isEqualByComparingTo("200");
+  }
+
+  @Test
+  public void transferFundsMultiLeg_appliesNothingWhenOneLegFails() throws Exception {
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.createAccount(new Account("456", new BigDecimal("0")));
+	 try {
+		 this.accountsService.transferFundsMultiLeg(new MultiLegTransferRequest("123", Arrays.asList(
+				 new TransferLeg("456", new BigDecimal("600")), new TransferLeg("456", new BigDecimal("600")))));
+		 fail("Should have failed when balance is too low for all legs");
+	 } catch (InsufficientBalanceException ex) {
+		 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+		 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("0");
+	 }
+	 try {
+		 this.accountsService.transferFundsMultiLeg(new MultiLegTransferRequest("123", Arrays.asList(
+				 new TransferLeg("456", new BigDecimal("100")), new TransferLeg("789", new BigDecimal("100")))));
+		 fail("Should have failed for an unknown target account");
+	 } catch (InvalidAccountException ex) {
+		 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+		 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("0");
+	 }
+  }
+
+  @Test
+  public void transferFunds_convertsBetweenCurrencies() throws Exception {
+	 this.accountsService.getFxRateCache().update(Collections.singletonList("EUR,USD,1.085"));
+	 this.accountsService.createAccount(new Account("123", new BigDecimal("1000")));
+	 this.accountsService.createAccount(new Account("456", new BigDecimal("0"), "USD"));
+	 this.accountsService.createAccount(new Account("789", new BigDecimal("50"), "CHF"));
+
+	 // Amount is given in the currency of the debited account
+	 this.accountsService.transferFunds(new AmountTransferRequest("123", "456", new BigDecimal("100")));
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("900");
+	 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("108.50");
+	 this.accountsService.transferFunds(new AmountTransferRequest("456", "123", new BigDecimal("108.50")));
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+	 assertThat(accountsService.getAccount("456").getBalance()).isEqualByComparingTo("0");
+
+	 try {
+		 this.accountsService.transferFunds(new AmountTransferRequest("789", "123", new BigDecimal("10")));
+		 fail("Should have failed without a rate from CHF");
+	 } catch (CurrencyConversionException ex) {
+		 assertThat(accountsService.getAccount("789").getBalance()).isEqualByComparingTo("50");
+	 }
+	 List<BatchItem> items = this.accountsService.transferFundsBatch(Collections.singletonList(
+			 new AmountTransferRequest("123", "456", new BigDecimal("10"))), BatchMode.BEST_EFFORT);
+	 assertThat(items.get(0).getError()).isEqualTo("Transfers between currencies are supported for single transfers only.");
+	 assertThat(accountsService.getAccount("123").getBalance()).isEqualByComparingTo("1000");
+  }
+
+  @Test
+  public void transferFunds_neverOverdrawsUnderContention() throws Exception {
+	 int accounts = 10;
+	 for (int i = 0; i < accounts; i++) {
+		 this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal("100")));
+	 }
+	 AtomicInteger rejected = new AtomicInteger();
+	 Thread[] threads = new Thread[8];
+	 for (int t = 0; t < threads.length; t++) {
+		 threads[t] = new Thread(() -> {
+			 ThreadLocalRandom random = ThreadLocalRandom.current();
+			 for (int i = 0; i < 2000; i++) {
+				 // Few accounts and amounts close to their balance, so transfers race for the same money
+				 int from = random.nextInt(accounts);
+				 int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				 try {
+					 accountsService.transferFunds(new AmountTransferRequest("Id-" + from, "Id-" + to,
+							 BigDecimal.valueOf(50 + random.nextInt(50))));
+				 } catch (InsufficientBalanceException ex) {
+					 rejected.incrementAndGet();
+				 }
+			 }
+		 });
+		 threads[t].start();
+	 }
+	 for (Thread thread : threads) {
+		 while (thread.isAlive()) {
+			 BalanceAggregate aggregate = balanceReporter.report().getAggregate();
+			 assertThat(aggregate.getMin()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+			 assertThat(aggregate.getTotal()).isEqualByComparingTo("1000");
+		 }
+		 thread.join();
+	 }
+	 for (int i = 0; i < accounts; i++) {
+		 assertThat(accountsService.getAccount("Id-" + i).getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+	 }
+	 assertThat(rejected.get()).isGreaterThan(0);
+  }
+
+  @Test
+  public void lockingBalanceEngine_rejectsOverdraftUnderLock() throws Exception {
+	 Account accountFrom = new Account("123", new BigDecimal("100"));
+	 Account accountTo = new Account("456", new BigDecimal("100"));
+	 try {
+		 new LockingBalanceEngine(new LockManager(accountsService.getTransferMetrics(), new LockProperties()))
+				 .transfer(accountFrom, accountTo, new BigDecimal("100.01"));
+		 fail("Should have failed when balance is too low");
+	 } catch (InsufficientBalanceException ex) {
+		 assertThat(accountFrom.getBalance()).isEqualByComparingTo("100");
+		 assertThat(accountTo.getBalance()).isEqualByComparingTo("100");
+	 }
+  }
+
+  @Test
+  public void lockingBalanceEngine_rejectsBatchOverflowingABalance() throws Exception {
+	 LockingBalanceEngine engine = new LockingBalanceEngine(new LockManager(accountsService.getTransferMetrics(), new LockProperties()));
+	 Account accountA = new Account("123", new BigDecimal("10"));
+	 Account accountB = new Account("456", new BigDecimal("10"));
+	 // Takes one more credit of 1.00, not two
+	 Account accountTo = new Account("789", new BigDecimal(Long.MAX_VALUE - 150).movePointLeft(2));
+	 BigDecimal accountToBalance = accountTo.getBalance();
+
+	 List<BatchItem> items = batchItems(accountTo, accountA, accountB);
+	 engine.transferBatch(items, true);
+	 assertThat(items.get(0).getError()).isEqualTo("Not executed, another transfer of the batch failed.");
+	 assertThat(items.get(1).getError()).isEqualTo("Something went wrong");
+	 assertThat(items.get(1).getFailure()).isInstanceOf(ArithmeticException.class);
+	 assertThat(accountA.getBalance()).isEqualByComparingTo("10");
+	 assertThat(accountB.getBalance()).isEqualByComparingTo("10");
+	 assertThat(accountTo.getBalance()).isEqualByComparingTo(accountToBalance);
+
+	 items = batchItems(accountTo, accountA, accountB);
+	 engine.transferBatch(items, false);
+	 assertThat(items.get(0).isSuccessful()).isTrue();
+	 assertThat(items.get(1).getFailure()).isInstanceOf(ArithmeticException.class);
+	 assertThat(accountA.getBalance()).isEqualByComparingTo("9");
+	 assertThat(accountB.getBalance()).isEqualByComparingTo("10");
+	 assertThat(accountTo.getBalance()).isEqualByComparingTo(accountToBalance.add(BigDecimal.ONE));
+
+	 List<BatchItem> legs = batchItems(accountTo, accountB, accountB);
+	 try {
+		 engine.transferMultiLeg(legs);
+		 fail("Should have failed when the credited balance overflows");
+	 } catch (ArithmeticException ex) {
+		 assertThat(accountB.getBalance()).isEqualByComparingTo("10");
+		 assertThat(accountTo.getBalance()).isEqualByComparingTo(accountToBalance.add(BigDecimal.ONE));
+		 assertThat(legs.get(0).getUpdate()).isNull();
+	 }
+  }
+
+  private static List<BatchItem> batchItems(Account accountTo, Account... accountsFrom) {
+	 List<BatchItem> items = new ArrayList<>();
+	 for (Account accountFrom : accountsFrom) {
+		 BatchItem item = new BatchItem(items.size(),
+				 new AmountTransferRequest(accountFrom.getAccountId(), accountTo.getAccountId(), BigDecimal.ONE));
+		 item.setAccFrom(accountFrom);
+		 item.setAccTo(accountTo);
+		 items.add(item);
+	 }
+	 return items;
+  }
+
+  @Test
+  public void atomicBalanceEngine_transfersMinorUnits() throws Exception {
+	 Account accountFrom = new Account("123", new BigDecimal("1000.50"));
+	 Account accountTo = new Account("456", new BigDecimal("10"));
+	 new AtomicBalanceEngine().transfer(accountFrom, accountTo, new BigDecimal("0.50"));
+	 assertThat(accountFrom.getBalance()).isEqualByComparingTo("1000");
+	 assertThat(accountTo.getBalance()).isEqualByComparingTo("10.50");
+  }
+  
+  @Test(expected=InsufficientBalanceException.class)
+  public void atomicBalanceEngine_rejectsOverdraft() throws Exception {
+	 Account accountFrom = new Account("123", new BigDecimal("100"));
+	 Account accountTo = new Account("456", new BigDecimal("100"));
+	 new AtomicBalanceEngine().transfer(accountFrom, accountTo, new BigDecimal("100.01"));
+  }
+  
+  @Test
+  public void shardedBalanceEngine_transfersAcrossShards() throws Exception {
+	 ShardedEngineProperties properties = new ShardedEngineProperties();
+	 properties.setShards(4);
+	 properties.setRingSize(8);
+	 ShardedBalanceEngine engine = new ShardedBalanceEngine(properties);
+	 engine.start();
+	 try {
+		 Account[] accounts = new Account[8];
+		 for (int i = 0; i < accounts.length; i++) {
+			 accounts[i] = new Account(String.valueOf(i), new BigDecimal("100"));
+		 }
+		 for (int i = 0; i < 100; i++) {
+			 engine.transfer(accounts[i % 8], accounts[(i + 3) % 8], new BigDecimal("1.25"));
+		 }
+		 BigDecimal total = BigDecimal.ZERO;
+		 for (Account account : accounts) {
+			 total = total.add(account.getBalance());
+		 }
+		 assertThat(total).isEqualByComparingTo("800");
+		 assertThat(accounts[0].getBalance()).isEqualByComparingTo("98.75");
+		 
+		 try {
+			 engine.transfer(accounts[0], accounts[1], new BigDecimal("1000"));
+			 fail("Should have failed when balance is too low");
+		 } catch (InsufficientBalanceException ex) {
+			 assertThat(accounts[0].getBalance()).isEqualByComparingTo("98.75");
+		 }
+	 } finally {
+		 engine.stop();
+	 }
+  }
 }
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.util.ConsistentHashRing;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+  private static final int KEYS = 100_000;
+
+  @Test
+  public void nodeFor_spreadsKeysEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("http://a:1", "http://b:1", "http://c:1",
+      "http://d:1"), 128);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < KEYS; i++) {
+      counts.merge(ring.nodeFor(String.valueOf(i)), 1, Integer::sum);
+    }
+
+    assertThat(counts).hasSize(4);
+    for (int count : counts.values()) {
+      assertThat(count).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+    }
+  }
+
+  @Test
+  public void nodeFor_movesOnlyKeysOfAddedNode() {
+    ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("http://a:1", "http://b:1", "http://c:1"), 128);
+    ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("http://a:1", "http://b:1", "http://c:1",
+      "http://d:1"), 128);
+    int moved = 0;
+    for (int i = 0; i < KEYS; i++) {
+      String before = three.nodeFor(String.valueOf(i));
+      String after = four.nodeFor(String.valueOf(i));
+      if (!before.equals(after)) {
+        // A key only ever moves to the new node
+        assertThat(after).isEqualTo("http://d:1");
+        moved++;
+      }
+    }
+    assertThat(moved).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+  }
+
+  @Test
+  public void nodeFor_isSameForEveryRingOfSameNodes() {
+    ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("http://a:1", "http://b:1"), 16);
+    ConsistentHashRing other = new ConsistentHashRing(Arrays.asList("http://a:1", "http://b:1"), 16);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(other.nodeFor("Id-" + i)).isEqualTo(ring.nodeFor("Id-" + i));
+    }
+    assertThat(new ConsistentHashRing(Arrays.asList("http://a:1"), 1).nodeFor("any")).isEqualTo("http://a:1");
+  }
+}
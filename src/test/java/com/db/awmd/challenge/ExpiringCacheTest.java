@@ -0,0 +1,44 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.util.ExpiringCache;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void putIfAbsent_keepsFirstValue() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(4, 100, 1, TimeUnit.HOURS);
+
+    assertThat(cache.putIfAbsent("key", "first")).isNull();
+    assertThat(cache.putIfAbsent("key", "second")).isEqualTo("first");
+    assertThat(cache.get("key")).isEqualTo("first");
+    assertThat(cache.getHitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_dropsExpiredEntries() throws Exception {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(4, 100, 20, TimeUnit.MILLISECONDS);
+    cache.putIfAbsent("key", "value");
+
+    Thread.sleep(50);
+    assertThat(cache.get("key")).isNull();
+    assertThat(cache.putIfAbsent("key", "new value")).isNull();
+    assertThat(cache.get("key")).isEqualTo("new value");
+  }
+
+  @Test
+  public void putIfAbsent_evictsLeastRecentlyUsedEntry() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(1, 2, 1, TimeUnit.HOURS);
+    cache.putIfAbsent("a", "1");
+    cache.putIfAbsent("b", "2");
+    cache.get("a");
+
+    cache.putIfAbsent("c", "3");
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("a")).isEqualTo("1");
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,95 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.FxProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.CurrencyConversionException;
+import com.db.awmd.challenge.service.FxRateCache;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class FxRateCacheTest {
+
+  private final FxRateCache cache = new FxRateCache(new FxProperties());
+
+  @Test
+  public void convert_usesGivenInverseAndCrossRates() {
+    cache.update(Arrays.asList("# EUR is the base currency", "EUR,USD,1.085", "", "GBP,EUR,1.17"));
+
+    assertThat(cache.convert(10000, "EUR", "USD")).isEqualTo(10850);
+    assertThat(cache.convert(10850, "USD", "EUR")).isEqualTo(10000);
+    assertThat(cache.convert(10000, "GBP", "EUR")).isEqualTo(11700);
+    // 100 GBP = 117 EUR = 126.945 USD, rounded half up
+    assertThat(cache.convert(10000, "GBP", "USD")).isEqualTo(12695);
+    assertThat(cache.convert(12695, "USD", "GBP")).isEqualTo(10000);
+    assertThat(cache.convert(12345, "USD", "USD")).isEqualTo(12345);
+  }
+
+  @Test
+  public void convert_roundsHalfUpAndHandlesLargeAmounts() {
+    cache.update(Collections.singletonList("EUR,XAU,0.5"));
+
+    assertThat(cache.convert(3, "EUR", "XAU")).isEqualTo(2);
+    assertThat(cache.convert(1, "EUR", "XAU")).isEqualTo(1);
+    // Product of amount and fixed-point rate does not fit into a long
+    assertThat(cache.convert(Long.MAX_VALUE / 10, "XAU", "EUR")).isEqualTo(Long.MAX_VALUE / 10 * 2);
+    try {
+      cache.convert(Long.MAX_VALUE, "XAU", "EUR");
+      fail("Should have failed for a converted amount out of range");
+    } catch (CurrencyConversionException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Converted amount is out of range.");
+    }
+  }
+
+  @Test
+  public void convert_failsWithoutRate() {
+    cache.update(Collections.singletonList("EUR,USD,1.085"));
+    try {
+      cache.convert(100, "USD", "CHF");
+      fail("Should have failed without a rate to CHF");
+    } catch (CurrencyConversionException ex) {
+      assertThat(ex.getMessage()).isEqualTo("No FX rate from USD to CHF is available.");
+    }
+    assertThat(cache.currencyOf(new Account("1"))).isEqualTo("EUR");
+    assertThat(cache.currencyOf(new Account("2", BigDecimal.ONE, "USD"))).isEqualTo("USD");
+  }
+
+  @Test
+  public void update_keepsCurrentRatesWhenInvalid() {
+    cache.update(Collections.singletonList("EUR,USD,1.085"));
+    try {
+      cache.update(Arrays.asList("EUR,USD,1.2", "EUR;CHF;0.95"));
+      fail("Should have failed for an invalid line");
+    } catch (IllegalArgumentException ex) {
+      assertThat(cache.convert(10000, "EUR", "USD")).isEqualTo(10850);
+    }
+  }
+
+  @Test(timeout = 30_000)
+  public void update_swapsRatesWithoutStoppingConversions() throws Exception {
+    cache.update(Collections.singletonList("EUR,USD,2"));
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread refresher = new Thread(() -> {
+      for (int i = 0; running.get(); i++) {
+        cache.update(Collections.singletonList(i % 2 == 0 ? "EUR,USD,3" : "EUR,USD,2"));
+      }
+    });
+    refresher.start();
+    try {
+      for (int i = 0; i < 200_000; i++) {
+        // Every conversion sees one whole rate table, never a mix of two
+        long converted = cache.convert(100, "EUR", "USD");
+        assertThat(converted == 200 || converted == 300).isTrue();
+        long back = cache.convert(600, "USD", "EUR");
+        assertThat(back == 300 || back == 200).isTrue();
+      }
+    } finally {
+      running.set(false);
+      refresher.join();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.config.HotAccountProperties;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AmountTransferRequest;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.BatchItem;
+import com.db.awmd.challenge.domain.StripedBalanceCell;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.HotAccountStriping;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class HotAccountStripingTest {
+
+  private final LockingBalanceEngine engine =
+    new LockingBalanceEngine(new LockManager(new TransferMetrics(new MetricsProperties()), new LockProperties()));
+
+  @Test
+  public void stripedCell_borrowsAcrossStripesAndRefusesOverdraft() {
+    StripedBalanceCell cell = new StripedBalanceCell(4, 1000, 3);
+    assertThat(cell.getStripeCount()).isEqualTo(4);
+    assertThat(cell.get()).isEqualTo(1000);
+    assertThat(cell.getVersion()).isEqualTo(3);
+
+    cell.rebalance();
+    for (int stripe = 0; stripe < 4; stripe++) {
+      assertThat(cell.getStripe(stripe)).isEqualTo(250);
+    }
+    // More than any single stripe holds
+    assertThat(cell.tryDebit(900)).isEqualTo(100);
+    assertThat(cell.tryDebit(101)).isEqualTo(BalanceCell.INSUFFICIENT);
+    assertThat(cell.get()).isEqualTo(100);
+    assertThat(cell.credit(50)).isEqualTo(150);
+    assertThat(cell.getVersion()).isGreaterThan(3);
+  }
+
+  @Test(timeout = 60_000)
+  public void hotAccountTransfers_conserveMoneyWhileRebalancing() throws Exception {
+    Account hot = new Account("hot", new BigDecimal("1000"));
+    hot.stripeBalance(8);
+    List<Account> others = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      others.add(new Account(String.valueOf(i), new BigDecimal("1000")));
+    }
+
+    int threads = 8;
+    int transfersPerThread = 5_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Account own = others.get(t);
+      futures.add(executor.submit(() -> {
+        start.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < transfersPerThread; i++) {
+          try {
+            // Mostly to the hot account, sometimes back from it and in batches
+            int kind = random.nextInt(10);
+            if (kind < 8) {
+              engine.transfer(own, hot, BigDecimal.ONE);
+            } else if (kind == 8) {
+              engine.transfer(hot, own, new BigDecimal("5"));
+            } else {
+              BatchItem in = item(own, hot, "2");
+              BatchItem out = item(hot, others.get(random.nextInt(others.size())), "3");
+              engine.transferBatch(Arrays.asList(in, out), false);
+            }
+          } catch (InsufficientBalanceException ex) {
+            // Expected once an account runs dry
+          }
+        }
+        return null;
+      }));
+    }
+    AtomicBoolean negativeSeen = new AtomicBoolean();
+    Future<?> rebalancer = executor.submit(() -> {
+      start.await();
+      StripedBalanceCell cell = (StripedBalanceCell) hot.getBalanceCell();
+      while (!Thread.currentThread().isInterrupted()) {
+        cell.rebalance();
+        if (cell.get() < 0) {
+          negativeSeen.set(true);
+        }
+        Thread.yield();
+      }
+      return null;
+    });
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    rebalancer.cancel(true);
+    executor.shutdownNow();
+
+    assertThat(negativeSeen.get()).isFalse();
+    BigDecimal total = hot.getBalance();
+    for (Account account : others) {
+      assertThat(account.getBalance().signum()).isGreaterThanOrEqualTo(0);
+      total = total.add(account.getBalance());
+    }
+    assertThat(total).isEqualByComparingTo("9000");
+    assertThat(hot.getLock().isLocked()).isFalse();
+  }
+
+  @Test
+  public void striping_appliesToConfiguredAccountsOnly() {
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    repository.createAccount(new Account("existing", new BigDecimal("10")));
+    HotAccountProperties properties = new HotAccountProperties();
+    properties.setIds(Arrays.asList("existing", "new"));
+    properties.setStripes(3);
+    HotAccountStriping striping = new HotAccountStriping(properties, repository);
+    striping.start();
+    try {
+      assertThat(repository.getAccount("existing").isStriped()).isTrue();
+      assertThat(repository.getAccount("existing").getBalance()).isEqualByComparingTo("10");
+
+      Account created = new Account("new", new BigDecimal("20"));
+      striping.prepare(created);
+      Account other = new Account("other", new BigDecimal("30"));
+      striping.prepare(other);
+      assertThat(created.isStriped()).isTrue();
+      assertThat(((StripedBalanceCell) created.getBalanceCell()).getStripeCount()).isEqualTo(4);
+      assertThat(created.getBalance()).isEqualByComparingTo("20");
+      assertThat(other.isStriped()).isFalse();
+    } finally {
+      striping.stop();
+    }
+  }
+
+  private static BatchItem item(Account accFrom, Account accTo, String amount) {
+    BatchItem item = new BatchItem(0,
+      new AmountTransferRequest(accFrom.getAccountId(), accTo.getAccountId(), new BigDecimal(amount)));
+    item.setAccFrom(accFrom);
+    item.setAccTo(accTo);
+    return item;
+  }
+}
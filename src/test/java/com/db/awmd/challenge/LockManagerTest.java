@@ -0,0 +1,135 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+
+public class LockManagerTest {
+
+  private final TransferMetrics metrics = new TransferMetrics(new MetricsProperties());
+
+  @Test(timeout = 60_000)
+  public void oppositeTransfers_neitherDeadlockNorLoseMoney() throws Exception {
+    LockManager lockManager = new LockManager(metrics, new LockProperties());
+    LockingBalanceEngine engine = new LockingBalanceEngine(lockManager);
+    // Ids in descending order, so that id order and lock order differ
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      accounts.add(new Account(String.valueOf(10 - i), new BigDecimal("1000000")));
+    }
+
+    int threads = 8;
+    int transfersPerThread = 5_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      boolean forward = t % 2 == 0;
+      futures.add(executor.submit(() -> {
+        start.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < transfersPerThread; i++) {
+          Account first = accounts.get(forward ? 0 : 1);
+          Account second = accounts.get(forward ? 1 : 0);
+          engine.transfer(first, second, BigDecimal.ONE);
+          if (i % 10 == 0) {
+            // Lock all accounts in a random order while the pair transfers run
+            List<Account> shuffled = new ArrayList<>(accounts);
+            Collections.shuffle(shuffled, random);
+            lockManager.unlockAll(lockManager.lockAll(shuffled));
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (Account account : accounts) {
+      assertThat(account.getLock().isLocked()).isFalse();
+      total = total.add(account.getBalance());
+    }
+    assertThat(total).isEqualByComparingTo("4000000");
+    // Even threads move money forward as often as odd threads move it back
+    assertThat(accounts.get(0).getBalance()).isEqualByComparingTo("1000000");
+  }
+
+  @Test
+  public void lockAll_locksEachAccountOnce() {
+    LockManager lockManager = new LockManager(metrics, new LockProperties());
+    Account account1 = new Account("1");
+    Account account2 = new Account("2");
+
+    LockManager.LockedAccounts locked = lockManager.lockAll(Arrays.asList(account2, account1, account2));
+    assertThat(locked.size()).isEqualTo(2);
+    assertThat(account1.getLock().getHoldCount()).isEqualTo(1);
+    assertThat(account2.getLock().getHoldCount()).isEqualTo(1);
+
+    lockManager.unlockAll(locked);
+    assertThat(account1.getLock().isLocked()).isFalse();
+    assertThat(account2.getLock().isLocked()).isFalse();
+  }
+
+  @Test
+  public void lockAll_timesOutAndReleasesLocksTaken() throws Exception {
+    LockProperties properties = new LockProperties();
+    properties.setAttemptTimeoutMillis(1);
+    properties.setMaxWaitMillis(50);
+    LockManager lockManager = new LockManager(metrics, properties);
+    Account account1 = new Account("1");
+    Account account2 = new Account("2");
+
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      account2.getLock().lock();
+      try {
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } finally {
+        account2.getLock().unlock();
+      }
+    });
+    holder.start();
+    locked.await();
+
+    try {
+      lockManager.lockAll(Arrays.asList(account1, account2));
+      fail("Should have failed while the other account is locked");
+    } catch (LockTimeoutException ex) {
+      assertThat(account1.getLock().isLocked()).isFalse();
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+
+    JSONObject counters = (JSONObject) metrics.toJson().get("counters");
+    assertThat((Long) counters.get("lockRetries")).isGreaterThan(0L);
+    assertThat(counters.get("lockTimeouts")).isEqualTo(1L);
+  }
+}
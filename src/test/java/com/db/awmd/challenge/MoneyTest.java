@@ -0,0 +1,47 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.domain.Money;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class MoneyTest {
+
+  @Test
+  public void toMinorUnits_treatsEveryScaleOfAnAmountAlike() {
+    assertThat(Money.toMinorUnits(new BigDecimal("10"))).isEqualTo(1000);
+    assertThat(Money.toMinorUnits(new BigDecimal("10.00"))).isEqualTo(1000);
+    assertThat(Money.toMinorUnits(new BigDecimal("10.5000"))).isEqualTo(1050);
+    assertThat(Money.toMinorUnits(new BigDecimal("1E+2"))).isEqualTo(10000);
+    assertThat(Money.toBigDecimal(1000).toString()).isEqualTo("10");
+    assertThat(Money.toBigDecimal(1050).toString()).isEqualTo("10.5");
+    assertThat(Money.toBigDecimal(-1).toString()).isEqualTo("-0.01");
+  }
+
+  @Test
+  public void toMinorUnits_rejectsTooManyDecimalPlacesAndOverflow() {
+    assertRejected("10.001", "decimal places");
+    assertRejected("92233720368547758.08", "out of range");
+    assertThat(Money.toMinorUnits(new BigDecimal("92233720368547758.07"))).isEqualTo(Long.MAX_VALUE);
+
+    assertThat(Money.fits(new BigDecimal("9999999999999999.99"))).isTrue();
+    assertThat(Money.fits(new BigDecimal("10.100"))).isTrue();
+    assertThat(Money.fits(new BigDecimal("10000000000000000"))).isFalse();
+    assertThat(Money.fits(new BigDecimal("10.001"))).isFalse();
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void add_failsOnOverflow() {
+    Money.add(Long.MAX_VALUE, 1);
+  }
+
+  private static void assertRejected(String amount, String reason) {
+    try {
+      Money.toMinorUnits(new BigDecimal(amount));
+      fail("Should have rejected " + amount);
+    } catch (ArithmeticException ex) {
+      assertThat(ex.getMessage()).contains(reason);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.config.NotificationDispatcherProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.BackpressurePolicy;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationService;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NotificationDispatcherTest {
+
+  private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private NotificationDispatcher dispatcher;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void tearDown() throws Exception {
+    release.countDown();
+    dispatcher.stop();
+  }
+
+  @Test
+  public void dispatch_deliversAsynchronously() throws Exception {
+    dispatcher = newDispatcher(BackpressurePolicy.BLOCK, 10);
+    dispatcher.start();
+
+    dispatcher.dispatch(new Account("123"), "debited");
+    assertThat(delivered).isEmpty();
+
+    release.countDown();
+    awaitDispatched(1);
+    assertThat(delivered).containsExactly("123:debited");
+  }
+
+  @Test
+  public void dispatch_coalescesNotificationsOfSameAccount() throws Exception {
+    dispatcher = newDispatcher(BackpressurePolicy.BLOCK, 10);
+    dispatcher.start();
+
+    // First notification occupies the worker, the rest wait in the queue and form one batch.
+    dispatcher.dispatch(new Account("1"), "first");
+    dispatcher.dispatch(new Account("2"), "second");
+    dispatcher.dispatch(new Account("2"), "third");
+
+    release.countDown();
+    awaitDispatched(3);
+    assertThat(delivered).containsExactly("1:first", "2:second\nthird");
+  }
+
+  @Test
+  public void dispatch_dropsOldestWhenQueueIsFull() throws Exception {
+    dispatcher = newDispatcher(BackpressurePolicy.DROP_OLDEST, 2);
+    dispatcher.start();
+
+    dispatcher.dispatch(new Account("1"), "a");
+    waitUntilQueueIsEmpty();
+    dispatcher.dispatch(new Account("1"), "b");
+    dispatcher.dispatch(new Account("1"), "c");
+    dispatcher.dispatch(new Account("1"), "d");
+
+    assertThat(dispatcher.getDroppedCount()).isEqualTo(1);
+    release.countDown();
+    awaitDispatched(3);
+    assertThat(delivered).containsExactly("1:a", "1:c\nd");
+  }
+
+  @Test
+  public void dispatch_spillsToDiskAndKeepsOrder() throws Exception {
+    dispatcher = newDispatcher(BackpressurePolicy.SPILL_TO_DISK, 1);
+    dispatcher.start();
+
+    dispatcher.dispatch(new Account("1"), "a");
+    waitUntilQueueIsEmpty();
+    dispatcher.dispatch(new Account("1"), "b");
+    dispatcher.dispatch(new Account("1"), "c");
+    dispatcher.dispatch(new Account("1"), "d");
+
+    assertThat(dispatcher.getSpilledCount()).isEqualTo(2);
+    assertThat(dispatcher.getQueueDepth()).isEqualTo(3);
+    release.countDown();
+    awaitDispatched(4);
+    assertThat(delivered).containsExactly("1:a", "1:b", "1:c\nd");
+  }
+
+  @Test
+  public void dispatch_readsSpilledNotificationsBackInBatches() throws Exception {
+    dispatcher = newDispatcher(BackpressurePolicy.SPILL_TO_DISK, 1, 2);
+    dispatcher.start();
+
+    dispatcher.dispatch(new Account("1"), "a");
+    waitUntilQueueIsEmpty();
+    for (String description : new String[] {"b", "c", "d", "e", "f"}) {
+      dispatcher.dispatch(new Account("1"), description);
+    }
+
+    assertThat(dispatcher.getSpilledCount()).isEqualTo(4);
+    release.countDown();
+    awaitDispatched(6);
+    assertThat(delivered).containsExactly("1:a", "1:b", "1:c\nd", "1:e\nf");
+    assertThat(dispatcher.getQueueDepth()).isZero();
+  }
+
+  @Test
+  public void dispatch_spillsToRollingSegmentsAndDeletesThemOnceRead() throws Exception {
+    File spillDirectory = new File(folder.getRoot(), "spill");
+    dispatcher = newDispatcher(BackpressurePolicy.SPILL_TO_DISK, 1, 4, spillDirectory, 40);
+    dispatcher.start();
+    assertThat(spillDirectory).isDirectory();
+
+    List<String> expected = new ArrayList<>();
+    dispatcher.dispatch(new Account("1"), "n0");
+    expected.add("n0");
+    waitUntilQueueIsEmpty();
+    for (int i = 1; i <= 30; i++) {
+      dispatcher.dispatch(new Account("1"), "n" + i);
+      expected.add("n" + i);
+    }
+
+    assertThat(dispatcher.getSpilledCount()).isEqualTo(29);
+    assertThat(spillDirectory.list().length).isGreaterThan(1);
+    release.countDown();
+    awaitDispatched(31);
+    List<String> descriptions = new ArrayList<>();
+    for (String notification : delivered) {
+      descriptions.addAll(Arrays.asList(notification.substring("1:".length()).split("\n")));
+    }
+    assertThat(descriptions).isEqualTo(expected);
+    assertThat(spillDirectory.list()).isEmpty();
+  }
+
+  private NotificationDispatcher newDispatcher(BackpressurePolicy policy, int capacity) {
+    return newDispatcher(policy, capacity, new NotificationDispatcherProperties().getBatchSize());
+  }
+
+  private NotificationDispatcher newDispatcher(BackpressurePolicy policy, int capacity, int batchSize) {
+    return newDispatcher(policy, capacity, batchSize, folder.getRoot(),
+      new NotificationDispatcherProperties().getSpillSegmentSize());
+  }
+
+  private NotificationDispatcher newDispatcher(BackpressurePolicy policy, int capacity, int batchSize,
+      File spillDirectory, int spillSegmentSize) {
+    NotificationDispatcherProperties properties = new NotificationDispatcherProperties();
+    properties.setSpillDirectory(spillDirectory.getPath());
+    properties.setSpillSegmentSize(spillSegmentSize);
+    properties.setBatchSize(batchSize);
+    properties.setWorkers(1);
+    properties.setQueueCapacity(capacity);
+    properties.setBackpressure(policy);
+    NotificationService slowService = (account, description) -> {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      delivered.add(account.getAccountId() + ":" + description);
+    };
+    return new NotificationDispatcher(slowService, new AccountsRepositoryInMemory(), properties);
+  }
+
+  private void waitUntilQueueIsEmpty() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  private void awaitDispatched(long count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getDispatchedCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.PartitionProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.PartitionTransfer;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.TransferConflictException;
+import com.db.awmd.challenge.exception.UnknownTransferException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.PartitionRouter;
+import com.db.awmd.challenge.service.PartitionedTransfers;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Three nodes started as embedded applications on free ports, with accounts partitioned across them.
+ */
+public class PartitionedNodesTest {
+
+  @ClassRule
+  public static final TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String SECRET = "test-secret";
+
+  private static final List<String> urls = new ArrayList<>();
+
+  private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+  private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+  @BeforeClass
+  public static void startNodes() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      urls.add("http://localhost:" + freePort());
+    }
+    for (int i = 0; i < 3; i++) {
+      nodes.add(start(urls, i));
+    }
+  }
+
+  @AfterClass
+  public static void stopNodes() {
+    nodes.forEach(ConfigurableApplicationContext::close);
+  }
+
+  @Test
+  public void createAndGetAccount_forwardedToOwningNode() {
+    String accountId = accountOf(2, "create-");
+    ResponseEntity<String> created = send(urls.get(0), HttpMethod.POST, "/v1/accounts",
+      "{\"accountId\":\"" + accountId + "\",\"balance\":123.45}");
+    assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+    assertThat(service(2).getAccount(accountId).getBalance()).isEqualByComparingTo("123.45");
+    assertThat(service(0).getAccount(accountId)).isNull();
+    ResponseEntity<String> account = send(urls.get(1), HttpMethod.GET, "/v1/accounts/" + accountId, null);
+    assertThat(account.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(account.getBody()).contains("\"balance\":123.45");
+    assertThat(account.getHeaders().getETag()).isNotNull();
+  }
+
+  @Test
+  public void transfer_betweenPartitionsKeepsTotalBalance() throws Exception {
+    List<String> accountIds = new ArrayList<>();
+    for (int node = 0; node < 3; node++) {
+      for (int i = 0; i < 3; i++) {
+        String accountId = accountOf(node, "total-" + i + "-");
+        service(node).createAccount(new Account(accountId, new BigDecimal("1000")));
+        accountIds.add(accountId);
+      }
+    }
+
+    Thread[] clients = new Thread[4];
+    for (int c = 0; c < clients.length; c++) {
+      clients[c] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100; i++) {
+          String from = accountIds.get(random.nextInt(accountIds.size()));
+          String to = accountIds.get(random.nextInt(accountIds.size()));
+          if (!from.equals(to)) {
+            send(urls.get(random.nextInt(urls.size())), HttpMethod.PUT, "/v1/accounts/transfer",
+              "{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to + "\",\"amountToTransfer\":"
+                + (1 + random.nextInt(300)) + "}");
+          }
+        }
+      });
+      clients[c].start();
+    }
+    for (Thread client : clients) {
+      client.join();
+    }
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int node = 0; node < 3; node++) {
+      assertThat(nodes.get(node).getBean(PartitionedTransfers.class).getInDoubtCount()).isZero();
+      for (String accountId : accountIds) {
+        Account account = service(node).getAccount(accountId);
+        if (account != null) {
+          assertThat(account.getBalance().signum()).isGreaterThanOrEqualTo(0);
+          total = total.add(account.getBalance());
+        }
+      }
+    }
+    assertThat(total).isEqualByComparingTo("9000");
+  }
+
+  @Test
+  public void transfer_toMissingAccountOfOtherNodeIsRefunded() {
+    String from = accountOf(0, "refund-from-");
+    String to = accountOf(1, "refund-missing-");
+    service(0).createAccount(new Account(from, new BigDecimal("50")));
+
+    ResponseEntity<String> response = send(urls.get(2), HttpMethod.PUT, "/v1/accounts/transfer",
+      "{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to + "\",\"amountToTransfer\":20}");
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    assertThat(response.getBody()).contains("Account with number '" + to + "' does not exist.");
+    assertThat(service(0).getAccount(from).getBalance()).isEqualByComparingTo("50");
+  }
+
+  @Test
+  public void commit_isAppliedOnceAndOnlyAfterPrepare() {
+    String accountId = accountOf(1, "commit-");
+    service(1).createAccount(new Account(accountId, new BigDecimal("10")));
+    PartitionedTransfers participant = nodes.get(1).getBean(PartitionedTransfers.class);
+    PartitionTransfer transfer = new PartitionTransfer("test-1", "remote", accountId, new BigDecimal("5"), null,
+      new BigDecimal("95"));
+
+    participant.prepare(transfer);
+    assertThat(participant.commit(transfer)).isEqualByComparingTo("15");
+    assertThat(participant.commit(transfer)).isEqualByComparingTo("15");
+    assertThat(service(1).getAccount(accountId).getBalance()).isEqualByComparingTo("15");
+    try {
+      participant.abort("test-1");
+      fail("Should have failed to abort a committed transfer");
+    } catch (TransferConflictException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Transfer 'test-1' has been committed.");
+    }
+
+    PartitionTransfer unprepared = new PartitionTransfer("test-2", "remote", accountId, BigDecimal.ONE, null,
+      BigDecimal.ONE);
+    try {
+      participant.commit(unprepared);
+      fail("Should have failed to commit a transfer which has not been prepared");
+    } catch (UnknownTransferException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Transfer 'test-2' has not been prepared or has been forgotten.");
+    }
+    participant.abort("test-2");
+    try {
+      participant.prepare(unprepared);
+      fail("Should have failed to prepare an aborted transfer");
+    } catch (TransferConflictException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Transfer 'test-2' has been aborted.");
+    }
+    assertThat(service(1).getAccount(accountId).getBalance()).isEqualByComparingTo("15");
+  }
+
+  @Test
+  public void transferPhases_areRefusedWithoutTheSecretOfTheNodes() {
+    String accountId = accountOf(1, "forged-");
+    service(1).createAccount(new Account(accountId, new BigDecimal("10")));
+    String path = PartitionedTransfers.TRANSFERS_PATH + "forged-1/";
+    String transfer = "{\"transferId\":\"forged-1\",\"accountFromId\":\"nobody\",\"accountToId\":\"" + accountId
+      + "\",\"amount\":500,\"accFromBalance\":0}";
+
+    for (String secret : new String[] {null, "wrong-secret"}) {
+      assertThat(sendPhase(urls.get(1), path + "prepare", transfer, secret).getStatusCode())
+        .isEqualTo(HttpStatus.FORBIDDEN);
+      assertThat(sendPhase(urls.get(1), path + "commit", transfer, secret).getStatusCode())
+        .isEqualTo(HttpStatus.FORBIDDEN);
+      assertThat(sendPhase(urls.get(1), path + "abort", null, secret).getStatusCode())
+        .isEqualTo(HttpStatus.FORBIDDEN);
+    }
+    assertThat(service(1).getAccount(accountId).getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void prepare_isRefusedForInvalidAmounts() {
+    String accountId = accountOf(1, "amount-");
+    service(1).createAccount(new Account(accountId, new BigDecimal("10")));
+    String path = PartitionedTransfers.TRANSFERS_PATH + "amount-";
+
+    String[] amounts = {"null", "0", "-5", "0.001"};
+    for (int i = 0; i < amounts.length; i++) {
+      String transfer = "{\"transferId\":\"amount-" + i + "\",\"accountFromId\":\"remote\",\"accountToId\":\""
+        + accountId + "\",\"amount\":" + amounts[i] + ",\"accFromBalance\":0}";
+      ResponseEntity<String> response = sendPhase(urls.get(1), path + i + "/prepare", transfer, SECRET);
+      assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+      assertThat(response.getBody()).contains("Amount to be transferred must be positive with at most 2 decimal places.");
+      assertThat(sendPhase(urls.get(1), path + i + "/commit", transfer, SECRET).getStatusCode())
+        .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+    assertThat(service(1).getAccount(accountId).getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void prepare_isRefusedWhileAllDecisionsAreRemembered() {
+    String accountId = accountOf(2, "full-");
+    service(2).createAccount(new Account(accountId, BigDecimal.ZERO));
+    PartitionedTransfers participant = nodes.get(2).getBean(PartitionedTransfers.class);
+    PartitionProperties properties = nodes.get(2).getBean(PartitionProperties.class);
+    int maxDecisions = properties.getMaxDecisions();
+    participant.prepare(new PartitionTransfer("full-1", "remote", accountId, BigDecimal.ONE, null, null));
+    properties.setMaxDecisions(participant.getDecisionCount());
+    try {
+      participant.prepare(new PartitionTransfer("full-2", "remote", accountId, BigDecimal.ONE, null, null));
+      fail("Should have refused to prepare another transfer");
+    } catch (NodeUnavailableException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Too many transfers between partitions in progress, please retry later.");
+    } finally {
+      properties.setMaxDecisions(maxDecisions);
+    }
+    // Transfers already prepared are still committed
+    assertThat(participant.commit(new PartitionTransfer("full-1", "remote", accountId, BigDecimal.ONE, null,
+      BigDecimal.TEN))).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void transfer_toUnavailableNodeIsRefunded() throws IOException {
+    // Second node of this cluster is never started
+    List<String> cluster = new ArrayList<>();
+    cluster.add("http://localhost:" + freePort());
+    cluster.add("http://localhost:" + freePort());
+    ConfigurableApplicationContext node = start(cluster, 0);
+    try {
+      PartitionRouter router = node.getBean(PartitionRouter.class);
+      String from = null;
+      String to = null;
+      for (int i = 0; from == null || to == null; i++) {
+        if (router.isLocal("unavailable-" + i)) {
+          from = "unavailable-" + i;
+        } else {
+          to = "unavailable-" + i;
+        }
+      }
+      node.getBean(AccountsService.class).createAccount(new Account(from, new BigDecimal("50")));
+
+      ResponseEntity<String> response = send(cluster.get(0), HttpMethod.PUT, "/v1/accounts/transfer",
+        "{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to + "\",\"amountToTransfer\":20}");
+      assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+      assertThat(node.getBean(AccountsService.class).getAccount(from).getBalance()).isEqualByComparingTo("50");
+      assertThat(send(cluster.get(0), HttpMethod.GET, "/v1/accounts/" + to, null).getStatusCode())
+        .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    } finally {
+      node.close();
+    }
+  }
+
+  private ResponseEntity<String> send(String url, HttpMethod method, String path, String body) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    return restTemplate.exchange(url + path, method, new HttpEntity<>(body, headers), String.class);
+  }
+
+  private ResponseEntity<String> sendPhase(String url, String path, String body, String secret) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    if (secret != null) {
+      headers.set(PartitionRouter.SECRET_HEADER, secret);
+    }
+    return restTemplate.exchange(url + path, HttpMethod.PUT, new HttpEntity<>(body, headers), String.class);
+  }
+
+  private static AccountsService service(int node) {
+    return nodes.get(node).getBean(AccountsService.class);
+  }
+
+  /**
+   * @return first account id with the given prefix which belongs to the node
+   */
+  private static String accountOf(int node, String prefix) {
+    PartitionRouter router = nodes.get(0).getBean(PartitionRouter.class);
+    for (int i = 0; ; i++) {
+      if (router.ownerOf(prefix + i).equals(urls.get(node))) {
+        return prefix + i;
+      }
+    }
+  }
+
+  private static ConfigurableApplicationContext start(List<String> cluster, int index) throws IOException {
+    return new SpringApplicationBuilder(DevChallengeApplication.class)
+      .run("--server.port=" + cluster.get(index).substring(cluster.get(index).lastIndexOf(':') + 1),
+        "--partition.enabled=true",
+        "--partition.nodes=" + String.join(",", cluster),
+        "--partition.self=" + cluster.get(index),
+        "--partition.secret=" + SECRET,
+        "--partition.request-timeout-millis=1000",
+        "--audit.enabled=true",
+        "--audit.directory=" + folder.newFolder(),
+        "--spring.jmx.enabled=false",
+        "--logging.level.root=WARN");
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
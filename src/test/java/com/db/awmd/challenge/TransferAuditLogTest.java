@@ -0,0 +1,61 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.service.TransferAuditLog;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.math.BigDecimal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransferAuditLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void record_writesBinaryRecordsInOrder() throws Exception {
+    AuditProperties properties = new AuditProperties();
+    properties.setEnabled(true);
+    properties.setDirectory(folder.getRoot().getAbsolutePath());
+    properties.setRingSize(4);
+    TransferAuditLog auditLog = new TransferAuditLog(properties);
+    auditLog.start();
+
+    // More records than ring slots, so publishers have to wait for the writer.
+    for (int i = 0; i < 10; i++) {
+      auditLog.record("123", "456", new BigDecimal("1.50"), BigDecimal.valueOf(100 - i), new BigDecimal("2.5"));
+    }
+    auditLog.stop();
+
+    assertThat(auditLog.getWrittenCount()).isEqualTo(10);
+    try (DataInputStream in = new DataInputStream(new FileInputStream(auditLog.getFile()))) {
+      assertThat(in.readInt()).isEqualTo(0x41554454);
+      assertThat(in.readInt()).isEqualTo(1);
+      for (int i = 0; i < 10; i++) {
+        assertThat(in.readLong()).isPositive();
+        assertThat(readString(in)).isEqualTo("123");
+        assertThat(readString(in)).isEqualTo("456");
+        assertThat(readDecimal(in)).isEqualByComparingTo("1.50");
+        assertThat(readDecimal(in)).isEqualByComparingTo(BigDecimal.valueOf(100 - i));
+        assertThat(readDecimal(in)).isEqualByComparingTo("2.5");
+      }
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws Exception {
+    char[] chars = new char[in.readUnsignedShort()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = in.readChar();
+    }
+    return new String(chars);
+  }
+
+  private static BigDecimal readDecimal(DataInputStream in) throws Exception {
+    int scale = in.readByte();
+    return BigDecimal.valueOf(in.readLong(), scale);
+  }
+}
@@ -0,0 +1,94 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.config.LedgerProperties;
+import com.db.awmd.challenge.repository.TransferLedger;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransferLedgerTest {
+
+  private TransferLedger ledger;
+
+  @Before
+  public void setUp() {
+    LedgerProperties properties = new LedgerProperties();
+    properties.setSegmentSize(128);
+    ledger = new TransferLedger(properties);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ledger.stop();
+  }
+
+  @Test
+  public void statement_readsSealedAndOpenSegmentsPageByPage() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      // Every account "1" transfer is followed by one between other accounts
+      ledger.record("1", "2", new BigDecimal("1.50"), BigDecimal.valueOf(10000 - i), BigDecimal.valueOf(i));
+      ledger.record("3", "4", BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ONE);
+    }
+    awaitSealedSegments(15);
+
+    List<Long> sequences = new ArrayList<>();
+    long cursor = -1;
+    do {
+      TransferLedger.Statement statement = ledger.statement("1", 0, Long.MAX_VALUE, cursor);
+      cursor = -1;
+      for (int read = 0; read < 300 && statement.next(); read++) {
+        assertThat(statement.getCounterpartyId()).isEqualTo("2");
+        assertThat(statement.getAmount()).isEqualByComparingTo("-1.50");
+        assertThat(statement.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(10000 - sequences.size()));
+        sequences.add(statement.getSequence());
+        cursor = statement.getSequence();
+      }
+    } while (cursor >= 0 && sequences.size() < 1000);
+
+    assertThat(sequences).hasSize(1000);
+    assertThat(sequences.get(0)).isEqualTo(0);
+    assertThat(sequences.get(999)).isEqualTo(1998);
+
+    TransferLedger.Statement credits = ledger.statement("2", 0, Long.MAX_VALUE, 1996);
+    assertThat(credits.next()).isTrue();
+    assertThat(credits.getSequence()).isEqualTo(1998);
+    assertThat(credits.getCounterpartyId()).isEqualTo("1");
+    assertThat(credits.getAmount()).isEqualByComparingTo("1.50");
+    assertThat(credits.getBalance()).isEqualByComparingTo("999");
+    assertThat(credits.next()).isFalse();
+  }
+
+  @Test
+  public void statement_filtersByTime() throws Exception {
+    ledger.record("1", "2", BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+    Thread.sleep(20);
+    long from = System.currentTimeMillis();
+    Thread.sleep(20);
+    ledger.record("1", "2", BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ONE);
+    Thread.sleep(20);
+    long to = System.currentTimeMillis();
+    Thread.sleep(20);
+    ledger.record("1", "2", BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+
+    TransferLedger.Statement statement = ledger.statement("1", from, to, -1);
+    assertThat(statement.next()).isTrue();
+    assertThat(statement.getAmount()).isEqualByComparingTo("-10");
+    assertThat(statement.getTime()).isBetween(from, to);
+    assertThat(statement.next()).isFalse();
+
+    assertThat(ledger.statement("unknown", 0, Long.MAX_VALUE, -1).next()).isFalse();
+  }
+
+  private void awaitSealedSegments(long count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ledger.getSealedSegmentCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(ledger.getSealedSegmentCount()).isEqualTo(count);
+    assertThat(ledger.getSealedBytes()).isLessThan(count * 128 * 51);
+  }
+}
@@ -0,0 +1,83 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.util.LatencyHistogram;
+import com.db.awmd.challenge.util.TopCounter;
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+
+public class TransferMetricsTest {
+
+  @Test
+  public void latencyHistogram_reportsPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertThat(histogram.getCount()).isEqualTo(1000);
+    assertThat(histogram.getValueAtPercentile(50)).isBetween(500_000L, 500_000L * 104 / 100);
+    assertThat(histogram.getValueAtPercentile(99)).isBetween(990_000L, 990_000L * 104 / 100);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1_000_000L);
+    assertThat(histogram.getMaxNanos()).isEqualTo(1_000_000L);
+    assertThat(histogram.getMeanNanos()).isEqualTo(500_500L);
+  }
+
+  @Test
+  public void topCounter_keepsMostFrequentKeys() {
+    TopCounter counter = new TopCounter(2);
+    for (int i = 0; i < 10; i++) {
+      counter.increment("hot");
+      counter.increment("cold-" + i);
+    }
+
+    assertThat(counter.top(1).get(0).getKey()).isEqualTo("hot");
+    assertThat(counter.top(1).get(0).getValue()).isEqualTo(10L);
+  }
+
+  @Test
+  public void lockingBalanceEngine_recordsLockTimesAndContention() throws Exception {
+    TransferMetrics metrics = new TransferMetrics(new MetricsProperties());
+    LockingBalanceEngine engine = new LockingBalanceEngine(new LockManager(metrics, new LockProperties()));
+    Account accountFrom = new Account("1", new BigDecimal("100"));
+    Account accountTo = new Account("2", new BigDecimal("100"));
+
+    // Hold the lock of the source account so that the transfer has to wait for it.
+    CountDownLatch locked = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      accountFrom.getLock().lock();
+      try {
+        locked.countDown();
+        Thread.sleep(50);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } finally {
+        accountFrom.getLock().unlock();
+      }
+    });
+    holder.start();
+    locked.await();
+    engine.transfer(accountFrom, accountTo, new BigDecimal("10"));
+    holder.join();
+
+    JSONObject json = metrics.toJson();
+    JSONObject counters = (JSONObject) json.get("counters");
+    JSONObject latencies = (JSONObject) json.get("latencies");
+    JSONArray hotAccounts = (JSONArray) json.get("hotAccounts");
+    assertThat(counters.get("lockContended")).isEqualTo(1L);
+    assertThat(((JSONObject) latencies.get("lockWait")).get("count")).isEqualTo(1L);
+    assertThat((Double) ((JSONObject) latencies.get("lockWait")).get("maxMicros")).isGreaterThan(10_000.0);
+    assertThat(((JSONObject) latencies.get("lockHold")).get("count")).isEqualTo(1L);
+    assertThat(((JSONObject) hotAccounts.get(0)).get("accountId")).isEqualTo("1");
+  }
+}
@@ -0,0 +1,141 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import com.db.awmd.challenge.config.LockProperties;
+import com.db.awmd.challenge.config.MetricsProperties;
+import com.db.awmd.challenge.config.NettingProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.service.BalanceEngine;
+import com.db.awmd.challenge.service.LockManager;
+import com.db.awmd.challenge.service.LockingBalanceEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.service.TransferNetting;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+
+public class TransferNettingTest {
+
+  private final LockingBalanceEngine engine =
+    new LockingBalanceEngine(new LockManager(new TransferMetrics(new MetricsProperties()), new LockProperties()));
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private TransferNetting netting;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    if (netting != null) {
+      netting.stop();
+    }
+  }
+
+  @Test
+  public void window_validatesEveryTransferAtItsPosition() throws Exception {
+    // One window holding exactly the three transfers
+    netting = start(5_000_000, 3);
+    Account accountA = new Account("A", new BigDecimal("10"));
+    Account accountB = new Account("B", BigDecimal.ZERO);
+
+    // B receives 10 later in the window, which must not cover its own earlier debit
+    Future<BalanceUpdate> first = submit(accountB, accountA, "5");
+    Thread.sleep(100);
+    Future<BalanceUpdate> second = submit(accountA, accountB, "10");
+    Thread.sleep(100);
+    Future<BalanceUpdate> third = submit(accountA, accountB, "1");
+
+    assertInsufficient(first);
+    BalanceUpdate update = second.get();
+    assertThat(update.getAccFromBalance()).isEqualByComparingTo("0");
+    assertThat(update.getAccToBalance()).isEqualByComparingTo("10");
+    assertInsufficient(third);
+    assertThat(accountA.getBalance()).isEqualByComparingTo("0");
+    assertThat(accountB.getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test(timeout = 60_000)
+  public void backAndForthTransfers_areNettedWithoutLosingMoney() throws Exception {
+    netting = start(200, 64);
+    // Enough for any order of the transfers, none may fail
+    Account accountA = new Account("A", new BigDecimal("5000"));
+    Account accountB = new Account("B", new BigDecimal("5000"));
+
+    int threads = 8;
+    int transfersPerThread = 500;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      boolean forward = t % 2 == 0;
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < transfersPerThread; i++) {
+          netting.transfer(forward ? accountA : accountB, forward ? accountB : accountA, BigDecimal.ONE);
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertThat(accountA.getBalance()).isEqualByComparingTo("5000");
+    assertThat(accountB.getBalance()).isEqualByComparingTo("5000");
+    assertThat(accountA.getLock().isLocked()).isFalse();
+  }
+
+  @Test
+  public void failedTransfer_throwsExceptionOfTheEngineUnchanged() throws Exception {
+    ArithmeticException overflow = new ArithmeticException("long overflow");
+    BalanceEngine failingEngine = (accFrom, accTo, amountToTransfer) -> {
+      throw overflow;
+    };
+    netting = start(failingEngine, 100, 8);
+
+    try {
+      netting.transfer(new Account("A", BigDecimal.TEN), new Account("B"), BigDecimal.ONE);
+      fail("Should have failed with the exception of the engine");
+    } catch (ArithmeticException ex) {
+      assertThat(ex).isSameAs(overflow);
+    }
+  }
+
+  private TransferNetting start(long windowMicros, int maxTransfers) {
+    return start(engine, windowMicros, maxTransfers);
+  }
+
+  private TransferNetting start(BalanceEngine balanceEngine, long windowMicros, int maxTransfers) {
+    NettingProperties properties = new NettingProperties();
+    properties.setEnabled(true);
+    properties.setWindowMicros(windowMicros);
+    properties.setMaxTransfers(maxTransfers);
+    TransferNetting transferNetting = new TransferNetting(properties, balanceEngine);
+    transferNetting.start();
+    assertThat(transferNetting.isEnabled()).isTrue();
+    return transferNetting;
+  }
+
+  private Future<BalanceUpdate> submit(Account accFrom, Account accTo, String amount) {
+    return executor.submit(() -> netting.transfer(accFrom, accTo, new BigDecimal(amount)));
+  }
+
+  private static void assertInsufficient(Future<BalanceUpdate> future) throws InterruptedException {
+    try {
+      future.get();
+      fail("Should have failed for insufficient balance");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(InsufficientBalanceException.class);
+    }
+  }
+}